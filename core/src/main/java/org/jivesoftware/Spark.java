@@ -352,6 +352,16 @@ public final class Spark {
         return USER_SPARK_HOME;
     }
 
+    /**
+     * Sets the Spark directory for the current user, which is otherwise determined when Spark starts. This allows
+     * classes that store settings there to be used without starting Spark, such as in tests.
+     *
+     * @param sparkUserHome the Spark directory for the current user.
+     */
+    public static void setSparkUserHome(String sparkUserHome) {
+        USER_SPARK_HOME = sparkUserHome;
+    }
+
     /**
      * Return the base user home.
      *
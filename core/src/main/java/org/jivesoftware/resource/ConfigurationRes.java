@@ -55,7 +55,7 @@ public class ConfigurationRes {
     public static ImageIcon getImageIcon(String imageName) {
         final String iconURI = getString(imageName);
         final URL imageURL = cl.getResource(iconURI);
-        return new ImageIcon(imageURL);
+        return IconRegistry.getInstance().getIcon(imageURL);
     }
 
     public static URL getURL(String propertyName) {
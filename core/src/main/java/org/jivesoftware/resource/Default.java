@@ -33,8 +33,6 @@ public class Default {
 
     private static final Map<String,Object> customMap = new HashMap<>();
 
-    private static final Map<String,ImageIcon> cache = new HashMap<>();
-
     public static final String MAIN_IMAGE = "MAIN_IMAGE";
     public static final String APPLICATION_NAME = "APPLICATION_NAME";
     public static final String APPLICATION_INFO1 = "APPLICATION_INFO1";
@@ -192,19 +190,10 @@ public class Default {
             return (ImageIcon)o;
         }
 
-        // Otherwise check cache
-        o = cache.get(imageName);
-        if (o != null) {
-            return (ImageIcon)o;
-        }
-
-        // Otherwise, load and add to cache.
+        // Otherwise, load from the icon registry.
         try {
             final URL imageURL = getURL(imageName);
-
-            final ImageIcon icon = new ImageIcon(imageURL);
-            cache.put(imageName, icon);
-            return icon;
+            return IconRegistry.getInstance().getIcon(imageURL);
         }
         catch (Exception ex) {
             Log.debug(imageName + " not found.");
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.resource;
+
+import javax.swing.ImageIcon;
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Holds the icons that are loaded from resources, so that every resource is decoded once.
+ *
+ * Icons are interned by the URL of their resource. The {@code getImageIcon} methods of {@link SparkRes}, {@link Default},
+ * {@link ConfigurationRes} and the resource classes of plugins all load their icons from here. As resources that are
+ * replaced by plugins (see {@link org.jivesoftware.spark.PluginRes}) have a different URL, such replacements keep
+ * working. A theme can replace the icon of any resource by {@link #putOverride(URL, ImageIcon)}.
+ *
+ * On displays that are scaled by two or more, a resource that has a variant named after it with an {@code @2x} suffix
+ * (for instance {@code images/green-ball@2x.png} next to {@code images/green-ball.png}) is drawn from that variant, at
+ * the size of the original.
+ *
+ * The icons that are returned are shared: they are not to be modified. To give an icon a description, create an icon
+ * of its image.
+ *
+ * This class is thread-safe.
+ */
+public class IconRegistry
+{
+    private static final String HIDPI_SUFFIX = "@2x";
+
+    private static IconRegistry instance;
+
+    private final double displayScale;
+
+    private final Map<String, ImageIcon> icons = new ConcurrentHashMap<>();
+    private final Map<String, ImageIcon> overrides = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Returns the icon registry of the application.
+     *
+     * @return the icon registry.
+     */
+    public static synchronized IconRegistry getInstance()
+    {
+        if ( instance == null )
+        {
+            instance = new IconRegistry( detectDisplayScale() );
+        }
+        return instance;
+    }
+
+    /**
+     * Creates an icon registry.
+     *
+     * @param displayScale the scale of the display, used to choose between the variants of a resource.
+     */
+    IconRegistry( double displayScale )
+    {
+        this.displayScale = displayScale;
+    }
+
+    /**
+     * Returns the icon of a resource, decoding it when it is asked for the first time.
+     *
+     * @param url the URL of the resource.
+     * @return the icon, which is not to be modified.
+     */
+    public ImageIcon getIcon( URL url )
+    {
+        final String key = url.toExternalForm();
+        final ImageIcon override = overrides.get( key );
+        if ( override != null )
+        {
+            hits.increment();
+            return override;
+        }
+
+        final ImageIcon cached = icons.get( key );
+        if ( cached != null )
+        {
+            hits.increment();
+            return cached;
+        }
+        return icons.computeIfAbsent( key, k -> {
+            misses.increment();
+            return load( url );
+        } );
+    }
+
+    /**
+     * Replaces the icon of a resource, for instance by the icon of a theme.
+     *
+     * @param url  the URL of the resource.
+     * @param icon the icon to use instead of the one of the resource.
+     */
+    public void putOverride( URL url, ImageIcon icon )
+    {
+        overrides.put( url.toExternalForm(), icon );
+    }
+
+    /**
+     * Restores the icon of a resource that was replaced.
+     *
+     * @param url the URL of the resource.
+     */
+    public void removeOverride( URL url )
+    {
+        overrides.remove( url.toExternalForm() );
+    }
+
+    /**
+     * Removes all icons that were decoded, so that they are decoded again when they are asked for. Overrides are kept.
+     */
+    public void clear()
+    {
+        icons.clear();
+    }
+
+    /**
+     * Returns the number of times an icon was asked for that was already decoded (or that was overridden).
+     *
+     * @return the number of hits.
+     */
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times an icon was asked for that had to be decoded.
+     *
+     * @return the number of misses.
+     */
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of icons that were decoded.
+     *
+     * @return the number of icons.
+     */
+    public int size()
+    {
+        return icons.size();
+    }
+
+    private ImageIcon load( URL url )
+    {
+        if ( displayScale >= 2 )
+        {
+            final URL variant = getHiDpiVariant( url );
+            if ( variant != null )
+            {
+                final ImageIcon original = new ImageIcon( url );
+                if ( original.getIconWidth() > 0 )
+                {
+                    return new HiDpiImageIcon( new ImageIcon( variant ).getImage(), original.getIconWidth(), original.getIconHeight() );
+                }
+            }
+        }
+        return new ImageIcon( url );
+    }
+
+    /**
+     * Returns the URL of the {@code @2x} variant of a resource, or null if it has none.
+     */
+    static URL getHiDpiVariant( URL url )
+    {
+        final String spec = url.toExternalForm();
+        final int slash = spec.lastIndexOf( '/' );
+        final int dot = spec.lastIndexOf( '.' );
+        if ( dot <= slash )
+        {
+            return null;
+        }
+        try
+        {
+            final URL variant = new URL( spec.substring( 0, dot ) + HIDPI_SUFFIX + spec.substring( dot ) );
+            try ( InputStream ignored = variant.openStream() )
+            {
+                return variant;
+            }
+        }
+        catch ( IOException e )
+        {
+            // There is no such variant.
+            return null;
+        }
+    }
+
+    private static double detectDisplayScale()
+    {
+        if ( GraphicsEnvironment.isHeadless() )
+        {
+            return 1;
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().getDefaultTransform().getScaleX();
+    }
+
+    /**
+     * An icon that is drawn from an image of a higher resolution, at the size of the original image.
+     */
+    private static final class HiDpiImageIcon extends ImageIcon
+    {
+        private final int width;
+        private final int height;
+
+        private HiDpiImageIcon( Image image, int width, int height )
+        {
+            super( image );
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getIconWidth()
+        {
+            return width;
+        }
+
+        @Override
+        public int getIconHeight()
+        {
+            return height;
+        }
+
+        @Override
+        public synchronized void paintIcon( Component c, Graphics g, int x, int y )
+        {
+            g.drawImage( getImage(), x, y, width, height, getImageObserver() == null ? c : getImageObserver() );
+        }
+    }
+}
@@ -362,7 +362,7 @@ public class SparkRes {
     public static ImageIcon getImageIcon(String imageName) {
         try {
             final URL imageURL = getURL(imageName);
-            return new ImageIcon(imageURL);
+            return IconRegistry.getInstance().getIcon(imageURL);
         } catch (Exception ex) {
             Log.error(imageName + " not found.");
         }
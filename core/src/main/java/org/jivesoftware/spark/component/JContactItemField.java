@@ -304,7 +304,7 @@ public class JContactItemField extends JPanel {
             else {
                 setIcon(contactItem.getIcon());
             }
-            setFont(contactItem.getNicknameLabel().getFont());
+            setFont(contactItem.getNicknameFont() != null ? contactItem.getNicknameFont() : list.getFont());
             setForeground(contactItem.getForeground());
 
             return this;
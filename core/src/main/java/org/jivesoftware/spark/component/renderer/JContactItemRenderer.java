@@ -15,7 +15,9 @@
  */
 package org.jivesoftware.spark.component.renderer;
 
+import java.awt.Color;
 import java.awt.Component;
+import java.awt.Font;
 
 import javax.swing.JList;
 import javax.swing.ListCellRenderer;
@@ -29,11 +31,15 @@ import org.jivesoftware.spark.ui.ContactItem;
  */
 public class JContactItemRenderer extends ContactItem implements ListCellRenderer<Object> {
 	private final JPanelRenderer basicPanelRenderer;
+	private final Font defaultNicknameFont;
+	private final Color defaultNicknameForeground;
 	
 	public JContactItemRenderer() {
 		super("", "", null);
         setOpaque(true);
 		basicPanelRenderer = new JPanelRenderer();
+		defaultNicknameFont = getNicknameLabel().getFont();
+		defaultNicknameForeground = getNicknameLabel().getForeground();
 	}
 
 	@Override
@@ -43,21 +49,23 @@ public class JContactItemRenderer extends ContactItem implements ListCellRendere
 		basicPanelRenderer.getListCellRendererComponent(list, this, index, isSelected, cellHasFocus);
 		ContactItem renderItem = (ContactItem)value;
 		setFocusable(false);
-		setNickname(renderItem.getNickname());
-		setAlias(renderItem.getAlias());
-                if (this.getDisplayName().trim().isEmpty()) {
-                    // Fallback hack to show something other than empty string.
-                    // JID can't be set after object creation, so alias is reset.
-                    setAlias(renderItem.getDisplayName());
-                }
+
+		// Read what the item displays rather than its labels, as lightweight items do not have any.
+		String displayedName = renderItem.getDisplayedName();
+		if (displayedName == null || displayedName.trim().isEmpty()) {
+			// Fallback hack to show something other than empty string.
+			displayedName = renderItem.getDisplayName();
+		}
+		getNicknameLabel().setText(displayedName);
 		setIcon(renderItem.getIcon());
 		setStatus(renderItem.getStatus());
-		getNicknameLabel().setFont(renderItem.getNicknameLabel().getFont());
-		getNicknameLabel().setForeground(renderItem.getNicknameLabel().getForeground());
-		getDescriptionLabel().setFont(renderItem.getDescriptionLabel().getFont());
-		getDescriptionLabel().setText(renderItem.getDescriptionLabel().getText());
-		getSpecialImageLabel().setIcon(renderItem.getSpecialImageLabel().getIcon());
-		getSideIcon().setIcon(renderItem.getSideIcon().getIcon());
+		final Font nicknameFont = renderItem.getNicknameFont();
+		getNicknameLabel().setFont(nicknameFont != null ? nicknameFont : defaultNicknameFont);
+		final Color nicknameForeground = renderItem.getNicknameForeground();
+		getNicknameLabel().setForeground(nicknameForeground != null ? nicknameForeground : defaultNicknameForeground);
+		getDescriptionLabel().setText(renderItem.getDisplayedDescription());
+		getSpecialImageLabel().setIcon(renderItem.getDisplayedSpecialIcon());
+		getSideIcon().setIcon(renderItem.getDisplayedSideIcon());
 		return this;
 	}
 }
@@ -520,6 +520,7 @@ public class ChatContainer extends SparkTabbedPane implements MessageListener, C
 
         // Clear all Text :)
         room.getTranscriptWindow().cleanup();
+        room.releaseTranscripts();
     }
 
     /**
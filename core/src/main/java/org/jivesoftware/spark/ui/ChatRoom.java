@@ -36,6 +36,8 @@ import org.jivesoftware.spark.util.SwingWorker;
 import org.jivesoftware.spark.util.TaskEngine;
 import org.jivesoftware.spark.util.UIComponentRegistry;
 import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.plugin.transcripts.ChatTranscripts;
+import org.jivesoftware.sparkimpl.plugin.transcripts.TranscriptBuffer;
 import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
 import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.EntityBareJid;
@@ -87,7 +89,7 @@ public abstract class ChatRoom extends BackgroundPanel implements ActionListener
 
     private final List<String> packetIDList;
     private final List<MessageListener> messageListeners;
-    private final List<Message> transcript;
+    private final TranscriptBuffer transcript;
     private final List<FileDropListener> fileDropListeners;
 
     private final MouseAdapter transcriptWindowMouseListener;
@@ -117,7 +119,7 @@ public abstract class ChatRoom extends BackgroundPanel implements ActionListener
         bottomPanel = new JPanel();
 
         messageListeners = new ArrayList<>();
-        transcript = new ArrayList<>();
+        transcript = new TranscriptBuffer(Math.max(1, SettingsManager.getLocalPreferences().getMaxTranscriptBufferSize()), ChatTranscripts::getSpillDirectory);
 
         editorWrapperBar = new JPanel(new BorderLayout());
         editorBarLeft = new JPanel(new FlowLayout(FlowLayout.LEFT, 1, 1));
@@ -727,12 +729,25 @@ public abstract class ChatRoom extends BackgroundPanel implements ActionListener
      * ChatResponses and their order. You should retrieve this map to get any
      * current chat transcript state.
      *
+     * Only the most recent messages are kept in memory. Older messages are
+     * read back from disk when they are accessed, which makes iterating over
+     * the entire list of a long conversation relatively expensive.
+     *
      * @return - the map of current chat responses.
      */
     public List<Message> getTranscripts() {
         return transcript;
     }
 
+    /**
+     * Releases the disk space that is used for messages that are no longer
+     * kept in memory. Only the most recent messages of the transcript remain
+     * available afterwards.
+     */
+    void releaseTranscripts() {
+        transcript.release();
+    }
+
     /**
      * Disables the ChatRoom toolbar.
      */
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import java.awt.*;
+import java.time.ZonedDateTime;
+
+/**
+ * An entry that is displayed as an arbitrary component, such as the progress of a file transfer.
+ *
+ * The same component instance is displayed every time that the entry is added to a chat area.
+ */
+public class ComponentEntry extends TranscriptWindowEntry
+{
+    private final Component component;
+
+    public ComponentEntry( ZonedDateTime timestamp, Component component )
+    {
+        super( timestamp );
+        this.component = component;
+    }
+
+    @Override
+    protected void addTo( TranscriptContent content )
+    {
+        content.appendComponent( component );
+        content.appendText( "\n", null );
+    }
+}
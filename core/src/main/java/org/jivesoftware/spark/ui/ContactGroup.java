@@ -31,25 +31,38 @@ import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.BareJid;
 
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Container representing a RosterGroup within the Contact List.
  */
 public class ContactGroup extends CollapsiblePane implements MouseListener {
     private static final long serialVersionUID = 6578057848913010799L;
+    // Both lists are sorted with itemComparator, so that items can be found and inserted by binary search.
     private final List<ContactItem> contactItems = new ArrayList<>();
     private final List<ContactGroup> contactGroups = new ArrayList<>();
     private final List<ContactGroupListener> listeners = new ArrayList<>();
     private final List<ContactItem> offlineContacts = new ArrayList<>();
 
+    // The items for every JID in contactItems and offlineContacts (in the order in which they were added), to look up
+    // items without scanning the lists.
+    private final Map<BareJid, ContactItem[]> contactItemsByJid = new ConcurrentHashMap<>();
+    private final Map<BareJid, ContactItem[]> offlineContactsByJid = new ConcurrentHashMap<>();
+
+    // The index of the contact list that this group is part of, if any.
+    private RosterIndex rosterIndex;
+
     private final int fontSize;
 
     private String groupName;
-    private final DefaultListModel<ContactItem> model;
+    private final ContactItemListModel model;
+    private DefaultListModel<ContactItem> legacyModel;
     private final JList<? extends ContactItem> contactItemList;
     private boolean sharedGroup;
     private final JPanel listPanel;
@@ -66,8 +79,6 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
 
     private final LocalPreferences preferences;
 
-    private ContactList contactList = Workspace.getInstance().getContactList();
-
     private DisplayWindowTask timerTask = null;
 
     /**
@@ -77,7 +88,7 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      */
     public ContactGroup(String groupName) {
         // Initialize Model and UI
-        model = new DefaultListModel<>();
+        model = new ContactItemListModel();
         contactItemList = new JList<>(model);
 
         preferences = SettingsManager.getLocalPreferences();
@@ -116,8 +127,7 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
             @Override
             public void mouseClicked(MouseEvent e) {
                 if (e.getButton() == MouseEvent.BUTTON1) {
-                    contactList = Workspace.getInstance().getContactList();
-                    contactList.saveState();
+                    Workspace.getInstance().getContactList().saveState();
                 }
             }
 
@@ -154,8 +164,8 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
             }
         });
 
-        noContacts.getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
-        noContacts.getNicknameLabel().setForeground(Color.GRAY);
+        noContacts.setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
+        noContacts.setNicknameForeground(Color.GRAY);
         model.addElement(noContacts);
 
         // Add Popup Window
@@ -174,51 +184,95 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      */
     public void addOfflineContactItem(final String alias, final String nickname, final BareJid jid, final String status) {
         if (EventQueue.isDispatchThread()) {
-            // Build new ContactItem
-            final ContactItem offlineItem = UIComponentRegistry.createContactItem(alias, nickname, jid);
-            offlineItem.setGroupName(getGroupName());
-
-            final Presence offlinePresence = new Presence(Presence.Type.unavailable);
-            offlineItem.setPresence(offlinePresence);
+            final ContactItem offlineItem = createOfflineContactItem(alias, nickname, jid, status);
 
-            // set offline icon
-            offlineItem.setIcon(PresenceManager.getIconFromPresence(offlinePresence));
-
-            // Set status if applicable.
-            if (ModelUtil.hasLength(status)) {
-                offlineItem.setStatusText(status);
-            }
             // Add to offline contacts.
-            offlineContacts.add(offlineItem);
+            offlineContacts.add(insertionPoint(offlineContacts, offlineItem), offlineItem);
+            addToIndex(offlineContactsByJid, offlineItem);
 
             insertOfflineContactItem(offlineItem);
         } else {
             try {
                 // invokeAndWait, because the contacts must be added before they can moved to offline group
-                EventQueue.invokeAndWait(() -> {
-                    // Build new ContactItem
-                    final ContactItem offlineItem = UIComponentRegistry.createContactItem(alias, nickname, jid);
-                    offlineItem.setGroupName(getGroupName());
+                EventQueue.invokeAndWait(() -> addOfflineContactItem(alias, nickname, jid, status));
+            } catch (Exception ex) {
+                Log.error(ex);
+            }
+        }
+    }
 
-                    final Presence offlinePresence = new Presence(Presence.Type.unavailable);
-                    offlineItem.setPresence(offlinePresence);
+    /**
+     * Adds new offline contacts for several contacts at once. The offline contacts are sorted once, and are added to
+     * the ui model with a single event. Must be invoked on the event dispatch thread.
+     *
+     * @param items the contacts to add offline contacts for.
+     */
+    public void addOfflineContactItems(Collection<ContactItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
 
-                    // set offline icon
-                    offlineItem.setIcon(PresenceManager.getIconFromPresence(offlinePresence));
+        final int previousSize = offlineContacts.size();
+        final boolean displayed = isDisplayedAfterContactItems(offlineContacts);
 
-                    // Set status if applicable.
-                    if (ModelUtil.hasLength(status)) {
-                        offlineItem.setStatusText(status);
-                    }
-                    // Add to offline contacts.
-                    offlineContacts.add(offlineItem);
+        final List<ContactItem> offlineItems = new ArrayList<>(items.size());
+        for (ContactItem item : items) {
+            final ContactItem offlineItem = createOfflineContactItem(item.getAlias(), item.getNickname(), item.getJid(), item.getStatus());
+            offlineItems.add(offlineItem);
+            addToIndex(offlineContactsByJid, offlineItem);
+        }
+        offlineContacts.addAll(offlineItems);
+        offlineContacts.sort(itemComparator);
 
-                    insertOfflineContactItem(offlineItem);
-                });
-            } catch (Exception ex) {
-                Log.error(ex);
+        if (preferences.isOfflineGroupVisible()) {
+            return;
+        }
+        if (displayed) {
+            // Replace the displayed offline contacts with all of them, in order.
+            final int start = Math.min(contactItems.size(), model.size());
+            model.removeRange(start, start + previousSize);
+            model.addAll(start, offlineContacts);
+            if (model.contains(noContacts)) {
+                model.removeElement(noContacts);
             }
+        } else {
+            for (ContactItem offlineItem : offlineItems) {
+                insertOfflineContactItem(offlineItem);
+            }
+        }
+    }
+
+    /**
+     * Adds an existing <code>ContactItem</code> to the offline contacts of this group, for instance the item that
+     * represented the contact while it was online. Its presence is expected to be updated already. Must be invoked on
+     * the event dispatch thread.
+     *
+     * @param offlineItem the ContactItem to add.
+     */
+    public void addOfflineContactItem(ContactItem offlineItem) {
+        offlineItem.setGroupName(getGroupName());
+        offlineContacts.add(insertionPoint(offlineContacts, offlineItem), offlineItem);
+        addToIndex(offlineContactsByJid, offlineItem);
+
+        insertOfflineContactItem(offlineItem);
+    }
+
+    private ContactItem createOfflineContactItem(String alias, String nickname, BareJid jid, String status) {
+        // Build new ContactItem
+        final ContactItem offlineItem = UIComponentRegistry.createContactItem(alias, nickname, jid);
+        offlineItem.setGroupName(getGroupName());
+
+        final Presence offlinePresence = new Presence(Presence.Type.unavailable);
+        offlineItem.setPresence(offlinePresence);
+
+        // set offline icon
+        offlineItem.setIcon(PresenceManager.getIconFromPresence(offlinePresence));
+
+        // Set status if applicable.
+        if (ModelUtil.hasLength(status)) {
+            offlineItem.setStatusText(status);
         }
+        return offlineItem;
     }
 
     /**
@@ -232,8 +286,10 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
         }
 
         if (!preferences.isOfflineGroupVisible()) {
-            offlineContacts.sort(itemComparator);
-            int index = offlineContacts.indexOf(offlineItem);
+            int index = positionOf(offlineContacts, offlineContactsByJid, offlineItem);
+            if (index < 0) {
+                index = insertionPoint(offlineContacts, offlineItem);
+            }
 
             int totalListSize = contactItems.size();
             int newPos = totalListSize + index;
@@ -242,7 +298,7 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
                 newPos = model.size();
             }
 
-            model.insertElementAt(offlineItem, newPos);
+            model.add(newPos, offlineItem);
 
             if (model.contains(noContacts)) {
                 model.removeElement(noContacts);
@@ -257,7 +313,11 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @param item the offline contact item to remove.
      */
     public void removeOfflineContactItem(ContactItem item) {
-        offlineContacts.remove(item);
+        final int index = positionOf(offlineContacts, offlineContactsByJid, item);
+        if (index >= 0) {
+            offlineContacts.remove(index);
+        }
+        removeFromIndex(offlineContactsByJid, item);
         //removeContactItem(item);
     }
 
@@ -267,11 +327,9 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @param jid the offline contact item to remove.
      */
     public void removeOfflineContactItem(BareJid jid) {
-        final List<ContactItem> items = new ArrayList<>(offlineContacts);
-        for (ContactItem item : items) {
-            if (item.getJid().equals(jid)) {
-                removeOfflineContactItem(item);
-            }
+        ContactItem item;
+        while ((item = getOfflineContactItemByJID(jid)) != null) {
+            removeOfflineContactItem(item);
         }
     }
 
@@ -281,12 +339,26 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @param show true if offline contacts should be shown, otherwise false.
      */
     public void toggleOfflineVisibility(boolean show) {
-        final List<ContactItem> items = new ArrayList<>(offlineContacts);
-        for (ContactItem item : items) {
-            if (show) {
-                insertOfflineContactItem(item);
+        if (show) {
+            if (!preferences.isOfflineGroupVisible() && isNotDisplayed(offlineContacts)) {
+                model.addAll(Math.min(contactItems.size(), model.size()), offlineContacts);
+                if (model.contains(noContacts)) {
+                    model.removeElement(noContacts);
+                }
             } else {
-                model.removeElement(item);
+                for (ContactItem item : new ArrayList<>(offlineContacts)) {
+                    insertOfflineContactItem(item);
+                }
+            }
+        } else if (isDisplayedAfterContactItems(offlineContacts)) {
+            model.removeRange(contactItems.size(), contactItems.size() + offlineContacts.size());
+        } else {
+            // Remove from the end, so that the positions of the other offline contacts stay predictable.
+            for (int i = offlineContacts.size() - 1; i >= 0; i--) {
+                final int index = modelIndexOf(offlineContacts.get(i));
+                if (index >= 0) {
+                    model.remove(index);
+                }
             }
         }
         if (model.getSize() == 0) {
@@ -313,25 +385,18 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
         }
 
         item.setGroupName(getGroupName());
-        contactItems.add(item);
-
-        List<ContactItem> tempItems = getContactItems();
-
-
-        tempItems.sort(itemComparator);
-
-
-        int index = tempItems.indexOf(item);
-
+        final int index = insertionPoint(contactItems, item);
+        contactItems.add(index, item);
+        addToIndex(contactItemsByJid, item);
 
         Object[] objs = contactItemList.getSelectedValuesList().toArray();
 
-        model.insertElementAt(item, index);
+        model.add(Math.min(index, model.size()), item);
 
         int[] intList = new int[objs.length];
         for (int i = 0; i < objs.length; i++) {
             ContactItem contact = (ContactItem) objs[i];
-            intList[i] = model.indexOf(contact);
+            intList[i] = modelIndexOf(contact);
         }
 
         if (intList.length > 0) {
@@ -341,9 +406,47 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
         fireContactItemAdded(item);
     }
 
+    /**
+     * Adds several <code>ContactItem</code>s to the ContactGroup. The items are sorted once, and are added to the
+     * ui model with a single event, which is much cheaper than adding them one by one.
+     *
+     * @param items the ContactItems.
+     */
+    public void addContactItems(Collection<ContactItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        for (ContactItem item : items) {
+            // Remove from offline group if it exists
+            removeOfflineContactItem(item.getJid());
+
+            if (isOfflineGroup()) {
+                setOfflineGroupNameFont(item);
+            }
+            item.setGroupName(getGroupName());
+            addToIndex(contactItemsByJid, item);
+        }
+
+        if (model.contains(noContacts)) {
+            model.remove(0);
+        }
+
+        final int previousSize = contactItems.size();
+        contactItems.addAll(items);
+        contactItems.sort(itemComparator);
+
+        model.removeRange(0, Math.min(previousSize, model.size()));
+        model.addAll(0, contactItems);
+
+        for (ContactItem item : items) {
+            fireContactItemAdded(item);
+        }
+    }
+
     protected void setOfflineGroupNameFont(ContactItem item) {
-        item.getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, item.getFontSize()));
-        item.getNicknameLabel().setForeground(Color.GRAY);
+        item.setNicknameFont(new Font("Dialog", Font.PLAIN, item.getFontSize()));
+        item.setNicknameForeground(Color.GRAY);
     }
 
     /**
@@ -428,12 +531,19 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @param item the ContactItem to remove.
      */
     public void removeContactItem(ContactItem item) {
-        contactItems.remove(item);
+        final int modelIndex = modelIndexOf(item);
+        final int index = positionOf(contactItems, contactItemsByJid, item);
+        if (index >= 0) {
+            contactItems.remove(index);
+        }
+        removeFromIndex(contactItemsByJid, item);
         if (contactItems.isEmpty()) {
             removeContactGroup(this);
         }
 
-        model.removeElement(item);
+        if (modelIndex >= 0) {
+            model.remove(modelIndex);
+        }
         updateTitle();
 
         fireContactItemRemoved(item);
@@ -494,12 +604,7 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @return the ContactItem.
      */
     public ContactItem getContactItemByJID(BareJid bareJID) {
-        for (ContactItem item : new ArrayList<>(contactItems)) {
-            if (item != null && item.getJid().equals(bareJID)) {
-                return item;
-            }
-        }
-        return null;
+        return firstOf(contactItemsByJid, bareJID);
     }
 
     /**
@@ -509,12 +614,7 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
      * @return the ContactItem.
      */
     public ContactItem getOfflineContactItemByJID(BareJid bareJID) {
-        for (ContactItem item : new ArrayList<>(offlineContacts)) {
-            if (item.getJid().equals(bareJID)) {
-                return item;
-            }
-        }
-        return null;
+        return firstOf(offlineContactsByJid, bareJID);
     }
 
     /**
@@ -535,6 +635,214 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
         return getContactItemByJID(bareJID);
     }
 
+    /**
+     * Makes this group report the JIDs that it holds items for to the index of a contact list.
+     *
+     * @param rosterIndex the index of the contact list that this group is now part of, or null if it no longer is.
+     */
+    void setRosterIndex(RosterIndex rosterIndex) {
+        if (this.rosterIndex == rosterIndex) {
+            return;
+        }
+        if (this.rosterIndex != null) {
+            contactItemsByJid.keySet().forEach(jid -> this.rosterIndex.remove(jid, this));
+            offlineContactsByJid.keySet().forEach(jid -> this.rosterIndex.remove(jid, this));
+        }
+        this.rosterIndex = rosterIndex;
+        if (rosterIndex != null) {
+            contactItemsByJid.keySet().forEach(jid -> rosterIndex.add(jid, this));
+            offlineContactsByJid.keySet().forEach(jid -> rosterIndex.add(jid, this));
+        }
+    }
+
+    private static ContactItem firstOf(Map<BareJid, ContactItem[]> index, BareJid jid) {
+        final ContactItem[] items = jid == null ? null : index.get(jid);
+        return items == null ? null : items[0];
+    }
+
+    private void addToIndex(Map<BareJid, ContactItem[]> index, ContactItem item) {
+        final BareJid jid = item.getJid();
+        if (jid == null) {
+            return;
+        }
+        index.compute(jid, (key, items) -> {
+            if (items == null) {
+                return new ContactItem[] { item };
+            }
+            final ContactItem[] result = Arrays.copyOf(items, items.length + 1);
+            result[items.length] = item;
+            return result;
+        });
+        if (rosterIndex != null) {
+            rosterIndex.add(jid, this);
+        }
+    }
+
+    private void removeFromIndex(Map<BareJid, ContactItem[]> index, ContactItem item) {
+        final BareJid jid = item == null ? null : item.getJid();
+        if (jid == null) {
+            return;
+        }
+        index.computeIfPresent(jid, (key, items) -> {
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] == item) {
+                    if (items.length == 1) {
+                        return null;
+                    }
+                    final ContactItem[] result = new ContactItem[items.length - 1];
+                    System.arraycopy(items, 0, result, 0, i);
+                    System.arraycopy(items, i + 1, result, i, items.length - i - 1);
+                    return result;
+                }
+            }
+            return items;
+        });
+        if (rosterIndex != null && !contactItemsByJid.containsKey(jid) && !offlineContactsByJid.containsKey(jid)) {
+            rosterIndex.remove(jid, this);
+        }
+    }
+
+    /**
+     * Moves an item to its position in this group, after its display name changed. Must be invoked on the event
+     * dispatch thread.
+     *
+     * @param item the ContactItem that was renamed.
+     */
+    public void contactItemRenamed(ContactItem item) {
+        if (!reposition(contactItems, contactItemsByJid, item, 0)) {
+            reposition(offlineContacts, offlineContactsByJid, item, contactItems.size());
+        }
+    }
+
+    /**
+     * Moves an item to its position in a sorted list, and in the ui model, if its display name changed.
+     *
+     * @return false if the item is not in the list.
+     */
+    private boolean reposition(List<ContactItem> items, Map<BareJid, ContactItem[]> index, ContactItem item, int offset) {
+        final int from = positionOf(items, index, item);
+        if (from < 0) {
+            return false;
+        }
+        if ((from == 0 || itemComparator.compare(items.get(from - 1), item) <= 0)
+            && (from == items.size() - 1 || itemComparator.compare(item, items.get(from + 1)) <= 0)) {
+            return true;
+        }
+
+        final int modelIndex = modelIndexOf(item);
+        items.remove(from);
+        final int to = insertionPoint(items, item);
+        items.add(to, item);
+
+        if (modelIndex >= 0) {
+            final boolean selected = contactItemList.isSelectedIndex(modelIndex);
+            model.remove(modelIndex);
+            final int newIndex = Math.min(offset + to, model.size());
+            model.add(newIndex, item);
+            if (selected) {
+                contactItemList.addSelectionInterval(newIndex, newIndex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position at which an item is to be inserted in a sorted list: after all items that sort the same,
+     * like a stable sort would put it.
+     */
+    private int insertionPoint(List<ContactItem> items, ContactItem item) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (itemComparator.compare(items.get(middle), item) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the position of an item in a sorted list, or -1 if the item is not in the list.
+     */
+    private int positionOf(List<ContactItem> items, Map<BareJid, ContactItem[]> index, ContactItem item) {
+        if (item == null) {
+            return -1;
+        }
+        if (item.getJid() == null) {
+            return items.indexOf(item);
+        }
+        final ContactItem[] indexed = index.get(item.getJid());
+        if (indexed == null || !Arrays.asList(indexed).contains(item)) {
+            return -1;
+        }
+
+        final int found = Collections.binarySearch(items, item, itemComparator);
+        if (found >= 0) {
+            for (int i = found; i >= 0 && itemComparator.compare(items.get(i), item) == 0; i--) {
+                if (items.get(i) == item) {
+                    return i;
+                }
+            }
+            for (int i = found + 1; i < items.size() && itemComparator.compare(items.get(i), item) == 0; i++) {
+                if (items.get(i) == item) {
+                    return i;
+                }
+            }
+        }
+
+        // The display name of the item may have changed after it was inserted.
+        return items.indexOf(item);
+    }
+
+    /**
+     * Returns the position of an item in the ui model, which lists the contact items, followed by the offline
+     * contacts, or -1 if the item is not in the model.
+     */
+    private int modelIndexOf(ContactItem item) {
+        int index = positionOf(contactItems, contactItemsByJid, item);
+        if (index < 0) {
+            index = positionOf(offlineContacts, offlineContactsByJid, item);
+            if (index >= 0) {
+                index += contactItems.size();
+            }
+        }
+        if (index >= 0 && index < model.size() && model.getElementAt(index) == item) {
+            return index;
+        }
+        return model.indexOf(item);
+    }
+
+    /**
+     * Checks if the ui model lists exactly these items right after the contact items.
+     */
+    private boolean isDisplayedAfterContactItems(List<ContactItem> items) {
+        final int start = contactItems.size();
+        if (start + items.size() > model.size()) {
+            return false;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (model.getElementAt(start + i) != items.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the ui model lists none of these items.
+     */
+    private boolean isNotDisplayed(List<ContactItem> items) {
+        for (ContactItem item : items) {
+            if (model.contains(item)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns all <code>ContactItem</cod>s in the ContactGroup.
      *
@@ -1068,10 +1376,49 @@ public class ContactGroup extends CollapsiblePane implements MouseListener {
         return (item == null || contact == null || contact.getContactItem() == null) || !contact.getContactItem().getJid().equals(item.getJid());
     }
 
-    protected DefaultListModel<ContactItem> getModel() {
+    protected ContactItemListModel getContactItemModel() {
         return model;
     }
 
+    /**
+     * Returns a copy of the items that this group displays, in display order, that is kept up to date with the group.
+     * Changes to the copy are not displayed.
+     *
+     * @return the displayed items.
+     * @deprecated use {@link #getContactItemModel()}.
+     */
+    @Deprecated
+    protected DefaultListModel<ContactItem> getModel() {
+        if (legacyModel == null) {
+            final DefaultListModel<ContactItem> copy = new DefaultListModel<>();
+            for (int i = 0; i < model.getSize(); i++) {
+                copy.addElement(model.getElementAt(i));
+            }
+            model.addListDataListener(new ListDataListener() {
+                @Override
+                public void intervalAdded(ListDataEvent e) {
+                    for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                        copy.add(i, model.getElementAt(i));
+                    }
+                }
+
+                @Override
+                public void intervalRemoved(ListDataEvent e) {
+                    copy.removeRange(e.getIndex0(), e.getIndex1());
+                }
+
+                @Override
+                public void contentsChanged(ListDataEvent e) {
+                    for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                        copy.set(i, model.getElementAt(i));
+                    }
+                }
+            });
+            legacyModel = copy;
+        }
+        return legacyModel;
+    }
+
     protected JList<? extends ContactItem> getContactItemList() {
         return contactItemList;
     }
@@ -28,9 +28,9 @@ import org.jivesoftware.spark.util.SwingWorker;
 import org.jivesoftware.spark.util.UIComponentRegistry;
 import org.jivesoftware.spark.util.log.Log;
 
-import javax.swing.DefaultListModel;
 import javax.swing.JComponent;
 import javax.swing.JList;
+import javax.swing.ListModel;
 import javax.swing.TransferHandler;
 
 import java.awt.datatransfer.DataFlavor;
@@ -102,7 +102,7 @@ public class ContactGroupTransferHandler extends TransferHandler {
             if (t.isDataFlavorSupported(flavors[0])) {
                 try {
                     ContactItem item = (ContactItem)t.getTransferData(flavors[0]);
-                    DefaultListModel<?> model = (DefaultListModel<?>) list.getModel();
+                    ListModel<?> model = list.getModel();
                     int size = model.getSize();
                     for (int i = 0; i < size; i++) {
                         ContactItem it = (ContactItem) model.getElementAt(i);
@@ -211,7 +211,7 @@ public class ContactGroupTransferHandler extends TransferHandler {
         ContactItem newContact = UIComponentRegistry.createContactItem(Res.getString("group.empty"), null, null);
         newContact.setPresence(item.getPresence());
         newContact.setIcon(item.getIcon());
-        newContact.getNicknameLabel().setFont(item.getNicknameLabel().getFont());
+        newContact.setNicknameFont(item.getNicknameFont());
 
         if (!PresenceManager.isOnline(item.getJid().asBareJid())) {
             contactGroup.addOfflineContactItem(item.getAlias(), item.getNickname(), item.getJid(), null);
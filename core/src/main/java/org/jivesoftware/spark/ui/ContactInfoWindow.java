@@ -19,11 +19,12 @@ package org.jivesoftware.spark.ui;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 
+import java.io.File;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import javax.swing.BorderFactory;
-import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
@@ -36,11 +37,12 @@ import org.jivesoftware.smackx.vcardtemp.packet.VCard;
 import org.jivesoftware.smackx.iqlast.packet.LastActivity;
 import org.jivesoftware.smackx.iqlast.LastActivityManager;
 import org.jivesoftware.spark.SparkManager;
-import org.jivesoftware.spark.util.GraphicUtils;
+import org.jivesoftware.spark.util.AvatarCache;
 import org.jivesoftware.spark.util.ModelUtil;
 import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.plugin.gateways.transports.Transport;
 import org.jivesoftware.sparkimpl.plugin.gateways.transports.TransportUtils;
+import org.jivesoftware.sparkimpl.profile.VCardFetchScheduler;
 import org.jxmpp.jid.Jid;
 
 import java.text.SimpleDateFormat;
@@ -281,29 +283,29 @@ public class ContactInfoWindow extends JPanel {
 
         try {
             URL avatarURL = contactItem.getAvatarURL();
-            ImageIcon icon = null;
+            avatarLabel.setIcon(SparkRes.getImageIcon(SparkRes.DEFAULT_AVATAR_64x64_IMAGE));
             if (avatarURL != null) {
-                icon = new ImageIcon(avatarURL);
-            }
-
-            if (icon != null && icon.getIconHeight() > 1) {
-                icon = GraphicUtils.scaleImageIcon(icon, 96, 96);
-                avatarLabel.setIcon(icon);
-            }
-            else {
-                icon = SparkRes.getImageIcon(SparkRes.DEFAULT_AVATAR_64x64_IMAGE);
-                avatarLabel.setIcon(icon);
+                final File avatarFile = new File(avatarURL.toURI());
+                if (avatarFile.exists()) {
+                    final ContactItem shownItem = contactItem;
+                    AvatarCache.getInstance().load(avatarFile.getName(), avatarFile, AvatarCache.TOOLTIP_SIZE, icon -> {
+                        // Ignore an avatar that arrives after another contact is shown.
+                        if (shownItem == contactItem && icon.getIconHeight() > 1) {
+                            avatarLabel.setIcon(icon);
+                        }
+                    });
+                }
             }
             avatarLabel.setBorder(BorderFactory.createLineBorder(Color.lightGray, 1, true));
         }
-        catch (MalformedURLException e) {
+        catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
             Log.error(e);
         }
 
         // Get VCard from memory (if available)
         String title = "";
         String phone = "";
-        VCard vcard = SparkManager.getVCardManager().getVCardFromMemory(contactItem.getJid().asBareJid());
+        VCard vcard = SparkManager.getVCardManager().getVCardFromMemory(contactItem.getJid().asBareJid(), VCardFetchScheduler.Lane.IMMEDIATE);
         if (vcard != null) {
             title = vcard.getField("TITLE");
             phone = vcard.getPhoneWork("VOICE");
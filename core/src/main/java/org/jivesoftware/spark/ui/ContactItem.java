@@ -23,10 +23,10 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.io.File;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 
 import javax.swing.Icon;
-import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.UIManager;
@@ -40,7 +40,7 @@ import org.jivesoftware.smack.roster.packet.RosterPacket;
 import org.jivesoftware.spark.ChatManager;
 import org.jivesoftware.spark.PresenceManager;
 import org.jivesoftware.spark.SparkManager;
-import org.jivesoftware.spark.util.GraphicUtils;
+import org.jivesoftware.spark.util.AvatarCache;
 import org.jivesoftware.spark.util.ModelUtil;
 import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.plugin.layout.LayoutSettings;
@@ -57,11 +57,19 @@ import org.jxmpp.util.XmppStringUtils;
 public class ContactItem extends JPanel {
 
 	private static final long serialVersionUID = 1514044406550293152L;
-	private final JLabel imageLabel;
-    private final JLabel displayNameLabel;
-    private final JLabel descriptionLabel;
-    private final JLabel specialImageLabel;
-    private final JLabel sideIcon;
+	private JLabel imageLabel;
+    private JLabel displayNameLabel;
+    private JLabel descriptionLabel;
+    private JLabel specialImageLabel;
+    private JLabel sideIcon;
+
+    // What the labels show, for a lightweight item that does not have its labels (yet).
+    private String displayedName = "";
+    private Font nicknameFont;
+    private Color nicknameForeground;
+    private String displayedDescription = "";
+    private Icon displayedSpecialIcon;
+    private Icon displayedSideIcon;
 
     private String nickname;
     private String alias;
@@ -72,11 +80,13 @@ public class ContactItem extends JPanel {
     private boolean available;
     private Presence presence;
     private String hash = "";
-    private final File contactsDir;
     private final int fontSize;
     private final int iconSize;
     private final boolean avatarsShowing;
 
+    // The file of the avatar that is shown, or is being loaded. Avatar files are named after the hash of their content.
+    private File avatarFile;
+
 	public ContactItem(String alias, String nickname, BareJid fullyQualifiedJID) {
 		this(alias, nickname, fullyQualifiedJID, true);
     }
@@ -84,13 +94,16 @@ public class ContactItem extends JPanel {
     /**
      * Creates a new instance of a contact.
      *
+     * A lightweight contact (<code>initUi</code> false) has no child components: it holds what is to be displayed as
+     * plain data, which a cell renderer such as {@link org.jivesoftware.spark.component.renderer.JContactItemRenderer}
+     * stamps. Its labels are only created when they are asked for, and are not laid out.
+     *
      * @param alias             the alias of the contact
      * @param nickname          the nickname of the contact.
      * @param jid               the fully-qualified jid of the contact (ex. derek@jivesoftware.com)
+     * @param initUi            true to build the child components of the contact, false for a lightweight contact.
      */
     public ContactItem(String alias, String nickname, BareJid jid, boolean initUi) {
-        setLayout(new GridBagLayout());
-
         // Set Default Font
         final LocalPreferences pref = SettingsManager.getLocalPreferences();
         fontSize = pref.getContactListFontSize();
@@ -100,32 +113,13 @@ public class ContactItem extends JPanel {
         // Set default presence
         presence = new Presence(Presence.Type.unavailable);
 
-        contactsDir = new File(SparkManager.getUserDirectory(), "contacts");
-
         this.alias = alias;
         this.nickname = nickname;
         this.jid = jid;
 
         if (initUi) {
-            displayNameLabel = new JLabel();
-            descriptionLabel = new JLabel();
-            imageLabel = new JLabel();
-            specialImageLabel = new JLabel();
-            sideIcon = new JLabel();
-            if (avatarsShowing) {
-                sideIcon.setMinimumSize(new Dimension(iconSize, iconSize));
-                sideIcon.setMaximumSize(new Dimension(iconSize, iconSize));
-                sideIcon.setPreferredSize(new Dimension(iconSize, iconSize));
-            }
-
-            displayNameLabel.setHorizontalTextPosition(JLabel.LEFT);
-            displayNameLabel.setHorizontalAlignment(JLabel.LEFT);
-            //displayNameLabel.setText(nickname);
-
-            descriptionLabel.setFont(new Font("Dialog", Font.PLAIN, fontSize));
-            descriptionLabel.setForeground((Color) UIManager.get("ContactItemDescription.foreground"));
-            descriptionLabel.setHorizontalTextPosition(JLabel.LEFT);
-            descriptionLabel.setHorizontalAlignment(JLabel.LEFT);
+            setLayout(new GridBagLayout());
+            createLabels();
 
             this.setOpaque(true);
 
@@ -135,14 +129,46 @@ public class ContactItem extends JPanel {
             add(specialImageLabel, new GridBagConstraints(3, 0, 1, 2, 0.0, 0.0, GridBagConstraints.WEST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 0), 0, 0));
             add(sideIcon, new GridBagConstraints(4, 0, 1, 2, 0.0, 0.0, GridBagConstraints.WEST, GridBagConstraints.HORIZONTAL, new Insets(0, 5, 0, 0), 0, 0));
 
-            setDisplayName();
         }
-        else {
-            imageLabel = null;
-            displayNameLabel = null;
-            descriptionLabel = null;
-            specialImageLabel = null;
-            sideIcon = null;
+        setDisplayName();
+    }
+
+    /**
+     * Creates the labels, showing what this contact holds already.
+     */
+    private void createLabels() {
+        displayNameLabel = new JLabel(displayedName);
+        descriptionLabel = new JLabel(displayedDescription);
+        imageLabel = new JLabel(icon);
+        specialImageLabel = new JLabel(displayedSpecialIcon);
+        sideIcon = new JLabel(displayedSideIcon);
+        if (avatarsShowing) {
+            sideIcon.setMinimumSize(new Dimension(iconSize, iconSize));
+            sideIcon.setMaximumSize(new Dimension(iconSize, iconSize));
+            sideIcon.setPreferredSize(new Dimension(iconSize, iconSize));
+        }
+
+        displayNameLabel.setHorizontalTextPosition(JLabel.LEFT);
+        displayNameLabel.setHorizontalAlignment(JLabel.LEFT);
+        if (nicknameFont != null) {
+            displayNameLabel.setFont(nicknameFont);
+        }
+        if (nicknameForeground != null) {
+            displayNameLabel.setForeground(nicknameForeground);
+        }
+
+        descriptionLabel.setFont(new Font("Dialog", Font.PLAIN, fontSize));
+        descriptionLabel.setForeground((Color) UIManager.get("ContactItemDescription.foreground"));
+        descriptionLabel.setHorizontalTextPosition(JLabel.LEFT);
+        descriptionLabel.setHorizontalAlignment(JLabel.LEFT);
+    }
+
+    /**
+     * Creates the labels of a lightweight contact, for code that asks for them. They are not laid out.
+     */
+    private void ensureLabels() {
+        if (displayNameLabel == null) {
+            createLabels();
         }
     }
 
@@ -229,11 +255,26 @@ public class ContactItem extends JPanel {
         LayoutSettings settings = LayoutSettingsManager.getLayoutSettings();
         int windowWidth = settings.getMainWindowBounds() != null ? settings.getMainWindowBounds().width : 50;
 
+        final String text;
         if (nickLength > windowWidth) { // FIXME comparing pixel-width with character count - that can't be good.
-            displayNameLabel.setText(XmppStringUtils.unescapeLocalpart(displayName).substring(0, windowWidth) + "...");
+            text = XmppStringUtils.unescapeLocalpart(displayName).substring(0, windowWidth) + "...";
         } else {
-            displayNameLabel.setText(XmppStringUtils.unescapeLocalpart(displayName));
+            text = XmppStringUtils.unescapeLocalpart(displayName);
         }
+        if (displayNameLabel != null) {
+            displayNameLabel.setText(text);
+        } else {
+            displayedName = text;
+        }
+    }
+
+    /**
+     * Returns the name as it is displayed, which may be shortened.
+     *
+     * @return the displayed name.
+     */
+    public String getDisplayedName() {
+        return displayNameLabel != null ? displayNameLabel.getText() : displayedName;
     }
 
     /**
@@ -261,7 +302,9 @@ public class ContactItem extends JPanel {
      */
     public void setIcon(Icon icon) {
         this.icon = icon;
-        imageLabel.setIcon(icon);
+        if (imageLabel != null) {
+            imageLabel.setIcon(icon);
+        }
     }
 
     /**
@@ -314,18 +357,73 @@ public class ContactItem extends JPanel {
      * @return the nickname label.
      */
     public JLabel getNicknameLabel() {
+        ensureLabels();
         return displayNameLabel;
     }
 
+    /**
+     * Returns the font of the nickname.
+     *
+     * @return the font, or null if the default font is used.
+     */
+    public Font getNicknameFont() {
+        return displayNameLabel != null ? displayNameLabel.getFont() : nicknameFont;
+    }
+
+    /**
+     * Sets the font of the nickname.
+     *
+     * @param font the font.
+     */
+    public void setNicknameFont(Font font) {
+        if (displayNameLabel != null) {
+            displayNameLabel.setFont(font);
+        } else {
+            nicknameFont = font;
+        }
+    }
+
+    /**
+     * Returns the color of the nickname.
+     *
+     * @return the color, or null if the default color is used.
+     */
+    public Color getNicknameForeground() {
+        return displayNameLabel != null ? displayNameLabel.getForeground() : nicknameForeground;
+    }
+
+    /**
+     * Sets the color of the nickname.
+     *
+     * @param color the color.
+     */
+    public void setNicknameForeground(Color color) {
+        if (displayNameLabel != null) {
+            displayNameLabel.setForeground(color);
+        } else {
+            nicknameForeground = color;
+        }
+    }
+
     /**
      * Returns the <code>JLabel</code> representing the description.
      *
      * @return the description label.
      */
     public JLabel getDescriptionLabel() {
+        ensureLabels();
         return descriptionLabel;
     }
 
+    /**
+     * Returns the description as it is displayed next to the name.
+     *
+     * @return the displayed description.
+     */
+    public String getDisplayedDescription() {
+        return descriptionLabel != null ? descriptionLabel.getText() : displayedDescription;
+    }
+
     /**
      * Returns the current presence of the contact.
      *
@@ -352,7 +450,7 @@ public class ContactItem extends JPanel {
             if (hash != null) {
                 this.hash = hash;
 
-                if (!hashExists(hash)) {
+                if (!SparkManager.getVCardManager().isPhotoHashCurrent(getJid(), hash)) {
                     updateAvatar();
                     updateAvatarInSideIcon();
                 }
@@ -363,19 +461,6 @@ public class ContactItem extends JPanel {
         updatePresenceIcon(presence);
     }
 
-    /**
-     * Checks to see if the hash already exists.
-     *
-     * @param hash the hash.
-     * @return true if the hash exists, otherwise false.
-     */
-    private boolean hashExists(String hash) {
-        contactsDir.mkdirs();
-
-        final File imageFile = new File(contactsDir, hash);
-        return imageFile.exists();
-    }
-
     /**
      * Returns the url of the avatar belonging to this contact.
      *
@@ -383,6 +468,8 @@ public class ContactItem extends JPanel {
      * @throws MalformedURLException thrown if the address is invalid.
      */
     public URL getAvatarURL() throws MalformedURLException {
+        // Resolved here rather than when the item is created, which does not require a session.
+        final File contactsDir = new File(SparkManager.getUserDirectory(), "contacts");
         contactsDir.mkdirs();
 
         if (ModelUtil.hasLength(hash)) {
@@ -408,7 +495,7 @@ public class ContactItem extends JPanel {
 
     @Override
 	public String toString() {
-        return displayNameLabel.getText();
+        return getDisplayedName();
     }
 
 
@@ -457,22 +544,22 @@ public class ContactItem extends JPanel {
             isAvailable = true;
         }
         else if (!presence.isAvailable()) {
-            getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
-            getNicknameLabel().setForeground((Color)UIManager.get("ContactItemOffline.color"));
+            setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
+            setNicknameForeground((Color)UIManager.get("ContactItemOffline.color"));
 
             RosterEntry entry = Roster.getInstanceFor( SparkManager.getConnection() ).getEntry(getJid());
             if (entry != null && (entry.getType() == RosterPacket.ItemType.none || entry.getType() == RosterPacket.ItemType.from)
                     && entry.isSubscriptionPending()) {
                 // Do not move out of group.
                 setIcon(SparkRes.getImageIcon(SparkRes.SMALL_QUESTION));
-                getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
+                setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
                 setStatusText(Res.getString("status.pending"));
             }
             else {
             	//We should keep the offline bullet (not available) instead of putting icon null.
             	setIcon(SparkRes.getImageIcon(SparkRes.CLEAR_BALL_ICON));
                 setFont(new Font("Dialog", Font.PLAIN, fontSize));
-                getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
+                setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
                 setAvailable(false);
                 if (ModelUtil.hasLength(status)) {
                     setStatusText(status);
@@ -482,7 +569,7 @@ public class ContactItem extends JPanel {
                 }
             }
 
-            sideIcon.setIcon(null);
+            setSideIcon(null);
             setAvailable(false);
             return;
         }
@@ -504,11 +591,11 @@ public class ContactItem extends JPanel {
         }
 
         // Always change nickname label to black.
-        getNicknameLabel().setForeground((Color)UIManager.get("ContactItemNickname.foreground"));
+        setNicknameForeground((Color)UIManager.get("ContactItemNickname.foreground"));
 
 
         if (isAvailable) {
-            getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
+            setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
             if (Res.getString("status.online").equals(status) || Res.getString("available").equalsIgnoreCase(status)) {
                 setStatusText("");
             }
@@ -520,13 +607,13 @@ public class ContactItem extends JPanel {
        	  	LocalPreferences pref = SettingsManager.getLocalPreferences();
        	  	if(pref.isGrayingOutEnabled())
        	  	{
-       	  		getNicknameLabel().setFont(new Font("Dialog", Font.ITALIC, fontSize));
-                getNicknameLabel().setForeground(Color.gray);	
+       	  		setNicknameFont(new Font("Dialog", Font.ITALIC, fontSize));
+                setNicknameForeground(Color.gray);	
        	  	}
        	  	else
        	  	{
-       	  		getNicknameLabel().setFont(new Font("Dialog", Font.PLAIN, fontSize));
-                getNicknameLabel().setForeground(Color.black);
+       	  		setNicknameFont(new Font("Dialog", Font.PLAIN, fontSize));
+                setNicknameForeground(Color.black);
        	  	}
             if (status != null) {
                 setStatusText(status);
@@ -544,11 +631,12 @@ public class ContactItem extends JPanel {
     public void setStatusText(String status) {
         setStatus(status);
 
-        if (ModelUtil.hasLength(status)) {
-            getDescriptionLabel().setText(" - " + status);
+        final String description = ModelUtil.hasLength(status) ? " - " + status : "";
+        if (descriptionLabel != null) {
+            descriptionLabel.setText(description);
         }
         else {
-            getDescriptionLabel().setText("");
+            displayedDescription = description;
         }
     }
 
@@ -559,7 +647,21 @@ public class ContactItem extends JPanel {
      * @param icon the icon to use.
      */
     public void setSideIcon(Icon icon) {
-        sideIcon.setIcon(icon);
+        if (sideIcon != null) {
+            sideIcon.setIcon(icon);
+        }
+        else {
+            displayedSideIcon = icon;
+        }
+    }
+
+    /**
+     * Returns the icon that is displayed at the side of the contact, normally its avatar.
+     *
+     * @return the icon, or null.
+     */
+    public Icon getDisplayedSideIcon() {
+        return sideIcon != null ? sideIcon.getIcon() : displayedSideIcon;
     }
 
 
@@ -571,7 +673,21 @@ public class ContactItem extends JPanel {
      */
     public void setSpecialIcon(Icon icon)
     {
-        specialImageLabel.setIcon(icon);
+        if (specialImageLabel != null) {
+            specialImageLabel.setIcon(icon);
+        }
+        else {
+            displayedSpecialIcon = icon;
+        }
+    }
+
+    /**
+     * Returns the icon that shows extra information about this contact.
+     *
+     * @return the icon, or null.
+     */
+    public Icon getDisplayedSpecialIcon() {
+        return specialImageLabel != null ? specialImageLabel.getIcon() : displayedSpecialIcon;
     }
 
     /**
@@ -579,8 +695,8 @@ public class ContactItem extends JPanel {
      */
     public void showUserComingOnline() {
         // Change Font
-        getNicknameLabel().setFont(new Font("Dialog", Font.BOLD, fontSize));
-        getNicknameLabel().setForeground(new Color(255, 128, 0));
+        setNicknameFont(new Font("Dialog", Font.BOLD, fontSize));
+        setNicknameForeground(new Color(255, 128, 0));
     }
 
     /**
@@ -588,8 +704,8 @@ public class ContactItem extends JPanel {
      */
     public void showUserGoingOfflineOnline() {
         // Change Font
-        getNicknameLabel().setFont(new Font("Dialog", Font.BOLD, fontSize));
-        getNicknameLabel().setForeground(Color.red);
+        setNicknameFont(new Font("Dialog", Font.BOLD, fontSize));
+        setNicknameForeground(Color.red);
     }
 
     /**
@@ -602,25 +718,37 @@ public class ContactItem extends JPanel {
 				if (!avatarsShowing) {
 					setSideIcon(null);
 				} else {
-					ImageIcon icon = new ImageIcon(url);
-					icon = GraphicUtils.scale(icon, iconSize, iconSize);
-					setSideIcon(icon);
+					final File file = new File(url.toURI());
+					if (!file.exists()) {
+						return;
+					}
+					avatarFile = file;
+					AvatarCache.getInstance().load(file.getName(), file, iconSize, icon -> {
+						// Ignore an avatar that was replaced while it was being loaded.
+						if (file.equals(avatarFile)) {
+							setSideIcon(icon);
+							SparkManager.getContactList().repaint();
+						}
+					});
 				}
 			}
-		} catch (MalformedURLException e) {
+		} catch (MalformedURLException | URISyntaxException | IllegalArgumentException e) {
 			Log.error(e);
 		}
 	}
 
     protected JLabel getDisplayNameLabel() {
+        ensureLabels();
         return displayNameLabel;
     }
 
     public JLabel getSpecialImageLabel() {
+        ensureLabels();
         return specialImageLabel;
     }
 
 	public JLabel getSideIcon() {
+		ensureLabels();
 		return sideIcon;
 	}
 }
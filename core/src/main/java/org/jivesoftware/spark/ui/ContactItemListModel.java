@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The items that a {@link ContactGroup} displays, in display order.
+ *
+ * Unlike {@link javax.swing.DefaultListModel}, this model checks whether it contains an item in constant time, and adds
+ * or removes a contiguous range of items with a single event. Items are compared by identity. The model does not order
+ * its items itself: the group determines where an item goes.
+ *
+ * This class is not thread-safe: it is intended to be used on the event dispatch thread.
+ */
+public class ContactItemListModel extends AbstractListModel<ContactItem>
+{
+    private static final long serialVersionUID = 1L;
+
+    private final List<ContactItem> items = new ArrayList<>();
+
+    // How many times each item occurs in the list (which normally is once).
+    private final Map<ContactItem, Integer> occurrences = new IdentityHashMap<>();
+
+    @Override
+    public int getSize()
+    {
+        return items.size();
+    }
+
+    @Override
+    public ContactItem getElementAt( int index )
+    {
+        return items.get( index );
+    }
+
+    /**
+     * Returns the number of items in this model.
+     *
+     * @return the number of items.
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Checks if an item is in this model.
+     *
+     * @param item the item.
+     * @return true if the item is in this model.
+     */
+    public boolean contains( Object item )
+    {
+        return occurrences.containsKey( item );
+    }
+
+    /**
+     * Returns the position of the first occurrence of an item. This scans the model: when the position of an item can
+     * be predicted, verify the prediction with {@link #getElementAt(int)} instead.
+     *
+     * @param item the item.
+     * @return the index of the item, or -1 if it is not in this model.
+     */
+    public int indexOf( Object item )
+    {
+        if ( !contains( item ) )
+        {
+            return -1;
+        }
+        for ( int i = 0; i < items.size(); i++ )
+        {
+            if ( items.get( i ) == item )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds an item at the end of this model.
+     *
+     * @param item the item.
+     */
+    public void addElement( ContactItem item )
+    {
+        add( items.size(), item );
+    }
+
+    /**
+     * Inserts an item.
+     *
+     * @param index the position of the item.
+     * @param item  the item.
+     */
+    public void add( int index, ContactItem item )
+    {
+        items.add( index, item );
+        occurrences.merge( item, 1, Integer::sum );
+        fireIntervalAdded( this, index, index );
+    }
+
+    /**
+     * Inserts several items, which are announced as one interval.
+     *
+     * @param index    the position of the first item.
+     * @param elements the items, in display order.
+     */
+    public void addAll( int index, Collection<? extends ContactItem> elements )
+    {
+        if ( elements.isEmpty() )
+        {
+            return;
+        }
+        items.addAll( index, elements );
+        for ( final ContactItem item : elements )
+        {
+            occurrences.merge( item, 1, Integer::sum );
+        }
+        fireIntervalAdded( this, index, index + elements.size() - 1 );
+    }
+
+    /**
+     * Removes the item at a position.
+     *
+     * @param index the position of the item.
+     * @return the removed item.
+     */
+    public ContactItem remove( int index )
+    {
+        final ContactItem item = items.remove( index );
+        occurrences.computeIfPresent( item, ( key, count ) -> count == 1 ? null : count - 1 );
+        fireIntervalRemoved( this, index, index );
+        return item;
+    }
+
+    /**
+     * Removes the first occurrence of an item.
+     *
+     * @param item the item.
+     * @return true if the item was removed, false if it was not in this model.
+     */
+    public boolean removeElement( Object item )
+    {
+        final int index = indexOf( item );
+        if ( index < 0 )
+        {
+            return false;
+        }
+        remove( index );
+        return true;
+    }
+
+    /**
+     * Removes a range of items, which is announced as one interval.
+     *
+     * @param fromIndex the position of the first item to remove (inclusive).
+     * @param toIndex   the position after the last item to remove (exclusive).
+     */
+    public void removeRange( int fromIndex, int toIndex )
+    {
+        if ( fromIndex >= toIndex )
+        {
+            return;
+        }
+        final List<ContactItem> range = items.subList( fromIndex, toIndex );
+        for ( final ContactItem item : range )
+        {
+            occurrences.computeIfPresent( item, ( key, count ) -> count == 1 ? null : count - 1 );
+        }
+        range.clear();
+        fireIntervalRemoved( this, fromIndex, toIndex - 1 );
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jxmpp.jid.BareJid;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps one item for every contact, also while the item is not displayed. A contact that goes offline and online again
+ * gets the same item back, with its presence updated in place, rather than a new item that needs to load its avatar and
+ * be laid out again.
+ *
+ * Items are kept until they are evicted, which is to happen when the contact is removed from the roster.
+ *
+ * This class is not thread-safe: it is intended to be used on the event dispatch thread.
+ *
+ * @param <T> the type of the items.
+ */
+class ContactItemPool<T>
+{
+    private final Map<BareJid, T> items = new HashMap<>();
+
+    private final Function<BareJid, ? extends T> factory;
+
+    /**
+     * Creates a pool.
+     *
+     * @param factory creates the item of a contact that does not have one yet.
+     */
+    ContactItemPool( Function<BareJid, ? extends T> factory )
+    {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the item of a contact, which is created if the contact does not have one yet.
+     *
+     * @param jid the bare JID of the contact.
+     * @return the item, never null.
+     */
+    T acquire( BareJid jid )
+    {
+        return items.computeIfAbsent( jid, factory );
+    }
+
+    /**
+     * Makes an item the item of a contact, replacing any item that it had.
+     *
+     * @param jid  the bare JID of the contact.
+     * @param item the item.
+     */
+    void put( BareJid jid, T item )
+    {
+        items.put( jid, item );
+    }
+
+    /**
+     * Forgets the item of a contact.
+     *
+     * @param jid the bare JID of the contact.
+     * @return the item that was forgotten, or null if the contact did not have one.
+     */
+    T evict( BareJid jid )
+    {
+        return items.remove( jid );
+    }
+
+    /**
+     * Returns the number of contacts that have an item.
+     *
+     * @return the number of items.
+     */
+    int size()
+    {
+        return items.size();
+    }
+}
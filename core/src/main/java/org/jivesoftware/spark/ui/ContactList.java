@@ -49,6 +49,7 @@ import org.jivesoftware.spark.util.*;
 import org.jivesoftware.spark.util.SwingWorker;
 import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.plugin.manager.Enterprise;
+import org.jivesoftware.sparkimpl.profile.VCardFetchScheduler;
 import org.jivesoftware.sparkimpl.profile.VCardManager;
 import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
 import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
@@ -70,7 +71,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
 
 
 public class ContactList extends JPanel implements ActionListener,
@@ -81,6 +82,7 @@ public class ContactList extends JPanel implements ActionListener,
     private final JPanel mainPanel = new JPanel();
     private final JScrollPane contactListScrollPane;
     private final List<ContactGroup> groupList = new ArrayList<>();
+    private final RosterIndex rosterIndex = new RosterIndex();
     private final RolloverButton addingGroupButton;
 
     private ContactItem activeItem;
@@ -113,8 +115,21 @@ public class ContactList extends JPanel implements ActionListener,
 
     private ContactItem contactItem;
 
-    private String name;
-    private BareJid user;
+    // The groups to update once the batch of presence updates that is being applied is done (EDT only).
+    private Set<ContactGroup> deferredGroupUpdates;
+
+    // Whether the presence updates that are being applied are the ones that were known when the list was built.
+    private boolean applyingInitialPresences;
+
+    // Runs the delayed transitions of contacts (going offline, the 'coming online' highlight fading), keyed by item, so
+    // that only the most recent transition of a contact takes effect.
+    private final TimingWheel transitions = new TimingWheel(100, 128, EventQueue::invokeLater);
+
+    // The item of every contact in the offline group, also while the contact is online, so that it can be reused.
+    private final ContactItemPool<ContactItem> offlineGroupItems = new ContactItemPool<>(jid -> {
+        final RosterEntry entry = Roster.getInstanceFor(SparkManager.getConnection()).getEntry(jid);
+        return UIComponentRegistry.createContactItem(entry != null ? entry.getName() : null, null, jid);
+    });
 
 
     public static final String RETRY_PANEL = "RETRY_PANEL";
@@ -172,6 +187,9 @@ public class ContactList extends JPanel implements ActionListener,
         contactListScrollPane.getVerticalScrollBar().setBlockIncrement(200);
         contactListScrollPane.getVerticalScrollBar().setUnitIncrement(20);
 
+        // Look up the vCards of the contacts in view before those of the rest of the roster, once scrolling settles.
+        contactListScrollPane.getViewport().addChangeListener(e -> transitions.schedule(contactListScrollPane.getViewport(), 250, this::prioritizeVisibleVCards));
+
         _reconnectPanel = new ReconnectPanel();
 
         _reconnectpanelsmall = new ReconnectPanelSmall(Res.getString("button.reconnect2"));
@@ -353,15 +371,18 @@ public class ContactList extends JPanel implements ActionListener,
      * @param bareJID  the bare jid of the user.
      */
     private void updateContactItemsPresence(Presence presence, RosterEntry entry, BareJid bareJID) {
-        for (ContactGroup group : groupList) {
+        for (ContactGroup group : rosterIndex.getGroups(bareJID)) {
             ContactItem item = group.getContactItemByJID(bareJID);
             if (item != null) {
                 if (group == offlineGroup) {
                     changeOfflineToOnline(bareJID, entry, presence);
                     continue;
                 }
+
+                // The contact returned before it was moved offline.
+                transitions.cancel(item);
                 item.setPresence(presence);
-                group.fireContactGroupUpdated();
+                contactGroupUpdated(group);
             }
         }
     }
@@ -377,30 +398,26 @@ public class ContactList extends JPanel implements ActionListener,
             final ContactGroup group = grpItem;
             final ContactItem item = group.getContactItemByJID(bareJID);
             if (item != null) {
-                int numberOfMillisecondsInTheFuture = 3000;
-                Date timeToRun = new Date(System.currentTimeMillis() + numberOfMillisecondsInTheFuture);
-
                 // Only run through if the users presence was online before.
                 if (item.getPresence().isAvailable()) {
                     item.showUserGoingOfflineOnline();
                     item.setIcon(SparkRes.getImageIcon(SparkRes.CLEAR_BALL_ICON));
                     group.fireContactGroupUpdated();
 
-                    TaskEngine.getInstance().schedule(new SwingTimerTask() {
-                        @Override
-                        public void doRun() {
-                            item.setPresence(presence);
-
-                            // Check for ContactItemHandler.
-                            group.removeContactItem(item);
-                            checkGroup(group);
-
-                            if (offlineGroup.getContactItemByJID(item.getJid()) == null) {
-                                moveToOffline(item);
-                                offlineGroup.fireContactGroupUpdated();
-                            }
+                    transitions.schedule(item, 3000, () -> {
+                        if (group.getContactItemByJID(item.getJid()) != item) {
+                            // The contact was removed meanwhile.
+                            return;
+                        }
+                        final boolean addedToOfflineGroup = moveItemOffline(group, item, presence, offlineGroup, offlineGroupItems);
+                        if (!localPreferences.isOfflineUsersShown()) {
+                            group.toggleOfflineVisibility(false);
+                        }
+                        checkGroup(group);
+                        if (addedToOfflineGroup) {
+                            contactGroupUpdated(offlineGroup);
                         }
-                    }, timeToRun);
+                    });
                 }
             } else {
                 final ContactItem offlineItem = offlineGroup.getContactItemByJID(bareJID);
@@ -411,6 +428,58 @@ public class ContactList extends JPanel implements ActionListener,
         }
     }
 
+    /**
+     * Moves the item of a contact that went offline. The item stays in its group, as an offline contact. The offline
+     * group shows the item of the contact that is taken from the pool, unless it shows one already. Must be invoked on
+     * the event dispatch thread.
+     *
+     * @param group             the group of the item.
+     * @param item              the item, which the group shows as an online contact.
+     * @param presence          the presence of the contact.
+     * @param offlineGroup      the offline group.
+     * @param offlineGroupItems the items of the offline group.
+     * @return true if an item was added to the offline group.
+     */
+    static boolean moveItemOffline(ContactGroup group, ContactItem item, Presence presence, ContactGroup offlineGroup, ContactItemPool<ContactItem> offlineGroupItems) {
+        item.setPresence(presence);
+        group.removeContactItem(item);
+        group.addOfflineContactItem(item);
+
+        if (offlineGroup.getContactItemByJID(item.getJid()) != null) {
+            return false;
+        }
+        final ContactItem offlineItem = offlineGroupItems.acquire(item.getJid());
+        if (!Objects.equals(offlineItem.getAlias(), item.getAlias())) {
+            offlineItem.setAlias(item.getAlias());
+        }
+        offlineItem.setPresence(presence);
+        offlineItem.setSpecialIcon(item.getDisplayedSpecialIcon());
+        offlineGroup.addContactItem(offlineItem);
+        return true;
+    }
+
+    /**
+     * Moves the item of a contact that came online. The offline item of the group is made an online item again, or a
+     * new item is created if the group has none. Must be invoked on the event dispatch thread.
+     *
+     * @param group    the group of the contact.
+     * @param jid      the JID of the contact.
+     * @param presence the presence of the contact.
+     * @param newItem  creates the item when the group has no offline item for the contact.
+     * @return the item, which the group now shows as an online contact.
+     */
+    static ContactItem moveItemOnline(ContactGroup group, BareJid jid, Presence presence, Supplier<ContactItem> newItem) {
+        final ContactItem offlineItem = group.getOfflineContactItemByJID(jid);
+        // Prevents duplicating contacts when they go offline and come online while the offline group is hidden.
+        group.removeContactItem(offlineItem);
+
+        final ContactItem item = offlineItem != null ? offlineItem : newItem.get();
+        group.addContactItem(item);
+        item.setAvailable(true);
+        item.setPresence(presence);
+        return item;
+    }
+
     /**
      * Moves a user to each group they belong to.
      *
@@ -441,38 +510,30 @@ public class ContactList extends JPanel implements ActionListener,
             if (contactGroup != null) {
                 ContactItem changeContactItem;
                 if (contactGroup.getContactItemByJID(entry.getJid()) == null) {
-                    ContactItem offlineCurrentItem = contactGroup.getOfflineContactItemByJID(bareJID);
-                    //prevents from duplicating roster contacts when users going offline and online with Offline Group invisible
-                    contactGroup.removeContactItem(offlineCurrentItem);
-
                     // If we are reconnecting we have to check if we are on the
                     // dispatch thread
                     if (EventQueue.isDispatchThread()) {
 
-                        changeContactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                        contactGroup.addContactItem(changeContactItem);
-                        changeContactItem.setAvailable(true);
-                        changeContactItem.setPresence(presence);
+                        // The offline item of the group is reused, rather than replaced by a new one.
+                        changeContactItem = moveItemOnline(contactGroup, bareJID, presence, () -> UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid()));
                         changeContactItem.updateAvatarInSideIcon();
-                        changeContactItem.showUserComingOnline();
-                        changeContactItem.setSpecialIcon(offlineItem.getSpecialImageLabel().getIcon());
-                        //contactItem.updatePresenceIcon(contactItem.getPresence());
+                        changeContactItem.setSpecialIcon(offlineItem.getDisplayedSpecialIcon());
                         toggleGroupVisibility(contactGroup.getGroupName(), true);
-                        //contactGroup.fireContactGroupUpdated();
 
-                        int numberOfMillisecondsInTheFuture = 5000;
-                        Date timeToRun = new Date(System.currentTimeMillis()
-                            + numberOfMillisecondsInTheFuture);
+                        if (applyingInitialPresences) {
+                            // Contacts that were online already when we logged in are not highlighted as coming online.
+                            changeContactItem.updatePresenceIcon(changeContactItem.getPresence());
+                            contactGroupUpdated(contactGroup);
+                            continue;
+                        }
+                        changeContactItem.showUserComingOnline();
 
                         final ContactItem staticItem = changeContactItem;
                         final ContactGroup staticGroup = contactGroup;
-                        TaskEngine.getInstance().schedule(new SwingTimerTask() {
-                            @Override
-                            public void doRun() {
-                                staticItem.updatePresenceIcon(staticItem.getPresence());
-                                staticGroup.fireContactGroupUpdated();
-                            }
-                        }, timeToRun);
+                        transitions.schedule(staticItem, 5000, () -> {
+                            staticItem.updatePresenceIcon(staticItem.getPresence());
+                            contactGroupUpdated(staticGroup);
+                        });
 
                     } else {
 
@@ -482,13 +543,10 @@ public class ContactList extends JPanel implements ActionListener,
                         //Reconnection and not in dispatch Thread -> Add to EVentQueue
                         EventQueue.invokeLater(() -> {
 
-                            final ContactItem changeContact = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                            staticContactGroup.addContactItem(changeContact);
-                            changeContact.setPresence(staticItemPrecense);
-                            changeContact.setAvailable(true);
+                            final ContactItem changeContact = moveItemOnline(staticContactGroup, bareJID, staticItemPrecense, () -> UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid()));
                             changeContact.updateAvatarInSideIcon();
                             changeContact.showUserComingOnline();
-                            changeContact.setSpecialIcon(offlineItem.getSpecialImageLabel().getIcon());
+                            changeContact.setSpecialIcon(offlineItem.getDisplayedSpecialIcon());
                             changeContact.updatePresenceIcon(changeContact.getPresence());
                             toggleGroupVisibility(staticContactGroup.getGroupName(), true);
                             staticContactGroup.fireContactGroupUpdated();
@@ -507,13 +565,18 @@ public class ContactList extends JPanel implements ActionListener,
                 // dispatch thread
                 if (EventQueue.isDispatchThread()) {
 
-                    contactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
                     ContactGroup unfiledGrp = getUnfiledGroup();
+                    contactItem = unfiledGrp.getOfflineContactItemByJID(bareJID);
+                    if (contactItem != null) {
+                        unfiledGrp.removeContactItem(contactItem);
+                    } else {
+                        contactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
+                    }
                     unfiledGrp.addContactItem(contactItem);
                     contactItem.setPresence(presence);
                     contactItem.setAvailable(true);
                     unfiledGrp.setVisible(true);
-                    unfiledGrp.fireContactGroupUpdated();
+                    contactGroupUpdated(unfiledGrp);
 
 
                 } else {
@@ -538,106 +601,203 @@ public class ContactList extends JPanel implements ActionListener,
     }
 
     /**
-     * Called to build the initial ContactList.
+     * Called to build the initial ContactList. Every group is filled in one go, rather than contact by contact.
+     *
+     * @param partition the contacts of the roster, partitioned by where they are displayed.
      */
-    private void buildContactList() {
+    private void buildContactList(RosterPartition partition) {
         Log.debug("Building contact list");
+        final Instant start = Instant.now();
         final Roster roster = Roster.getInstanceFor(SparkManager.getConnection());
 
         roster.addRosterListener(this);
 
         // Add All Groups to List
         Log.debug("... adding all groups to list");
-        for (RosterGroup group : roster.getGroups()) {
-            Instant start = Instant.now();
-            addContactGroup(group.getName());
-            Log.debug("... adding group " + group.getName() + " took " + Duration.between(start, Instant.now()));
+        for (String groupName : partition.groupNames) {
+            addContactGroup(groupName);
         }
 
-        Log.debug("... iterating over all groups");
-        for (RosterGroup group : roster.getGroups()) {
-            Instant start = Instant.now();
-            if (group.getName() == null || Objects.equals(group.getName(), "")) {
-                for (RosterEntry entry : group.getEntries()) {
+        // Contacts with a pending subscription are displayed in their groups right away.
+        for (Map.Entry<String, List<RosterEntry>> pending : partition.pendingByGroupName.entrySet()) {
+            ContactGroup contactGroup = getContactGroup(pending.getKey());
+            if (contactGroup == null) {
+                contactGroup = getUnfiledGroup();
+            }
+
+            final List<ContactItem> items = new ArrayList<>(pending.getValue().size());
+            for (RosterEntry entry : pending.getValue()) {
+                final ContactItem item = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
+                item.setPresence(new Presence(Presence.Type.unavailable));
+                items.add(item);
+            }
+            contactGroup.addContactItems(items);
+            contactGroup.setVisible(true);
+        }
 
-                    ContactItem buildContactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                    moveToOffline(buildContactItem);
-                }
-            } else {
+        // All other contacts are displayed as offline, until their presence is applied.
+        final Map<String, ContactGroup> groupsByName = new HashMap<>();
+        final List<ContactItem> offlineItems = new ArrayList<>(partition.offline.size());
+        final Map<ContactGroup, List<ContactItem>> offlineItemsByGroup = new LinkedHashMap<>();
+        for (RosterEntry entry : partition.offline) {
+            if (offlineGroup.getContactItemByJID(entry.getJid()) != null) {
+                continue;
+            }
+            final ContactItem item = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
+            item.setPresence(new Presence(Presence.Type.unavailable));
+            offlineItems.add(item);
+            offlineGroupItems.put(entry.getJid(), item);
 
-                ContactGroup contactGroup = getContactGroup(group.getName());
+            boolean isFiled = false;
+            for (RosterGroup group : entry.getGroups()) {
+                ContactGroup contactGroup = groupsByName.get(group.getName());
                 if (contactGroup == null) {
-                    contactGroup = getUnfiledGroup();
+                    contactGroup = getContactGroup(group.getName());
+                    if (contactGroup == null && !Objects.equals(group.getName(), "")) {
+                        contactGroup = addContactGroup(group.getName());
+                    }
+                    if (contactGroup != null) {
+                        groupsByName.put(group.getName(), contactGroup);
+                    }
                 }
+                if (contactGroup != null) {
+                    isFiled = true;
+                    offlineItemsByGroup.computeIfAbsent(contactGroup, g -> new ArrayList<>()).add(item);
+                }
+            }
+            if (!isFiled) {
+                offlineItemsByGroup.computeIfAbsent(getUnfiledGroup(), g -> new ArrayList<>()).add(item);
+            }
+        }
+        offlineGroup.addContactItems(offlineItems);
+        offlineItemsByGroup.forEach(ContactGroup::addOfflineContactItems);
 
-                for (RosterEntry entry : group.getEntries()) {
-                    contactItem = null;
-                    name = entry.getName();
-                    user = entry.getJid();
-                    // in case of connection lost, the creation must be done in eventqueue
-                    if (EventQueue.isDispatchThread()) {
-                        contactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                    } else {
-                        try {
-                            EventQueue.invokeAndWait(() -> contactItem = UIComponentRegistry.createContactItem(name, null, user));
-                        } catch (Exception ex) {
-                            ex.printStackTrace();
-                        }
-                    }
+        for (ContactGroup group : getContactGroups()) {
+            group.fireContactGroupUpdated();
+        }
 
-                    // if there was something wrong, try an other
-                    if (contactItem == null)
-                        continue;
+        Log.debug("Done with contact list: " + offlineItems.size() + " offline contacts, " + partition.pendingByGroupName.size() + " groups with pending contacts, took " + Duration.between(start, Instant.now()));
+    }
 
-                    contactItem.setPresence(new Presence(Presence.Type.unavailable));
-                    if ((entry.getType() == RosterPacket.ItemType.none || entry.getType() == RosterPacket.ItemType.from)
-                        && entry.isSubscriptionPending()) {
-                        // Add to contact group.
-                        contactGroup.addContactItem(contactItem);
-                        contactGroup.setVisible(true);
-                    } else {
-                        if (offlineGroup.getContactItemByJID(entry.getJid()) == null) {
-                            moveToOffline(contactItem);
+    /**
+     * The contacts of the roster, partitioned by where they are displayed when the contact list is built. This only
+     * involves roster data, so it is done off the event dispatch thread.
+     */
+    private static class RosterPartition {
+        private final List<String> groupNames = new ArrayList<>();
+
+        // Contacts with a pending subscription, by the name of each group that they are in.
+        private final Map<String, List<RosterEntry>> pendingByGroupName = new LinkedHashMap<>();
+
+        // All other contacts.
+        private final List<RosterEntry> offline = new ArrayList<>();
+
+        private RosterPartition(Roster roster) {
+            for (RosterGroup group : roster.getGroups()) {
+                groupNames.add(group.getName());
+            }
+
+            for (RosterEntry entry : roster.getEntries()) {
+                final boolean isPending = (entry.getType() == RosterPacket.ItemType.none || entry.getType() == RosterPacket.ItemType.from)
+                    && entry.isSubscriptionPending();
+                boolean isDisplayedAsPending = false;
+                if (isPending) {
+                    for (RosterGroup group : entry.getGroups()) {
+                        if (group.getName() != null && !group.getName().isEmpty()) {
+                            pendingByGroupName.computeIfAbsent(group.getName(), name -> new ArrayList<>()).add(entry);
+                            isDisplayedAsPending = true;
                         }
                     }
                 }
+                if (!isDisplayedAsPending) {
+                    offline.add(entry);
+                }
             }
-
-            Log.debug("... iterating over group " + group.getName() + " took " + Duration.between(start, Instant.now()));
         }
+    }
 
-        if (EventQueue.isDispatchThread()) {
-            // Add Unfiled Group
-            for (RosterEntry entry : roster.getUnfiledEntries()) {
-                ContactItem moveToOfflineContactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                moveToOffline(moveToOfflineContactItem);
+    /**
+     * Applies a batch of presence updates on the event dispatch thread. The groups that are affected are updated once,
+     * after all presences are applied, rather than once for each presence.
+     *
+     * @param presences the presence updates, in the order in which they were received.
+     * @param initial   true if these are the presences that were known when the contact list was built.
+     */
+    private void updateUserPresences(Collection<Presence> presences, boolean initial) {
+        final boolean batched = EventQueue.isDispatchThread() && deferredGroupUpdates == null;
+        if (batched) {
+            deferredGroupUpdates = new LinkedHashSet<>();
+            applyingInitialPresences = initial;
+        }
+        try {
+            for (Presence presence : presences) {
+                try {
+                    updateUserPresence(presence);
+                } catch (Exception e) {
+                    Log.warning("Unable to process this presence update that was received: " + presence, e);
+                }
             }
+        } finally {
+            if (batched) {
+                final Set<ContactGroup> groups = deferredGroupUpdates;
+                deferredGroupUpdates = null;
+                applyingInitialPresences = false;
+                for (ContactGroup group : groups) {
+                    group.fireContactGroupUpdated();
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the ui of a group after its contacts changed. While a batch of presence updates is being applied, this
+     * is postponed until the batch is done.
+     *
+     * @param group the group that changed.
+     */
+    private void contactGroupUpdated(ContactGroup group) {
+        if (deferredGroupUpdates != null && EventQueue.isDispatchThread()) {
+            deferredGroupUpdates.add(group);
         } else {
-            try {
-                EventQueue.invokeAndWait(() -> {
-                    for (RosterEntry entry : roster.getUnfiledEntries()) {
-                        ContactItem moveToOfflineContactItem = UIComponentRegistry.createContactItem(entry.getName(), null, entry.getJid());
-                        moveToOffline(moveToOfflineContactItem);
-                    }
-                });
-            } catch (Exception e) {
-                Log.error("moveToOffilne", e);
+            group.fireContactGroupUpdated();
+        }
+    }
+
+    /**
+     * Moves the vCard lookups of the contacts that are in view ahead of those of the rest of the roster.
+     */
+    private void prioritizeVisibleVCards() {
+        final VCardManager vCardManager = SparkManager.getVCardManager();
+        for (ContactGroup group : getContactGroups()) {
+            final JList<? extends ContactItem> list = group.getList();
+            final int first = list.getFirstVisibleIndex();
+            if (first < 0) {
+                continue;
+            }
+            final int last = list.getLastVisibleIndex();
+            for (int i = first; i <= last; i++) {
+                vCardManager.prioritize(list.getModel().getElementAt(i).getJid(), VCardFetchScheduler.Lane.VISIBLE);
             }
         }
-        Log.debug("Done with contact list");
     }
 
     private void updateContactList(ContactGroup group) {
+        final List<Presence> presences = new ArrayList<>();
+        collectPresences(group, presences);
+        updateUserPresences(presences, false);
+    }
+
+    private void collectPresences(ContactGroup group, List<Presence> presences) {
         if (group != null) {
             for (ContactItem item : group.getContactItems()) {
-                updateUserPresence(PresenceManager.getPresence(item.getJid()));
+                presences.add(PresenceManager.getPresence(item.getJid()));
             }
         }
 
         Collection<ContactGroup> subGroups = group != null ? group.getContactGroups() : this.getContactGroups();
 
         for (ContactGroup subGroup : subGroups) {
-            updateContactList(subGroup);
+            collectPresences(subGroup, presences);
         }
     }
 
@@ -808,7 +968,7 @@ public class ContactList extends JPanel implements ActionListener,
                             unfiled = false;
                         }
 
-                        for (ContactGroup group : new ArrayList<>(getContactGroups())) {
+                        for (ContactGroup group : rosterIndex.getGroups(jid.asBareJid())) {
                             ContactItem itemFound = group.getContactItemByJID(jid.asBareJid());
                             if (itemFound != null && !unfiled && group != getUnfiledGroup() && group != offlineGroup) {
                                 if (!userGroupSet.contains(group.getGroupName())) {
@@ -865,7 +1025,7 @@ public class ContactList extends JPanel implements ActionListener,
      * @return the "first" contact item found.
      */
     public ContactItem getContactItemByJID(BareJid jid) {
-        for (ContactGroup group : getContactGroups()) {
+        for (ContactGroup group : rosterIndex.getGroups(jid)) {
             ContactItem item = group.getContactItemByJID(jid);
             if (item != null) {
                 return item;
@@ -882,8 +1042,9 @@ public class ContactList extends JPanel implements ActionListener,
      */
     public Collection<ContactItem> getContactItemsByJID(Jid jid) {
         final BareJid bareJid = jid.asBareJid();
+        final List<ContactGroup> groups = rosterIndex.getGroups(bareJid);
         final List<ContactItem> list = new ArrayList<>();
-        for (ContactGroup group : getContactGroups()) {
+        for (ContactGroup group : groups) {
             ContactItem item = group.getContactItemByJID(bareJid);
             if (item != null) {
                 list.add(item);
@@ -893,13 +1054,10 @@ public class ContactList extends JPanel implements ActionListener,
          * We have to search ContactItems into offline contacts.
          * Standart getContactItemByJID() method search ContactItems only in OfflineGroup or into inline cantacts
          */
-        for (ContactGroup group : getContactGroups()) {
-            for (ContactItem offlineItem : group.getOfflineContacts()) {
-                if (offlineItem != null && offlineItem.getJid().equals(bareJid)) {
-                    if (!list.contains(offlineItem)) {
-                        list.add(offlineItem);
-                    }
-                }
+        for (ContactGroup group : groups) {
+            ContactItem offlineItem = group.getOfflineContactItemByJID(bareJid);
+            if (offlineItem != null && !list.contains(offlineItem)) {
+                list.add(offlineItem);
             }
         }
 
@@ -913,7 +1071,7 @@ public class ContactList extends JPanel implements ActionListener,
      * @param icon the icon to use.
      */
     public void setIconFor(Jid jid, Icon icon) {
-        for (ContactGroup group : getContactGroups()) {
+        for (ContactGroup group : rosterIndex.getGroups(jid.asBareJid())) {
             ContactItem item = group.getContactItemByJID(jid.asBareJid());
             if (item != null) {
                 item.setIcon(icon);
@@ -928,7 +1086,7 @@ public class ContactList extends JPanel implements ActionListener,
      * @param jid the users jid.
      */
     public void useDefaults(Jid jid) {
-        for (ContactGroup group : getContactGroups()) {
+        for (ContactGroup group : rosterIndex.getGroups(jid.asBareJid())) {
             ContactItem item = group.getContactItemByJID(jid.asBareJid());
             if (item != null) {
                 item.updatePresenceIcon(item.getPresence());
@@ -961,6 +1119,7 @@ public class ContactList extends JPanel implements ActionListener,
      */
     private void addContactGroup(ContactGroup group) {
         groupList.add(group);
+        group.setRosterIndex(rosterIndex);
 
         groupList.sort(GROUP_COMPARATOR);
 
@@ -1031,9 +1190,11 @@ public class ContactList extends JPanel implements ActionListener,
             if (lastGroup != null) {
                 lastGroup.addContactGroup(newContactGroup);
                 groupList.add(newContactGroup);
+                newContactGroup.setRosterIndex(rosterIndex);
             } else if (rootGroup != null) {
                 rootGroup.addContactGroup(newContactGroup);
                 groupList.add(newContactGroup);
+                newContactGroup.setRosterIndex(rosterIndex);
             } else {
                 rootGroup = newContactGroup;
             }
@@ -1078,6 +1239,7 @@ public class ContactList extends JPanel implements ActionListener,
 
 
         groupList.add(rootGroup);
+        rootGroup.setRosterIndex(rosterIndex);
 
         tempList.sort(GROUP_COMPARATOR);
 
@@ -1108,6 +1270,7 @@ public class ContactList extends JPanel implements ActionListener,
     private void removeContactGroup(ContactGroup contactGroup) {
         contactGroup.removeContactGroupListener(this);
         groupList.remove(contactGroup);
+        contactGroup.setRosterIndex(null);
         mainPanel.remove(contactGroup);
 
         ContactGroup parent = getParentGroup(contactGroup.getGroupName());
@@ -1256,6 +1419,7 @@ public class ContactList extends JPanel implements ActionListener,
                 ContactGroup contactGroup = getContactGroup(activeItem.getGroupName());
                 ContactItem contactItem = contactGroup.getContactItemByDisplayName(activeItem.getDisplayName());
                 contactItem.setAlias(newAlias);
+                contactGroup.contactItemRenamed(contactItem);
 
                 final Roster roster = Roster.getInstanceFor(SparkManager.getConnection());
                 RosterEntry entry = roster.getEntry(address);
@@ -1263,10 +1427,11 @@ public class ContactList extends JPanel implements ActionListener,
                     entry.setName(newAlias);
 
                     final BareJid user = address.asBareJid();
-                    for (ContactGroup cg : groupList) {
+                    for (ContactGroup cg : rosterIndex.getGroups(user)) {
                         ContactItem ci = cg.getContactItemByJID(user);
                         if (ci != null) {
                             ci.setAlias(newAlias);
+                            cg.contactItemRenamed(ci);
                         }
                     }
                 } catch (XMPPException.XMPPErrorException | SmackException.NotConnectedException | SmackException.NoResponseException | InterruptedException e1) {
@@ -1317,7 +1482,8 @@ public class ContactList extends JPanel implements ActionListener,
     }
 
     private void removeContactItem(BareJid jid) {
-        for (ContactGroup group : new ArrayList<>(getContactGroups())) {
+        offlineGroupItems.evict(jid);
+        for (ContactGroup group : rosterIndex.getGroups(jid)) {
             ContactItem item = group.getContactItemByJID(jid);
             group.removeOfflineContactItem(jid);
             if (item != null) {
@@ -1550,7 +1716,7 @@ public class ContactList extends JPanel implements ActionListener,
 
         // Check if user is in shared group.
         boolean isInSharedGroup = false;
-        for (ContactGroup cGroup : new ArrayList<>(getContactGroups())) {
+        for (ContactGroup cGroup : rosterIndex.getGroups(item.getJid().asBareJid())) {
             if (cGroup.isSharedGroup()) {
                 ContactItem it = cGroup.getContactItemByJID(item.getJid().asBareJid());
                 if (it != null) {
@@ -1767,37 +1933,63 @@ public class ContactList extends JPanel implements ActionListener,
             }
         };
 
-        SwingUtilities.invokeLater(this::loadContactList);
+        TaskEngine.getInstance().submit(this::loadContactList);
         TaskEngine.getInstance().submit(sharedGroupLoader);
     }
 
     private void loadContactList() {
+        final Instant start = Instant.now();
 
-        // Build the initial contact list.
-        buildContactList();
+        // Partition the roster off the event dispatch thread.
+        final RosterPartition partition = new RosterPartition(Roster.getInstanceFor(SparkManager.getConnection()));
+        Log.debug("Partitioned roster in " + Duration.between(start, Instant.now()));
 
-        boolean show = localPreferences.isEmptyGroupsShown();
+        SwingUtilities.invokeLater(() -> {
+            // Build the initial contact list.
+            buildContactList(partition);
+
+            boolean show = localPreferences.isEmptyGroupsShown();
 
-        // Hide all groups initially
-        showEmptyGroups(show);
+            // Hide all groups initially
+            showEmptyGroups(show);
 
-        // Hide all Offline Users
-        showOfflineUsers(localPreferences.isOfflineUsersShown());
+            // Hide all Offline Users
+            showOfflineUsers(localPreferences.isOfflineUsersShown());
 
-        // Add a subscription listener.
-        addSubscriptionListener();
+            // Add a subscription listener.
+            addSubscriptionListener();
 
-        // Load all plugins
-        SparkManager.getWorkspace().loadPlugins();
+            // Apply the presences that were received before the subscription listener was added, all at once.
+            final Roster roster = Roster.getInstanceFor(SparkManager.getConnection());
+            final List<Presence> presences = new ArrayList<>();
+            for (RosterEntry entry : roster.getEntries()) {
+                final Presence presence = PresenceManager.getPresence(entry.getJid());
+                if (presence.isAvailable()) {
+                    presences.add(presence);
+                }
+            }
+            updateUserPresences(presences, true);
+            Log.debug("Contact list usable after " + Duration.between(start, Instant.now()) + " (" + roster.getEntryCount() + " contacts, " + presences.size() + " available)");
 
+            // Load all plugins
+            SparkManager.getWorkspace().loadPlugins();
+        });
     }
 
     public void addSubscriptionListener() {
         // Sometimes, presence changes happen in rapid succession (for instance, when initially connecting). To avoid
-        // having a lot of UI-updates (which are costly), this queue is used to create a short buffer, allowing us to
-        // group UI updates in batches.
-        final ConcurrentLinkedQueue<Presence> presenceBuffer = new ConcurrentLinkedQueue<>();
+        // having a lot of UI-updates (which are costly), presence changes are buffered for a short while, and applied
+        // in one batch. Only the latest presence of every address is kept: a contact that flaps is updated once.
+        final Map<Jid, Presence> presenceBuffer = new LinkedHashMap<>();
         final long bufferTimeMS = 500;
+        final Runnable flushPresenceBuffer = () -> {
+            final List<Presence> presences;
+            synchronized (presenceBuffer) {
+                presences = new ArrayList<>(presenceBuffer.values());
+                presenceBuffer.clear();
+            }
+            updateUserPresences(presences, false);
+        };
 
         final StanzaListener subscribeListener = stanza ->
         {
@@ -1868,27 +2060,16 @@ public class ContactList extends JPanel implements ActionListener,
 
                 default:
                     // Any other presence updates. These are likely regular presence changes, not subscription-state changes.
-                    presenceBuffer.add(presence);
-
-                    TaskEngine.getInstance().schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            SwingUtilities.invokeLater(() ->
-                            {
-                                final Iterator<Presence> iterator = presenceBuffer.iterator();
-                                while (iterator.hasNext()) {
-                                    final Presence presence = iterator.next();
-                                    try {
-                                        updateUserPresence(presence);
-                                    } catch (Exception e) {
-                                        Log.warning("Unable to process this presence update that was received: " + presence, e);
-                                    } finally {
-                                        iterator.remove();
-                                    }
-                                }
-                            });
+                    synchronized (presenceBuffer) {
+                        // The first presence of a batch schedules the batch to be applied.
+                        if (presenceBuffer.isEmpty()) {
+                            transitions.schedule(presenceBuffer, bufferTimeMS, flushPresenceBuffer);
                         }
-                    }, bufferTimeMS);
+
+                        // Re-inserted, so that the batch stays in the order in which the latest presences arrived.
+                        presenceBuffer.remove(presence.getFrom());
+                        presenceBuffer.put(presence.getFrom(), presence);
+                    }
                     break;
             }
         };
@@ -2102,10 +2283,9 @@ public class ContactList extends JPanel implements ActionListener,
      * @param jid, the Users JID
      */
     public void setSelectedUser(BareJid jid) {
-        for (ContactGroup group : getContactGroups()) {
-            if (group.getContactItemByJID(jid) != null) {
-
-                ContactItem item = group.getContactItemByJID(jid);
+        for (ContactGroup group : rosterIndex.getGroups(jid)) {
+            ContactItem item = group.getContactItemByJID(jid);
+            if (item != null) {
                 group.getList().setSelectedValue(item, false);
                 return;
             }
@@ -2473,6 +2653,7 @@ public class ContactList extends JPanel implements ActionListener,
         offlineGroup.addContactItem(contactItem);
 
         BareJid jid = contactItem.getJid().asBareJid();
+        offlineGroupItems.put(jid, contactItem);
         boolean isFiled = false;
 
         final Roster roster = Roster.getInstanceFor(SparkManager.getConnection());
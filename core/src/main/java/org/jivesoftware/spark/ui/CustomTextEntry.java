@@ -15,9 +15,7 @@
  */
 package org.jivesoftware.spark.ui;
 
-import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
-
-import javax.swing.text.*;
+import javax.swing.text.AttributeSet;
 import java.awt.*;
 import java.time.ZonedDateTime;
 
@@ -55,24 +53,12 @@ public class CustomTextEntry extends TimeStampedEntry
 
     protected AttributeSet getStyle()
     {
-        final MutableAttributeSet style = new SimpleAttributeSet();
-        StyleConstants.setFontFamily( style, "Dialog" );
-        StyleConstants.setFontSize( style, SettingsManager.getLocalPreferences().getChatRoomFontSize() );
-        StyleConstants.setForeground( style, textColor );
-        StyleConstants.setBold( style, bold );
-        StyleConstants.setItalic( style, italic );
-        StyleConstants.setUnderline( style, underline );
-        StyleConstants.setStrikeThrough( style, strikeThrough );
-        return style;
+        return TranscriptStyles.getTextStyle( textColor, bold, italic, underline, strikeThrough );
     }
 
     @Override
-    protected void addTo( ChatArea chatArea ) throws BadLocationException
+    protected void addTo( TranscriptContent content )
     {
-        final Document doc = chatArea.getDocument();
-
-        doc.insertString( doc.getLength(), getFormattedTimestamp() + message + "\n", getStyle() );
-        // Enabling the 'setCaretPosition' line below causes Spark to freeze (often, not always) when trying to print the subject of a chatroom that's just being loaded.
-        // chatArea.setCaretPosition( doc.getLength() );
+        content.appendText( getFormattedTimestamp() + message + "\n", getStyle() );
     }
 }
@@ -16,8 +16,6 @@
 package org.jivesoftware.spark.ui;
 
 import javax.swing.*;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
 import java.time.ZonedDateTime;
 
 /**
@@ -38,13 +36,9 @@ public class HorizontalLineEntry extends TranscriptWindowEntry
     }
 
     @Override
-    protected void addTo( ChatArea chatArea ) throws BadLocationException
+    protected void addTo( TranscriptContent content )
     {
-        final Document doc = chatArea.getDocument();
-
-        chatArea.insertComponent( new JSeparator() );
-        doc.insertString(doc.getLength(), "\n", null );
-        // Enabling the 'setCaretPosition' line below causes Spark to freeze (often, not always) when trying to print the subject of a chatroom that's just being loaded.
-        // chatArea.setCaretPosition( doc.getLength() );
+        content.appendComponent( new JSeparator() );
+        content.appendText( "\n", null );
     }
 }
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.sparkimpl.plugin.emoticons.EmoticonTrie;
+
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Splits the text of a message into styled fragments, in a single pass over the text.
+ *
+ * The text is processed line by line. Lines are grouped in blocks: a preformatted code block starts with a line that
+ * starts with <tt>```</tt>, and ends with the first subsequent line that ends with <tt>```</tt>. A block quotation
+ * starts with a line that starts with <tt>&gt;</tt>, which is rendered like any other text. Every block is
+ * followed by a line break. Lines of a code block are rendered monospaced. Other lines are split in whitespace,
+ * quoted text and words. Text that is enclosed in a styling directive (<tt>*bold*</tt>, <tt>_italic_</tt>,
+ * <tt>~strike~</tt> or <tt>`monospaced`</tt>) is rendered in the style of that directive. Words are recognized as
+ * links, network addresses or emoticons.
+ *
+ * Adjacent fragments of plain text that share a style are merged.
+ */
+class MessageTokenizer
+{
+    private static final String[] LINK_PREFIXES = { "http://", "ftp://", "https://", "www.", "file:/" };
+
+    private final TranscriptStyles.Palette palette;
+    private final Color linkColor;
+    private final Color addressColor;
+    private final EmoticonTrie emoticons;
+    private final Function<String, Icon> emoticonImages;
+
+    private List<Fragment> result;
+    private final StringBuilder pendingText = new StringBuilder();
+    private AttributeSet pendingStyle;
+
+    /**
+     * Creates a tokenizer.
+     *
+     * @param palette        the styles of the message text.
+     * @param linkColor      the color of links.
+     * @param addressColor   the color of network addresses.
+     * @param emoticons      the emoticons to recognize, or null to not recognize emoticons.
+     * @param emoticonImages provides the image of a recognized emoticon (the result can be null).
+     */
+    MessageTokenizer( TranscriptStyles.Palette palette, Color linkColor, Color addressColor, EmoticonTrie emoticons, Function<String, Icon> emoticonImages )
+    {
+        this.palette = palette;
+        this.linkColor = linkColor;
+        this.addressColor = addressColor;
+        this.emoticons = emoticons;
+        this.emoticonImages = emoticonImages;
+    }
+
+    /**
+     * Splits a message in fragments.
+     *
+     * @param text the text of the message.
+     * @return the fragments, in order (never null).
+     */
+    List<Fragment> tokenize( String text )
+    {
+        result = new ArrayList<>();
+        final AttributeSet plain = palette.getPlain();
+        final AttributeSet code = palette.getStyle( '`' );
+        final AttributeSet keyword = palette.getStyle( 'K' );
+
+        boolean inBlock = false;
+        boolean codeBlock = false;
+        boolean quoteBlock = false;
+        int codeBlockLines = 0;
+        boolean codeBlockClosed = false;
+
+        int lineStart = 0;
+        while ( lineStart < text.length() )
+        {
+            // Line breaks are lines of their own.
+            final int lineEnd = text.charAt( lineStart ) == '\n' ? lineStart + 1 : indexOf( text, '\n', lineStart, text.length(), text.length() );
+
+            final boolean quote = startsWith( text, lineStart, lineEnd, ">" );
+            final boolean fence = startsWith( text, lineStart, lineEnd, "```" );
+            final boolean append = inBlock && ( codeBlock ? !codeBlockClosed : ( quoteBlock && quote ) || !( quote || fence ) );
+            if ( !append )
+            {
+                if ( inBlock )
+                {
+                    appendText( "\n", plain );
+                }
+                inBlock = true;
+                codeBlock = fence;
+                quoteBlock = quote;
+                codeBlockLines = 0;
+            }
+
+            if ( codeBlock )
+            {
+                appendText( text.substring( lineStart, lineEnd ), trimmedStartsWithFence( text, lineStart, lineEnd ) ? keyword : code );
+                codeBlockLines++;
+                codeBlockClosed = codeBlockLines > 1 && trimmedEndsWithFence( text, lineStart, lineEnd );
+            }
+            else
+            {
+                tokenizeLine( text, lineStart, lineEnd, plain );
+            }
+            lineStart = lineEnd;
+        }
+
+        if ( inBlock )
+        {
+            appendText( "\n", plain );
+        }
+        flushText();
+
+        final List<Fragment> fragments = result;
+        result = null;
+        return fragments;
+    }
+
+    private void tokenizeLine( String text, int lineStart, int lineEnd, AttributeSet plain )
+    {
+        int to = lineStart;
+        do
+        {
+            final int from = to;
+            final char c = text.charAt( from );
+
+            if ( Character.isWhitespace( c ) )
+            {
+                while ( ++to < lineEnd && Character.isWhitespace( text.charAt( to ) ) );
+                appendText( text.substring( from, to ), plain );
+                continue;
+            }
+
+            if ( c == '*' || c == '_' || c == '~' || c == '`' )
+            {
+                to = indexOf( text, c, from + 1, lineEnd, -1 );
+                if ( to != -1 && !Character.isWhitespace( text.charAt( to - 1 ) ) && ( to - from ) > 1 )
+                {
+                    appendFragment( text, from + 1, to++, palette.getStyle( c ) );
+                    continue;
+                }
+            }
+
+            if ( c == '"' )
+            {
+                to = indexOf( text, '"', from + 1, lineEnd, -1 );
+                if ( to != -1 )
+                {
+                    appendText( "\"", plain );
+                    appendFragment( text, from + 1, to++, plain );
+                    appendText( "\"", plain );
+                    continue;
+                }
+            }
+
+            to = from;
+            while ( ++to < lineEnd && !Character.isWhitespace( text.charAt( to ) ) );
+            appendFragment( text, from, to, plain );
+        }
+        while ( to < lineEnd );
+    }
+
+    /**
+     * Adds a fragment of text that can be a link, network address or emoticon.
+     */
+    private void appendFragment( String text, int from, int to, AttributeSet style )
+    {
+        if ( from == to )
+        {
+            return;
+        }
+
+        if ( isLink( text, from, to ) )
+        {
+            appendLink( text.substring( from, to ), style, linkColor );
+            return;
+        }
+
+        if ( isAddress( text, from, to ) )
+        {
+            appendLink( text.substring( from, to ), style, addressColor );
+            return;
+        }
+
+        if ( emoticons != null )
+        {
+            final String key = emoticons.match( text, from, to );
+            final Icon icon = key == null ? null : emoticonImages.apply( key );
+            if ( icon != null )
+            {
+                flushText();
+                result.add( new Fragment( key, style, icon ) );
+                return;
+            }
+        }
+
+        appendText( text.substring( from, to ), style );
+    }
+
+    private void appendLink( String link, AttributeSet style, Color color )
+    {
+        // Create a new style, based on the style used for generic text, for the link.
+        final MutableAttributeSet linkStyle = new SimpleAttributeSet();
+        linkStyle.setResolveParent( style );
+        StyleConstants.setForeground( linkStyle, color );
+        StyleConstants.setUnderline( linkStyle, true );
+        linkStyle.addAttribute( "link", link );
+
+        flushText();
+        result.add( new Fragment( link, linkStyle, null ) );
+    }
+
+    private void appendText( String text, AttributeSet style )
+    {
+        if ( pendingStyle != style )
+        {
+            flushText();
+            pendingStyle = style;
+        }
+        pendingText.append( text );
+    }
+
+    private void flushText()
+    {
+        if ( pendingText.length() > 0 )
+        {
+            result.add( new Fragment( pendingText.toString(), pendingStyle, null ) );
+            pendingText.setLength( 0 );
+        }
+        pendingStyle = null;
+    }
+
+    private static boolean isLink( String text, int from, int to )
+    {
+        for ( final String prefix : LINK_PREFIXES )
+        {
+            if ( startsWith( text, from, to, prefix ) )
+            {
+                return indexOf( text, '.', from, to, -1 ) - from > 1;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAddress( String text, int from, int to )
+    {
+        if ( startsWith( text, from, to, "\\\\" ) )
+        {
+            return true;
+        }
+        final int dot = indexOf( text, '.', from, to, -1 );
+        if ( dot != -1 && dot - from >= 1 )
+        {
+            return false;
+        }
+        for ( int i = from; i + 3 <= to; i++ )
+        {
+            if ( text.startsWith( "://", i ) )
+            {
+                return i > from;
+            }
+        }
+        return false;
+    }
+
+    private static boolean trimmedStartsWithFence( String text, int from, int to )
+    {
+        while ( from < to && text.charAt( from ) <= ' ' )
+        {
+            from++;
+        }
+        return startsWith( text, from, to, "```" );
+    }
+
+    private static boolean trimmedEndsWithFence( String text, int from, int to )
+    {
+        while ( to > from && text.charAt( to - 1 ) <= ' ' )
+        {
+            to--;
+        }
+        return to - from >= 3 && text.startsWith( "```", to - 3 );
+    }
+
+    private static boolean startsWith( String text, int from, int to, String prefix )
+    {
+        return to - from >= prefix.length() && text.startsWith( prefix, from );
+    }
+
+    private static int indexOf( String text, char c, int from, int to, int notFound )
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            if ( text.charAt( i ) == c )
+            {
+                return i;
+            }
+        }
+        return notFound;
+    }
+
+    /**
+     * A piece of text in one style, or an image.
+     */
+    static final class Fragment
+    {
+        final String text;
+        final AttributeSet style;
+        final Icon icon;
+
+        Fragment( String text, AttributeSet style, Icon icon )
+        {
+            this.text = text;
+            this.style = style;
+            this.icon = icon;
+        }
+
+        /**
+         * @return true if this fragment is an image, false if it is text.
+         */
+        boolean isIcon()
+        {
+            return icon != null;
+        }
+    }
+}
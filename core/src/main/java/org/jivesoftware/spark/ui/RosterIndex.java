@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jxmpp.jid.BareJid;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the bare JID of every contact in the {@link ContactList} to the groups that hold a {@link ContactItem} for it,
+ * either as an online or as an offline contact. Together with the per-JID lookups of {@link ContactGroup}, this makes
+ * finding the items of a contact take constant time, regardless of the size of the roster.
+ *
+ * Groups keep the index up to date themselves: every group that is part of the contact list reports the JIDs that it
+ * starts and stops holding. The groups of a JID are kept in the order of {@link ContactList#GROUP_COMPARATOR}, which
+ * is the order in which the contact list presents them.
+ *
+ * This class is thread-safe. Lookups never block, and return a snapshot.
+ */
+class RosterIndex
+{
+    private static final ContactGroup[] NO_GROUPS = new ContactGroup[ 0 ];
+
+    private final Map<BareJid, ContactGroup[]> groupsByJid = new ConcurrentHashMap<>();
+
+    /**
+     * Records that a group holds an item for a JID. Has no effect when this was recorded already.
+     *
+     * @param jid   the bare JID of the contact.
+     * @param group the group that holds an item for the contact.
+     */
+    void add( BareJid jid, ContactGroup group )
+    {
+        groupsByJid.compute( jid, ( key, groups ) -> {
+            if ( groups == null )
+            {
+                return new ContactGroup[] { group };
+            }
+            for ( final ContactGroup existing : groups )
+            {
+                if ( existing == group )
+                {
+                    return groups;
+                }
+            }
+
+            // Roster entries are in a handful of groups at most: a sorted copy is cheaper than any tree.
+            final ContactGroup[] result = Arrays.copyOf( groups, groups.length + 1 );
+            int index = groups.length;
+            while ( index > 0 && ContactList.GROUP_COMPARATOR.compare( result[ index - 1 ], group ) > 0 )
+            {
+                result[ index ] = result[ index - 1 ];
+                index--;
+            }
+            result[ index ] = group;
+            return result;
+        } );
+    }
+
+    /**
+     * Records that a group no longer holds any item for a JID. Has no effect when this was not recorded.
+     *
+     * @param jid   the bare JID of the contact.
+     * @param group the group that no longer holds an item for the contact.
+     */
+    void remove( BareJid jid, ContactGroup group )
+    {
+        groupsByJid.computeIfPresent( jid, ( key, groups ) -> {
+            for ( int i = 0; i < groups.length; i++ )
+            {
+                if ( groups[ i ] == group )
+                {
+                    if ( groups.length == 1 )
+                    {
+                        return null;
+                    }
+                    final ContactGroup[] result = new ContactGroup[ groups.length - 1 ];
+                    System.arraycopy( groups, 0, result, 0, i );
+                    System.arraycopy( groups, i + 1, result, i, groups.length - i - 1 );
+                    return result;
+                }
+            }
+            return groups;
+        } );
+    }
+
+    /**
+     * Returns the groups that hold an item for a JID.
+     *
+     * @param jid the bare JID of the contact.
+     * @return an unmodifiable snapshot of the groups, possibly empty, never null.
+     */
+    List<ContactGroup> getGroups( BareJid jid )
+    {
+        if ( jid == null )
+        {
+            return Collections.emptyList();
+        }
+        final ContactGroup[] groups = groupsByJid.getOrDefault( jid, NO_GROUPS );
+        return Collections.unmodifiableList( Arrays.asList( groups ) );
+    }
+}
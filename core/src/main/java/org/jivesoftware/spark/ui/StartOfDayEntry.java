@@ -15,9 +15,6 @@
  */
 package org.jivesoftware.spark.ui;
 
-import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
-
-import javax.swing.text.*;
 import java.awt.*;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -31,20 +28,8 @@ import java.time.format.DateTimeFormatter;
  */
 public class StartOfDayEntry extends TranscriptWindowEntry
 {
-    private static final MutableAttributeSet STYLE;
-
     private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern( "EEEE, dd MMMM yyyy" );
 
-    static
-    {
-        STYLE = new SimpleAttributeSet();
-        StyleConstants.setFontFamily( STYLE, "Dialog" );
-        StyleConstants.setFontSize( STYLE, SettingsManager.getLocalPreferences().getChatRoomFontSize() );
-        StyleConstants.setBold( STYLE, true );
-        StyleConstants.setUnderline( STYLE, true );
-        StyleConstants.setForeground( STYLE, Color.BLACK );
-    }
-
     protected StartOfDayEntry( ZonedDateTime timestamp )
     {
     	//delay here is true because StartOfDayEntry can appear among MessageEntries with delay
@@ -52,16 +37,13 @@ public class StartOfDayEntry extends TranscriptWindowEntry
     }
 
     @Override
-    protected void addTo( ChatArea chatArea ) throws BadLocationException
+    protected void addTo( TranscriptContent content )
     {
         // Get the instant that represents the start of the day in the local time-zone.
         final LocalDateTime startOfDay = getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDate().atStartOfDay();
 
         final String startOfDayMessage = FORMAT.format( startOfDay );
 
-        final Document doc = chatArea.getDocument();
-        doc.insertString(doc.getLength(), startOfDayMessage + '\n', STYLE );
-        // Enabling the 'setCaretPosition' line below causes Spark to freeze (often, not always) when trying to print the subject of a chatroom that's just being loaded.
-        // chatArea.setCaretPosition( doc.getLength() );
+        content.appendText( startOfDayMessage + '\n', TranscriptStyles.getTextStyle( Color.BLACK, true, false, true, false ) );
     }
 }
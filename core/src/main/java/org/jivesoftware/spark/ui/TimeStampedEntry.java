@@ -15,12 +15,9 @@
  */
 package org.jivesoftware.spark.ui;
 
-import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
-
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * An entry that is prefixed with a time stamp.
@@ -29,12 +26,9 @@ import java.time.format.DateTimeFormatter;
  */
 public abstract class TimeStampedEntry extends TranscriptWindowEntry
 {
-    private final DateTimeFormatter format;
-
     protected TimeStampedEntry( ZonedDateTime timestamp, boolean isDelayed )
     {
         super( timestamp, isDelayed );
-        format = DateTimeFormatter.ofPattern( SettingsManager.getLocalPreferences().getTimeFormat() );
     }
 
     protected String getFormattedTimestamp()
@@ -43,6 +37,6 @@ public abstract class TimeStampedEntry extends TranscriptWindowEntry
         final LocalDateTime localDateTime = getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDateTime();
 
         // Use the local timestamp to format a message that will be displayed to the end-user.
-        return "(" + format.format( localDateTime ) + ") ";
+        return "(" + TranscriptStyles.getTimeFormatter().format( localDateTime ) + ") ";
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Content that is to be added to the document of a chat area, built up outside of that document.
+ *
+ * Entries of a transcript window add their content to an instance of this class, after which all of it is inserted in
+ * the document in one operation. This causes a single document event, regardless of the amount of differently styled
+ * runs of text in the content.
+ */
+public final class TranscriptContent
+{
+    private final ChatArea chatArea;
+    private final List<String> texts = new ArrayList<>();
+    private final List<AttributeSet> styles = new ArrayList<>();
+    private int length = 0;
+
+    /**
+     * Creates empty content.
+     *
+     * @param chatArea the chat area to which the content is to be added (cannot be null).
+     */
+    public TranscriptContent( ChatArea chatArea )
+    {
+        if ( chatArea == null )
+        {
+            throw new IllegalArgumentException( "Argument 'chatArea' cannot be null." );
+        }
+        this.chatArea = chatArea;
+    }
+
+    /**
+     * The chat area to which the content is to be added. Its document must not be modified directly by entries.
+     *
+     * @return a chat area (never null).
+     */
+    public ChatArea getChatArea()
+    {
+        return chatArea;
+    }
+
+    /**
+     * Appends text in a particular style.
+     *
+     * @param text  the text to append.
+     * @param style the style of the text (can be null).
+     */
+    public void appendText( String text, AttributeSet style )
+    {
+        if ( text == null || text.isEmpty() )
+        {
+            return;
+        }
+        texts.add( text );
+        styles.add( style == null ? SimpleAttributeSet.EMPTY : style );
+        length += text.length();
+    }
+
+    /**
+     * Appends an image.
+     *
+     * @param icon the image to append (cannot be null).
+     */
+    public void appendIcon( Icon icon )
+    {
+        final MutableAttributeSet style = new SimpleAttributeSet();
+        StyleConstants.setIcon( style, icon );
+        appendText( " ", style );
+    }
+
+    /**
+     * Appends a component.
+     *
+     * @param component the component to append (cannot be null).
+     */
+    public void appendComponent( Component component )
+    {
+        final MutableAttributeSet style = new SimpleAttributeSet();
+        StyleConstants.setComponent( style, component );
+        appendText( " ", style );
+    }
+
+    /**
+     * The amount of characters that have been appended.
+     *
+     * @return a length.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Inserts the content into a document. When the document is a {@link TranscriptDocument}, this happens in one
+     * operation. Otherwise, each differently styled run of text is inserted separately.
+     *
+     * @param document the document to insert into.
+     * @param offset   the offset in the document at which to insert.
+     */
+    void insertInto( StyledDocument document, int offset ) throws BadLocationException
+    {
+        if ( length == 0 )
+        {
+            return;
+        }
+
+        if ( !( document instanceof TranscriptDocument ) )
+        {
+            for ( int i = 0; i < texts.size(); i++ )
+            {
+                document.insertString( offset, texts.get( i ), styles.get( i ) );
+                offset += texts.get( i ).length();
+            }
+            return;
+        }
+
+        // Every line break ends the paragraph that it is in, and starts a new one. The last new paragraph takes up the
+        // content that follows the insertion point. This mirrors the structure that DefaultStyledDocument creates
+        // when inserting the text as a string.
+        final AttributeSet paragraphStyle = document.getParagraphElement( offset ).getAttributes();
+        final boolean afterNewline = offset > 0 && document.getText( offset - 1, 1 ).charAt( 0 ) == '\n';
+        final List<ElementSpec> specs = new ArrayList<>();
+        ElementSpec lastStart = null;
+        if ( afterNewline )
+        {
+            specs.add( new ElementSpec( null, ElementSpec.EndTagType ) );
+            lastStart = new ElementSpec( paragraphStyle, ElementSpec.StartTagType );
+            specs.add( lastStart );
+        }
+        for ( int i = 0; i < texts.size(); i++ )
+        {
+            final char[] chars = texts.get( i ).toCharArray();
+            final AttributeSet style = styles.get( i );
+            int from = 0;
+            for ( int j = 0; j < chars.length; j++ )
+            {
+                if ( chars[ j ] == '\n' )
+                {
+                    specs.add( new ElementSpec( style, ElementSpec.ContentType, chars, from, j + 1 - from ) );
+                    specs.add( new ElementSpec( null, ElementSpec.EndTagType ) );
+                    lastStart = new ElementSpec( paragraphStyle, ElementSpec.StartTagType );
+                    specs.add( lastStart );
+                    from = j + 1;
+                }
+            }
+            if ( from < chars.length )
+            {
+                specs.add( new ElementSpec( style, ElementSpec.ContentType, chars, from, chars.length - from ) );
+            }
+        }
+        if ( lastStart != null )
+        {
+            lastStart.setDirection( afterNewline ? ElementSpec.JoinNextDirection : ElementSpec.JoinFractureDirection );
+        }
+        ( (TranscriptDocument) document ).insert( offset, specs.toArray( new ElementSpec[ 0 ] ) );
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+
+/**
+ * The document of a transcript window, which allows {@link TranscriptContent} to be inserted in one operation.
+ */
+class TranscriptDocument extends DefaultStyledDocument
+{
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void insert( int offset, ElementSpec[] data ) throws BadLocationException
+    {
+        super.insert( offset, data );
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.*;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Caches the text styles and time stamp formatter that are used to render entries in a transcript window.
+ *
+ * The styles depend on the font size and time format of the local preferences. These values are read once, and are
+ * read again (clearing all cached styles) when the preferences are changed through {@link SettingsManager}.
+ *
+ * The styles that are returned are shared, and must not be modified.
+ */
+final class TranscriptStyles
+{
+    /**
+     * The amount of palettes and text styles that are cached. When more are created, the cache is cleared.
+     */
+    static final int MAX_CACHED = 256;
+
+    private static final Map<PaletteKey, Palette> palettes = new ConcurrentHashMap<>();
+    private static final Map<TextStyleKey, AttributeSet> textStyles = new ConcurrentHashMap<>();
+    private static volatile int fontSize = -1;
+    private static volatile DateTimeFormatter timeFormatter = null;
+
+    static
+    {
+        SettingsManager.addPreferenceListener( preferences -> invalidate() );
+    }
+
+    private TranscriptStyles()
+    {
+    }
+
+    /**
+     * Clears all cached values, causing them to be recreated based on the current preferences.
+     */
+    static void invalidate()
+    {
+        fontSize = -1;
+        timeFormatter = null;
+        palettes.clear();
+        textStyles.clear();
+    }
+
+    /**
+     * @return the font size to use for chat messages.
+     */
+    static int getFontSize()
+    {
+        int result = fontSize;
+        if ( result < 0 )
+        {
+            result = SettingsManager.getLocalPreferences().getChatRoomFontSize();
+            fontSize = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the formatter to use for time stamps of chat messages.
+     */
+    static DateTimeFormatter getTimeFormatter()
+    {
+        DateTimeFormatter result = timeFormatter;
+        if ( result == null )
+        {
+            result = DateTimeFormatter.ofPattern( SettingsManager.getLocalPreferences().getTimeFormat() );
+            timeFormatter = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the styles for message text in a particular combination of colors.
+     *
+     * @param foreground the text color.
+     * @param background the background color.
+     * @return the styles (never null).
+     */
+    static Palette getPalette( Color foreground, Color background )
+    {
+        final PaletteKey key = new PaletteKey( getFontSize(), foreground, background );
+        Palette result = palettes.get( key );
+        if ( result == null )
+        {
+            if ( palettes.size() >= MAX_CACHED )
+            {
+                palettes.clear();
+            }
+            result = new Palette( key.fontSize, foreground, background );
+            palettes.put( key, result );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the style for a line of custom text.
+     *
+     * @param foreground    the text color.
+     * @param bold          true to use bold text.
+     * @param italic        true to use italic text.
+     * @param underline     true to have text underlined.
+     * @param strikeThrough true to have text strike through.
+     * @return the style (never null).
+     */
+    static AttributeSet getTextStyle( Color foreground, boolean bold, boolean italic, boolean underline, boolean strikeThrough )
+    {
+        final int flags = ( bold ? 1 : 0 ) | ( italic ? 2 : 0 ) | ( underline ? 4 : 0 ) | ( strikeThrough ? 8 : 0 );
+        final TextStyleKey key = new TextStyleKey( getFontSize(), foreground, flags );
+        AttributeSet result = textStyles.get( key );
+        if ( result == null )
+        {
+            if ( textStyles.size() >= MAX_CACHED )
+            {
+                textStyles.clear();
+            }
+            final MutableAttributeSet style = new SimpleAttributeSet();
+            StyleConstants.setFontFamily( style, "Dialog" );
+            StyleConstants.setFontSize( style, key.fontSize );
+            StyleConstants.setForeground( style, foreground );
+            StyleConstants.setBold( style, bold );
+            StyleConstants.setItalic( style, italic );
+            StyleConstants.setUnderline( style, underline );
+            StyleConstants.setStrikeThrough( style, strikeThrough );
+            result = style.copyAttributes();
+            textStyles.put( key, result );
+        }
+        return result;
+    }
+
+    /**
+     * The styles for message text in a particular font size and combination of colors: the plain style, and a style
+     * for each of the styling directives.
+     */
+    static final class Palette
+    {
+        private final AttributeSet plain;
+        private final AttributeSet bold;
+        private final AttributeSet italic;
+        private final AttributeSet strikeThrough;
+        private final AttributeSet monospaced;
+        private final AttributeSet keyword;
+
+        Palette( int fontSize, Color foreground, Color background )
+        {
+            final MutableAttributeSet style = new SimpleAttributeSet();
+            StyleConstants.setFontFamily( style, "Dialog" );
+            StyleConstants.setFontSize( style, fontSize );
+            StyleConstants.setForeground( style, foreground );
+            StyleConstants.setBackground( style, background );
+            plain = style.copyAttributes();
+
+            bold = derive( style, s -> StyleConstants.setBold( s, true ) );
+            italic = derive( style, s -> StyleConstants.setItalic( s, true ) );
+            strikeThrough = derive( style, s -> StyleConstants.setStrikeThrough( s, true ) );
+            monospaced = derive( style, s -> StyleConstants.setFontFamily( s, "Monospaced" ) );
+            keyword = derive( style, s -> StyleConstants.setForeground( s, foreground.brighter().brighter().brighter() ) );
+        }
+
+        private static AttributeSet derive( AttributeSet base, Consumer<MutableAttributeSet> modification )
+        {
+            final MutableAttributeSet style = new SimpleAttributeSet( base );
+            modification.accept( style );
+            return style.copyAttributes();
+        }
+
+        /**
+         * @return the style for text without styling directives.
+         */
+        AttributeSet getPlain()
+        {
+            return plain;
+        }
+
+        /**
+         * Returns the style for text that is marked up with a styling directive. Next to the directive characters,
+         * 'K' is recognized: it denotes the style of the directive characters themselves.
+         *
+         * @param directive the directive character.
+         * @return the style for the directive, or the plain style if the directive is not recognized.
+         */
+        AttributeSet getStyle( char directive )
+        {
+            switch ( directive )
+            {
+                case '*':
+                    return bold;
+                case '_':
+                    return italic;
+                case '~':
+                    return strikeThrough;
+                case '`':
+                    return monospaced;
+                case 'K': // Keyword
+                    return keyword;
+                default:
+                    Log.warning( "Cannot apply message style for unrecognized directive: " + directive );
+                    return plain;
+            }
+        }
+    }
+
+    private static final class PaletteKey
+    {
+        private final int fontSize;
+        private final Color foreground;
+        private final Color background;
+
+        private PaletteKey( int fontSize, Color foreground, Color background )
+        {
+            this.fontSize = fontSize;
+            this.foreground = foreground;
+            this.background = background;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            final PaletteKey that = (PaletteKey) o;
+            return fontSize == that.fontSize && Objects.equals( foreground, that.foreground ) && Objects.equals( background, that.background );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * ( 31 * fontSize + Objects.hashCode( foreground ) ) + Objects.hashCode( background );
+        }
+    }
+
+    private static final class TextStyleKey
+    {
+        private final int fontSize;
+        private final Color foreground;
+        private final int flags;
+
+        private TextStyleKey( int fontSize, Color foreground, int flags )
+        {
+            this.fontSize = fontSize;
+            this.foreground = foreground;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( o == null || getClass() != o.getClass() )
+            {
+                return false;
+            }
+            final TextStyleKey that = (TextStyleKey) o;
+            return fontSize == that.fontSize && flags == that.flags && Objects.equals( foreground, that.foreground );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * ( 31 * fontSize + Objects.hashCode( foreground ) ) + flags;
+        }
+    }
+}
@@ -39,6 +39,7 @@ import javax.swing.text.*;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.MouseEvent;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -58,22 +59,78 @@ import java.util.List;
  * to add new entries. Responsibility for the visual representation of each entry is delegated to the implementation of
  * that entry.
  *
+ * To keep long conversations responsive, only the most recent entries are added to the underlying document. Older
+ * entries are added to it when the user scrolls towards them.
+ *
  * @author Guus der Kinderen, guus.der.kinderen@gmail.com
  */
 public class TranscriptWindow extends ChatArea implements ContextMenuListener
 {
+    /**
+     * The order in which entries are displayed.
+     */
+    private static final Comparator<TranscriptWindowEntry> ORDER = Comparator.comparing( TranscriptWindowEntry::isDelayed ).thenComparing( TranscriptWindowEntry::getTimestamp );
+
+    /**
+     * The amount of entries that is kept in the document while the end of the conversation is being viewed. When more
+     * entries are in the document, the oldest ones are removed from it (but not from {@link #entries}).
+     */
+    static final int RENDER_WINDOW = 300;
+
+    /**
+     * The amount of entries that is added to the document at once, when scrolling towards entries that are not in it.
+     */
+    static final int RENDER_PAGE = 100;
+
     /**
      * Unless specifically documented otherwise, content is stored in an in-memory cache of {@link TranscriptWindowEntry}s.
-     * This cache is used to recompose the UI when needed (which typically occurs when entries are added out-of-order).
+     * Only the last entries of this cache are added to the document: the first {@link #renderedFrom} entries are not.
+     * Those are added to the document when the user scrolls towards them.
+     *
+     * Entries are looked up by index, so this is a random-access list. Entries are evicted from its start in batches.
+     */
+    private final ArrayList<TranscriptWindowEntry> entries = new ArrayList<>();
+
+    /**
+     * The amount of entries at the start of {@link #entries} that are not in the document.
      */
-    private final LinkedList<TranscriptWindowEntry> entries = new LinkedList<>();
+    private int renderedFrom = 0;
+
+    /**
+     * The position of the last character that each entry in the document added to it. This is used to find the
+     * content of entries in the document.
+     */
+    private final Map<TranscriptWindowEntry, Position> entryEnds = new IdentityHashMap<>();
+
+    /**
+     * The maximum amount of entries in this window. When more entries are added, the oldest ones are evicted.
+     */
+    private final int maxEntries;
+
+    private boolean renderingPrevious = false;
+
+    private JScrollBar scrollBar;
+
+    /**
+     * Adds older entries to the document when the user scrolls to the top of it.
+     */
+    private final AdjustmentListener scrollListener = e -> {
+        final JScrollBar bar = (JScrollBar) e.getAdjustable();
+        if ( renderedFrom > 0 && !renderingPrevious && bar.getValue() <= bar.getVisibleAmount() / 2 )
+        {
+            renderingPrevious = true;
+            SwingUtilities.invokeLater( () -> renderPrevious( bar ) );
+        }
+    };
 
     /**
      * Creates a default instance of <code>TranscriptWindow</code>.
      */
     public TranscriptWindow()
     {
+        setDocument( new TranscriptDocument() );
         setEditable( false );
+        maxEntries = Math.max( 1, SettingsManager.getLocalPreferences().getMaxTranscriptWindowEntries() );
 
         Collection<String> emoticonPacks;
         emoticonPacks = EmoticonManager.getInstance().getEmoticonPacks();
@@ -105,39 +162,40 @@ public class TranscriptWindow extends ChatArea implements ContextMenuListener
 
     }
 
+    @Override
+    public void addNotify()
+    {
+        super.addNotify();
+        final JScrollPane scrollPane = (JScrollPane) SwingUtilities.getAncestorOfClass( JScrollPane.class, this );
+        if ( scrollPane != null )
+        {
+            scrollBar = scrollPane.getVerticalScrollBar();
+            scrollBar.addAdjustmentListener( scrollListener );
+        }
+    }
+
+    @Override
+    public void removeNotify()
+    {
+        if ( scrollBar != null )
+        {
+            scrollBar.removeAdjustmentListener( scrollListener );
+            scrollBar = null;
+        }
+        super.removeNotify();
+    }
+
     protected synchronized void add( TranscriptWindowEntry entry )
     {
-        final TranscriptWindow transcriptWindow = this;
-        //boolean reorderEverything = false;
+        boolean outOfOrder = false;
         if ( !entries.isEmpty() )
         {
-            if ( entry.getTimestamp().isBefore( entries.getLast().getTimestamp() ) && !(entries.getLast() instanceof CustomTextEntry) )
+            if ( entry.getTimestamp().isBefore( getLastEntry().getTimestamp() ) && !(getLastEntry() instanceof CustomTextEntry) )
             {
-                Log.warning( "A chat entry appears to have been delivered out of order. The transcript window must be reordered!" );
-                //reorderEverything = true;
-
-                // This is an alternative approach to the 'reorderEverything boolean + routine. The idea behind using the
-                // SwingUtilities is to schedule redrawing after all currently queued messages (loads of which are
-                // probably also out of order), are processed, which should reduce the amount of redraws.
-                SwingUtilities.invokeLater( () ->
-                                            {
-                                                // Clear and refill the UI component.
-                                                try
-                                                {
-                                                    entries.sort( Comparator.comparing(TranscriptWindowEntry::isDelayed).thenComparing( TranscriptWindowEntry::getTimestamp ) );
-                                                    clear();
-                                                    for ( TranscriptWindowEntry e : entries )
-                                                    {
-                                                        e.addTo( transcriptWindow );
-                                                    }
-                                                }
-                                                catch ( BadLocationException ex )
-                                                {
-                                                    Log.error( "An exception prevented chat content to be redrawn in the user interface!", ex );
-                                                }
-                                            } );
+                Log.debug( "A chat entry appears to have been delivered out of order. It is inserted in place." );
+                outOfOrder = true;
             }
-            if ( !entry.getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDate().isEqual( entries.getLast().getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDate() ) )
+            if ( !entry.getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDate().isEqual( getLastEntry().getTimestamp().withZoneSameInstant( ZoneId.systemDefault() ).toLocalDate() ) )
             {
                 // The date appeared to have rolled over, since the last entry. Add a 'start-of-day' entry before we add
                 // the new entry, unless we're already in the process of adding exactly that 'start-of-day' entry.
@@ -149,23 +207,29 @@ public class TranscriptWindow extends ChatArea implements ContextMenuListener
             }
         }
 
-        entries.add( entry );
-
         try
         {
-//            if ( reorderEverything )
-//            {
-//                // Clear and refill the UI component.
-//                entries.sort( Comparator.comparing( TranscriptWindowEntry::getTimestamp ) );
-//                clear();
-//                for ( TranscriptWindowEntry e : entries )
-//                {
-//                    e.addTo( this );
-//                }
-//            }
-//            else
+            if ( outOfOrder )
+            {
+                insertInPlace( entry );
+            }
+            else
+            {
+                entries.add( entry );
+                addToDocument( entry );
+            }
+
+            if ( entries.size() > maxEntries )
             {
-                entry.addTo( this );
+                // Evict in batches, to avoid modifying the start of the document for every entry that is added.
+                evict( Math.max( 1, maxEntries / 10 ) );
+            }
+
+            // Keep the document small while the user follows the conversation. When the user is reading older
+            // entries, those are left alone until the user returns to the end of the conversation.
+            if ( entries.size() - renderedFrom > RENDER_WINDOW + RENDER_PAGE && isViewingEnd() )
+            {
+                unrender( entries.size() - renderedFrom - RENDER_WINDOW );
             }
         }
         catch ( BadLocationException ex )
@@ -174,34 +238,204 @@ public class TranscriptWindow extends ChatArea implements ContextMenuListener
         }
     }
 
+    /**
+     * Adds the content of an entry to the end of the document, recording where its content ends.
+     *
+     * @param entry the entry to add.
+     */
+    private void addToDocument( TranscriptWindowEntry entry ) throws BadLocationException
+    {
+        insertIntoDocument( Collections.singletonList( entry ), getDocument().getLength() );
+    }
 
     /**
-     * Inserts a component into the transcript window.
+     * Inserts an entry that is older than the last entry at the place where it belongs, without modifying the
+     * content of other entries. The entry is added to the document only when its neighbours are in the document.
      *
-     * @param component the component to insert.
+     * @param entry the entry to insert.
      */
-    public void addComponent( Component component )
+    private void insertInPlace( TranscriptWindowEntry entry ) throws BadLocationException
     {
-        final StyledDocument doc = (StyledDocument) getDocument();
+        // Out-of-order entries typically are only slightly out of order: search from the end.
+        int index = entries.size();
+        final ListIterator<TranscriptWindowEntry> iterator = entries.listIterator( index );
+        while ( iterator.hasPrevious() && ORDER.compare( iterator.previous(), entry ) > 0 )
+        {
+            index--;
+        }
+        entries.add( index, entry );
 
-        // The image must first be wrapped in a style
-        Style style = doc.addStyle( "StyleName", null );
+        if ( index < renderedFrom )
+        {
+            renderedFrom++;
+            return;
+        }
+        insertIntoDocument( entries.subList( index, index + 1 ), getEndOffset( index - 1 ) );
+    }
 
+    /**
+     * Returns the offset in the document directly after the content of an entry, or of the closest entry before it
+     * that has content in the document.
+     *
+     * @param index the index of the entry.
+     * @return an offset in the document.
+     */
+    private int getEndOffset( int index )
+    {
+        for ( int i = index; i >= renderedFrom; i-- )
+        {
+            final Position position = entryEnds.get( entries.get( i ) );
+            if ( position != null )
+            {
+                return position.getOffset() + 1;
+            }
+        }
+        return 0;
+    }
 
-        StyleConstants.setComponent( style, component );
+    /**
+     * Adds the content of entries to the document, starting at the provided offset. The content of all entries is
+     * collected first, after which it is inserted into the document in one operation, recording where the content
+     * of each entry ends.
+     *
+     * @param toInsert the entries to insert, in order.
+     * @param offset   the offset in the document at which to insert.
+     */
+    private void insertIntoDocument( List<TranscriptWindowEntry> toInsert, int offset ) throws BadLocationException
+    {
+        final TranscriptContent content = new TranscriptContent( this );
+        final int[] ends = new int[ toInsert.size() ];
+        for ( int i = 0; i < toInsert.size(); i++ )
+        {
+            final int before = content.getLength();
+            toInsert.get( i ).addTo( content );
+            ends[ i ] = content.getLength() > before ? content.getLength() - 1 : -1;
+        }
+
+        final StyledDocument document = getStyledDocument();
+        content.insertInto( document, offset );
+
+        for ( int i = 0; i < toInsert.size(); i++ )
+        {
+            if ( ends[ i ] >= 0 )
+            {
+                entryEnds.put( toInsert.get( i ), document.createPosition( offset + ends[ i ] ) );
+            }
+        }
+    }
 
-        // Insert the image at the end of the text
+    /**
+     * Removes the content of the oldest entries in the document from it. The entries themselves are retained.
+     *
+     * @param count the amount of entries to remove from the document.
+     */
+    private void unrender( int count ) throws BadLocationException
+    {
+        int end = -1;
+        for ( int i = 0; i < count && renderedFrom < entries.size(); i++ )
+        {
+            final Position position = entryEnds.remove( entries.get( renderedFrom++ ) );
+            if ( position != null )
+            {
+                end = Math.max( end, position.getOffset() );
+            }
+        }
+
+        final Document document = getDocument();
+        if ( end >= 0 )
+        {
+            document.remove( 0, Math.min( end + 1, document.getLength() ) );
+        }
+    }
+
+    /**
+     * Adds a page of the entries that precede the content of the document to it, keeping the content that the user
+     * is viewing in place.
+     *
+     * @param bar the vertical scroll bar of the viewport of this window.
+     */
+    private synchronized void renderPrevious( JScrollBar bar )
+    {
+        renderingPrevious = false;
+        if ( renderedFrom == 0 )
+        {
+            return;
+        }
+
+        final int count = Math.min( RENDER_PAGE, renderedFrom );
+        final int lengthBefore = getDocument().getLength();
         try
         {
-            doc.insertString( doc.getLength(), "ignored text", style );
-            doc.insertString( doc.getLength(), "\n", null );
+            insertIntoDocument( entries.subList( renderedFrom - count, renderedFrom ), 0 );
+            renderedFrom -= count;
+
+            // Scroll down by the height of the content that was added above the visible content.
+            final Rectangle firstPreviousLine = modelToView( getDocument().getLength() - lengthBefore );
+            if ( firstPreviousLine != null )
+            {
+                bar.setValue( bar.getValue() + firstPreviousLine.y );
+            }
         }
-        catch ( BadLocationException e )
+        catch ( BadLocationException ex )
         {
-            Log.error( e );
+            Log.error( "An exception prevented older chat content to be displayed in the user interface!", ex );
         }
     }
 
+    /**
+     * Checks if the end of the document is visible (or if this window is not displayed in a scroll pane).
+     */
+    private boolean isViewingEnd()
+    {
+        final JScrollBar bar = scrollBar;
+        return bar == null || bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - bar.getVisibleAmount() / 2;
+    }
+
+    /**
+     * Removes the oldest entries from this window, including their content in the document. Entries that are evicted
+     * can no longer be viewed in this window. The messages that they represent remain available through the
+     * transcript of the chat room.
+     *
+     * @param count the amount of entries to evict.
+     */
+    private void evict( int count ) throws BadLocationException
+    {
+        count = Math.min( count, entries.size() );
+        if ( count > renderedFrom )
+        {
+            unrender( count - renderedFrom );
+        }
+        entries.subList( 0, count ).clear();
+        renderedFrom -= count;
+    }
+
+    private TranscriptWindowEntry getLastEntry()
+    {
+        return entries.get( entries.size() - 1 );
+    }
+
+    /**
+     * Removes all content from this window, including entries that are not in the document.
+     */
+    @Override
+    public synchronized void clear()
+    {
+        super.clear();
+        entries.clear();
+        entryEnds.clear();
+        renderedFrom = 0;
+    }
+
+    /**
+     * Inserts a component into the transcript window.
+     *
+     * @param component the component to insert.
+     */
+    public void addComponent( Component component )
+    {
+        add( new ComponentEntry( ZonedDateTime.now(), component ) );
+    }
+
     /**
      * Adds a text message this transcript window.
      *
@@ -324,7 +558,7 @@ public class TranscriptWindow extends ChatArea implements ContextMenuListener
         {
             return new Date( 0 );
         }
-        return Date.from( entries.getLast().getTimestamp().toInstant() );
+        return Date.from( getLastEntry().getTimestamp().toInstant() );
     }
 
     /**
@@ -15,7 +15,6 @@
  */
 package org.jivesoftware.spark.ui;
 
-import javax.swing.text.BadLocationException;
 import java.time.ZonedDateTime;
 
 /**
@@ -72,14 +71,15 @@ public abstract class TranscriptWindowEntry
     }
 
     /**
-     * Adds this entry to the provided chat area.
+     * Adds the content of this entry to the provided buffer, which is inserted into the document of a chat area in
+     * one operation afterwards.
      *
      * This method is intended to be overridden by subclasses, which allows each subclass to decorate its content
      * appropriately.
      *
-     * @param chatArea the ChatArea to which content is to be added (cannot be null).
+     * @param content the content of the chat area to which this entry is to be added (cannot be null).
      */
-    protected abstract void addTo( ChatArea chatArea ) throws BadLocationException;
+    protected abstract void addTo( TranscriptContent content );
 
     @Override
     public boolean equals( Object o )
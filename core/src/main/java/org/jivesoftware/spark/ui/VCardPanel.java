@@ -40,9 +40,11 @@ import javax.swing.Timer;
 import org.jivesoftware.resource.SparkRes;
 import org.jivesoftware.smackx.vcardtemp.packet.VCard;
 import org.jivesoftware.spark.SparkManager;
+import org.jivesoftware.spark.util.AvatarCache;
 import org.jivesoftware.spark.util.GraphicUtils;
 import org.jivesoftware.spark.util.ModelUtil;
 import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.profile.VCardFetchScheduler;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.impl.JidCreate;
 
@@ -84,7 +86,7 @@ public class VCardPanel extends JPanel {
         avatarImage.setIcon(ico);
 
 
-        VCard vcard = SparkManager.getVCardManager().getVCard(jid);
+        VCard vcard = SparkManager.getVCardManager().getVCardFromMemory(jid, VCardFetchScheduler.Lane.VISIBLE);
 
 
         if (vcard == null) {
@@ -97,12 +99,7 @@ public class VCardPanel extends JPanel {
         byte[] bytes = vcard.getAvatar();
         if (bytes != null && bytes.length > 0) {
             try {
-                icon = new ImageIcon(bytes);
-                Image newImage = icon.getImage();
-                if (icon.getIconHeight() > 48 || icon.getIconWidth() > 48) {
-                newImage = newImage.getScaledInstance(-1, 48, Image.SCALE_SMOOTH);
-                }
-                icon = new ImageIcon(newImage);
+                icon = AvatarCache.getInstance().get(vcard.getAvatarHash(), bytes, AvatarCache.CHAT_HEADER_SIZE);
             }
             catch (Exception e) {
                 Log.error(e);
@@ -129,8 +129,7 @@ public class BannedUsers extends JPanel {
 
         while (bannedUsers != null && bannedUsers.hasNext()) {
             Affiliate bannedUser = bannedUsers.next();
-            ImageIcon icon = SparkRes.getImageIcon(SparkRes.STAR_RED_IMAGE);
-            icon.setDescription(bannedUser.getJid().toString());
+            ImageIcon icon = new ImageIcon(SparkRes.getImageIcon(SparkRes.STAR_RED_IMAGE).getImage(), bannedUser.getJid().toString());
             listModel.addElement(icon);
         }
     }
@@ -18,20 +18,17 @@ package org.jivesoftware.spark.ui.conferences;
 import org.jivesoftware.resource.Res;
 import org.jivesoftware.resource.SparkRes;
 import org.jivesoftware.smack.SmackException;
-import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.bookmarks.BookmarkManager;
 import org.jivesoftware.smackx.bookmarks.BookmarkedConference;
-import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
-import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
-import org.jivesoftware.smackx.disco.packet.DiscoverItems;
-import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.muc.packet.MUCInitialPresence;
 import org.jivesoftware.spark.SparkManager;
 import org.jivesoftware.spark.component.JiveTreeCellRenderer;
 import org.jivesoftware.spark.component.JiveTreeNode;
 import org.jivesoftware.spark.component.RolloverButton;
 import org.jivesoftware.spark.component.Tree;
 import org.jivesoftware.spark.plugin.ContextMenuListener;
+import org.jivesoftware.spark.util.DiscoveryCache;
 import org.jivesoftware.spark.util.GraphicUtils;
 import org.jivesoftware.spark.util.ResourceUtils;
 import org.jivesoftware.spark.util.SwingWorker;
@@ -64,6 +61,9 @@ public class BookmarksUI extends JPanel {
 
     private Collection<DomainBareJid> mucServices;
 
+    // The services that were added to the tree because they were discovered on the server of the user.
+    private final Set<DomainBareJid> discoveredServices = new HashSet<>();
+
     private final Set<EntityBareJid> autoJoinRooms = new HashSet<>();
 
     private final List<ContextMenuListener> listeners = new ArrayList<>();
@@ -183,7 +183,7 @@ public class BookmarksUI extends JPanel {
             }
         };
         
-        TaskEngine.getInstance().schedule(bookmarkTask, 5000);
+        TaskEngine.getInstance().submit(bookmarkTask);
     });
     }
     private void checkPopup(MouseEvent mouseEvent) {
@@ -334,36 +334,70 @@ public class BookmarksUI extends JPanel {
     }
 
     private void addRegisteredServices() {
-        SwingWorker worker = new SwingWorker() {
-
-            @Override
-            public Object construct() {
-                try {
-                    if (SparkManager.getConnection().isConnected()) {
-                        mucServices = MultiUserChatManager.getInstanceFor( SparkManager.getConnection() ).getMucServiceDomains();
-                    }
-                }
-                catch (XMPPException | SmackException | InterruptedException e) {
-                    Log.error("Unable to load MUC Service Names.", e);
-                }
-                return mucServices;
+        TaskEngine.getInstance().submit(() -> {
+            if (!SparkManager.getConnection().isConnected()) {
+                return;
             }
+            final DomainBareJid server = SparkManager.getConnection().getXMPPServiceDomain();
+            final DiscoveryCache discoveryCache = DiscoveryCache.getInstance();
 
-            @Override
-            public void finished() {
-                if (mucServices == null) {
-                    return;
-                }
+            // Show the services that were found in an earlier session right away, then look for changes.
+            showServices(discoveryCache.getCachedServices(server, MUCInitialPresence.NAMESPACE), false);
+            try {
+                showServices(discoveryCache.findServices(server, MUCInitialPresence.NAMESPACE, true), true);
+            }
+            catch (XMPPException | SmackException | InterruptedException e) {
+                Log.error("Unable to load MUC Service Names.", e);
+            }
+        });
+    }
 
-                for (DomainBareJid service : mucServices) {
-                    if (!hasService(service)) {
-                        addServiceToList(service);
+    /**
+     * Shows the services that were discovered on the server of the user. When the services are the result of a new
+     * discovery, services that were discovered before but no longer exist are removed, unless they hold bookmarks.
+     *
+     * @param services the discovered services.
+     * @param current  true if the services are the result of a new discovery, false if they were cached.
+     */
+    private void showServices(final List<DomainBareJid> services, final boolean current) {
+        if (services.isEmpty() && !current) {
+            return;
+        }
+        EventQueue.invokeLater(() -> {
+            mucServices = services;
+            if (current) {
+                final Iterator<DomainBareJid> iterator = discoveredServices.iterator();
+                while (iterator.hasNext()) {
+                    final DomainBareJid service = iterator.next();
+                    if (!services.contains(service)) {
+                        iterator.remove();
+                        removeServiceFromList(service);
                     }
                 }
             }
-        };
+            for (DomainBareJid service : services) {
+                if (!hasService(service)) {
+                    addServiceToList(service);
+                }
+                discoveredServices.add(service);
+            }
+        });
+    }
 
-        worker.start();
+    /**
+     * Removes a service from the services list, unless it holds bookmarks.
+     *
+     * @param service the service to remove.
+     */
+    private void removeServiceFromList(DomainBareJid service) {
+        final TreePath path = tree.findByName(tree, new String[]{rootNode.getUserObject().toString(), service.toString()});
+        if (path == null) {
+            return;
+        }
+        final JiveTreeNode serviceNode = (JiveTreeNode)path.getLastPathComponent();
+        if (serviceNode.getChildCount() == 0) {
+            ((DefaultTreeModel)tree.getModel()).removeNodeFromParent(serviceNode);
+        }
     }
 
     /**
@@ -461,30 +495,24 @@ public class BookmarksUI extends JPanel {
                     serviceField.setEnabled(false);
                     addButton.setEnabled(false);
                     SwingWorker worker = new SwingWorker() {
-                        DiscoverInfo discoInfo;
+                        DiscoveryCache.Info discoInfo;
 
                         @Override
                         public Object construct() {
-                            XMPPConnection connection = SparkManager.getConnection();
-                            ServiceDiscoveryManager discoManager = ServiceDiscoveryManager.getInstanceFor(connection);
+                            final DiscoveryCache discoveryCache = DiscoveryCache.getInstance();
 
                             try {
                                 DomainBareJid conferenceServiceJid = JidCreate.domainBareFrom(conferenceService);
-                                discoInfo = discoManager.discoverInfo(conferenceServiceJid);
-                                for (DiscoverInfo.Identity identity : discoInfo.getIdentities() ) {
-                                    if ("conference".equals(identity.getCategory())) {
-                                        serviceList.add(conferenceServiceJid);
-                                        break;
+                                discoInfo = discoveryCache.discoverInfo(conferenceServiceJid, null, true);
+                                if (discoInfo.hasIdentity("conference")) {
+                                    serviceList.add(conferenceServiceJid);
+                                }
+                                else if (discoInfo.hasIdentity("server")) {
+                                    try {
+                                        serviceList.addAll(discoveryCache.findServices(conferenceServiceJid, MUCInitialPresence.NAMESPACE, true));
                                     }
-                                    else if ("server".equals(identity.getCategory())) {
-                                        try {
-                                            Collection<DomainBareJid> services = getConferenceServices(conferenceServiceJid);
-                                            serviceList.addAll(services);
-                                        }
-                                        catch (Exception e1) {
-                                            Log.error("Unable to load conference services in server.", e1);
-                                        }
-
+                                    catch (XMPPException | SmackException e1) {
+                                        Log.error("Unable to load conference services in server.", e1);
                                     }
                                 }
                             }
@@ -532,31 +560,6 @@ public class BookmarksUI extends JPanel {
         return servicePanel;
     }
 
-    private Collection<DomainBareJid> getConferenceServices(DomainBareJid server) throws Exception {
-        List<DomainBareJid> answer = new ArrayList<>();
-        ServiceDiscoveryManager discoManager = ServiceDiscoveryManager.getInstanceFor(SparkManager.getConnection());
-        DiscoverItems items = discoManager.discoverItems(server);
-        for (DiscoverItems.Item item : items.getItems()) {
-            DomainBareJid entityID = item.getEntityID().asDomainBareJid();
-            // TODO: We should not simply assumet that this is MUC service just because it starts with a given prefix.
-            if (entityID.toString().startsWith("conference") || entityID.toString().startsWith("private")) {
-                answer.add(entityID);
-            }
-            else {
-                try {
-                    DiscoverInfo info = discoManager.discoverInfo(item.getEntityID());
-                    if (info.containsFeature("http://jabber.org/protocol/muc")) {
-                        answer.add(entityID);
-                    }
-                }
-                catch (XMPPException | SmackException e) {
-                    Log.error("Problem when loading conference service.", e);
-                }
-            }
-        }
-        return answer;
-    }
-
     private boolean hasService(CharSequence service) {
         TreePath path = tree.findByName(tree, new String[]{rootNode.getUserObject().toString(), service.toString()});
         return path != null;
@@ -37,6 +37,7 @@ import javax.swing.JTable;
 import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
 import javax.swing.RowFilter;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.TableCellRenderer;
 import javax.swing.table.TableModel;
@@ -53,7 +54,6 @@ import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smackx.muc.MultiUserChatManager;
 import org.jivesoftware.smackx.xdata.form.FillableForm;
 import org.jivesoftware.smackx.bookmarks.BookmarkedConference;
-import org.jivesoftware.smackx.muc.HostedRoom;
 import org.jivesoftware.smackx.muc.MultiUserChat;
 import org.jivesoftware.smackx.muc.RoomInfo;
 import org.jivesoftware.spark.ChatManager;
@@ -67,6 +67,7 @@ import org.jivesoftware.spark.ui.ChatRoomNotFoundException;
 import org.jivesoftware.spark.ui.rooms.GroupChatRoom;
 import org.jivesoftware.spark.util.ImageCombiner;
 import org.jivesoftware.spark.util.ResourceUtils;
+import org.jivesoftware.spark.util.SwingBatchQueue;
 import org.jivesoftware.spark.util.SwingWorker;
 import org.jivesoftware.spark.util.TaskEngine;
 import org.jivesoftware.spark.util.UIComponentRegistry;
@@ -120,7 +121,13 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
     private int twoButtonWidth;
     private int oneButtonWidth;
 
-    private boolean partialDiscovery = false;
+    /**
+     * Identifies the discovery of rooms of which the results are displayed. Accessed on the event dispatch thread.
+     */
+    private Object discoveryToken;
+
+    private ImageIcon lockedIcon;
+    private ImageIcon bookmarkedLockedIcon;
 
     private final JPopupMenu popup;
 
@@ -230,13 +237,23 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
         @Override
         public void keyReleased(KeyEvent e) {
             JTextField textField = (JTextField)e.getSource();
-            String text = textField.getText();
-            List<RowFilter<Object,Object>> filters = new ArrayList<>();
-            filters.add(RowFilter.regexFilter(text, 1));
-            filters.add(RowFilter.regexFilter(text, 2));
-            filters.add(RowFilter.regexFilter(text, 3));
-            RowFilter<Object,Object> af = RowFilter.orFilter(filters);
-            sorter.setRowFilter(af);
+            final String text = textField.getText().toLowerCase();
+            if (text.isEmpty()) {
+                sorter.setRowFilter(null);
+                return;
+            }
+            // Match the text literally, so that typing does not require compiling (or fail on) a regular expression.
+            sorter.setRowFilter(new RowFilter<Object, Object>() {
+                @Override
+                public boolean include(Entry<?, ?> entry) {
+                    for (int column = 1; column <= 3; column++) {
+                        if (entry.getStringValue(column).toLowerCase().contains(text)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
         }
     });                   
 	joinRoomButton.addActionListener( actionEvent -> joinSelectedRoom() );
@@ -301,79 +318,49 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
        stopLoading.start();
    }
 
-   private void clearTable(){
-       SwingWorker clearTable = new SwingWorker() {
-           
-           @Override
-           public Object construct() {
-               return null;
-           }
-           @Override
-           public void finished() {
-               roomsTable.clearTable();
-           }
-       };
-       clearTable.start();
-   }
-
     private void refreshRoomList(final DomainBareJid serviceName) {
-        startLoadingImg();
-        clearTable();
+        roomsTable.clearTable();
+        discoverRooms(serviceName, true);
+    }
 
-        TimerTask refreshTask = new TimerTask() {
-            Map<EntityBareJid, HostedRoom> rooms;
+    /**
+     * Lists the rooms of a service in the table. Rooms are added to the table in batches, as they are discovered.
+     * Must be invoked on the event dispatch thread.
+     *
+     * @param serviceName the service of which to list the rooms.
+     * @param refresh true to request information of all rooms, false to use recently cached information.
+     */
+    private void discoverRooms(final DomainBareJid serviceName, final boolean refresh) {
+        startLoadingImg();
 
-            @Override
-            public void run() {
-                try {
-                    rooms = MultiUserChatManager.getInstanceFor(SparkManager.getConnection()).getRoomsHostedBy(serviceName);
-                    try { 
-                        for (Map.Entry<EntityBareJid, HostedRoom> entry : rooms.entrySet()) {
-                            RoomObject room = getRoomsAndInfo(entry.getValue());
-                            addRoomToTable(room.getRoomJID(), room.getRoomName(),
-                            room.getNumberOfOccupants());
-                        }
-                        stopLoadingImg();
-                    } catch (Exception e) {
-                        Log.error("Unable to retrieve room list and info.", e);
-                    }
-                } catch ( Exception e1 ) {
-                    Log.error(e1);
-                }
+        // Rooms of a previous discovery that is still running are ignored.
+        final Object token = new Object();
+        discoveryToken = token;
+        final SwingBatchQueue<RoomDirectory.Room> discovered = new SwingBatchQueue<>(room -> {
+            if (discoveryToken == token) {
+                addRoomToTable(room.getJid(), room.getName(), room.getOccupants(), room.isLocked());
             }
-        };
-        TaskEngine.getInstance().submit(refreshTask);
-    }
+        }, null);
 
-    private RoomObject getRoomsAndInfo(final HostedRoom room) {
-        RoomObject result = null;
-        try {
-            try {
-                String roomName = room.getName();
-                EntityBareJid roomJID = room.getJid();
-                int numberOfOccupants = -1;
-                RoomInfo roomInfo = null;
-                try {
-                    roomInfo = MultiUserChatManager.getInstanceFor(SparkManager.getConnection()).getRoomInfo(roomJID);
-                } catch (Exception e) {
-                    // Nothing to do
+        TaskEngine.getInstance().submit(() -> {
+            final boolean success = RoomDirectory.getInstance().discover(serviceName, refresh, discovered::add);
+            SwingUtilities.invokeLater(() -> {
+                if (discoveryToken != token) {
+                    return;
                 }
-
-                if (roomInfo != null) {
-                    numberOfOccupants = roomInfo.getOccupantsCount();
+                stopLoadingImg();
+                if (!success && !refresh) {
+                    UIManager.put("OptionPane.okButtonText", Res.getString("ok"));
+                    JOptionPane.showMessageDialog(conferences,
+                        Res.getString("message.conference.info.error"),
+                        Res.getString("title.error"),
+                        JOptionPane.ERROR_MESSAGE);
+                    if (dlg != null) {
+                        dlg.dispose();
+                    }
                 }
-
-                result = new RoomObject();
-                result.setRoomJID(roomJID);
-                result.setRoomName(roomName);
-                result.setNumberOfOccupants(numberOfOccupants);
-            } catch (Exception e) {
-                Log.error("Error setting up GroupChatTable", e);
-            }
-        } catch (Exception e) {
-            Log.error(e);
-        }
-        return result;
+            });
+        });
     }
 
     private void bookmarkRoom(DomainBareJid serviceName) {
@@ -495,66 +482,6 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
      * Displays the ConferenceRoomBrowser.
      */
     public void invoke() {
-        startLoadingImg();
-        TimerTask invokeThread = new TimerTask() {
-            Map<EntityBareJid, HostedRoom> rooms;
-
-            @Override
-            public void run() {
-                try {
-                    rooms = MultiUserChatManager.getInstanceFor(SparkManager.getConnection()).getRoomsHostedBy(serviceName);
-
-                    if (rooms == null) {
-                    	UIManager.put("OptionPane.okButtonText", Res.getString("ok"));
-                        JOptionPane.showMessageDialog(conferences,
-                            Res.getString("message.conference.info.error"),
-                            Res.getString("title.error"),
-                            JOptionPane.ERROR_MESSAGE);
-                        if (dlg != null) {
-                        dlg.dispose();
-                        }
-                    }else{
-                        try {
-                            for (Map.Entry<EntityBareJid, HostedRoom> room : rooms.entrySet()) {
-
-                            String roomName = room.getValue().getName();
-                            EntityBareJid roomJID = room.getValue().getJid();
-
-                            int numberOfOccupants = -1;
-
-                            // Need to handle the case where the room info does not
-                            // contain the number of occupants. If that is the case,
-                            // we should not continue to request this info from the
-                            // service.
-                            if (!partialDiscovery) {
-                                RoomInfo roomInfo = null;
-                                try {
-                                roomInfo = MultiUserChatManager.getInstanceFor( SparkManager.getConnection() ).getRoomInfo( roomJID );
-                                } catch (Exception e) {
-                                // Nothing to do
-                                }
-
-                                if (roomInfo != null) {
-                                numberOfOccupants = roomInfo
-                                    .getOccupantsCount();
-                                }
-                                if (roomInfo == null || numberOfOccupants == -1) {
-                                partialDiscovery = true;
-                                }
-                            }
-                            addRoomToTable(roomJID, roomName, numberOfOccupants);
-                            }
-                        } catch (Exception e) {
-                            Log.error("Error setting up GroupChatTable", e);
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.error("Unable to retrieve list of rooms.", e);
-                }
-                stopLoadingImg();
-            }
-        };
-
         final JOptionPane pane;
 
         TitlePanel titlePanel;
@@ -660,13 +587,16 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 
         dlg.setVisible(true);
         dlg.toFront();
-        dlg.requestFocus();  
-        TaskEngine.getInstance().submit(invokeThread);
+        dlg.requestFocus();
+        discoverRooms(serviceName, false);
     }
 
     private final class RoomList extends Table {
 	private static final long serialVersionUID = -731280190627042419L;
 
+	private final TableCellRenderer labelRenderer = new JLabelRenderer(false);
+	private final TableCellRenderer centerRenderer = new CenterRenderer();
+
 	public RoomList() {
 	    super(new String[] { " ", Res.getString("title.name"),
 		    Res.getString("title.address"),
@@ -707,12 +637,12 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 	    Object o = getValueAt(row, column);
 	    if (o != null) {
 		if (o instanceof JLabel) {
-		    return new JLabelRenderer(false);
+		    return labelRenderer;
 		}
 	    }
 
 	    if (column == 3) {
-		return new CenterRenderer();
+		return centerRenderer;
 	    }
 
 	    return super.getCellRenderer(row, column);
@@ -862,7 +792,7 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 
 		// new DataFormDialog(groupChat, form);
 		groupChat.sendConfigurationForm(form);
-        addRoomToTable(groupChat.getRoom(), groupChat.getRoom().getLocalpart(), 1);
+        addRoomToTable(groupChat.getRoom(), groupChat.getRoom().getLocalpart(), 1, mucRoomDialog.isPasswordProtected());
 	    } catch (XMPPException | SmackException | InterruptedException e1) {
 		Log.error("Error creating new room.", e1);
 		UIManager.put("OptionPane.okButtonText", Res.getString("ok"));
@@ -887,57 +817,42 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
      *            specified, the the occupant count will show as n/a.
      */
     private void addRoomToTable(final EntityBareJid jid, final CharSequence roomName,
-	    final int numberOfOccupants) {
-        SwingWorker addRoomThread = new SwingWorker() {
-
-            @Override
-            public Object construct() {
-                JLabel iconLabel = new JLabel();
-                iconLabel.setAlignmentX(JLabel.RIGHT_ALIGNMENT);
-                boolean isbookmark = false;
-                boolean ispassword = false;
-
-                ImageIcon bookmarkicon = SparkRes.getImageIcon(SparkRes.BOOKMARK_ICON);
-                ImageIcon passwordicon = SparkRes.getImageIcon(SparkRes.LOCK_16x16);
-
-                if (isBookmarked(jid)) {
-                    isbookmark = true;
-                    iconLabel.setIcon(SparkRes.getImageIcon(SparkRes.BOOKMARK_ICON));
-                }
-                if (isPasswordProtected(jid)) {
-                    ispassword = true;
-                }
-
-                if (isbookmark && ispassword) {
-                    Image img = ImageCombiner.combine(bookmarkicon, passwordicon);
-                    iconLabel.setIcon(new ImageIcon(img));
-                } else if (isbookmark) {
-                    iconLabel.setIcon(bookmarkicon);
-                } else if (ispassword) {
-                    Image img = ImageCombiner.returnTransparentImage(
-                        passwordicon.getIconWidth(), passwordicon.getIconHeight());
+	    final int numberOfOccupants, final boolean locked) {
+        JLabel iconLabel = new JLabel();
+        iconLabel.setAlignmentX(JLabel.RIGHT_ALIGNMENT);
+        final boolean bookmarked = isBookmarked(jid);
+        if (bookmarked && locked) {
+            iconLabel.setIcon(getBookmarkedLockedIcon());
+        } else if (bookmarked) {
+            iconLabel.setIcon(SparkRes.getImageIcon(SparkRes.BOOKMARK_ICON));
+        } else if (locked) {
+            iconLabel.setIcon(getLockedIcon());
+        }
 
-                    Image combined = ImageCombiner.combine(new ImageIcon(img),
-                        passwordicon);
+        String occupants = Integer.toString(numberOfOccupants);
+        if (numberOfOccupants == -1) {
+            occupants = "n/a";
+        }
 
-                    iconLabel.setIcon(new ImageIcon(combined));
-                }
+        roomsTable.getTableModel().addRow(new Object[] { iconLabel, roomName.toString(), jid.getLocalpart().toString(), occupants });
+    }
 
-                String occupants = Integer.toString(numberOfOccupants);
-                if (numberOfOccupants == -1) {
-                    occupants = "n/a";
-                }
+    private ImageIcon getBookmarkedLockedIcon() {
+        if (bookmarkedLockedIcon == null) {
+            bookmarkedLockedIcon = new ImageIcon(ImageCombiner.combine(
+                SparkRes.getImageIcon(SparkRes.BOOKMARK_ICON), SparkRes.getImageIcon(SparkRes.LOCK_16x16)));
+        }
+        return bookmarkedLockedIcon;
+    }
 
-                return new Object[] { iconLabel, roomName.toString(), jid.getLocalpart().toString(), occupants };
-            }
-            
-            @Override
-            public void finished() {
-                Object[] insertRoom = (Object[])get();
-                roomsTable.getTableModel().addRow(insertRoom);
-            }
-        };
-        addRoomThread.start();
+    private ImageIcon getLockedIcon() {
+        if (lockedIcon == null) {
+            final ImageIcon passwordicon = SparkRes.getImageIcon(SparkRes.LOCK_16x16);
+            final Image img = ImageCombiner.returnTransparentImage(
+                passwordicon.getIconWidth(), passwordicon.getIconHeight());
+            lockedIcon = new ImageIcon(ImageCombiner.combine(new ImageIcon(img), passwordicon));
+        }
+        return lockedIcon;
     }
 
     /**
@@ -960,24 +875,6 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 
     }
 
-    /**
-     * Returns true if the room is password protected or Members only
-     *
-     * @param roomjid
-     * @return
-     */
-    private boolean isPasswordProtected(EntityBareJid roomjid) {
-        boolean result = false;
-        try {
-            RoomInfo rif = MultiUserChatManager.getInstanceFor(SparkManager.getConnection()).getRoomInfo(roomjid);
-            result = rif.isMembersOnly() || rif.isPasswordProtected();
-        } catch (XMPPException | SmackException | NumberFormatException | InterruptedException e) {
-            Log.error(e);
-        }
-
-        return result;
-    }
-
     /**
      * Toggles the bookmark room button depending on it's state.
      *
@@ -1017,37 +914,6 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 	}
     }
 
-    private static class RoomObject {
-	private String roomName;
-	private EntityBareJid roomJID;
-
-	int numberOfOccupants;
-
-	public String getRoomName() {
-	    return roomName;
-	}
-
-	public void setRoomName(String roomName) {
-	    this.roomName = roomName;
-	}
-
-	public EntityBareJid getRoomJID() {
-	    return roomJID;
-	}
-
-	public void setRoomJID(EntityBareJid roomJID) {
-	    this.roomJID = roomJID;
-	}
-
-	public int getNumberOfOccupants() {
-	    return numberOfOccupants;
-	}
-
-	public void setNumberOfOccupants(int numberOfOccupants) {
-	    this.numberOfOccupants = numberOfOccupants;
-	}
-    }
-
     @Override
 	public void componentHidden(ComponentEvent e) {
 
@@ -1150,7 +1016,16 @@ public class ConferenceRoomBrowser extends JPanel implements ActionListener,
 
     static class NumericComparator implements Comparator<String> {
         public int compare(String a, String b) throws ClassCastException {
-            return Long.valueOf(a).compareTo(Long.valueOf(b));
+            return Long.compare(toLong(a), toLong(b));
+        }
+
+        // The occupant count of a room can be "n/a".
+        private static long toLong(String value) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
         }
     }
 }
@@ -23,7 +23,6 @@ import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Message;
 import org.jivesoftware.smack.packet.Presence;
 import org.jivesoftware.smack.util.StringUtils;
-import org.jivesoftware.smackx.bookmarks.BookmarkManager;
 import org.jivesoftware.smackx.bookmarks.BookmarkedConference;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.muc.InvitationListener;
@@ -141,16 +140,7 @@ public class ConferenceServices implements InvitationListener {
 
 			@Override
 			public void run() {
-				Collection<BookmarkedConference> bc = null;
-
-                try {
-                    while (bc == null) {
-                        BookmarkManager manager = BookmarkManager.getBookmarkManager(SparkManager.getConnection());
-                        bc = manager.getBookmarkedConferences();
-                    }
-                } catch (XMPPException | SmackException | InterruptedException error) {
-                    Log.error(error);
-                }
+                // The bookmarks are retrieved by the UI.
                 bookmarksUI.loadUI();
                 addBookmarksUI();
 			}
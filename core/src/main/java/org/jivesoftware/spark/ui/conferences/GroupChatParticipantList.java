@@ -37,9 +37,11 @@ import org.jivesoftware.spark.ui.ChatRoom;
 import org.jivesoftware.spark.ui.ChatRoomNotFoundException;
 import org.jivesoftware.spark.ui.rooms.ChatRoomImpl;
 import org.jivesoftware.spark.ui.rooms.GroupChatRoom;
+import org.jivesoftware.spark.ui.rooms.OccupantRegistry;
 import org.jivesoftware.spark.util.ModelUtil;
 import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
+import org.jivesoftware.sparkimpl.settings.local.PreferenceListener;
 import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.EntityBareJid;
@@ -50,6 +52,8 @@ import org.jxmpp.jid.parts.Resourcepart;
 import org.jxmpp.stringprep.XmppStringprepException;
 
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
@@ -70,27 +74,26 @@ public class GroupChatParticipantList extends JPanel {
 	private MultiUserChat chat;
 	private final LocalPreferences _localPreferences = SettingsManager.getLocalPreferences();
 
-	private final Map<CharSequence, EntityFullJid> userMap = new HashMap<>();
-
 	private final UserManager userManager = SparkManager.getUserManager();
 
-	private final DefaultListModel<JLabel> model = new DefaultListModel<>();
+	private final ParticipantListModel model = new ParticipantListModel();
+
+	private DefaultListModel<JLabel> legacyModel;
 
 	private final JXList participantsList;
 
 	private PresenceListener listener = null;
 
+	private PreferenceListener preferenceListener = null;
+
+	private boolean showingRoleIcons = _localPreferences.isShowingRoleIcons();
+
 	private final Map<CharSequence, String> invitees = new HashMap<>();
 
 	private boolean allowNicknameChange = true;
 
 	private DiscoverInfo roomInformation;
 
-	private final List<JLabel> users = new ArrayList<>();
-
-	private final Map<EntityFullJid, MUCRole> usersToRoles = new HashMap<>();
-	private final Map<EntityFullJid, MUCAffiliation> usersToAffiliation = new HashMap<>();
-
 	/**
 	 * Creates a new RoomInfo instance using the specified ChatRoom. The
 	 * RoomInfo component is responsible for monitoring all activity in the
@@ -115,10 +118,10 @@ public class GroupChatParticipantList extends JPanel {
 			public void mouseClicked(MouseEvent evt) {
 				if (evt.getClickCount() == 2) {
 					String selectedUser = getSelectedUser();
-					if (selectedUser == null) {
+					if (selectedUser == null || model.getJid(selectedUser) == null) {
 					    return;
 					}
-					startChat(groupChatRoom, userMap.get(Resourcepart.fromOrThrowUnchecked(selectedUser)));
+					startChat(groupChatRoom, model.getJid(selectedUser));
 				}
 			}
 
@@ -156,6 +159,14 @@ public class GroupChatParticipantList extends JPanel {
 
 	chat = groupChatRoom.getMultiUserChat();
 
+	groupChatRoom.getOccupantRegistry().addListener(new OccupantRegistry.Listener() {
+	    @Override
+	    public void blockingChanged(EntityFullJid occupant, boolean blocked) {
+		final Icon icon = blocked ? SparkRes.getImageIcon(SparkRes.BRICKWALL_IMAGE) : getImageIcon(occupant);
+		SwingUtilities.invokeLater(() -> model.setIcon(occupant.getResourcepart(), icon));
+	    }
+	});
+
 	chat.addInvitationRejectionListener( ( jid1, reason, message, rejection ) -> {
     String nickname = userManager.getUserNicknameFromJID(jid1);
 
@@ -179,7 +190,6 @@ public class GroupChatParticipantList extends JPanel {
         final EntityFullJid userid = p.getFrom().asEntityFullJidOrThrow();
 
         Resourcepart displayName = userid.getResourcepart();
-        userMap.put(displayName, userid);
 
         if ( p.getType() == Presence.Type.available )
         {
@@ -210,6 +220,15 @@ public class GroupChatParticipantList extends JPanel {
 
 	chat.addParticipantListener(listener);
 
+	// Participants are ordered by their role only when role icons are shown.
+	preferenceListener = preferences -> SwingUtilities.invokeLater(() -> {
+	    if (preferences.isShowingRoleIcons() != showingRoleIcons) {
+		showingRoleIcons = preferences.isShowingRoleIcons();
+		updateParticipants();
+	    }
+	});
+	SettingsManager.addPreferenceListener(preferenceListener);
+
 	ServiceDiscoveryManager disco = ServiceDiscoveryManager
 		.getInstanceFor(SparkManager.getConnection());
 	try {
@@ -246,9 +265,8 @@ public class GroupChatParticipantList extends JPanel {
 
 	protected ImageIcon getImageIcon(EntityFullJid participantJID) {
 		Resourcepart displayName = participantJID.getResourcepart();
-		ImageIcon icon = SparkRes.getImageIcon(SparkRes.GREEN_BALL);
-		icon.setDescription(displayName.toString());
-		return icon;
+		// The icons of SparkRes are shared, so the description is given to an icon of its own.
+		return new ImageIcon(SparkRes.getImageIcon(SparkRes.GREEN_BALL).getImage(), displayName.toString());
 	}	
 
     protected void addParticipant(final EntityFullJid participantJID, Presence presence) {
@@ -284,9 +302,6 @@ public class GroupChatParticipantList extends JPanel {
 		role = MUCRole.none;
 	}
 
-	usersToRoles.put(participantJID, role);
-	usersToAffiliation.put(participantJID, affiliation);
-
 	Icon icon;
 	if (_localPreferences.isShowingRoleIcons()) {
 	    icon = getIconForRole(role, affiliation);
@@ -297,16 +312,8 @@ public class GroupChatParticipantList extends JPanel {
 		}
 	}
 
-	if (!exists(nickname)) {
-	    addUser(icon, nickname);
-	} else {
-	    int index = getIndex(nickname);
-	    if (index != -1) {
-		final JLabel userLabel = new JLabel(nickname.toString(), icon,
-            SwingConstants.CENTER);
-		model.setElementAt(userLabel, index);
-	    }
-	}
+	// Adds the participant, or moves it to its new position if its role or affiliation changed.
+	model.put(nickname, participantJID, icon, getRank(role, affiliation));
     }
 
 	/**
@@ -361,22 +368,11 @@ public class GroupChatParticipantList extends JPanel {
     }
 
 	public void userHasLeft(CharSequence userid) {
-		int index = getIndex(userid);
-
-		if (index != -1) {
-			removeUser(userid);
-			userMap.remove(userid);
-		}
+		removeUser(userid);
 	}
 
 	protected boolean exists(CharSequence nickname) {
-		for (int i = 0; i < model.getSize(); i++) {
-			final JLabel userLabel = model.getElementAt(i);
-			if (userLabel.getText().equals(nickname.toString())) {
-				return true;
-			}
-		}
-		return false;
+		return model.contains(nickname);
 	}
 
 	protected String getSelectedUser() {
@@ -442,7 +438,7 @@ public class GroupChatParticipantList extends JPanel {
 
 	protected void banUser(Resourcepart displayName) {
 		try {
-		    EntityFullJid entityFullJid = userMap.get(displayName);
+		    EntityFullJid entityFullJid = model.getJid(displayName);
 			Occupant occupant = chat.getOccupant(entityFullJid);
 			if (occupant != null) {
 				EntityBareJid bareJID = occupant.getJid().asEntityBareJidOrThrow();
@@ -575,8 +571,8 @@ public class GroupChatParticipantList extends JPanel {
 	    participantsList.setSelectedIndex(index);
 	    final JLabel userLabel = model.getElementAt(index);
 	    final Resourcepart selectedUser = Resourcepart.fromOrThrowUnchecked(userLabel.getText());
-	    final EntityFullJid groupJID = userMap.get(selectedUser);
-	    final Resourcepart groupJIDNickname = groupJID.getResourcepart();
+	    final EntityFullJid groupJID = model.getJidAt(index);
+	    final Resourcepart groupJIDNickname = groupJID != null ? groupJID.getResourcepart() : null;
 
 	    final Resourcepart nickname = groupChatRoom.getNickname();
 	    final Occupant occupant = userManager.getOccupant(groupChatRoom,
@@ -626,11 +622,7 @@ public class GroupChatParticipantList extends JPanel {
 
 		    @Override
 			public void actionPerformed(ActionEvent actionEvent) {
-			int index = getIndex(selectedUser);
-
-			if (index != -1) {
-			    model.removeElementAt(index);
-			}
+			model.remove(selectedUser);
 		    }
 		};
 
@@ -705,10 +697,10 @@ public class GroupChatParticipantList extends JPanel {
 		@Override
 		public void actionPerformed(ActionEvent actionEvent) {
 		    String selectedUser = getSelectedUser();
-		    if (selectedUser == null) {
+		    if (selectedUser == null || model.getJid(selectedUser) == null) {
 		        return;
 		    }
-		    startChat(groupChatRoom, userMap.get(Resourcepart.fromOrThrowUnchecked(selectedUser)));
+		    startChat(groupChatRoom, model.getJid(selectedUser));
 		}
 	    };
 
@@ -725,18 +717,12 @@ public class GroupChatParticipantList extends JPanel {
 
 		@Override
 		public void actionPerformed(ActionEvent e) {
-		    String user = getSelectedUser();
-		    ImageIcon icon;
+		    // The icon is updated by the listener on the occupant registry.
 		    if (groupChatRoom.isBlocked(groupJID)) {
 			groupChatRoom.removeBlockedUser(groupJID);
-			icon = getImageIcon(groupJID);
 		    } else {
 			groupChatRoom.addBlockedUser(groupJID);
-			icon = SparkRes.getImageIcon(SparkRes.BRICKWALL_IMAGE);
 		    }
-
-		    JLabel label = new JLabel(user, icon, SwingConstants.CENTER);
-		    model.setElementAt(label, index);
 		}
 	    };
 
@@ -780,8 +766,6 @@ public class GroupChatParticipantList extends JPanel {
 		    } else {
 			grantVoice(selectedUser);
 		    }
-		    users.sort(labelComp);
-
 		}
 	    };
 
@@ -828,7 +812,6 @@ public class GroupChatParticipantList extends JPanel {
 		    } else {
 			revokeMember(selectedUser);
 		    }
-		    users.sort(labelComp);
 	        }
 	    };
 	    memberAction.putValue(Action.SMALL_ICON,
@@ -855,8 +838,6 @@ public class GroupChatParticipantList extends JPanel {
 		    } else {
 			revokeModerator(selectedUser);
 		    }
-		    users.sort(labelComp);
-
 		}
 	    };
 
@@ -883,8 +864,6 @@ public class GroupChatParticipantList extends JPanel {
 		    } else {
 			revokeAdmin(selectedUser);
 		    }
-		    users.sort(labelComp);
-
 	        }
 	    };
 	    adminAction.putValue(Action.SMALL_ICON,
@@ -913,8 +892,6 @@ public class GroupChatParticipantList extends JPanel {
 		    } else {
 			revokeOwner(selectedUser);
 		    }
-		    users.sort(labelComp);
-
 	        }
 	    };
 	    ownerAction.putValue(Action.SMALL_ICON,
@@ -1000,13 +977,7 @@ public class GroupChatParticipantList extends JPanel {
 	}
 
 	public int getIndex(CharSequence name) {
-		for (int i = 0; i < model.getSize(); i++) {
-			JLabel label = model.getElementAt(i);
-			if (label.getText().equals(name.toString())) {
-				return i;
-			}
-		}
-		return -1;
+		return model.indexOf(name);
 	}
 
 	/**
@@ -1016,29 +987,12 @@ public class GroupChatParticipantList extends JPanel {
 	 *            the users displayed name to remove.
 	 */
 	public synchronized void removeUser(CharSequence displayName) {
-		try {
-			for (int i = 0; i < users.size(); i++) {
-				JLabel label = users.get(i);
-				if (label.getText().equals(displayName.toString())) {
-					users.remove(label);
-					model.removeElement(label);
-				}
-			}
-
-			for (int i = 0; i < model.size(); i++) {
-				JLabel label = model.getElementAt(i);
-				if (label.getText().equals(displayName.toString())) {
-					users.remove(label);
-					model.removeElement(label);
-				}
-			}
-		} catch (Exception e) {
-			Log.error(e);
-		}
+		model.remove(displayName);
 	}
 
 	/**
-	 * Adds a new user to the participant list.
+	 * Adds a new user to the participant list. Users that are in the list
+	 * already are not modified.
 	 *
 	 * @param userIcon
 	 *            the icon to use initially.
@@ -1046,90 +1000,47 @@ public class GroupChatParticipantList extends JPanel {
 	 *            the users nickname.
 	 */
 	public synchronized void addUser(Icon userIcon, CharSequence nickname) {
-		try {
-			final JLabel user = new JLabel(nickname.toString(), userIcon,
-                SwingConstants.CENTER);
-			users.add(user);
-
-			// Sort users alpha.
-			users.sort(labelComp);
-
-			// Add to the correct position in the model.
-			final int index = users.indexOf(user);
-			model.insertElementAt(user, index);
-		} catch (Exception e) {
-			Log.error(e);
+		if (!model.contains(nickname)) {
+			model.put(nickname, null, userIcon, getRank(null, null));
 		}
 	}
 
     /**
-     * Sorts ContactItems.
+     * Updates the icon and the position of all participants, after the
+     * preference to show role icons has been changed.
      */
-    final Comparator<JLabel> labelComp = new Comparator<JLabel>() {
-
-	@Override
-	public int compare(JLabel item1, JLabel item2) {
-	    if (_localPreferences.isShowingRoleIcons()) {
-		return compareWithRole(item1, item2);
-	    } else {
-		return compareWithoutRole(item1.getText(), item2.getText());
+    private void updateParticipants() {
+	for (EntityFullJid occupant : chat.getOccupants()) {
+	    final Presence presence = chat.getOccupantPresence(occupant);
+	    if (presence != null && presence.getType() == Presence.Type.available) {
+		addParticipant(occupant, presence);
 	    }
-
 	}
-
-	private int compareWithoutRole(String s1, String s2) {
-	    return (s1.toLowerCase().compareTo(s2.toLowerCase()));
-	}
-
-	/**
-	 * Comparaes 2 items by their Role and Affiliation<br>
-	 * affiliation > role<br>
-	 * owner > admin > moderator > member > participant > visitor
-	 * @param item1
-	 * @param item2
-	 * @return -1, 0 or 1
-	 */
-	private int compareWithRole(JLabel item1, JLabel item2) {
-
-	   int user1 = 100;
-	    int user2 = 100;
-	    try {
-		// append Room-JID to UserLabel
-		String jid1 = chat.getRoom() + "/" + item1.getText();
-		String jid2 = chat.getRoom() + "/" + item2.getText();
-
-		user1 = getCompareValue(jid1);
-		user2 = getCompareValue(jid2);
-
-	    } catch (Exception e) {
-		// Sometimes theres no Occupant with that jid, dunno why
+	for (CharSequence invitee : invitees.keySet()) {
+	    final int index = model.indexOf(invitee);
+	    if (index != -1 && model.getJid(invitee) == null) {
+		model.put(invitee, null, model.getElementAt(index).getIcon(), getRank(null, null));
 	    }
-
-	    int result = 0;
-	    if (user1 == user2) {
-		result = compareWithoutRole(item1.getText(), item2.getText());
-
-	    } else {
-		// a=owner,b=admin, m=moderator, n=member , p=participant, v=visitor
-		// a < b < m < n < p < v
-		if (user1 < user2)
-		    result = -1;
-		if (user1 > user2)
-		    result = 1;
-	    }
-	    return result;
 	}
-    };
+    }
 
     /**
-     * check if we have an affiliation to this room<br>
-     * and map it to an integer<br>
-     * 0=owner,1=admin.....5=visitor<br>
+     * Determines the position of a participant in the list. When role icons
+     * are shown, participants are sorted by their role and affiliation:<br>
+     * owner &lt; admin &lt; moderator &lt; member &lt; participant &lt; visitor<br>
+     * Otherwise, all participants have the same rank, and are sorted by
+     * nickname only.
+     *
+     * @param role the role of the participant (can be null).
+     * @param affiliation the affiliation of the participant (can be null).
+     * @return the rank of the participant (lower ranks are listed first).
      */
-    private int getCompareValue(String jid)
+    private int getRank(MUCRole role, MUCAffiliation affiliation)
 	{
-		MUCRole role = usersToRoles.get( jid );
-		MUCAffiliation affiliation = usersToAffiliation.get( jid );
+		if ( !_localPreferences.isShowingRoleIcons() || role == null || affiliation == null )
+		{
+			return _localPreferences.isShowingRoleIcons() ? 100 : 0;
+		}
 		switch ( affiliation )
 		{
 			case owner:
@@ -1201,12 +1112,81 @@ public class GroupChatParticipantList extends JPanel {
         return chat;
     }
 
-    protected Map<CharSequence, EntityFullJid> getUserMap() {
-        return userMap;
+    protected ParticipantListModel getParticipantModel() {
+        return model;
     }
 
+    /**
+     * Returns a copy of the participants, in display order, that is kept up to
+     * date with the participant list. Changes to the copy are not displayed.
+     *
+     * @return the labels of the participants.
+     * @deprecated use {@link #getParticipantModel()}.
+     */
+    @Deprecated
     protected DefaultListModel<JLabel> getModel() {
-        return model;
+        if (legacyModel == null) {
+            final DefaultListModel<JLabel> copy = new DefaultListModel<>();
+            for (int i = 0; i < model.getSize(); i++) {
+                copy.addElement(model.getElementAt(i));
+            }
+            model.addListDataListener(new ListDataListener() {
+                @Override
+                public void intervalAdded(ListDataEvent e) {
+                    for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                        copy.add(i, model.getElementAt(i));
+                    }
+                }
+
+                @Override
+                public void intervalRemoved(ListDataEvent e) {
+                    copy.removeRange(e.getIndex0(), e.getIndex1());
+                }
+
+                @Override
+                public void contentsChanged(ListDataEvent e) {
+                    for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                        copy.set(i, model.getElementAt(i));
+                    }
+                }
+            });
+            legacyModel = copy;
+        }
+        return legacyModel;
+    }
+
+    /**
+     * Returns the occupant JIDs of the participants, by nickname. Invited
+     * users that did not join are not included.
+     *
+     * @return a read-only view of the occupant JIDs.
+     * @deprecated use {@link ParticipantListModel#getJid(CharSequence)}.
+     */
+    @Deprecated
+    protected Map<CharSequence, EntityFullJid> getUserMap() {
+        return new AbstractMap<CharSequence, EntityFullJid>() {
+            @Override
+            public EntityFullJid get(Object key) {
+                return key instanceof CharSequence ? model.getJid((CharSequence) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public Set<Entry<CharSequence, EntityFullJid>> entrySet() {
+                final Map<CharSequence, EntityFullJid> jids = new LinkedHashMap<>();
+                for (int i = 0; i < model.getSize(); i++) {
+                    final EntityFullJid jid = model.getJidAt(i);
+                    if (jid != null) {
+                        jids.put(jid.getResourcepart(), jid);
+                    }
+                }
+                return Collections.unmodifiableMap(jids).entrySet();
+            }
+        };
     }
 
     protected JXList getParticipantsList() {
@@ -1231,12 +1211,36 @@ public class GroupChatParticipantList extends JPanel {
         return roomInformation;
     }
 
+    protected PreferenceListener getPreferenceListener() {
+        return preferenceListener;
+    }
+
+    /**
+     * Returns the labels of the participants, in display order.
+     *
+     * @return a copy of the labels of the participants.
+     * @deprecated use {@link #getParticipantModel()}.
+     */
+    @Deprecated
     protected List<JLabel> getUsers() {
+        final List<JLabel> users = new ArrayList<>(model.getSize());
+        for (int i = 0; i < model.getSize(); i++) {
+            users.add(model.getElementAt(i));
+        }
         return users;
     }
 
+    /**
+     * Returns the order of the participant list: by rank, and then by
+     * nickname, ignoring case.
+     *
+     * @return a comparator of participant labels.
+     * @deprecated participants are kept in order by {@link ParticipantListModel}.
+     */
+    @Deprecated
     protected Comparator<JLabel> getLabelComp() {
-        return labelComp;
+        return Comparator.comparingInt((JLabel label) -> model.getRank(label.getText()))
+            .thenComparing(label -> label.getText().toLowerCase());
     }
 }
 
@@ -20,6 +20,7 @@ import org.jivesoftware.smackx.muc.UserStatusListener;
 import org.jivesoftware.spark.ui.ChatRoom;
 import org.jivesoftware.spark.ui.ChatRoomListener;
 import org.jivesoftware.spark.ui.rooms.GroupChatRoom;
+import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.Jid;
 /**
  * This listener is notified for every group chat room. The affected chat room
@@ -117,6 +118,7 @@ public class GroupChatRoomListener implements ChatRoomListener {
 		GroupChatRoom groupChatRoom = (GroupChatRoom)room;
 		MultiUserChat chat = groupChatRoom.getMultiUserChat();		
 		chat.removeParticipantListener(groupChatRoom.getConferenceRoomInfo().getListener());		
+		SettingsManager.removePreferenceListener(groupChatRoom.getConferenceRoomInfo().getPreferenceListener());
 	}
 
 	@Override
@@ -136,12 +138,7 @@ public class GroupChatRoomListener implements ChatRoomListener {
 		}
 		GroupChatRoom groupChatRoom = (GroupChatRoom)room;
 
-		int index = groupChatRoom.getConferenceRoomInfo().getIndex(userid);
-
-		if (index != -1) {
-			groupChatRoom.getConferenceRoomInfo().removeUser(userid);
-			groupChatRoom.getConferenceRoomInfo().getUserMap().remove(userid);
-		}
+		groupChatRoom.getConferenceRoomInfo().removeUser(userid);
 	}
 
 }
\ No newline at end of file
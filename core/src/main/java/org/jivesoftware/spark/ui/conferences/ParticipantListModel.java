@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui.conferences;
+
+import org.jxmpp.jid.EntityFullJid;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The participants of a multi-user chat room, in display order.
+ *
+ * Participants are ordered by rank (lowest first), and then by nickname, ignoring case. Each participant is
+ * identified by its nickname, which is the resource part of its occupant JID. Participants are found by nickname in
+ * constant time, and are inserted and removed by binary search. Listeners are notified of the individual intervals
+ * that are added, removed or changed.
+ *
+ * The elements of this model are labels that contain the nickname and icon of a participant. These labels must not
+ * be modified directly.
+ *
+ * This class is not thread-safe: it is intended to be used on the event dispatch thread.
+ */
+public class ParticipantListModel extends AbstractListModel<JLabel>
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final Comparator<Participant> ORDER = Comparator.comparingInt( ( Participant p ) -> p.rank )
+                                                                  .thenComparing( p -> p.sortName )
+                                                                  .thenComparing( p -> p.nickname );
+
+    private final List<Participant> ordered = new ArrayList<>();
+    private final Map<String, Participant> byNickname = new HashMap<>();
+
+    @Override
+    public int getSize()
+    {
+        return ordered.size();
+    }
+
+    @Override
+    public JLabel getElementAt( int index )
+    {
+        return ordered.get( index ).label;
+    }
+
+    /**
+     * Checks if a participant is in this model.
+     *
+     * @param nickname the nickname of the participant.
+     * @return true if the participant is in this model.
+     */
+    public boolean contains( CharSequence nickname )
+    {
+        return byNickname.containsKey( nickname.toString() );
+    }
+
+    /**
+     * Returns the position of a participant in this model.
+     *
+     * @param nickname the nickname of the participant.
+     * @return the index of the participant, or -1 when the participant is not in this model.
+     */
+    public int indexOf( CharSequence nickname )
+    {
+        final Participant participant = byNickname.get( nickname.toString() );
+        return participant == null ? -1 : Collections.binarySearch( ordered, participant, ORDER );
+    }
+
+    /**
+     * Returns the occupant JID of a participant.
+     *
+     * @param nickname the nickname of the participant.
+     * @return the occupant JID, or null when the participant is not in this model, or its occupant JID is not known
+     * (which is the case for users that have been invited, but did not join).
+     */
+    public EntityFullJid getJid( CharSequence nickname )
+    {
+        final Participant participant = byNickname.get( nickname.toString() );
+        return participant == null ? null : participant.jid;
+    }
+
+    /**
+     * Returns the occupant JID of a participant.
+     *
+     * @param index the index of the participant.
+     * @return the occupant JID, or null when it is not known.
+     */
+    public EntityFullJid getJidAt( int index )
+    {
+        return ordered.get( index ).jid;
+    }
+
+    /**
+     * Returns the rank of a participant.
+     *
+     * @param nickname the nickname of the participant.
+     * @return the rank of the participant, or Integer.MAX_VALUE when the participant is not in this model.
+     */
+    public int getRank( CharSequence nickname )
+    {
+        final Participant participant = byNickname.get( nickname.toString() );
+        return participant == null ? Integer.MAX_VALUE : participant.rank;
+    }
+
+    /**
+     * Adds a participant to this model, or updates it if a participant with the same nickname is in it already.
+     *
+     * @param nickname the nickname of the participant.
+     * @param jid      the occupant JID of the participant (can be null).
+     * @param icon     the icon to display for the participant.
+     * @param rank     the rank of the participant: participants with a lower rank are displayed first.
+     */
+    public void put( CharSequence nickname, EntityFullJid jid, Icon icon, int rank )
+    {
+        final String name = nickname.toString();
+        final Participant existing = byNickname.get( name );
+        if ( existing != null )
+        {
+            if ( existing.rank == rank )
+            {
+                existing.jid = jid;
+                existing.label.setIcon( icon );
+                final int index = Collections.binarySearch( ordered, existing, ORDER );
+                fireContentsChanged( this, index, index );
+                return;
+            }
+            remove( name );
+        }
+
+        final Participant participant = new Participant( name, jid, icon, rank );
+        int index = Collections.binarySearch( ordered, participant, ORDER );
+        index = -index - 1;
+        ordered.add( index, participant );
+        byNickname.put( name, participant );
+        fireIntervalAdded( this, index, index );
+    }
+
+    /**
+     * Changes the icon that is displayed for a participant.
+     *
+     * @param nickname the nickname of the participant.
+     * @param icon     the new icon.
+     */
+    public void setIcon( CharSequence nickname, Icon icon )
+    {
+        final int index = indexOf( nickname );
+        if ( index >= 0 )
+        {
+            ordered.get( index ).label.setIcon( icon );
+            fireContentsChanged( this, index, index );
+        }
+    }
+
+    /**
+     * Removes a participant from this model.
+     *
+     * @param nickname the nickname of the participant.
+     * @return true if the participant was removed, false if it was not in this model.
+     */
+    public boolean remove( CharSequence nickname )
+    {
+        final int index = indexOf( nickname );
+        if ( index < 0 )
+        {
+            return false;
+        }
+        final Participant participant = ordered.remove( index );
+        byNickname.remove( participant.nickname );
+        fireIntervalRemoved( this, index, index );
+        return true;
+    }
+
+    /**
+     * Removes all participants from this model.
+     */
+    public void clear()
+    {
+        final int size = ordered.size();
+        if ( size > 0 )
+        {
+            ordered.clear();
+            byNickname.clear();
+            fireIntervalRemoved( this, 0, size - 1 );
+        }
+    }
+
+    private static final class Participant
+    {
+        private final String nickname;
+        private final String sortName;
+        private final int rank;
+        private final JLabel label;
+        private EntityFullJid jid;
+
+        private Participant( String nickname, EntityFullJid jid, Icon icon, int rank )
+        {
+            this.nickname = nickname;
+            this.sortName = nickname.toLowerCase();
+            this.rank = rank;
+            this.jid = jid;
+            this.label = new JLabel( nickname, icon, SwingConstants.CENTER );
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui.conferences;
+
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smackx.muc.HostedRoom;
+import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.muc.RoomInfo;
+import org.jivesoftware.spark.SparkManager;
+import org.jivesoftware.spark.util.TaskEngine;
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Lists the rooms that are hosted by a multi-user chat service, together with their metadata (such as the amount of
+ * occupants).
+ *
+ * Obtaining the metadata of a room requires a service discovery request per room. These requests are sent in parallel,
+ * with at most {@link #MAX_CONCURRENT_REQUESTS} outstanding at any time. The metadata is cached in memory and on disk,
+ * and is reused for {@link #CACHE_TTL_MILLIS} milliseconds, also in later sessions. Metadata that could not be obtained
+ * is not cached. Once a room does not provide its metadata, the metadata of the remaining rooms is not requested either
+ * in that discovery, as the service is unlikely to provide it for those rooms.
+ */
+public class RoomDirectory
+{
+    /**
+     * The maximum amount of service discovery requests for room metadata that are outstanding at any time.
+     */
+    public static final int MAX_CONCURRENT_REQUESTS = 8;
+
+    /**
+     * The amount of milliseconds during which cached room metadata is used instead of requesting it again.
+     */
+    public static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis( 15 );
+
+    private static RoomDirectory instance;
+
+    private final Source source;
+    private final Executor executor;
+    private final File cacheDirectory;
+    private final Map<DomainBareJid, Map<EntityBareJid, Room>> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the directory for the services of the current connection, which caches room metadata in the directory
+     * of the current user.
+     *
+     * @return the room directory (never null).
+     */
+    public static synchronized RoomDirectory getInstance()
+    {
+        if ( instance == null )
+        {
+            instance = new RoomDirectory( new XmppSource(), TaskEngine.getInstance()::submit, new File( SparkManager.getUserDirectory(), "rooms" ) );
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a room directory.
+     *
+     * @param source         the source of the rooms and their metadata.
+     * @param executor       executes requests for room metadata.
+     * @param cacheDirectory the directory in which room metadata is cached, or null to not cache metadata on disk.
+     */
+    public RoomDirectory( Source source, Executor executor, File cacheDirectory )
+    {
+        this.source = source;
+        this.executor = executor;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Lists the rooms that are hosted by a service. Every room is passed to the listener as soon as its metadata is
+     * available: rooms for which recently cached metadata exists are passed first, the other rooms follow as the
+     * responses to requests for their metadata arrive. The listener is invoked from different threads, but never
+     * concurrently for one invocation of this method.
+     *
+     * This method blocks until the metadata of all rooms is available, and should not be invoked on the event
+     * dispatch thread.
+     *
+     * @param service  the multi-user chat service.
+     * @param refresh  true to request the metadata of all rooms, regardless of what is cached.
+     * @param listener receives each room.
+     * @return true if the rooms were listed, false if the list of rooms could not be obtained.
+     */
+    public boolean discover( DomainBareJid service, boolean refresh, Consumer<Room> listener )
+    {
+        final Map<EntityBareJid, String> names;
+        try
+        {
+            names = source.getRooms( service );
+        }
+        catch ( XMPPException | SmackException | InterruptedException e )
+        {
+            Log.warning( "Unable to retrieve the list of rooms hosted by " + service, e );
+            return false;
+        }
+        if ( names == null )
+        {
+            return false;
+        }
+
+        final Map<EntityBareJid, Room> cached = getCache( service );
+        final Map<EntityBareJid, Room> rooms = new ConcurrentHashMap<>();
+        final Queue<Map.Entry<EntityBareJid, String>> pending = new ConcurrentLinkedQueue<>();
+        final long now = System.currentTimeMillis();
+        for ( final Map.Entry<EntityBareJid, String> entry : names.entrySet() )
+        {
+            final Room room = cached.get( entry.getKey() );
+            final String name = entry.getValue() == null ? "" : entry.getValue();
+            if ( !refresh && room != null && room.getName().equals( name ) && now - room.getRetrieved() < CACHE_TTL_MILLIS )
+            {
+                rooms.put( room.getJid(), room );
+                listener.accept( room );
+            }
+            else
+            {
+                pending.add( entry );
+            }
+        }
+
+        // Set once a room does not provide its metadata (as the room browser used to do).
+        final AtomicBoolean partialDiscovery = new AtomicBoolean();
+
+        // A fixed amount of workers takes requests from the queue, which bounds the amount of outstanding requests.
+        final int workers = Math.min( MAX_CONCURRENT_REQUESTS, pending.size() );
+        final CountDownLatch done = new CountDownLatch( workers );
+        for ( int i = 0; i < workers; i++ )
+        {
+            executor.execute( () -> {
+                try
+                {
+                    Map.Entry<EntityBareJid, String> entry;
+                    while ( ( entry = pending.poll() ) != null )
+                    {
+                        Room room = partialDiscovery.get() ? null : fetch( entry.getKey(), entry.getValue() );
+                        if ( room == null || room.getOccupants() == -1 )
+                        {
+                            partialDiscovery.set( true );
+                        }
+                        if ( room == null )
+                        {
+                            // Not cached, so that the next discovery requests it again.
+                            room = new Room( entry.getKey(), entry.getValue(), -1, false, System.currentTimeMillis() );
+                        }
+                        else
+                        {
+                            rooms.put( room.getJid(), room );
+                        }
+                        synchronized ( listener )
+                        {
+                            listener.accept( room );
+                        }
+                    }
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            } );
+        }
+
+        try
+        {
+            done.await();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            pending.clear();
+            return false;
+        }
+
+        cache.put( service, rooms );
+        save( service, rooms );
+        return true;
+    }
+
+    /**
+     * Requests the metadata of a room.
+     *
+     * @return the metadata, or null when it could not be obtained.
+     */
+    private Room fetch( EntityBareJid jid, String name )
+    {
+        try
+        {
+            return source.getRoomInfo( jid, name );
+        }
+        catch ( XMPPException | SmackException | InterruptedException | RuntimeException e )
+        {
+            Log.debug( "Unable to retrieve information of room " + jid + ": " + e.getMessage() );
+            return null;
+        }
+    }
+
+    private Map<EntityBareJid, Room> getCache( DomainBareJid service )
+    {
+        return cache.computeIfAbsent( service, this::load );
+    }
+
+    private File getCacheFile( DomainBareJid service )
+    {
+        return cacheDirectory == null ? null : new File( cacheDirectory, service + ".properties" );
+    }
+
+    private Map<EntityBareJid, Room> load( DomainBareJid service )
+    {
+        final Map<EntityBareJid, Room> result = new HashMap<>();
+        final File file = getCacheFile( service );
+        if ( file == null || !file.exists() )
+        {
+            return result;
+        }
+
+        final Properties properties = new Properties();
+        try ( final InputStream in = new FileInputStream( file ) )
+        {
+            properties.load( in );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to read cached rooms from " + file, e );
+            return result;
+        }
+
+        // Each value is: retrieved,occupants,locked,name
+        for ( final String key : properties.stringPropertyNames() )
+        {
+            final String[] values = properties.getProperty( key ).split( ",", 4 );
+            if ( values.length != 4 )
+            {
+                continue;
+            }
+            try
+            {
+                final EntityBareJid jid = JidCreate.entityBareFrom( key );
+                result.put( jid, new Room( jid, values[ 3 ], Integer.parseInt( values[ 1 ] ), Boolean.parseBoolean( values[ 2 ] ), Long.parseLong( values[ 0 ] ) ) );
+            }
+            catch ( XmppStringprepException | NumberFormatException e )
+            {
+                Log.debug( "Ignoring malformed cached room " + key );
+            }
+        }
+        return result;
+    }
+
+    private synchronized void save( DomainBareJid service, Map<EntityBareJid, Room> rooms )
+    {
+        final File file = getCacheFile( service );
+        if ( file == null )
+        {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        for ( final Room room : rooms.values() )
+        {
+            properties.setProperty( room.getJid().toString(), room.getRetrieved() + "," + room.getOccupants() + "," + room.isLocked() + "," + room.getName() );
+        }
+
+        if ( !cacheDirectory.exists() && !cacheDirectory.mkdirs() )
+        {
+            Log.warning( "Unable to create directory " + cacheDirectory );
+            return;
+        }
+        try ( final OutputStream out = new FileOutputStream( file ) )
+        {
+            properties.store( out, "Rooms hosted by " + service );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to cache rooms in " + file, e );
+        }
+    }
+
+    /**
+     * The metadata of a room. Instances are immutable.
+     */
+    public static final class Room
+    {
+        private final EntityBareJid jid;
+        private final String name;
+        private final int occupants;
+        private final boolean locked;
+        private final long retrieved;
+
+        /**
+         * Creates room metadata.
+         *
+         * @param jid       the address of the room.
+         * @param name      the name of the room.
+         * @param occupants the amount of occupants in the room, or -1 when unknown.
+         * @param locked    true if the room is password protected or members-only.
+         * @param retrieved the time (in milliseconds since the epoch) at which the metadata was retrieved.
+         */
+        public Room( EntityBareJid jid, String name, int occupants, boolean locked, long retrieved )
+        {
+            this.jid = jid;
+            this.name = name == null ? "" : name;
+            this.occupants = occupants;
+            this.locked = locked;
+            this.retrieved = retrieved;
+        }
+
+        public EntityBareJid getJid()
+        {
+            return jid;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public int getOccupants()
+        {
+            return occupants;
+        }
+
+        public boolean isLocked()
+        {
+            return locked;
+        }
+
+        public long getRetrieved()
+        {
+            return retrieved;
+        }
+    }
+
+    /**
+     * Provides the rooms that are hosted by a service, and their metadata.
+     */
+    public interface Source
+    {
+        /**
+         * Lists the rooms that are hosted by a service.
+         *
+         * @param service the multi-user chat service.
+         * @return the names of the rooms, by address.
+         */
+        Map<EntityBareJid, String> getRooms( DomainBareJid service ) throws XMPPException, SmackException, InterruptedException;
+
+        /**
+         * Obtains the metadata of a room.
+         *
+         * @param jid  the address of the room.
+         * @param name the name of the room, as listed by its service.
+         * @return the metadata of the room, or null when it is not available.
+         */
+        Room getRoomInfo( EntityBareJid jid, String name ) throws XMPPException, SmackException, InterruptedException;
+    }
+
+    /**
+     * Obtains rooms and their metadata by service discovery, over the current connection.
+     */
+    private static class XmppSource implements Source
+    {
+        @Override
+        public Map<EntityBareJid, String> getRooms( DomainBareJid service ) throws XMPPException, SmackException, InterruptedException
+        {
+            final Map<EntityBareJid, HostedRoom> hostedRooms = MultiUserChatManager.getInstanceFor( SparkManager.getConnection() ).getRoomsHostedBy( service );
+            if ( hostedRooms == null )
+            {
+                return null;
+            }
+            final Map<EntityBareJid, String> result = new LinkedHashMap<>();
+            for ( final HostedRoom hostedRoom : hostedRooms.values() )
+            {
+                result.put( hostedRoom.getJid(), hostedRoom.getName() );
+            }
+            return result;
+        }
+
+        @Override
+        public Room getRoomInfo( EntityBareJid jid, String name ) throws XMPPException, SmackException, InterruptedException
+        {
+            final RoomInfo roomInfo = MultiUserChatManager.getInstanceFor( SparkManager.getConnection() ).getRoomInfo( jid );
+            return new Room( jid, name, roomInfo.getOccupantsCount(), roomInfo.isMembersOnly() || roomInfo.isPasswordProtected(), System.currentTimeMillis() );
+        }
+    }
+}
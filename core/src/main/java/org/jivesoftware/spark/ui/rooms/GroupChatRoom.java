@@ -45,7 +45,9 @@ import org.jivesoftware.spark.ui.conferences.AnswerFormDialog;
 import org.jivesoftware.spark.ui.conferences.ConferenceUtils;
 import org.jivesoftware.spark.ui.conferences.DataFormDialog;
 import org.jivesoftware.spark.ui.conferences.GroupChatParticipantList;
+import org.jivesoftware.spark.util.HighlightMatcher;
 import org.jivesoftware.spark.util.ModelUtil;
+import org.jivesoftware.spark.util.SwingBatchQueue;
 import org.jivesoftware.spark.util.UIComponentRegistry;
 import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
@@ -60,7 +62,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
 import java.util.*;
 import java.util.List;
-import java.util.regex.Pattern;
 
 /**
  * GroupChatRoom is the conference chat room UI used to have Multi-User Chats.
@@ -70,8 +71,7 @@ public class GroupChatRoom extends ChatRoom
     private final LocalPreferences pref = SettingsManager.getLocalPreferences();
     private final MultiUserChat chat;
     private final SubjectPanel subjectPanel;
-    private final List<EntityFullJid> currentUserList = new ArrayList<>();
-    private final List<EntityFullJid> blockedUsers = new ArrayList<>();
+    private final OccupantRegistry occupants = new OccupantRegistry();
     private final GroupChatParticipantList roomInfo;
     private final RolloverButton settings;
     private Icon tabIcon = SparkRes.getImageIcon( SparkRes.CONFERENCE_IMAGE_16x16 );
@@ -82,6 +82,21 @@ public class GroupChatRoom extends ChatRoom
     private Message lastMessage;
     private boolean chatStatEnabled;
 
+    /**
+     * Incoming stanzas, which are handled on the event dispatch thread in batches.
+     */
+    private final SwingBatchQueue<Stanza> inbound = new SwingBatchQueue<>( this::handleStanza, this::afterStanzaBatch );
+
+    /**
+     * Set when a stanza that was handled added content that the user should be scrolled to.
+     */
+    private boolean scrollPending;
+
+    /**
+     * Finds the name of the local user in message bodies. Replaced when the nickname or username changes.
+     */
+    private HighlightMatcher highlightMatcher;
+
     /**
      * Creates a GroupChatRoom from a <code>MultiUserChat</code>.
      *
@@ -347,6 +362,7 @@ public class GroupChatRoom extends ChatRoom
 
         // Remove Listener
         SparkManager.getConnection().removeAsyncStanzaListener( this );
+        inbound.clear();
 
         final ChatContainer container = SparkManager.getChatManager().getChatContainer();
         container.leaveChatRoom( this );
@@ -363,16 +379,13 @@ public class GroupChatRoom extends ChatRoom
     private Color getMessageBackground( Resourcepart nickname, String body )
     {
         final Resourcepart myNickName = chat.getNickname();
-        final String myUserName = SparkManager.getSessionManager().getUsername();
-        final Pattern usernameMatch = Pattern.compile( myUserName, Pattern.CASE_INSENSITIVE );
-        final Pattern nicknameMatch = Pattern.compile( myNickName.toString(), Pattern.CASE_INSENSITIVE );
 
         // Should we even highlight this packet?
         if ( pref.isMucHighNameEnabled() && myNickName.equals( nickname ) )
         {
             return new Color( 244, 248, 255 );
         }
-        else if ( pref.isMucHighTextEnabled() && ( usernameMatch.matcher( body ).find() || nicknameMatch.matcher( body ).find() ) )
+        else if ( pref.isMucHighTextEnabled() && getHighlightMatcher( myNickName ).find( body ) )
         {
             return new Color( 255, 255, 153 );
         }
@@ -382,6 +395,23 @@ public class GroupChatRoom extends ChatRoom
         }
     }
 
+    /**
+     * Returns the matcher that finds the username and the nickname of the local user, compiling it only when either
+     * of these has changed since the last invocation.
+     *
+     * @param myNickName the nickname of the local user in this room.
+     * @return a matcher (never null).
+     */
+    private HighlightMatcher getHighlightMatcher( Resourcepart myNickName )
+    {
+        final List<String> names = Arrays.asList( SparkManager.getSessionManager().getUsername(), myNickName.toString() );
+        if ( highlightMatcher == null || !highlightMatcher.isCompiledFrom( names, true ) )
+        {
+            highlightMatcher = new HighlightMatcher( names, true );
+        }
+        return highlightMatcher;
+    }
+
     /**
      * Sends a message.
      *
@@ -575,19 +605,51 @@ public class GroupChatRoom extends ChatRoom
     @Override
     public void processStanza( final Stanza stanza )
     {
-        if ( stanza instanceof Presence )
+        if ( stanza instanceof Presence || stanza instanceof Message )
         {
-            SwingUtilities.invokeLater( () -> handlePresencePacket( stanza ) );
+            inbound.add( stanza );
         }
+    }
+
+    /**
+     * Returns the amount of stanzas that have been received, but have not yet been handled.
+     *
+     * @return the depth of the queue of incoming stanzas.
+     */
+    public int getInboundQueueDepth()
+    {
+        return inbound.getDepth();
+    }
 
-        if ( stanza instanceof Message )
+    /**
+     * Handles a stanza from the queue of incoming stanzas, on the event dispatch thread.
+     *
+     * @param stanza the packet.
+     */
+    private void handleStanza( Stanza stanza )
+    {
+        if ( stanza instanceof Presence )
         {
-            SwingUtilities.invokeLater( () -> {
-                handleMessagePacket( stanza );
+            handlePresencePacket( stanza );
+        }
+        else
+        {
+            handleMessagePacket( stanza );
 
-                // Set last activity
-                lastActivity = System.currentTimeMillis();
-            } );
+            // Set last activity
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Invoked once after a batch of incoming stanzas has been handled.
+     */
+    private void afterStanzaBatch()
+    {
+        if ( scrollPending )
+        {
+            scrollPending = false;
+            scrollToBottom();
         }
     }
 
@@ -691,7 +753,7 @@ public class GroupChatRoom extends ChatRoom
         }
 
         //Scroll To bottom every time a message is received
-        scrollToBottom();
+        scrollPending = true;
     }
 
     /**
@@ -734,28 +796,26 @@ public class GroupChatRoom extends ChatRoom
 
         if ( presence.getType() == Presence.Type.unavailable && !status.contains( MUCUser.Status.NEW_NICKNAME_303 ) )
         {
-            if ( currentUserList.contains( from ) )
+            if ( occupants.removeOccupant( from ) )
             {
                 if ( pref.isShowJoinLeaveMessagesEnabled() )
                 {
                     getTranscriptWindow().insertNotificationMessage( Res.getString( "message.user.left.room", nickname ), ChatManager.NOTIFICATION_COLOR );
-                    scrollToBottom();
+                    scrollPending = true;
                 }
-                currentUserList.remove( from );
             }
         }
         else
         {
-            if ( !currentUserList.contains( from ) )
+            if ( occupants.addOccupant( from ) )
             {
-                currentUserList.add( from );
                 getChatInputEditor().setEnabled( true );
                 if ( pref.isShowJoinLeaveMessagesEnabled() )
                 {
                     getTranscriptWindow().insertNotificationMessage(
                             Res.getString( "message.user.joined.room", nickname ),
                             ChatManager.NOTIFICATION_COLOR );
-                    scrollToBottom();
+                    scrollPending = true;
                 }
             }
         }
@@ -972,7 +1032,18 @@ public class GroupChatRoom extends ChatRoom
      */
     public Collection<EntityFullJid> getParticipants()
     {
-        return currentUserList;
+        return occupants.getOccupants();
+    }
+
+    /**
+     * Returns the registry of the occupants of this room, and of the occupants that have been blocked. Listeners can
+     * be registered with it to be notified of occupants that join or leave, or that are blocked or unblocked.
+     *
+     * @return the occupant registry of this room (never null).
+     */
+    public OccupantRegistry getOccupantRegistry()
+    {
+        return occupants;
     }
 
     /**
@@ -1018,7 +1089,7 @@ public class GroupChatRoom extends ChatRoom
      */
     public void addBlockedUser( EntityFullJid usersJID )
     {
-        blockedUsers.add( usersJID );
+        occupants.setBlocked( usersJID, true );
     }
 
     /**
@@ -1028,7 +1099,7 @@ public class GroupChatRoom extends ChatRoom
      */
     public void removeBlockedUser( EntityFullJid usersJID )
     {
-        blockedUsers.remove( usersJID );
+        occupants.setBlocked( usersJID, false );
     }
 
     /**
@@ -1037,10 +1108,9 @@ public class GroupChatRoom extends ChatRoom
      * @param usersJID the jid of the user (ex. spark@conference.jivesoftware.com/Dan)
      * @return true if the user is blocked, otherwise false.
      */
-    // TODO: usersJID should probably be of type EntityFullJid.
     public boolean isBlocked( CharSequence usersJID )
     {
-        return blockedUsers.contains( usersJID.toString() );
+        return occupants.isBlocked( usersJID );
     }
 
     /**
@@ -1201,7 +1271,7 @@ public class GroupChatRoom extends ChatRoom
             return;
         }
 
-        for ( final EntityFullJid occupant : chat.getOccupants() )
+        for ( final EntityFullJid occupant : occupants.getOccupants() )
         {
             final Resourcepart occupantNickname = occupant.getResourcepart();
             final Resourcepart myNickname = chat.getNickname();
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui.rooms;
+
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The occupants of a group chat room, as seen by the local user, and the occupants that the local user has blocked.
+ *
+ * Occupants are identified by their occupant JID (eg: darkcave@macbeth.shakespeare.lit/thirdwitch), and can also be
+ * looked up by their nickname. All lookups take constant time. Listeners are notified when occupants join or leave,
+ * and when they are blocked or unblocked.
+ *
+ * Blocking is not a MUC related feature: it is used by the client to not display messages from certain occupants.
+ *
+ * This class is thread-safe. Listeners are invoked on the thread that caused the change.
+ */
+public class OccupantRegistry
+{
+    /**
+     * Receives notifications of changes to an {@link OccupantRegistry}.
+     */
+    public interface Listener
+    {
+        /**
+         * Invoked when an occupant joined the room.
+         *
+         * @param occupant the occupant JID.
+         */
+        default void occupantJoined( EntityFullJid occupant ) {}
+
+        /**
+         * Invoked when an occupant left the room.
+         *
+         * @param occupant the occupant JID.
+         */
+        default void occupantLeft( EntityFullJid occupant ) {}
+
+        /**
+         * Invoked when an occupant was blocked or unblocked.
+         *
+         * @param occupant the occupant JID.
+         * @param blocked  true if the occupant is now blocked, false if it is no longer blocked.
+         */
+        default void blockingChanged( EntityFullJid occupant, boolean blocked ) {}
+    }
+
+    private final Set<EntityFullJid> occupants = ConcurrentHashMap.newKeySet();
+    private final Map<Resourcepart, EntityFullJid> occupantsByNickname = new ConcurrentHashMap<>();
+    private final Set<EntityFullJid> blocked = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers an occupant that joined the room.
+     *
+     * @param occupant the occupant JID.
+     * @return true if the occupant was registered, false if it was registered already.
+     */
+    public boolean addOccupant( EntityFullJid occupant )
+    {
+        if ( !occupants.add( occupant ) )
+        {
+            return false;
+        }
+        occupantsByNickname.put( occupant.getResourcepart(), occupant );
+        for ( final Listener listener : listeners )
+        {
+            try
+            {
+                listener.occupantJoined( occupant );
+            }
+            catch ( Exception e )
+            {
+                Log.error( "A listener threw an exception while processing the join of " + occupant, e );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Unregisters an occupant that left the room.
+     *
+     * @param occupant the occupant JID.
+     * @return true if the occupant was unregistered, false if it was not registered.
+     */
+    public boolean removeOccupant( EntityFullJid occupant )
+    {
+        if ( !occupants.remove( occupant ) )
+        {
+            return false;
+        }
+        occupantsByNickname.remove( occupant.getResourcepart(), occupant );
+        for ( final Listener listener : listeners )
+        {
+            try
+            {
+                listener.occupantLeft( occupant );
+            }
+            catch ( Exception e )
+            {
+                Log.error( "A listener threw an exception while processing the departure of " + occupant, e );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if an occupant is registered.
+     *
+     * @param occupant the occupant JID.
+     * @return true if the occupant is in the room.
+     */
+    public boolean isOccupant( EntityFullJid occupant )
+    {
+        return occupants.contains( occupant );
+    }
+
+    /**
+     * Looks up an occupant by nickname.
+     *
+     * @param nickname the nickname of the occupant.
+     * @return the occupant JID, or null when no occupant with that nickname is in the room.
+     */
+    public EntityFullJid getOccupant( Resourcepart nickname )
+    {
+        return occupantsByNickname.get( nickname );
+    }
+
+    /**
+     * Returns all occupants that are in the room.
+     *
+     * @return an unmodifiable view of the occupant JIDs, in no particular order.
+     */
+    public Collection<EntityFullJid> getOccupants()
+    {
+        return Collections.unmodifiableSet( occupants );
+    }
+
+    /**
+     * Returns the amount of occupants that are in the room.
+     *
+     * @return the amount of occupants.
+     */
+    public int getOccupantCount()
+    {
+        return occupants.size();
+    }
+
+    /**
+     * Blocks an occupant, or unblocks it.
+     *
+     * @param occupant the occupant JID.
+     * @param block    true to block the occupant, false to unblock it.
+     * @return true if this changed whether the occupant is blocked.
+     */
+    public boolean setBlocked( EntityFullJid occupant, boolean block )
+    {
+        final boolean changed = block ? blocked.add( occupant ) : blocked.remove( occupant );
+        if ( changed )
+        {
+            for ( final Listener listener : listeners )
+            {
+                try
+                {
+                    listener.blockingChanged( occupant, block );
+                }
+                catch ( Exception e )
+                {
+                    Log.error( "A listener threw an exception while processing the blocking of " + occupant, e );
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Checks if an occupant is blocked.
+     *
+     * @param occupant the occupant JID, as a JID or as text.
+     * @return true if the occupant is blocked.
+     */
+    public boolean isBlocked( CharSequence occupant )
+    {
+        if ( occupant instanceof Jid )
+        {
+            return blocked.contains( occupant );
+        }
+
+        // Text does not hash like a JID. The amount of blocked occupants is expected to be small.
+        final String text = occupant.toString();
+        for ( final EntityFullJid candidate : blocked )
+        {
+            if ( candidate.toString().equals( text ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registers a listener to be notified of changes.
+     *
+     * @param listener the listener.
+     */
+    public void addListener( Listener listener )
+    {
+        listeners.add( listener );
+    }
+
+    /**
+     * Removes a listener that was registered with {@link #addListener(Listener)}.
+     *
+     * @param listener the listener.
+     */
+    public void removeListener( Listener listener )
+    {
+        listeners.remove( listener );
+    }
+}
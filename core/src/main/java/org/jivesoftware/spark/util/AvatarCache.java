@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.util;
+
+import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Holds scaled avatars, keyed by the hash of the avatar and the size that it is scaled to.
+ *
+ * An avatar is decoded once, and is then scaled to all sizes in which avatars are commonly displayed (in the contact
+ * list, the chat header, the contact tooltip and notifications), as well as to the size that was asked for. Avatars are
+ * only scaled down, never up. Scaling is done by {@link GraphicUtils#scaleBilinear(java.awt.Image, int, int)}.
+ *
+ * The cache is bounded by the number of bytes of its pixels. When that is exceeded, the avatars that were used least
+ * recently are evicted. As avatars are named after the hash of their content, a cached avatar never needs to be
+ * refreshed: a changed avatar has a different hash.
+ *
+ * This class is thread-safe.
+ */
+public class AvatarCache
+{
+    /**
+     * The size of the avatar in the header of a chat.
+     */
+    public static final int CHAT_HEADER_SIZE = 48;
+
+    /**
+     * The size of the avatar in notifications.
+     */
+    public static final int NOTIFICATION_SIZE = 64;
+
+    /**
+     * The size of the avatar in the window that shows the details of a contact.
+     */
+    public static final int TOOLTIP_SIZE = 96;
+
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static AvatarCache instance;
+
+    private final long maxBytes;
+    private final int[] presetSizes;
+    private final Executor decoder;
+    private final Executor deliverer;
+
+    // In access order: the eldest entry is the one that was used least recently.
+    private final LinkedHashMap<Key, ImageIcon> icons = new LinkedHashMap<>( 16, 0.75f, true );
+
+    // The avatars that are being decoded asynchronously, with the callbacks that wait for them, by the size they asked.
+    private final Map<String, List<Map.Entry<Integer, Consumer<ImageIcon>>>> decoding = new HashMap<>();
+
+    private long bytes;
+
+    /**
+     * Returns the avatar cache of the application. Avatars are decoded by the {@link TaskEngine}, and delivered on
+     * the event dispatch thread.
+     *
+     * @return the avatar cache.
+     */
+    public static synchronized AvatarCache getInstance()
+    {
+        if ( instance == null )
+        {
+            final int rosterSize = SettingsManager.getLocalPreferences().getContactListIconSize();
+            instance = new AvatarCache( DEFAULT_MAX_BYTES, new int[] { rosterSize, CHAT_HEADER_SIZE, NOTIFICATION_SIZE, TOOLTIP_SIZE },
+                task -> TaskEngine.getInstance().submit( task ), EventQueue::invokeLater );
+        }
+        return instance;
+    }
+
+    /**
+     * Creates an avatar cache.
+     *
+     * @param maxBytes    the maximum number of bytes of the pixels of all cached avatars.
+     * @param presetSizes the sizes to which every avatar is scaled when it is decoded.
+     * @param decoder     decodes avatars that are loaded asynchronously.
+     * @param deliverer   delivers avatars that were loaded asynchronously.
+     */
+    AvatarCache( long maxBytes, int[] presetSizes, Executor decoder, Executor deliverer )
+    {
+        this.maxBytes = maxBytes;
+        this.presetSizes = presetSizes.clone();
+        this.decoder = decoder;
+        this.deliverer = deliverer;
+    }
+
+    /**
+     * Returns a cached avatar.
+     *
+     * @param hash the hash of the avatar.
+     * @param size the size of the square that the avatar is scaled to fit in.
+     * @return the avatar, or null if it is not cached.
+     */
+    public synchronized ImageIcon getIfPresent( String hash, int size )
+    {
+        return icons.get( new Key( hash, size ) );
+    }
+
+    /**
+     * Returns an avatar that is stored in a file, decoding it if it is not cached. This is not to be invoked on the
+     * event dispatch thread.
+     *
+     * @param hash the hash of the avatar.
+     * @param file the file that holds the avatar.
+     * @param size the size of the square that the avatar is scaled to fit in.
+     * @return the avatar, or null if it could not be decoded.
+     */
+    public ImageIcon get( String hash, File file, int size )
+    {
+        final ImageIcon cached = getIfPresent( hash, size );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        try
+        {
+            return decode( hash, ImageIO.read( file ), size );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to decode avatar " + file, e );
+            return null;
+        }
+    }
+
+    /**
+     * Returns an avatar, decoding it if it is not cached.
+     *
+     * @param hash  the hash of the avatar.
+     * @param bytes the encoded avatar.
+     * @param size  the size of the square that the avatar is scaled to fit in.
+     * @return the avatar, or null if it could not be decoded.
+     */
+    public ImageIcon get( String hash, byte[] bytes, int size )
+    {
+        final ImageIcon cached = getIfPresent( hash, size );
+        if ( cached != null )
+        {
+            return cached;
+        }
+        try
+        {
+            return decode( hash, ImageIO.read( new ByteArrayInputStream( bytes ) ), size );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to decode avatar " + hash, e );
+            return null;
+        }
+    }
+
+    /**
+     * Loads an avatar that is stored in a file. A cached avatar is delivered right away, on the invoking thread.
+     * Otherwise, the avatar is decoded in the background, and delivered later. An avatar that is asked for again while
+     * it is being decoded is decoded only once. The callback is not invoked if the avatar cannot be decoded.
+     *
+     * @param hash     the hash of the avatar.
+     * @param file     the file that holds the avatar.
+     * @param size     the size of the square that the avatar is scaled to fit in.
+     * @param callback receives the avatar.
+     */
+    public void load( String hash, File file, int size, Consumer<ImageIcon> callback )
+    {
+        final ImageIcon cached = getIfPresent( hash, size );
+        if ( cached != null )
+        {
+            callback.accept( cached );
+            return;
+        }
+        synchronized ( decoding )
+        {
+            final List<Map.Entry<Integer, Consumer<ImageIcon>>> waiting = decoding.get( hash );
+            if ( waiting != null )
+            {
+                waiting.add( new AbstractMap.SimpleImmutableEntry<>( size, callback ) );
+                return;
+            }
+            decoding.put( hash, new ArrayList<>( Collections.singletonList( new AbstractMap.SimpleImmutableEntry<>( size, callback ) ) ) );
+        }
+        decoder.execute( () -> {
+            final List<Map.Entry<Integer, Consumer<ImageIcon>>> waiting;
+            final ImageIcon icon;
+            try
+            {
+                icon = get( hash, file, size );
+            }
+            finally
+            {
+                synchronized ( decoding )
+                {
+                    waiting = decoding.remove( hash );
+                }
+            }
+            if ( icon == null )
+            {
+                return;
+            }
+            for ( final Map.Entry<Integer, Consumer<ImageIcon>> request : waiting )
+            {
+                final ImageIcon result = request.getKey() == size ? icon : get( hash, file, request.getKey() );
+                if ( result != null )
+                {
+                    deliverer.execute( () -> request.getValue().accept( result ) );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Removes all sizes of an avatar from the cache.
+     *
+     * @param hash the hash of the avatar.
+     */
+    public synchronized void invalidate( String hash )
+    {
+        final Iterator<Map.Entry<Key, ImageIcon>> iterator = icons.entrySet().iterator();
+        while ( iterator.hasNext() )
+        {
+            final Map.Entry<Key, ImageIcon> entry = iterator.next();
+            if ( entry.getKey().hash.equals( hash ) )
+            {
+                bytes -= byteSize( entry.getValue() );
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the pixels of all cached avatars.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getByteSize()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of cached avatars, counting every size separately.
+     *
+     * @return the number of cached avatars.
+     */
+    public synchronized int size()
+    {
+        return icons.size();
+    }
+
+    private ImageIcon decode( String hash, BufferedImage image, int size )
+    {
+        if ( image == null )
+        {
+            return null;
+        }
+
+        // Scale outside of the lock: the preset sizes as well as the requested one.
+        final int[] sizes = Arrays.copyOf( presetSizes, presetSizes.length + 1 );
+        sizes[ presetSizes.length ] = size;
+        final Map<Key, ImageIcon> scaled = new LinkedHashMap<>();
+        for ( final int target : sizes )
+        {
+            scaled.computeIfAbsent( new Key( hash, target ), key -> new ImageIcon( scale( image, target ) ) );
+        }
+
+        synchronized ( this )
+        {
+            for ( final Map.Entry<Key, ImageIcon> entry : scaled.entrySet() )
+            {
+                final ImageIcon previous = icons.put( entry.getKey(), entry.getValue() );
+                if ( previous != null )
+                {
+                    bytes -= byteSize( previous );
+                }
+                bytes += byteSize( entry.getValue() );
+            }
+
+            // Touch the requested size, so that it is the last of them to be evicted.
+            final ImageIcon result = icons.get( new Key( hash, size ) );
+            evict();
+            return result;
+        }
+    }
+
+    private void evict()
+    {
+        final Iterator<ImageIcon> iterator = icons.values().iterator();
+        while ( bytes > maxBytes && iterator.hasNext() )
+        {
+            bytes -= byteSize( iterator.next() );
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Scales an image down to fit in a square, keeping its aspect ratio. An image that fits already is not scaled up:
+     * it is returned as it is.
+     */
+    static BufferedImage scale( BufferedImage image, int size )
+    {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        if ( width <= size && height <= size )
+        {
+            return image;
+        }
+        if ( width >= height )
+        {
+            return GraphicUtils.scaleBilinear( image, size, Math.max( 1, Math.round( (float) height * size / width ) ) );
+        }
+        return GraphicUtils.scaleBilinear( image, Math.max( 1, Math.round( (float) width * size / height ) ), size );
+    }
+
+    private static long byteSize( ImageIcon icon )
+    {
+        // Scaled avatars are stored with four bytes per pixel.
+        return 4L * icon.getIconWidth() * icon.getIconHeight();
+    }
+
+    private static final class Key
+    {
+        private final String hash;
+        private final int size;
+
+        private Key( String hash, int size )
+        {
+            this.hash = hash;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            if ( this == o )
+            {
+                return true;
+            }
+            if ( !( o instanceof Key ) )
+            {
+                return false;
+            }
+            final Key other = (Key) o;
+            return size == other.size && hash.equals( other.hash );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( hash, size );
+        }
+    }
+}
@@ -0,0 +1,671 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.util;
+
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smackx.caps.EntityCapsManager;
+import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
+import org.jivesoftware.smackx.disco.packet.DiscoverItems;
+import org.jivesoftware.spark.SparkManager;
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of service discovery (XEP-0030) results, shared by all features that discover services.
+ *
+ * Results are keyed by JID and node, and are persisted in the user directory, so that they are available immediately
+ * in later sessions. A cached information result is valid for as long as the entity capabilities (XEP-0115)
+ * verification string of its entity is unchanged, or, when no such string is known, for {@link #MAX_AGE_MILLIS}
+ * milliseconds. Cached item results are valid for the same amount of time.
+ *
+ * When the services that are hosted by a server are looked up, the information of all items of that server is
+ * requested in parallel, with at most {@link #MAX_CONCURRENT_REQUESTS} requests outstanding at any time.
+ *
+ * This class is thread-safe. Methods that can send requests block until the responses are received, and should not be
+ * invoked on the event dispatch thread.
+ */
+public class DiscoveryCache
+{
+    /**
+     * The maximum amount of requests that are outstanding at any time while looking up services.
+     */
+    public static final int MAX_CONCURRENT_REQUESTS = 8;
+
+    /**
+     * The amount of milliseconds during which results without a verification string are used.
+     */
+    public static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis( 24 );
+
+    private static DiscoveryCache instance;
+
+    private final Source source;
+    private final Executor executor;
+    private final File file;
+    private final Map<String, Info> infos = new ConcurrentHashMap<>();
+    private final Map<String, Items> items = new ConcurrentHashMap<>();
+    private boolean loaded;
+
+    /**
+     * Returns the cache for the current connection, which is persisted in the directory of the current user.
+     *
+     * @return the cache (never null).
+     */
+    public static synchronized DiscoveryCache getInstance()
+    {
+        if ( instance == null )
+        {
+            instance = new DiscoveryCache( new XmppSource(), TaskEngine.getInstance()::submit, new File( SparkManager.getUserDirectory(), "disco.properties" ) );
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param source   the source of service discovery results.
+     * @param executor executes requests while looking up services.
+     * @param file     the file in which results are persisted, or null to not persist results.
+     */
+    public DiscoveryCache( Source source, Executor executor, File file )
+    {
+        this.source = source;
+        this.executor = executor;
+        this.file = file;
+    }
+
+    /**
+     * Returns the information of an entity, requesting it only when no valid result is cached.
+     *
+     * @param jid     the entity.
+     * @param node    the node (can be null).
+     * @param refresh true to request the information, regardless of what is cached.
+     * @return the information of the entity.
+     */
+    public Info discoverInfo( Jid jid, String node, boolean refresh ) throws XMPPException, SmackException, InterruptedException
+    {
+        load();
+        final String key = toKey( jid, node );
+        final Info cached = infos.get( key );
+        if ( !refresh && cached != null && isValid( jid, cached ) )
+        {
+            return cached;
+        }
+        final Info info = source.discoverInfo( jid, node );
+        infos.put( key, info );
+        return info;
+    }
+
+    /**
+     * Returns the items of an entity, requesting them only when no valid result is cached.
+     *
+     * @param jid     the entity.
+     * @param node    the node (can be null).
+     * @param refresh true to request the items, regardless of what is cached.
+     * @return the items of the entity.
+     */
+    public Items discoverItems( Jid jid, String node, boolean refresh ) throws XMPPException, SmackException, InterruptedException
+    {
+        load();
+        final String key = toKey( jid, node );
+        final Items cached = items.get( key );
+        if ( !refresh && cached != null && System.currentTimeMillis() - cached.getRetrieved() < MAX_AGE_MILLIS )
+        {
+            return cached;
+        }
+        final Items result = source.discoverItems( jid, node );
+        items.put( key, result );
+        return result;
+    }
+
+    /**
+     * Looks up the services of a server that support a particular feature (eg: the multi-user chat services). The
+     * results are persisted.
+     *
+     * @param server  the server.
+     * @param feature the feature that services should support.
+     * @param refresh true to request all information, regardless of what is cached.
+     * @return the addresses of the services, in the order in which the server lists them.
+     */
+    public List<DomainBareJid> findServices( DomainBareJid server, String feature, boolean refresh ) throws XMPPException, SmackException, InterruptedException
+    {
+        final List<Item> candidates = discoverItems( server, null, refresh ).getItems();
+        final Info[] results = new Info[ candidates.size() ];
+
+        // A fixed amount of workers takes requests from the list, which bounds the amount of outstanding requests.
+        final AtomicInteger next = new AtomicInteger();
+        final int workers = Math.min( MAX_CONCURRENT_REQUESTS, candidates.size() );
+        final CountDownLatch done = new CountDownLatch( workers );
+        for ( int i = 0; i < workers; i++ )
+        {
+            executor.execute( () -> {
+                try
+                {
+                    int index;
+                    while ( ( index = next.getAndIncrement() ) < candidates.size() )
+                    {
+                        final Item item = candidates.get( index );
+                        try
+                        {
+                            results[ index ] = discoverInfo( item.getJid(), item.getNode(), refresh );
+                        }
+                        catch ( XMPPException | SmackException | InterruptedException | RuntimeException e )
+                        {
+                            Log.debug( "Unable to discover information of " + item.getJid() + ": " + e.getMessage() );
+                        }
+                    }
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            } );
+        }
+        done.await();
+
+        final List<DomainBareJid> services = new ArrayList<>();
+        for ( int i = 0; i < results.length; i++ )
+        {
+            if ( results[ i ] != null && results[ i ].hasFeature( feature ) && candidates.get( i ).getJid().isDomainBareJid() )
+            {
+                services.add( candidates.get( i ).getJid().asDomainBareJid() );
+            }
+        }
+        save();
+        return services;
+    }
+
+    /**
+     * Looks up the services of a server that support a particular feature, using cached results only. No requests
+     * are sent, and results are used regardless of their age.
+     *
+     * @param server  the server.
+     * @param feature the feature that services should support.
+     * @return the addresses of the services, in the order in which the server listed them (possibly empty).
+     */
+    public List<DomainBareJid> getCachedServices( DomainBareJid server, String feature )
+    {
+        load();
+        final Items serverItems = items.get( toKey( server, null ) );
+        if ( serverItems == null )
+        {
+            return Collections.emptyList();
+        }
+        final List<DomainBareJid> services = new ArrayList<>();
+        for ( final Item item : serverItems.getItems() )
+        {
+            final Info info = infos.get( toKey( item.getJid(), item.getNode() ) );
+            if ( info != null && info.hasFeature( feature ) && item.getJid().isDomainBareJid() )
+            {
+                services.add( item.getJid().asDomainBareJid() );
+            }
+        }
+        return services;
+    }
+
+    private boolean isValid( Jid jid, Info info )
+    {
+        final String ver = source.getVerificationString( jid );
+        if ( ver != null && info.getVer() != null )
+        {
+            return ver.equals( info.getVer() );
+        }
+        return System.currentTimeMillis() - info.getRetrieved() < MAX_AGE_MILLIS;
+    }
+
+    private static String toKey( Jid jid, String node )
+    {
+        return node == null ? jid.toString() : jid + "#" + node;
+    }
+
+    private synchronized void load()
+    {
+        if ( loaded )
+        {
+            return;
+        }
+        loaded = true;
+        if ( file == null || !file.exists() )
+        {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try ( final InputStream in = new FileInputStream( file ) )
+        {
+            properties.load( in );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to read cached service discovery results from " + file, e );
+            return;
+        }
+
+        for ( final String key : properties.stringPropertyNames() )
+        {
+            try
+            {
+                final String[] tokens = properties.getProperty( key ).split( " " );
+                if ( key.startsWith( "info " ) )
+                {
+                    infos.putIfAbsent( key.substring( 5 ), Info.decode( tokens ) );
+                }
+                else if ( key.startsWith( "items " ) )
+                {
+                    items.putIfAbsent( key.substring( 6 ), Items.decode( tokens ) );
+                }
+            }
+            catch ( RuntimeException | XmppStringprepException e )
+            {
+                Log.debug( "Ignoring malformed cached service discovery result " + key );
+            }
+        }
+    }
+
+    private synchronized void save()
+    {
+        if ( file == null )
+        {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        for ( final Map.Entry<String, Info> entry : infos.entrySet() )
+        {
+            properties.setProperty( "info " + entry.getKey(), entry.getValue().encode() );
+        }
+        for ( final Map.Entry<String, Items> entry : items.entrySet() )
+        {
+            properties.setProperty( "items " + entry.getKey(), entry.getValue().encode() );
+        }
+
+        final File directory = file.getParentFile();
+        if ( directory != null && !directory.exists() && !directory.mkdirs() )
+        {
+            Log.warning( "Unable to create directory " + directory );
+            return;
+        }
+        try ( final OutputStream out = new FileOutputStream( file ) )
+        {
+            properties.store( out, "Service discovery results" );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to persist service discovery results in " + file, e );
+        }
+    }
+
+    // Values are persisted as space-separated tokens. Every token is prefixed, so that it is never empty.
+    private static String encode( String value )
+    {
+        if ( value == null )
+        {
+            return "-";
+        }
+        try
+        {
+            return "=" + URLEncoder.encode( value, "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static String decode( String token )
+    {
+        if ( token.equals( "-" ) )
+        {
+            return null;
+        }
+        try
+        {
+            return URLDecoder.decode( token.substring( 1 ), "UTF-8" );
+        }
+        catch ( UnsupportedEncodingException e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * The identities and features of an entity. Instances are immutable.
+     */
+    public static final class Info
+    {
+        private final List<Identity> identities;
+        private final Set<String> features;
+        private final String ver;
+        private final long retrieved;
+
+        /**
+         * Creates information of an entity.
+         *
+         * @param identities the identities of the entity.
+         * @param features   the features of the entity.
+         * @param ver        the entity capabilities verification string of the entity (can be null).
+         * @param retrieved  the time (in milliseconds since the epoch) at which the information was retrieved.
+         */
+        public Info( List<Identity> identities, Set<String> features, String ver, long retrieved )
+        {
+            this.identities = Collections.unmodifiableList( new ArrayList<>( identities ) );
+            this.features = Collections.unmodifiableSet( new HashSet<>( features ) );
+            this.ver = ver;
+            this.retrieved = retrieved;
+        }
+
+        public List<Identity> getIdentities()
+        {
+            return identities;
+        }
+
+        public Set<String> getFeatures()
+        {
+            return features;
+        }
+
+        public boolean hasFeature( String feature )
+        {
+            return features.contains( feature );
+        }
+
+        /**
+         * Checks if the entity has an identity in a particular category.
+         *
+         * @param category the category (eg: "conference").
+         * @return true if the entity has an identity in the category.
+         */
+        public boolean hasIdentity( String category )
+        {
+            for ( final Identity identity : identities )
+            {
+                if ( category.equals( identity.getCategory() ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String getVer()
+        {
+            return ver;
+        }
+
+        public long getRetrieved()
+        {
+            return retrieved;
+        }
+
+        // retrieved ver identityCount (category type name)* feature*
+        private String encode()
+        {
+            final StringBuilder sb = new StringBuilder();
+            sb.append( DiscoveryCache.encode( Long.toString( retrieved ) ) ).append( ' ' ).append( DiscoveryCache.encode( ver ) );
+            sb.append( ' ' ).append( DiscoveryCache.encode( Integer.toString( identities.size() ) ) );
+            for ( final Identity identity : identities )
+            {
+                sb.append( ' ' ).append( DiscoveryCache.encode( identity.getCategory() ) );
+                sb.append( ' ' ).append( DiscoveryCache.encode( identity.getType() ) );
+                sb.append( ' ' ).append( DiscoveryCache.encode( identity.getName() ) );
+            }
+            for ( final String feature : features )
+            {
+                sb.append( ' ' ).append( DiscoveryCache.encode( feature ) );
+            }
+            return sb.toString();
+        }
+
+        private static Info decode( String[] tokens )
+        {
+            final long retrieved = Long.parseLong( DiscoveryCache.decode( tokens[ 0 ] ) );
+            final String ver = DiscoveryCache.decode( tokens[ 1 ] );
+            final int identityCount = Integer.parseInt( DiscoveryCache.decode( tokens[ 2 ] ) );
+            final List<Identity> identities = new ArrayList<>( identityCount );
+            int index = 3;
+            for ( int i = 0; i < identityCount; i++ )
+            {
+                identities.add( new Identity( DiscoveryCache.decode( tokens[ index ] ), DiscoveryCache.decode( tokens[ index + 1 ] ), DiscoveryCache.decode( tokens[ index + 2 ] ) ) );
+                index += 3;
+            }
+            final Set<String> features = new HashSet<>();
+            for ( ; index < tokens.length; index++ )
+            {
+                features.add( DiscoveryCache.decode( tokens[ index ] ) );
+            }
+            return new Info( identities, features, ver, retrieved );
+        }
+    }
+
+    /**
+     * An identity of an entity. Instances are immutable.
+     */
+    public static final class Identity
+    {
+        private final String category;
+        private final String type;
+        private final String name;
+
+        public Identity( String category, String type, String name )
+        {
+            this.category = category;
+            this.type = type;
+            this.name = name;
+        }
+
+        public String getCategory()
+        {
+            return category;
+        }
+
+        public String getType()
+        {
+            return type;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * The items of an entity. Instances are immutable.
+     */
+    public static final class Items
+    {
+        private final List<Item> items;
+        private final long retrieved;
+
+        /**
+         * Creates items of an entity.
+         *
+         * @param items     the items.
+         * @param retrieved the time (in milliseconds since the epoch) at which the items were retrieved.
+         */
+        public Items( List<Item> items, long retrieved )
+        {
+            this.items = Collections.unmodifiableList( new ArrayList<>( items ) );
+            this.retrieved = retrieved;
+        }
+
+        public List<Item> getItems()
+        {
+            return items;
+        }
+
+        public long getRetrieved()
+        {
+            return retrieved;
+        }
+
+        // retrieved (jid node name)*
+        private String encode()
+        {
+            final StringBuilder sb = new StringBuilder( DiscoveryCache.encode( Long.toString( retrieved ) ) );
+            for ( final Item item : items )
+            {
+                sb.append( ' ' ).append( DiscoveryCache.encode( item.getJid().toString() ) );
+                sb.append( ' ' ).append( DiscoveryCache.encode( item.getNode() ) );
+                sb.append( ' ' ).append( DiscoveryCache.encode( item.getName() ) );
+            }
+            return sb.toString();
+        }
+
+        private static Items decode( String[] tokens ) throws XmppStringprepException
+        {
+            final long retrieved = Long.parseLong( DiscoveryCache.decode( tokens[ 0 ] ) );
+            final List<Item> items = new ArrayList<>();
+            for ( int index = 1; index + 2 < tokens.length; index += 3 )
+            {
+                items.add( new Item( JidCreate.from( DiscoveryCache.decode( tokens[ index ] ) ), DiscoveryCache.decode( tokens[ index + 1 ] ), DiscoveryCache.decode( tokens[ index + 2 ] ) ) );
+            }
+            return new Items( items, retrieved );
+        }
+    }
+
+    /**
+     * An item of an entity. Instances are immutable.
+     */
+    public static final class Item
+    {
+        private final Jid jid;
+        private final String node;
+        private final String name;
+
+        public Item( Jid jid, String node, String name )
+        {
+            this.jid = jid;
+            this.node = node;
+            this.name = name;
+        }
+
+        public Jid getJid()
+        {
+            return jid;
+        }
+
+        public String getNode()
+        {
+            return node;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Provides service discovery results.
+     */
+    public interface Source
+    {
+        /**
+         * Requests the information of an entity.
+         *
+         * @param jid  the entity.
+         * @param node the node (can be null).
+         * @return the information.
+         */
+        Info discoverInfo( Jid jid, String node ) throws XMPPException, SmackException, InterruptedException;
+
+        /**
+         * Requests the items of an entity.
+         *
+         * @param jid  the entity.
+         * @param node the node (can be null).
+         * @return the items.
+         */
+        Items discoverItems( Jid jid, String node ) throws XMPPException, SmackException, InterruptedException;
+
+        /**
+         * Returns the most recent entity capabilities verification string that an entity announced.
+         *
+         * @param jid the entity.
+         * @return the verification string, or null when it is not known.
+         */
+        String getVerificationString( Jid jid );
+    }
+
+    /**
+     * Sends service discovery requests over the current connection.
+     */
+    private static class XmppSource implements Source
+    {
+        @Override
+        public Info discoverInfo( Jid jid, String node ) throws XMPPException, SmackException, InterruptedException
+        {
+            final DiscoverInfo info = ServiceDiscoveryManager.getInstanceFor( SparkManager.getConnection() ).discoverInfo( jid, node );
+            final List<Identity> identities = new ArrayList<>();
+            for ( final DiscoverInfo.Identity identity : info.getIdentities() )
+            {
+                identities.add( new Identity( identity.getCategory(), identity.getType(), identity.getName() ) );
+            }
+            final Set<String> features = new HashSet<>();
+            for ( final DiscoverInfo.Feature feature : info.getFeatures() )
+            {
+                features.add( feature.getVar() );
+            }
+            return new Info( identities, features, getVerificationString( jid ), System.currentTimeMillis() );
+        }
+
+        @Override
+        public Items discoverItems( Jid jid, String node ) throws XMPPException, SmackException, InterruptedException
+        {
+            final DiscoverItems discoverItems = ServiceDiscoveryManager.getInstanceFor( SparkManager.getConnection() ).discoverItems( jid, node );
+            final List<Item> result = new ArrayList<>();
+            for ( final DiscoverItems.Item item : discoverItems.getItems() )
+            {
+                result.add( new Item( item.getEntityID(), item.getNode(), item.getName() ) );
+            }
+            return new Items( result, System.currentTimeMillis() );
+        }
+
+        @Override
+        public String getVerificationString( Jid jid )
+        {
+            final EntityCapsManager.NodeVerHash nodeVerHash = EntityCapsManager.getNodeVerHashByJid( jid );
+            return nodeVerHash == null ? null : nodeVerHash.getVer();
+        }
+    }
+}
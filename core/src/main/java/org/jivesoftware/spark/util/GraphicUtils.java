@@ -31,6 +31,7 @@ import java.awt.Label;
 import java.awt.MediaTracker;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Toolkit;
 import java.awt.Window;
 import java.awt.event.MouseEvent;
@@ -736,8 +737,11 @@ public final class GraphicUtils {
 	if (width > newWidth) {
 	    width = newWidth;
 	}
-	img = img.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-	return new ImageIcon(img);
+	if (width <= 0 || height <= 0) {
+	    // Not an image that can be scaled (eg: it could not be loaded).
+	    return new ImageIcon(img);
+	}
+	return new ImageIcon(scaleBilinear(img, width, height));
     }
 
     /**
@@ -782,8 +786,60 @@ public final class GraphicUtils {
 	    height = -1;
 	    width = newWidth;
 	}
-	img = img.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-	return new ImageIcon(img);
+	final int iconWidth = icon.getIconWidth();
+	final int iconHeight = icon.getIconHeight();
+	if (iconWidth <= 0 || iconHeight <= 0) {
+	    // Not an image that can be scaled (eg: it could not be loaded).
+	    return new ImageIcon(img);
+	}
+	if (width == -1) {
+	    width = Math.max(1, Math.round((float) iconWidth * height / iconHeight));
+	} else {
+	    height = Math.max(1, Math.round((float) iconHeight * width / iconWidth));
+	}
+	return new ImageIcon(scaleBilinear(img, width, height));
+    }
+
+    /**
+     * Scales an image with bilinear interpolation. An image that is to shrink to less than half its size is halved
+     * repeatedly first, so that every pixel contributes to the result. This looks much like
+     * {@link Image#SCALE_SMOOTH}, but takes a fraction of the time.
+     *
+     * @param image
+     *            the image, which must be loaded completely.
+     * @param width
+     *            the width of the scaled image.
+     * @param height
+     *            the height of the scaled image.
+     * @return the scaled image.
+     */
+    public static BufferedImage scaleBilinear(Image image, int width, int height) {
+	int currentWidth = image.getWidth(null);
+	int currentHeight = image.getHeight(null);
+	Image current = image;
+	do {
+	    if (currentWidth / 2 >= width) {
+		currentWidth /= 2;
+	    } else {
+		currentWidth = width;
+	    }
+	    if (currentHeight / 2 >= height) {
+		currentHeight /= 2;
+	    } else {
+		currentHeight = height;
+	    }
+
+	    final BufferedImage step = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_ARGB);
+	    final Graphics2D g = step.createGraphics();
+	    try {
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+	    } finally {
+		g.dispose();
+	    }
+	    current = step;
+	} while (currentWidth != width || currentHeight != height);
+	return (BufferedImage) current;
     }
 
     /**
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Finds occurrences of any of a set of keywords (such as the nickname of the local user) in text, for example to
+ * determine if a message should be highlighted.
+ *
+ * The keywords are compiled into an Aho-Corasick automaton, which allows text to be matched against all keywords in a
+ * single pass over that text, regardless of the amount of keywords. Keywords are matched literally. Compiling the
+ * automaton is relatively expensive: an instance is intended to be kept for as long as its keywords do not change,
+ * which can be checked with {@link #isCompiledFrom(Collection, boolean)}.
+ *
+ * Instances are immutable.
+ */
+public final class HighlightMatcher
+{
+    private final List<String> keywords;
+    private final boolean ignoreCase;
+    private final Node root = new Node();
+
+    /**
+     * Compiles a set of keywords. Null and empty keywords are ignored.
+     *
+     * @param keywords   the keywords to find (cannot be null).
+     * @param ignoreCase true if keywords are to be matched regardless of the case of the text.
+     */
+    public HighlightMatcher( Collection<? extends CharSequence> keywords, boolean ignoreCase )
+    {
+        this.keywords = toList( keywords );
+        this.ignoreCase = ignoreCase;
+
+        for ( final String keyword : this.keywords )
+        {
+            if ( keyword == null || keyword.isEmpty() )
+            {
+                continue;
+            }
+            Node node = root;
+            for ( int i = 0; i < keyword.length(); i++ )
+            {
+                node = node.getOrAddChild( fold( keyword.charAt( i ) ) );
+            }
+            node.terminal = true;
+        }
+
+        // Link every node to the node of the longest proper suffix of its path that is also in the trie, breadth-first.
+        final Queue<Node> queue = new ArrayDeque<>();
+        for ( final Node child : root.children )
+        {
+            child.failure = root;
+            queue.add( child );
+        }
+        while ( !queue.isEmpty() )
+        {
+            final Node node = queue.remove();
+            for ( int i = 0; i < node.chars.length; i++ )
+            {
+                final Node child = node.children[ i ];
+                Node failure = node.failure;
+                while ( failure != root && failure.getChild( node.chars[ i ] ) == null )
+                {
+                    failure = failure.failure;
+                }
+                final Node target = failure.getChild( node.chars[ i ] );
+                child.failure = target == null ? root : target;
+                child.terminal |= child.failure.terminal;
+                queue.add( child );
+            }
+        }
+    }
+
+    /**
+     * Checks if text contains at least one of the keywords.
+     *
+     * @param text the text to search (can be null).
+     * @return true if the text contains a keyword, otherwise false.
+     */
+    public boolean find( CharSequence text )
+    {
+        if ( text == null )
+        {
+            return false;
+        }
+
+        Node node = root;
+        for ( int i = 0; i < text.length(); i++ )
+        {
+            final char c = fold( text.charAt( i ) );
+            Node child = node.getChild( c );
+            while ( child == null && node != root )
+            {
+                node = node.failure;
+                child = node.getChild( c );
+            }
+            node = child == null ? root : child;
+            if ( node.terminal )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if this instance was compiled from a particular set of keywords. When this is not the case, a new
+     * instance should be compiled for those keywords.
+     *
+     * @param keywords   the keywords (cannot be null).
+     * @param ignoreCase true if keywords are to be matched regardless of the case of the text.
+     * @return true if this instance finds exactly the provided keywords, in the same way.
+     */
+    public boolean isCompiledFrom( Collection<? extends CharSequence> keywords, boolean ignoreCase )
+    {
+        return this.ignoreCase == ignoreCase && this.keywords.equals( toList( keywords ) );
+    }
+
+    private char fold( char c )
+    {
+        return ignoreCase ? Character.toLowerCase( Character.toUpperCase( c ) ) : c;
+    }
+
+    private static List<String> toList( Collection<? extends CharSequence> keywords )
+    {
+        final List<String> result = new ArrayList<>( keywords.size() );
+        for ( final CharSequence keyword : keywords )
+        {
+            result.add( keyword == null ? null : keyword.toString() );
+        }
+        return Collections.unmodifiableList( result );
+    }
+
+    private static final class Node
+    {
+        private char[] chars = new char[ 0 ];
+        private Node[] children = new Node[ 0 ];
+        private Node failure;
+        private boolean terminal;
+
+        private Node getChild( char c )
+        {
+            final int index = Arrays.binarySearch( chars, c );
+            return index < 0 ? null : children[ index ];
+        }
+
+        private Node getOrAddChild( char c )
+        {
+            int index = Arrays.binarySearch( chars, c );
+            if ( index >= 0 )
+            {
+                return children[ index ];
+            }
+
+            index = -index - 1;
+            final char[] newChars = new char[ chars.length + 1 ];
+            final Node[] newChildren = new Node[ children.length + 1 ];
+            System.arraycopy( chars, 0, newChars, 0, index );
+            System.arraycopy( children, 0, newChildren, 0, index );
+            newChars[ index ] = c;
+            newChildren[ index ] = new Node();
+            System.arraycopy( chars, index, newChars, index + 1, chars.length - index );
+            System.arraycopy( children, index, newChildren, index + 1, children.length - index );
+            chars = newChars;
+            children = newChildren;
+            return newChildren[ index ];
+        }
+    }
+}
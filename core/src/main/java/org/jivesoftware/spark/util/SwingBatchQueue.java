@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.util;
+
+import org.jivesoftware.spark.util.log.Log;
+
+import java.awt.EventQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hands items that are produced on arbitrary threads to a handler on the Swing event dispatch thread, in batches.
+ *
+ * Instead of posting one event per item, at most one event is pending at any time. That event handles the items that
+ * are queued, up to {@link #MAX_BATCH_SIZE} items or {@link #MAX_BATCH_MILLIS} milliseconds, after which a callback
+ * is invoked once for the whole batch. Remaining items are handled by a subsequent event, which allows other events
+ * (such as user input and painting) to be processed in between batches.
+ *
+ * @param <T> the type of the items.
+ */
+public class SwingBatchQueue<T>
+{
+    /**
+     * The maximum amount of items that is handled in one event.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * The maximum amount of milliseconds that is spent handling items in one event.
+     */
+    public static final long MAX_BATCH_MILLIS = 30;
+
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Consumer<T> handler;
+    private final Runnable afterBatch;
+
+    /**
+     * Creates a queue.
+     *
+     * @param handler    handles each item, on the event dispatch thread.
+     * @param afterBatch invoked on the event dispatch thread after each batch of items has been handled (can be null).
+     */
+    public SwingBatchQueue( Consumer<T> handler, Runnable afterBatch )
+    {
+        this.handler = handler;
+        this.afterBatch = afterBatch;
+    }
+
+    /**
+     * Queues an item to be handled on the event dispatch thread. This method can be invoked from any thread.
+     *
+     * @param item the item to handle (cannot be null).
+     */
+    public void add( T item )
+    {
+        queue.add( item );
+        depth.incrementAndGet();
+        schedule();
+    }
+
+    /**
+     * Returns the amount of items that are queued, but have not yet been handled.
+     *
+     * @return the queue depth.
+     */
+    public int getDepth()
+    {
+        return depth.get();
+    }
+
+    /**
+     * Discards all items that have not yet been handled.
+     */
+    public void clear()
+    {
+        while ( queue.poll() != null )
+        {
+            depth.decrementAndGet();
+        }
+    }
+
+    private void schedule()
+    {
+        if ( scheduled.compareAndSet( false, true ) )
+        {
+            EventQueue.invokeLater( this::drain );
+        }
+    }
+
+    private void drain()
+    {
+        final long deadline = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+        int handled = 0;
+        T item;
+        while ( handled < MAX_BATCH_SIZE && System.currentTimeMillis() < deadline && ( item = queue.poll() ) != null )
+        {
+            depth.decrementAndGet();
+            handled++;
+            try
+            {
+                handler.accept( item );
+            }
+            catch ( Exception e )
+            {
+                Log.error( "An exception occurred while handling " + item, e );
+            }
+        }
+
+        if ( handled > 0 && afterBatch != null )
+        {
+            try
+            {
+                afterBatch.run();
+            }
+            catch ( Exception e )
+            {
+                Log.error( "An exception occurred after handling a batch of " + handled + " items.", e );
+            }
+        }
+
+        scheduled.set( false );
+        if ( !queue.isEmpty() )
+        {
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.util;
+
+import org.jivesoftware.spark.util.log.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs delayed tasks that are identified by a key, using a hashed timing wheel: a fixed ring of slots, one of which is
+ * visited every tick. Scheduling and cancelling a task take constant time, no matter how many tasks are pending, and
+ * all pending tasks are served by a single timer, rather than by one timer per task.
+ *
+ * At most one task is pending for every key: scheduling a task replaces the task that was pending for its key. This
+ * suits state transitions, where only the most recent transition of an entity matters. Tasks run no sooner than their
+ * delay, and at most one tick later, as measured by {@link System#nanoTime()}, so that changes to the wall clock do
+ * not affect them. All tasks that expire in the same tick are handed to the executor as one batch.
+ *
+ * This class is thread-safe.
+ */
+public class TimingWheel
+{
+    private final long tickMillis;
+    private final List<Map<Object, Timeout>> slots;
+    private final Map<Object, Timeout> timeouts = new HashMap<>();
+    private final Executor executor;
+    private final LongSupplier clock;
+    private final boolean selfDriven;
+    private final long startMillis;
+
+    // The last tick that has been processed.
+    private long tick;
+
+    private TimerTask driver;
+
+    /**
+     * Creates a timing wheel that is driven by a timer of the {@link TaskEngine} while tasks are pending.
+     *
+     * @param tickMillis the duration of a tick, in milliseconds.
+     * @param slotCount  the number of slots of the wheel: tasks are spread over the slots by their deadline.
+     * @param executor   runs the tasks that expired (eg: on the event dispatch thread).
+     */
+    public TimingWheel( long tickMillis, int slotCount, Executor executor )
+    {
+        this( tickMillis, slotCount, executor, () -> TimeUnit.NANOSECONDS.toMillis( System.nanoTime() ), true );
+    }
+
+    /**
+     * Creates a timing wheel that is not driven by a timer: {@link #advance()} needs to be invoked explicitly.
+     *
+     * @param tickMillis the duration of a tick, in milliseconds.
+     * @param slotCount  the number of slots of the wheel.
+     * @param executor   runs the tasks that expired.
+     * @param clock      provides the current time, in milliseconds since an arbitrary origin. The clock must not be
+     *                   set back, like the wall clock can be: a monotonic clock is expected.
+     */
+    TimingWheel( long tickMillis, int slotCount, Executor executor, LongSupplier clock )
+    {
+        this( tickMillis, slotCount, executor, clock, false );
+    }
+
+    private TimingWheel( long tickMillis, int slotCount, Executor executor, LongSupplier clock, boolean selfDriven )
+    {
+        if ( tickMillis <= 0 || slotCount <= 0 )
+        {
+            throw new IllegalArgumentException( "The tick duration and the number of slots must be positive." );
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>( slotCount );
+        for ( int i = 0; i < slotCount; i++ )
+        {
+            slots.add( new LinkedHashMap<>() );
+        }
+        this.executor = executor;
+        this.clock = clock;
+        this.selfDriven = selfDriven;
+        this.startMillis = clock.getAsLong();
+    }
+
+    /**
+     * Schedules a task, replacing the task that was pending for the same key (if any).
+     *
+     * @param key         identifies the task.
+     * @param delayMillis the delay after which the task is to run, in milliseconds.
+     * @param task        the task.
+     */
+    public synchronized void schedule( Object key, long delayMillis, Runnable task )
+    {
+        cancel( key );
+
+        // Round up, so that the task does not run early.
+        final long elapsed = clock.getAsLong() - startMillis + Math.max( 0, delayMillis );
+        final long deadline = Math.max( tick + 1, ( elapsed + tickMillis - 1 ) / tickMillis );
+        final Timeout timeout = new Timeout( key, task, deadline );
+        timeouts.put( key, timeout );
+        slotOf( deadline ).put( key, timeout );
+
+        if ( selfDriven && driver == null )
+        {
+            driver = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    advance();
+                }
+            };
+            TaskEngine.getInstance().scheduleAtFixedRate( driver, tickMillis, tickMillis );
+        }
+    }
+
+    /**
+     * Cancels the task that is pending for a key.
+     *
+     * @param key identifies the task.
+     * @return true if a task was cancelled, false if no task was pending for the key.
+     */
+    public synchronized boolean cancel( Object key )
+    {
+        final Timeout timeout = timeouts.remove( key );
+        if ( timeout == null )
+        {
+            return false;
+        }
+        slotOf( timeout.deadline ).remove( key );
+        return true;
+    }
+
+    /**
+     * Checks if a task is pending for a key.
+     *
+     * @param key identifies the task.
+     * @return true if a task is pending.
+     */
+    public synchronized boolean isScheduled( Object key )
+    {
+        return timeouts.containsKey( key );
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     *
+     * @return the number of pending tasks.
+     */
+    public synchronized int size()
+    {
+        return timeouts.size();
+    }
+
+    /**
+     * Processes all ticks up to the current time, and hands the tasks that expired to the executor.
+     */
+    public void advance()
+    {
+        final List<Runnable> expired = new ArrayList<>();
+        synchronized ( this )
+        {
+            final long now = ( clock.getAsLong() - startMillis ) / tickMillis;
+            if ( now <= tick )
+            {
+                return;
+            }
+
+            // After a long pause, every slot needs to be visited only once.
+            final long visits = Math.min( now - tick, slots.size() );
+            for ( long i = 1; i <= visits; i++ )
+            {
+                final Map<Object, Timeout> slot = slotOf( tick + i );
+                slot.values().removeIf( timeout -> {
+                    if ( timeout.deadline > now )
+                    {
+                        return false;
+                    }
+                    timeouts.remove( timeout.key );
+                    expired.add( timeout.task );
+                    return true;
+                } );
+            }
+            tick = now;
+
+            if ( driver != null && timeouts.isEmpty() )
+            {
+                TaskEngine.getInstance().cancelScheduledTask( driver );
+                driver = null;
+            }
+        }
+
+        if ( !expired.isEmpty() )
+        {
+            executor.execute( () -> {
+                for ( final Runnable task : expired )
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    catch ( Exception e )
+                    {
+                        Log.error( "A scheduled task threw an exception.", e );
+                    }
+                }
+            } );
+        }
+    }
+
+    private Map<Object, Timeout> slotOf( long deadline )
+    {
+        return slots.get( (int) ( deadline % slots.size() ) );
+    }
+
+    private static final class Timeout
+    {
+        private final Object key;
+        private final Runnable task;
+        private final long deadline;
+
+        private Timeout( Object key, Runnable task, long deadline )
+        {
+            this.key = key;
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
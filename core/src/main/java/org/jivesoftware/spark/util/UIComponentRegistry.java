@@ -42,6 +42,8 @@ import org.jivesoftware.spark.ui.rooms.GroupChatRoom;
 import org.jivesoftware.spark.ui.status.StatusBar;
 import org.jivesoftware.spark.ui.themes.ThemePanel;
 import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
+import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.BareJid;
 import org.jxmpp.jid.EntityJid;
 import org.jxmpp.jid.impl.JidCreate;
@@ -301,7 +303,8 @@ public final class UIComponentRegistry {
     }
 
     /**
-     * Creates a new contact item object.
+     * Creates a new contact item object. When no other class is registered as contact item and lightweight contacts
+     * are enabled (see {@link LocalPreferences#isLightweightContactListEnabled()}), the item has no child components.
      *
      * @param alias
      * @param nickname
@@ -316,6 +319,9 @@ public final class UIComponentRegistry {
         final BareJid jid = fullyQualifiedJID != null ? fullyQualifiedJID : JidCreate.bareFromOrThrowUnchecked("dummy@dummy.example");
         final String aliass = alias != null ? alias : "";
 
+        if (contactItemClass == ContactItem.class && SettingsManager.getLocalPreferences().isLightweightContactListEnabled()) {
+            return new ContactItem(aliass, nick, jid, false);
+        }
         return instantiate(contactItemClass, aliass, nick, jid);
     }
 
@@ -262,7 +262,7 @@ public class ContactListAssistantPlugin implements Plugin {
         ContactItem newContact = UIComponentRegistry.createContactItem(item.getAlias(), item.getNickname(), item.getJid());
         newContact.setPresence(item.getPresence());
         newContact.setIcon(item.getIcon());
-        newContact.getNicknameLabel().setFont(item.getNicknameLabel().getFont());
+        newContact.setNicknameFont(item.getNicknameFont());
         boolean groupHadAvailableContacts = false;
         
         // Do not copy/move a contact item only if it is not already in the Group.
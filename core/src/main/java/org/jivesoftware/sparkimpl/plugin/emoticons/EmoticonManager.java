@@ -62,6 +62,10 @@ public class EmoticonManager {
 	private final Map<String, Map<String, Emoticon>> emoticonMap = new HashMap<>();
 	private final Map<String, ImageIcon> imageMap = new HashMap<>();
 
+	// The trie of the active pack, and the name of the pack that it was built for.
+	private EmoticonTrie activeTrie;
+	private String activeTriePack;
+
 	/**
 	 * The root emoticon directory.
 	 */
@@ -237,6 +241,24 @@ public class EmoticonManager {
 		pref.setEmoticonPack(pack);
 		SettingsManager.saveSettings();
 		imageMap.clear();
+		synchronized (this) {
+			activeTrie = null;
+		}
+	}
+
+	/**
+	 * Returns a trie of the text representations of all emoticons in the active emoticon pack.
+	 *
+	 * @return the trie of the active emoticon pack (possibly empty, never null).
+	 */
+	public synchronized EmoticonTrie getActiveEmoticonTrie() {
+		final String packName = getActiveEmoticonSetName();
+		if (activeTrie == null || !Objects.equals(packName, activeTriePack)) {
+			final Map<String, Emoticon> emoticons = packName == null ? null : emoticonMap.get(packName);
+			activeTrie = new EmoticonTrie(emoticons == null ? Collections.emptySet() : emoticons.keySet());
+			activeTriePack = packName;
+		}
+		return activeTrie;
 	}
 
 	/**
@@ -357,6 +379,9 @@ public class EmoticonManager {
 		}
 
 		emoticonMap.put(packName, emoticons);
+		synchronized (this) {
+			activeTrie = null;
+		}
 	}
 
 	/**
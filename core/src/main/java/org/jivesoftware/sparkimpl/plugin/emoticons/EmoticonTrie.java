@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.emoticons;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A character trie of the text representations of a set of emoticons. It allows text to be matched against all
+ * emoticons of a pack, without having to create a string of the text to match.
+ *
+ * Instances are immutable.
+ */
+public class EmoticonTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * Creates a trie that contains the provided text representations.
+     *
+     * @param keys the text representations of emoticons.
+     */
+    public EmoticonTrie(Collection<String> keys) {
+        for (String key : keys) {
+            if (key == null || key.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.getOrAddChild(key.charAt(i));
+            }
+            node.key = key;
+        }
+    }
+
+    /**
+     * Checks if a range of characters is exactly equal to the text representation of an emoticon.
+     *
+     * @param text  the text that contains the range.
+     * @param start the start of the range (inclusive).
+     * @param end   the end of the range (exclusive).
+     * @return the text representation of the emoticon, or null when the range does not represent an emoticon.
+     */
+    public String match(CharSequence text, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            node = node.getChild(text.charAt(i));
+        }
+        return node == null ? null : node.key;
+    }
+
+    private static class Node {
+        private char[] chars = new char[0];
+        private Node[] children = new Node[0];
+        private String key;
+
+        private Node getChild(char c) {
+            final int index = Arrays.binarySearch(chars, c);
+            return index < 0 ? null : children[index];
+        }
+
+        private Node getOrAddChild(char c) {
+            int index = Arrays.binarySearch(chars, c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            index = -index - 1;
+            final char[] newChars = new char[chars.length + 1];
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(chars, 0, newChars, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newChars[index] = c;
+            newChildren[index] = new Node();
+            System.arraycopy(chars, index, newChars, index + 1, chars.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            chars = newChars;
+            children = newChildren;
+            return newChildren[index];
+        }
+    }
+}
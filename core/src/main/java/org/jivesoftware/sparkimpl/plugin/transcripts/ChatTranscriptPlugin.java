@@ -20,10 +20,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
@@ -41,7 +43,6 @@ import org.jivesoftware.resource.SparkRes;
 import org.jivesoftware.smack.ConnectionListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.packet.Message;
-import org.jivesoftware.smackx.jiveproperties.packet.JivePropertiesExtension;
 import org.jivesoftware.spark.SparkManager;
 import org.jivesoftware.spark.plugin.ContextMenuListener;
 import org.jivesoftware.spark.ui.ChatRoom;
@@ -51,7 +52,9 @@ import org.jivesoftware.spark.ui.ChatRoomListener;
 import org.jivesoftware.spark.ui.ContactItem;
 import org.jivesoftware.spark.ui.ContactList;
 import org.jivesoftware.spark.ui.rooms.ChatRoomImpl;
+import org.jivesoftware.spark.util.TaskEngine;
 import org.jivesoftware.spark.util.UIComponentRegistry;
+import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.plugin.manager.Enterprise;
 import org.jivesoftware.sparkimpl.settings.local.LocalPreferences;
 import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
@@ -67,7 +70,10 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
 
     private final SimpleDateFormat notificationDateFormatter;
     private final SimpleDateFormat messageDateFormatter;
-    private final HashMap<EntityBareJid, Message> lastMessage = new HashMap<>();
+    /**
+     * For every chat room, the amount of messages at the start of its transcript that have been persisted.
+     */
+    private final Map<ChatRoom, Integer> persistedWatermarks = new WeakHashMap<>();
     private JDialog Frame;
     private HistoryTranscript transcript = null;
     /**
@@ -135,6 +141,9 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
             @Override
 			public void shutdown() {
                 persistConversations();
+                ChatTranscripts.getWriteQueue().flush();
+                ChatTranscripts.getTranscriptIndex().close();
+                ChatTranscripts.getTranscriptStore().close();
             }
 
             @Override
@@ -149,6 +158,13 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
         });
 
 
+        if (SettingsManager.getLocalPreferences().isChatHistoryEnabled()) {
+            TaskEngine.getInstance().submit(() -> ChatTranscripts.getTranscriptIndex().indexExistingTranscripts());
+        }
+
+        // Spill files are deleted on exit, unless Spark did not exit normally.
+        TaskEngine.getInstance().submit(() -> TranscriptBuffer.deleteSpillFiles(new File(ChatTranscripts.getTranscriptDirectory(), ChatTranscripts.SPILL_DIRECTORY)));
+
         SparkManager.getConnection().addConnectionListener(new ConnectionListener() {
             @Override
             public void connected( XMPPConnection xmppConnection ) {
@@ -165,6 +181,7 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
             @Override
             public void connectionClosedOnError(Exception e) {
                 persistConversations();
+                ChatTranscripts.flush();
             }
         });
     }
@@ -193,8 +210,7 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
 
         final EntityBareJid jid = room.getBareJid();
 
-        File transcriptFile = ChatTranscripts.getTranscriptFile(jid);
-        if (!transcriptFile.exists()) {
+        if (!ChatTranscripts.hasTranscript(jid)) {
             return;
         }
 
@@ -214,8 +230,17 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
         if (room.getChatType() == Message.Type.chat) {
             persistChatRoom(room);
         }
+        synchronized (persistedWatermarks) {
+            persistedWatermarks.remove(room);
+        }
     }
 
+    /**
+     * Queues the messages of a chat room that have not been persisted yet, for them to be written to the transcript
+     * of the conversation partner.
+     *
+     * @param room the chat room.
+     */
     public void persistChatRoom(final ChatRoom room) {
         LocalPreferences pref = SettingsManager.getLocalPreferences();
         if (!pref.isChatHistoryEnabled()) {
@@ -225,35 +250,26 @@ public class ChatTranscriptPlugin implements ChatRoomListener {
         final EntityBareJid jid = room.getBareJid();
 
         final List<Message> transcripts = room.getTranscripts();
-        ChatTranscript transcript = new ChatTranscript();
-        int count = 0;
-        int i = 0;
-    	if (lastMessage.get(jid) != null)
-    	{
-    		count = transcripts.indexOf(lastMessage.get(jid)) + 1;
-    	}
-        for (Message message : transcripts) {
-        	if (i < count)
-        	{
-            	i++;
-        		continue;
-        	}
-      	  	lastMessage.put(jid,message);
-            HistoryMessage history = new HistoryMessage();
-            history.setTo(message.getTo());
-            history.setFrom(message.getFrom());
-            history.setBody(message.getBody());
-            final JivePropertiesExtension extension = ((JivePropertiesExtension) message.getExtension( JivePropertiesExtension.NAMESPACE ));
-            Date date = null;
-            if ( extension != null ) {
-                date = (Date) extension.getProperty( "date" );
+        final List<HistoryMessage> messages = new ArrayList<>();
+        int unreadable = 0;
+        synchronized (persistedWatermarks) {
+            final int size = transcripts.size();
+            final Integer watermark = persistedWatermarks.get(room);
+            for (int i = watermark == null ? 0 : watermark; i < size; i++) {
+                try {
+                    messages.add(ChatTranscripts.toHistoryMessage(transcripts.get(i)));
+                } catch (UncheckedIOException e) {
+                    // Messages that were evicted from memory could not be read back.
+                    unreadable++;
+                }
             }
-            history.setDate( date == null ? new Date() : date );
-            transcript.addHistoryMessage(history);
+            persistedWatermarks.put(room, size);
+        }
+        if (unreadable > 0) {
+            Log.error("Unable to persist " + unreadable + " messages of the chat with " + jid + ": they could not be read back from disk.");
         }
 
-        ChatTranscripts.appendToTranscript(jid, transcript);
-
+        ChatTranscripts.getWriteQueue().enqueue(jid, messages);
     }
 
     @Override
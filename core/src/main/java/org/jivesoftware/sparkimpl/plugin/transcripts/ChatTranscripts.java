@@ -16,148 +16,104 @@
 package org.jivesoftware.sparkimpl.plugin.transcripts;
 
 import org.jivesoftware.resource.Default;
-import org.jivesoftware.smack.xml.SmackXmlParser;
-import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.jiveproperties.packet.JivePropertiesExtension;
 import org.jivesoftware.spark.SparkManager;
-import org.jivesoftware.spark.util.StringUtils;
-import org.jivesoftware.spark.util.log.Log;
 import org.jivesoftware.sparkimpl.plugin.manager.Enterprise;
 import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
 import org.jxmpp.jid.EntityBareJid;
 import org.jxmpp.jid.Jid;
-import org.jxmpp.jid.impl.JidCreate;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
-import java.nio.charset.StandardCharsets;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Collection;
 import java.util.Date;
 
 
 /**
  * A Utility class that manages the Chat Transcripts within Spark.
  *
+ * The actual persistence is delegated to a {@link TranscriptStore}. Unless another store is configured through
+ * {@link #setTranscriptStore(TranscriptStore)}, a {@link SegmentedTranscriptStore} is used, which keeps its data in
+ * the 'transcripts' directory of the user.
+ *
  * @author Derek DeMoro
  */
 public final class ChatTranscripts {
 
-    /**
-     * Default Date Formatter *
-     */
-    private static final DateFormat FORMATTER;
+    static final String SPILL_DIRECTORY = "spill";
 
-    static {
-        FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S z");
-    }
+    private static TranscriptStore store;
+
+    private static TranscriptIndex index;
+
+    private static TranscriptWriteQueue writeQueue;
 
     private ChatTranscripts() {
 
     }
 
     /**
-     * Appends the given ChatTranscript to the transcript file associated with a JID.
+     * Returns the store that is used to persist transcripts.
      *
-     * @param jid        the jid of the user.
-     * @param transcript the ChatTranscript.
+     * @return the transcript store.
      */
-    public static void appendToTranscript(EntityBareJid jid, ChatTranscript transcript) {
-    	final File transcriptFile = getTranscriptFile(jid);
-
-       	if (!Default.getBoolean(Default.HISTORY_DISABLED) && Enterprise.containsFeature(Enterprise.HISTORY_TRANSCRIPTS_FEATURE)) {
-    		// Write Full Transcript, appending the messages.
-    		writeToFile(transcriptFile, transcript.getMessages(), true);
-
-    		// Write to current history File
-    		final File currentHistoryFile = getCurrentHistoryFile(jid);
-    		ChatTranscript tempTranscript = getCurrentChatTranscript(jid);
-    		for (HistoryMessage message : transcript.getMessages()) {
-    			tempTranscript.addHistoryMessage(message);
-    		}
-            int max = SettingsManager.getLocalPreferences().getMaxCurrentHistorySize();
-            writeToFile(currentHistoryFile, tempTranscript.getNumberOfEntries(max), false);
-    	}
+    public static synchronized TranscriptStore getTranscriptStore() {
+        if (store == null) {
+            store = new SegmentedTranscriptStore(getTranscriptDirectory());
+        }
+        return store;
     }
 
-    private static void writeToFile(File transcriptFile, Collection<HistoryMessage> messages, boolean append) {
-        final StringBuilder builder = new StringBuilder();
-
-        final String one = " ";
-        final String two = "  ";
-        final String three = "   ";
-
-        // Handle new transcript file.
-        if (!transcriptFile.exists() || !append) {
-            builder.append("<transcript>\n");
-            builder.append(one+"<messages>\n");
+    /**
+     * Replaces the store that is used to persist transcripts. The store that was in use is closed.
+     *
+     * @param transcriptStore the new transcript store.
+     */
+    public static synchronized void setTranscriptStore(TranscriptStore transcriptStore) {
+        if (store != null && store != transcriptStore) {
+            store.close();
         }
-
-        for (HistoryMessage m : messages) {
-            builder.append(two+"<message>\n");
-            builder.append(three+"<to>").append(m.getTo()).append("</to>\n");
-            builder.append(three+"<from>").append(m.getFrom()).append("</from>\n");
-            builder.append(three+"<body>").append(StringUtils.escapeForXML(m.getBody())).append("</body>\n");
-
-            String dateString = FORMATTER.format(m.getDate());
-            builder.append(three+"<date>").append(dateString).append("</date>\n");
-            builder.append(two+"</message>\n");
+        if (index != null) {
+            index.close();
+            index = null;
         }
+        store = transcriptStore;
+    }
 
-        if (!transcriptFile.exists() || !append) {
-            builder.append(one+"</messages>\n");
-            builder.append("</transcript>");
+    /**
+     * Returns the full-text index of the transcripts in the transcript store.
+     *
+     * @return the transcript index.
+     */
+    public static synchronized TranscriptIndex getTranscriptIndex() {
+        if (index == null) {
+            index = new TranscriptIndex(new File(getTranscriptDirectory(), "index"), getTranscriptStore());
         }
+        return index;
+    }
 
-
-        if (!transcriptFile.exists() || !append) {
-            // Write out new File
-            try {
-                transcriptFile.getParentFile().mkdirs();
-                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(transcriptFile), StandardCharsets.UTF_8));
-                out.write(builder.toString());
-                out.close();
-            }
-            catch (IOException e) {
-                Log.error(e);
-            }
-            return;
+    /**
+     * Returns the queue through which messages of ongoing conversations are written to their transcripts. Messages
+     * that are queued are written with {@link #appendToTranscript(EntityBareJid, ChatTranscript)}.
+     *
+     * @return the transcript write queue.
+     */
+    public static synchronized TranscriptWriteQueue getWriteQueue() {
+        if (writeQueue == null) {
+            writeQueue = new TranscriptWriteQueue(ChatTranscripts::appendToTranscript);
         }
+        return writeQueue;
+    }
 
-        // Append to File
-        try {
-            final RandomAccessFile raf = new RandomAccessFile(transcriptFile, "rw");
-
-            // We want to append near the end of the document as the last
-            // child in the transcript.
-            final String endTag = " </messages>\n</transcript>";
-
-          String line =  raf.readLine();
-          if(line.contains("</messages></transcript>"))
-          {
-              // replace the old one with the new one
-              line = line.replace("</messages></transcript>",endTag);
-              raf.write(line.getBytes(StandardCharsets.UTF_8));
-          }
-
-            builder.append(endTag);
-
-            raf.seek(transcriptFile.length() - endTag.length());
-
-            // Append to the end
-            raf.write(builder.toString().getBytes(StandardCharsets.UTF_8));
-            raf.close();
-        }
-        catch (IOException e) {
-            Log.error(e);
+    /**
+     * Appends the given ChatTranscript to the transcript file associated with a JID.
+     *
+     * @param jid        the jid of the user.
+     * @param transcript the ChatTranscript.
+     */
+    public static void appendToTranscript(EntityBareJid jid, ChatTranscript transcript) {
+        if (!Default.getBoolean(Default.HISTORY_DISABLED) && Enterprise.containsFeature(Enterprise.HISTORY_TRANSCRIPTS_FEATURE)) {
+            getTranscriptStore().append(jid, transcript.getMessages());
+            getTranscriptIndex().add(jid, transcript.getMessages());
         }
     }
 
@@ -168,7 +124,9 @@ public final class ChatTranscripts {
      * @return the ChatTranscript (default = last 20 messages max).
      */
     public static ChatTranscript getCurrentChatTranscript(Jid jid) {
-        return getTranscript(getCurrentHistoryFile(jid));
+        getWriteQueue().flush();
+        final int max = SettingsManager.getLocalPreferences().getMaxCurrentHistorySize();
+        return getTranscriptStore().getRecentTranscript(jid, max);
     }
 
     /**
@@ -178,42 +136,38 @@ public final class ChatTranscripts {
      * @return the ChatTranscript.
      */
     public static ChatTranscript getChatTranscript(Jid jid) {
-        return getTranscript(getTranscriptFile(jid));
+        getWriteQueue().flush();
+        return getTranscriptStore().getTranscript(jid);
+    }
+
+    /**
+     * Checks if there is any chat history for a particular jid.
+     *
+     * @param jid the jid of the user.
+     * @return true if a transcript exists, otherwise false.
+     */
+    public static boolean hasTranscript(Jid jid) {
+        // Messages that are still queued will be written shortly: there is no need to wait for that.
+        return getWriteQueue().hasPending(jid) || getTranscriptStore().hasTranscript(jid);
     }
 
     /**
-     * Reads in the transcript file using the Xml Pull Parser.
+     * Forces all transcript data that has not yet been written to disk to be written, including messages that are
+     * still waiting in the write queue.
+     */
+    public static void flush() {
+        getWriteQueue().flush();
+        getTranscriptStore().flush();
+    }
+
+    /**
+     * Reads in a transcript file in the (legacy) XML format.
      *
      * @param transcriptFile the transcript file to read.
      * @return the ChatTranscript.
      */
     public static ChatTranscript getTranscript(File transcriptFile) {
-        final ChatTranscript transcript = new ChatTranscript();
-        if (!transcriptFile.exists()) {
-            return transcript;
-        }
-
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(transcriptFile), StandardCharsets.UTF_8));
-            final XmlPullParser parser = SmackXmlParser.newXmlParser(in);
-            boolean done = false;
-            while (!done) {
-                XmlPullParser.Event eventType = parser.next();
-                if (eventType == XmlPullParser.Event.START_ELEMENT && "message".equals(parser.getName())) {
-                    transcript.addHistoryMessage(getHistoryMessage(parser));
-                }
-                else if (eventType == XmlPullParser.Event.END_ELEMENT && "transcript".equals(parser.getName())) {
-                    done = true;
-                }
-            }
-            in.close();
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-      
-
-        return transcript;
+        return XmlTranscriptStore.readTranscriptFile(transcriptFile);
     }
 
     /**
@@ -221,10 +175,12 @@ public final class ChatTranscripts {
      *
      * @param jid the
      * @return the settings file.
+     * @deprecated transcripts are no longer stored in a single file. Use {@link #hasTranscript(Jid)} to check for the
+     * existence of a transcript, or {@link #getTranscriptStore()} to access its content.
      */
+    @Deprecated
     public static File getTranscriptFile(Jid jid) {
-        //replace with Jid.asUrlEncodedString() when available
-        return new File(SparkManager.getUserDirectory(), "transcripts/" + jid.asUnescapedString() + ".xml");
+        return new XmlTranscriptStore(getTranscriptDirectory()).getTranscriptFile(jid);
     }
 
     /**
@@ -232,50 +188,53 @@ public final class ChatTranscripts {
      *
      * @param jid the jid of the user.
      * @return the current transcript file.
+     * @deprecated transcripts are no longer stored in a single file. Use {@link #getCurrentChatTranscript(Jid)} instead.
      */
+    @Deprecated
     public static File getCurrentHistoryFile(Jid jid) {
-        //replace with Jid.asUrlEncodedString() when available
-        return new File(SparkManager.getUserDirectory(), "transcripts/" + jid.asUnescapedString() + "_current.xml");
+        return new XmlTranscriptStore(getTranscriptDirectory()).getCurrentHistoryFile(jid);
     }
 
-    private static HistoryMessage getHistoryMessage(XmlPullParser parser) throws Exception {
-        HistoryMessage message = new HistoryMessage();
-
-        // Check for nickname
-        boolean done = false;
-        while (!done) {
-            XmlPullParser.Event eventType = parser.next();
-            if (eventType == XmlPullParser.Event.START_ELEMENT && "to".equals(parser.getName())) {
-                String jidString = parser.nextText();
-                Jid jid = JidCreate.from(jidString);
-                message.setTo(jid);
-            }
-            else if (eventType == XmlPullParser.Event.START_ELEMENT && "from".equals(parser.getName())) {
-                String jidString = parser.nextText();
-                Jid jid = JidCreate.from(jidString);
-                message.setFrom(jid);
-            }
-            else if (eventType == XmlPullParser.Event.START_ELEMENT && "body".equals(parser.getName())) {
-                message.setBody(StringUtils.unescapeFromXML(parser.nextText()));
-            }
-            else if (eventType == XmlPullParser.Event.START_ELEMENT && "date".equals(parser.getName())) {
-                Date d;
-                try {
-                    d = FORMATTER.parse(parser.nextText());
-                }
-                catch (ParseException e) {
-                    d = new Date();
-                }
-                message.setDate(d);
-            }
-            else if (eventType == XmlPullParser.Event.END_ELEMENT && "message".equals(parser.getName())) {
-                done = true;
-            }
+    /**
+     * Converts a message of the transcript of a chat room into a message of a persisted transcript.
+     *
+     * @param message the message of a chat room.
+     * @return the message to persist.
+     */
+    static HistoryMessage toHistoryMessage(Message message) {
+        HistoryMessage history = new HistoryMessage();
+        history.setTo(message.getTo());
+        history.setFrom(message.getFrom());
+        history.setBody(message.getBody());
+        final JivePropertiesExtension extension = ((JivePropertiesExtension) message.getExtension( JivePropertiesExtension.NAMESPACE ));
+        Date date = null;
+        if ( extension != null ) {
+            date = (Date) extension.getProperty( "date" );
         }
-
-
-        return message;
+        history.setDate( date == null ? new Date() : date );
+        return history;
     }
 
+    /**
+     * Returns the directory in which chat rooms write the messages that they no longer keep in memory.
+     *
+     * @return the spill directory, or null when the history of chats is not to be saved (by preference or by policy),
+     * in which case messages are not to be written to disk.
+     */
+    public static File getSpillDirectory() {
+        if (Default.getBoolean(Default.HISTORY_DISABLED) || !Enterprise.containsFeature(Enterprise.HISTORY_TRANSCRIPTS_FEATURE)
+            || !SettingsManager.getLocalPreferences().isChatHistoryEnabled()) {
+            return null;
+        }
+        return new File(getTranscriptDirectory(), SPILL_DIRECTORY);
+    }
 
+    /**
+     * Returns the directory in which transcripts are stored.
+     *
+     * @return the transcript directory.
+     */
+    public static File getTranscriptDirectory() {
+        return new File(SparkManager.getUserDirectory(), "transcripts");
+    }
 }
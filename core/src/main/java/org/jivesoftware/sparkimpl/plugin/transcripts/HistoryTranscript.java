@@ -12,15 +12,10 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.swing.*;
 import javax.swing.text.*;
@@ -82,18 +77,22 @@ public class HistoryTranscript extends SwingWorker {
     private final JScrollPane pane = new JScrollPane(window);
     private final JFrame frame = new JFrame(Res.getString("title.history.for", jid));
     private final StringBuilder builder = new StringBuilder();
-    private List<ChatTranscript> searchFilteredList = new ArrayList<>();
-    private List<ChatTranscript> dateFilteredUnfilteredList = new ArrayList<>();
-    private final AtomicBoolean isHistoryLoaded = new AtomicBoolean(false);
+    private List<HistoryPage> pages = new ArrayList<>();
+    private String pageQuery = null;
+    private Set<Long> pageCandidates = null;
+    private final Map<HistoryMessage, int[]> shownHighlights = new IdentityHashMap<>();
     private final String SEPARATOR = System.getProperty("line.separator");
-    private final DefaultHighlighter.DefaultHighlightPainter highlighter = new DefaultHighlighter.DefaultHighlightPainter(Color.YELLOW);
-    private boolean focusFlag = false;
-    private String searchQuery = Res.getString("message.search.for.history");
     /**
      * The currently selected Font Size to use.
      */
     private final int fontSize = SettingsManager.getLocalPreferences().getChatRoomFontSize();
 
+    /**
+     * The maximum amount of messages that is displayed on one page. Periods that contain more messages are spread
+     * over multiple pages.
+     */
+    private static final int MAX_PAGE_SIZE = 500;
+
     /**
      * Open the Transcript with the given formatter.
      *
@@ -129,7 +128,6 @@ public class HistoryTranscript extends SwingWorker {
             if (!Objects.equals(change, searchPeriod) && isInitialized.get()) {
                 searchPeriod = change;
                 pref.setSearchPeriod(searchPeriod);
-                isHistoryLoaded.set(false);
                 TaskEngine.getInstance().schedule(transcriptTask, 10);
             }
             token.release();
@@ -202,8 +200,6 @@ public class HistoryTranscript extends SwingWorker {
             Jid from = message.getFrom();
             String nickname = SparkManager.getUserManager()
                     .getUserNicknameFromJID(message.getFrom().asBareJid());
-            String body = org.jivesoftware.spark.util.StringUtils
-                    .escapeHTMLTags(message.getBody());
             if (nickname.equals(message.getFrom().toString()) || nickname.equals(message.getFrom().asBareJid().toString())) {
                 BareJid otherJID = message
                         .getFrom().asBareJid();
@@ -260,7 +256,7 @@ public class HistoryTranscript extends SwingWorker {
             }
             builder.append("</font>");
             builder.append("<font face=dialog size=4>");
-            builder.append(body);
+            builder.append(highlight(message));
             builder.append("</font>");
             builder.append("</td></tr><br>");
 
@@ -272,6 +268,34 @@ public class HistoryTranscript extends SwingWorker {
         return builder.toString();
     }
 
+    /**
+     * Escapes the body of a message for display, marking the parts that match the current search.
+     *
+     * @param message a message of the page that is displayed.
+     * @return the HTML representation of the body.
+     */
+    private String highlight(HistoryMessage message) {
+        final String text = message.getBody() == null ? "" : message.getBody();
+        final int[] ranges = shownHighlights.get(message);
+        if (ranges == null || ranges.length == 0) {
+            return org.jivesoftware.spark.util.StringUtils.escapeHTMLTags(text);
+        }
+
+        final StringBuilder result = new StringBuilder(text.length() + ranges.length * 32);
+        int last = 0;
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            final int start = Math.max(last, Math.min(ranges[i], text.length()));
+            final int end = Math.max(start, Math.min(ranges[i + 1], text.length()));
+            result.append(org.jivesoftware.spark.util.StringUtils.escapeHTMLTags(text.substring(last, start)));
+            result.append("<span style='background-color: yellow'>");
+            result.append(org.jivesoftware.spark.util.StringUtils.escapeHTMLTags(text.substring(start, end)));
+            result.append("</span>");
+            last = end;
+        }
+        result.append(org.jivesoftware.spark.util.StringUtils.escapeHTMLTags(text.substring(last)));
+        return result.toString();
+    }
+
     /**
      * If a new page is loaded or the search is changed, displays the current
      * page again.
@@ -279,9 +303,9 @@ public class HistoryTranscript extends SwingWorker {
     private synchronized void display() {
         try {
             token.acquire();
-            if ((searchFilteredList.size() > 0) && (pageIndex <= searchFilteredList.size())) {
+            if ((pages.size() > 0) && (pageIndex <= pages.size())) {
                 builder.append("<html><body><table cellpadding=0 cellspacing=0>");
-                builder.append(buildString(searchFilteredList.get(pageIndex - 1).getMessages()));
+                builder.append(buildString(loadPage(pages.get(pageIndex - 1))));
             } else {
                 // Handle no history
                 builder.replace(0, builder.length(), "");
@@ -293,36 +317,6 @@ public class HistoryTranscript extends SwingWorker {
             window.setFont(font);
             window.setText(builder.toString());
 
-            // highlighting searched text
-            try {
-                String text = searchQuery;
-                Document doc = window.getDocument();
-                String line;
-                if (text.length() > 0 && focusFlag) {
-                    String str = doc.getText(1, doc.getLength());
-                    BufferedReader buf = new BufferedReader(new StringReader(str));
-                    int globalPos = 1;
-                    while ((line = buf.readLine()) != null) {
-                        Matcher matcherTime = Pattern
-                                .compile("\\(\\d\\d:\\d\\d:\\d\\d\\)\\s[a-zA-Z0-9]+:\\s")
-                                .matcher(line);
-                        if (matcherTime.find()) {
-                            for (int i = matcherTime.end(); i + text.length() < line.length() + 1; i++) {
-                                String match = line.substring(i, i + text.length());
-                                if (text.equalsIgnoreCase(match)) {
-                                    window.getHighlighter().addHighlight(globalPos + i,
-                                            globalPos + i + text.length(), highlighter);
-                                }
-                            }
-                        }
-                        globalPos = globalPos + line.length() + 1;
-                    }
-                }
-            } catch (BadLocationException | IOException ex) {
-                Log.error(ex);
-                ex.printStackTrace();
-            }
-
             builder.replace(0, builder.length(), "");
             if (window.getText().length() > 0) {
                 window.setCaretPosition(0);
@@ -356,6 +350,9 @@ public class HistoryTranscript extends SwingWorker {
          * @return true if both dates in the same period, false if not
          */
         private boolean dateInPeriod(Date newDate, Date oldDate) {
+            if (newDate == null || oldDate == null) {
+                return true;
+            }
             boolean result = false;
             Calendar cal = Calendar.getInstance();
             cal.setTime(newDate);
@@ -388,99 +385,58 @@ public class HistoryTranscript extends SwingWorker {
         }
 
         /**
-         * Sort the messages by the choosen period of time
+         * Divides the transcript in pages, by the choosen period of time. Only the boundaries of each page are kept:
+         * its messages are read from the transcript when the page is displayed.
          *
-         * @param transcript the transcript to sort
-         * @return List of transcript sorted by period. each transcript contains
-         * the messages of the giving period
+         * @param query the text to search for, or null to include all messages.
+         * @return the pages, in the order in which they are to be displayed.
          */
-        private List<ChatTranscript> getDateSortedTranscript(ChatTranscript transcript) {
-            List<ChatTranscript> tmpList = new ArrayList<>();
-
-            if (transcript.size() > 0) {
-                ChatTranscript sortedTranscript = new ChatTranscript();
-                HistoryMessage msg;
-
-                // retrieve the first message
-                Date oldDate;
-                int iteratorValue;
-                int startValue;
-                int endValue;
-
-                boolean sortDateAsc = pref.getChatHistoryAscending();
-
-                if (sortDateAsc) {
-                    oldDate = transcript.getMessage(0).getDate();
-                    iteratorValue = 1;
-                    startValue = 0;
-                    endValue = transcript.size();
-                } else {
-                    oldDate = transcript.getMessage(transcript.size() - 1).getDate();
-                    iteratorValue = -1;
-                    startValue = transcript.size() - 1;
-                    endValue = -1;
-                }
-
-                Calendar cal = Calendar.getInstance();
-                cal.setTime(oldDate);
-                Date newDate;
-
-                ChatTranscript history;
-                boolean handled = true;
-
-                for (int i = startValue; i != endValue; i += iteratorValue) {
-                    msg = transcript.getMessage(i);
-                    // get the date of the current message
-                    newDate = msg.getDate();
-
-                    if (!dateInPeriod(newDate, oldDate)) {
-                        history = new ChatTranscript();
-                        history.setList(sortedTranscript.getMessages());
-
-                        // add the messages to the list
-                        if (history.getMessages().size() > 0) {
-                            tmpList.add(history);
+        private List<HistoryPage> paginate(String query, Set<Long> candidates) {
+            final List<HistoryPage> result = new ArrayList<>();
+            final List<HistoryMessage> selected = new ArrayList<>();
+
+            try (TranscriptCursor cursor = ChatTranscripts.getTranscriptStore().openCursor(jid)) {
+                SearchFilter filter = null;
+                Date periodStart = null;
+                long start = 0;
+                int length = 0;
+                int shown = 0;
+
+                while (cursor.hasNext()) {
+                    final long position = cursor.getPosition();
+                    final HistoryMessage message = cursor.next();
+
+                    if (filter == null || shown >= MAX_PAGE_SIZE || !dateInPeriod(message.getDate(), periodStart)) {
+                        // start a new page, keeping the previous one if it shows anything
+                        if (shown > 0) {
+                            result.add(new HistoryPage(start, length));
                         }
-
-                        // we have handled this entry
-                        oldDate = msg.getDate();
-                        sortedTranscript = new ChatTranscript();
+                        filter = new SearchFilter(query, candidates);
+                        periodStart = message.getDate();
+                        start = position;
+                        length = 0;
+                        shown = 0;
                     }
-                    sortedTranscript.addHistoryMessage(msg);
-                    // the latest entries not yet saved to the list
-                    handled = false;
+
+                    length++;
+                    selected.clear();
+                    filter.accept(message, selected);
+                    shown += selected.size();
                 }
 
-                // if the latest entries where not yet handled, do it now
-                if (!handled) {
-                    history = new ChatTranscript();
-                    history.setList(sortedTranscript.getMessages());
-                    if (history.getMessages().size() > 0) {
-                        tmpList.add(history);
-                    }
+                if (shown > 0) {
+                    result.add(new HistoryPage(start, length));
                 }
             }
 
-            return tmpList;
+            if (!pref.getChatHistoryAscending()) {
+                Collections.reverse(result);
+            }
+            return result;
         }
 
         @Override
         public void run() {
-            if (!isHistoryLoaded.get()) {
-                // if we have to load the history
-                dateFilteredUnfilteredList = getDateSortedTranscript((ChatTranscript) get());
-
-                try {
-                    token.acquire();
-                    // confirm that the history is loaded
-                    isHistoryLoaded.set(true);
-                    token.release();
-                } catch (InterruptedException e) {
-                    Log.error(e);
-                    e.printStackTrace();
-                }
-            }
-
             String searchString = searchField.getText();
             // if we searching for a string or not
             if (Res.getString("message.search.for.history").equals(
@@ -489,22 +445,28 @@ public class HistoryTranscript extends SwingWorker {
                 searchString = null;
             }
 
-            List<ChatTranscript> tmpList = new ArrayList<>();
-            ChatTranscript tmpTranscript;
+            // Make sure that the messages of an ongoing conversation are included.
+            ChatTranscripts.getWriteQueue().flush();
 
-            for (ChatTranscript chatTranscript : dateFilteredUnfilteredList) {
-                tmpTranscript = new ChatTranscript();
-                tmpTranscript.setList(chatTranscript.getMessage(searchString));
-                if (tmpTranscript.size() > 0) {
-                    tmpList.add(tmpTranscript);
+            // Use the transcript index to narrow down the messages to match, if it covers this transcript.
+            Set<Long> candidates = null;
+            final TranscriptIndex index = ChatTranscripts.getTranscriptIndex();
+            if (searchString != null && index.isIndexed(jid)) {
+                candidates = new HashSet<>();
+                for (TranscriptHit hit : index.search(searchString, jid, null, null, Integer.MAX_VALUE)) {
+                    candidates.add(hit.getDate().getTime());
                 }
             }
 
+            final List<HistoryPage> tmpList = paginate(searchString, candidates);
+
             try {
                 token.acquire();
-                searchFilteredList = tmpList;
-                pageIndex = (searchFilteredList.size() > 0) ? 1 : 0;
-                maxPages = searchFilteredList.size();
+                pages = tmpList;
+                pageQuery = searchString;
+                pageCandidates = candidates;
+                pageIndex = (pages.size() > 0) ? 1 : 0;
+                maxPages = pages.size();
                 token.release();
             } catch (InterruptedException e) {
                 Log.error(e);
@@ -514,6 +476,91 @@ public class HistoryTranscript extends SwingWorker {
         }
     }
 
+    /**
+     * Reads the messages of a page from the transcript.
+     *
+     * @param page the page to read.
+     * @return the messages of the page that match the current search, in the order in which they are to be displayed.
+     */
+    private List<HistoryMessage> loadPage(HistoryPage page) {
+        final List<HistoryMessage> result = new ArrayList<>();
+        final SearchFilter filter = new SearchFilter(pageQuery, pageCandidates);
+        try (TranscriptCursor cursor = ChatTranscripts.getTranscriptStore().openCursor(jid)) {
+            cursor.seek(page.position);
+            for (int i = 0; i < page.length && cursor.hasNext(); i++) {
+                filter.accept(cursor.next(), result);
+            }
+        }
+        shownHighlights.clear();
+        shownHighlights.putAll(filter.highlights);
+        if (!pref.getChatHistoryAscending()) {
+            Collections.reverse(result);
+        }
+        return result;
+    }
+
+    /**
+     * Describes a page of the history: a range of consecutive messages in the transcript.
+     */
+    private static class HistoryPage {
+        private final long position;
+        private final int length;
+
+        HistoryPage(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Selects the messages that contain the search keywords, together with the message directly before and after
+     * every match. Messages are to be offered in transcript order.
+     *
+     * Messages are matched by the rule of {@link TranscriptIndex#match(String, String)}, whether or not the transcript
+     * has been indexed. When it has, only the messages that have the date of a hit of the index are matched.
+     */
+    private static class SearchFilter {
+        private final String query;
+        private final Set<Long> candidates;
+        private final Map<HistoryMessage, int[]> highlights = new IdentityHashMap<>();
+        private HistoryMessage previous = null;
+        private boolean previousSelected = false;
+        private boolean selectNext = false;
+
+        SearchFilter(String query, Set<Long> candidates) {
+            this.query = query == null || query.isEmpty() ? null : query;
+            this.candidates = candidates;
+        }
+
+        void accept(HistoryMessage message, List<HistoryMessage> selected) {
+            if (query == null) {
+                selected.add(message);
+                return;
+            }
+
+            int[] ranges = null;
+            if (candidates == null || candidates.contains(message.getDate() == null ? 0L : message.getDate().getTime())) {
+                ranges = TranscriptIndex.match(query, message.getBody());
+            }
+            if (ranges != null) {
+                highlights.put(message, ranges);
+                if (previous != null && !previousSelected) {
+                    selected.add(previous);
+                }
+                selected.add(message);
+                previousSelected = true;
+                selectNext = true;
+            } else if (selectNext) {
+                selected.add(message);
+                previousSelected = true;
+                selectNext = false;
+            } else {
+                previousSelected = false;
+            }
+            previous = message;
+        }
+    }
+
     /**
      * Check if the given String represents a valid period
      *
@@ -704,10 +751,8 @@ public class HistoryTranscript extends SwingWorker {
             @Override
             public void keyReleased(KeyEvent e) {
                 if (e.getKeyChar() == KeyEvent.VK_ENTER) {
-                    searchQuery = searchField.getText();
                     TaskEngine.getInstance().schedule(transcriptTask, 10);
                     searchField.requestFocus();
-                    focusFlag = true;
                 }
             }
 
@@ -758,7 +803,8 @@ public class HistoryTranscript extends SwingWorker {
 
     @Override
     public Object construct() {
-        return ChatTranscripts.getChatTranscript(jid);
+        // Messages are read from the transcript one page at a time, when needed.
+        return null;
     }
 
 }
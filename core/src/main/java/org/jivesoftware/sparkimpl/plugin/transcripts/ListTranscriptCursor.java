@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import java.util.Date;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A cursor over messages that are already in memory. The position of a message is its index in the list.
+ */
+class ListTranscriptCursor implements TranscriptCursor {
+    private final List<HistoryMessage> messages;
+    private int index = 0;
+
+    ListTranscriptCursor(List<HistoryMessage> messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < messages.size();
+    }
+
+    @Override
+    public HistoryMessage next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return messages.get(index++);
+    }
+
+    @Override
+    public void seek(Date date) {
+        index = 0;
+        while (index < messages.size() && messages.get(index).getDate() != null && messages.get(index).getDate().before(date)) {
+            index++;
+        }
+    }
+
+    @Override
+    public long getPosition() {
+        return index;
+    }
+
+    @Override
+    public void seek(long position) {
+        index = (int) Math.max(0, Math.min(position, messages.size()));
+    }
+
+    @Override
+    public void close() {
+    }
+}
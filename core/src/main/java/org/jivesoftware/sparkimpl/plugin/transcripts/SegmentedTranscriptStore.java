@@ -0,0 +1,918 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.spark.util.TaskEngine;
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+/**
+ * A transcript storage engine that keeps the history of every conversation partner in a directory of append-only
+ * segment files.
+ *
+ * Each segment starts with a four-byte magic value, followed by length-prefixed records. A record consists of the
+ * payload length, a CRC32 checksum of the payload and the payload itself. A record that is incomplete or that fails
+ * its checksum (typically the result of a crash during a write) marks the end of the segment, and is truncated away
+ * when the segment is next opened for writing. When a segment grows beyond {@link #MAX_SEGMENT_SIZE}, a new segment is
+ * started. The start time of every segment is recorded in a small index file, which allows readers to skip segments
+ * that are outside of a period of interest.
+ *
+ * Appends never rewrite existing data. Writes are handed to the operating system immediately, but are forced to disk
+ * in batches: either after {@link #SYNC_THRESHOLD} bytes have been written, or {@link #SYNC_DELAY} milliseconds after
+ * the first unsynchronized write, whichever comes first.
+ *
+ * Transcripts that were written by older versions of Spark in the XML format of {@link XmlTranscriptStore} are
+ * migrated the first time that the transcript of a conversation partner is accessed. The original files are retained
+ * with a <tt>.migrated</tt> suffix.
+ */
+public class SegmentedTranscriptStore implements TranscriptStore {
+    /**
+     * Marks the start of every segment file ("SPT1").
+     */
+    static final int MAGIC = 0x53505431;
+
+    /**
+     * The size (in bytes) after which a new segment is started.
+     */
+    static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The maximum amount of milliseconds that written data remains unsynchronized.
+     */
+    static final long SYNC_DELAY = 2000;
+
+    /**
+     * The amount of unsynchronized bytes that causes an immediate synchronization.
+     */
+    static final long SYNC_THRESHOLD = 256 * 1024;
+
+    /**
+     * Writers that have not been used for this amount of milliseconds are closed when pending writes are synchronized.
+     */
+    static final long WRITER_IDLE_TIMEOUT = 60 * 1000;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "segments.idx";
+    private static final String MIGRATING_SUFFIX = ".migrating";
+    private static final String MIGRATED_SUFFIX = ".migrated";
+    private static final int HEADER_SIZE = 4;
+
+    private final File directory;
+    private final XmlTranscriptStore legacyStore;
+    private final Map<File, SegmentWriter> writers = new HashMap<>();
+    private long unsyncedBytes = 0;
+    private TimerTask syncTask = null;
+
+    /**
+     * Creates a store that keeps its data in the provided directory. Legacy XML transcripts are expected to be found
+     * in the same directory.
+     *
+     * @param directory the directory that holds the transcripts.
+     */
+    public SegmentedTranscriptStore(File directory) {
+        this.directory = directory;
+        this.legacyStore = new XmlTranscriptStore(directory);
+    }
+
+    @Override
+    public void append(Jid jid, Collection<HistoryMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            migrateIfNeeded(jid);
+            try {
+                unsyncedBytes += write(getDirectory(jid), messages);
+            } catch (IOException e) {
+                Log.error("Unable to append to the transcript of " + jid, e);
+            }
+            scheduleSync();
+        }
+    }
+
+    @Override
+    public ChatTranscript getTranscript(Jid jid) {
+        final ChatTranscript transcript = new ChatTranscript();
+        for (final Segment segment : getSegments(jid)) {
+            for (final HistoryMessage message : readSegment(segment.getFile())) {
+                transcript.addHistoryMessage(message);
+            }
+        }
+        return transcript;
+    }
+
+    @Override
+    public ChatTranscript getRecentTranscript(Jid jid, int max) {
+        final LinkedList<HistoryMessage> recent = new LinkedList<>();
+        final List<Segment> segments = getSegments(jid);
+        for (int i = segments.size() - 1; i >= 0 && recent.size() < max; i--) {
+            final List<HistoryMessage> messages = readSegment(segments.get(i).getFile());
+            for (int j = messages.size() - 1; j >= 0 && recent.size() < max; j--) {
+                recent.addFirst(messages.get(j));
+            }
+        }
+
+        final ChatTranscript transcript = new ChatTranscript();
+        transcript.setList(new ArrayList<>(recent));
+        return transcript;
+    }
+
+    @Override
+    public TranscriptCursor openCursor(Jid jid) {
+        return new SegmentCursor(getSegments(jid));
+    }
+
+    @Override
+    public synchronized boolean hasTranscript(Jid jid) {
+        return legacyStore.hasTranscript(jid) || !listSegmentFiles(getDirectory(jid)).isEmpty();
+    }
+
+    @Override
+    public synchronized Collection<Jid> getTranscriptJids() {
+        final Set<Jid> result = new HashSet<>(legacyStore.getTranscriptJids());
+        final File[] files = directory.listFiles(File::isDirectory);
+        if (files != null) {
+            for (final File file : files) {
+                if (file.getName().endsWith(MIGRATING_SUFFIX) || listSegmentFiles(file).isEmpty()) {
+                    continue;
+                }
+                try {
+                    result.add(JidCreate.from(file.getName()));
+                } catch (XmppStringprepException e) {
+                    Log.warning("Ignoring transcript directory that does not represent a JID: " + file);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void flush() {
+        // A task that is still scheduled will find nothing left to do.
+        syncTask = null;
+
+        final long now = System.currentTimeMillis();
+        final Iterator<SegmentWriter> iterator = writers.values().iterator();
+        while (iterator.hasNext()) {
+            final SegmentWriter writer = iterator.next();
+            try {
+                writer.sync();
+                if (now - writer.lastUsed > WRITER_IDLE_TIMEOUT) {
+                    writer.close();
+                    iterator.remove();
+                }
+            } catch (IOException e) {
+                Log.error("Unable to synchronize transcript segment " + writer.file, e);
+            }
+        }
+        unsyncedBytes = 0;
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        for (final SegmentWriter writer : writers.values()) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                Log.error("Unable to close transcript segment " + writer.file, e);
+            }
+        }
+        writers.clear();
+    }
+
+    /**
+     * Returns the segments of the transcript of a conversation partner, ordered from oldest to newest.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return the segments, possibly empty, never null.
+     */
+    synchronized List<Segment> getSegments(Jid jid) {
+        migrateIfNeeded(jid);
+        return readIndex(getDirectory(jid));
+    }
+
+    /**
+     * Returns the directory in which the segments of a conversation partner are stored.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return a directory (that might not exist).
+     */
+    File getDirectory(Jid jid) {
+        //replace with Jid.asUrlEncodedString() when available
+        return new File(directory, jid.asUnescapedString());
+    }
+
+    /**
+     * Converts a legacy XML transcript into segments, if such a transcript exists.
+     *
+     * The segments are written to a temporary directory that is renamed once complete, which makes the migration safe
+     * to be interrupted at any point.
+     */
+    private void migrateIfNeeded(Jid jid) {
+        final File legacyFile = legacyStore.getTranscriptFile(jid);
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        final File target = getDirectory(jid);
+        if (listSegmentFiles(target).isEmpty()) {
+            final File temp = new File(target.getPath() + MIGRATING_SUFFIX);
+            try {
+                deleteDirectory(temp);
+                final ChatTranscript legacy = XmlTranscriptStore.readTranscriptFile(legacyFile);
+                if (legacy.size() > 0) {
+                    Log.debug("Migrating " + legacy.size() + " messages from " + legacyFile + " to " + target);
+                    write(temp, legacy.getMessages());
+                    closeWriter(temp);
+                    deleteDirectory(target);
+                    if (!temp.renameTo(target)) {
+                        throw new IOException("Unable to rename " + temp + " to " + target);
+                    }
+                }
+            } catch (IOException e) {
+                Log.error("Unable to migrate legacy transcript " + legacyFile, e);
+                return;
+            }
+        }
+
+        // The segments are complete: retire the legacy files.
+        if (!legacyFile.renameTo(new File(legacyFile.getPath() + MIGRATED_SUFFIX))) {
+            Log.warning("Unable to rename migrated legacy transcript " + legacyFile);
+        }
+        final File currentFile = legacyStore.getCurrentHistoryFile(jid);
+        if (currentFile.exists() && !currentFile.delete()) {
+            Log.warning("Unable to delete migrated legacy transcript " + currentFile);
+        }
+    }
+
+    /**
+     * Appends messages to the segments in a directory, starting new segments where needed.
+     *
+     * @return the amount of bytes written.
+     */
+    private long write(File segmentDirectory, Collection<HistoryMessage> messages) throws IOException {
+        final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        SegmentWriter writer = null;
+        long written = 0;
+        for (final HistoryMessage message : messages) {
+            final byte[] record = encode(message);
+            if (writer == null) {
+                writer = getWriter(segmentDirectory, message.getDate());
+            }
+
+            final long pending = writer.size + batch.size();
+            if (pending > HEADER_SIZE && pending + record.length > MAX_SEGMENT_SIZE) {
+                written += writer.write(batch.toByteArray());
+                batch.reset();
+                writer = startSegment(segmentDirectory, writer.sequence + 1, message.getDate());
+            }
+            batch.write(record);
+        }
+
+        if (writer != null && batch.size() > 0) {
+            written += writer.write(batch.toByteArray());
+        }
+        return written;
+    }
+
+    /**
+     * Returns the writer for the newest segment in a directory, creating the first segment if none exists.
+     */
+    private SegmentWriter getWriter(File segmentDirectory, Date firstMessageDate) throws IOException {
+        final SegmentWriter cached = writers.get(segmentDirectory);
+        if (cached != null) {
+            return cached;
+        }
+
+        final List<Segment> segments = readIndex(segmentDirectory);
+        if (segments.isEmpty()) {
+            return startSegment(segmentDirectory, 1, firstMessageDate);
+        }
+
+        final Segment last = segments.get(segments.size() - 1);
+        final SegmentWriter writer = openWriter(segmentDirectory, last.getSequence(), firstMessageDate);
+        writers.put(segmentDirectory, writer);
+        return writer;
+    }
+
+    /**
+     * Opens the writer for a segment. When the segment has a corrupt header, its records can no longer be read, so
+     * writing continues in a new segment instead.
+     */
+    private SegmentWriter openWriter(File segmentDirectory, int sequence, Date startDate) throws IOException {
+        try {
+            return new SegmentWriter(getSegmentFile(segmentDirectory, sequence), sequence);
+        } catch (CorruptSegmentException e) {
+            Log.warning(e.getMessage() + ". Continuing in a new segment.");
+            return startSegment(segmentDirectory, sequence + 1, startDate);
+        }
+    }
+
+    /**
+     * Creates a new, empty segment, registers it in the index and makes it the active segment of its directory.
+     */
+    private SegmentWriter startSegment(File segmentDirectory, int sequence, Date startDate) throws IOException {
+        closeWriter(segmentDirectory);
+        if (!segmentDirectory.exists() && !segmentDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + segmentDirectory);
+        }
+
+        final long startTime = startDate == null ? System.currentTimeMillis() : startDate.getTime();
+        try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(segmentDirectory, INDEX_FILE), true))) {
+            out.writeInt(sequence);
+            out.writeLong(startTime);
+        }
+
+        final SegmentWriter writer = openWriter(segmentDirectory, sequence, startDate);
+        writers.put(segmentDirectory, writer);
+        return writer;
+    }
+
+    private void closeWriter(File segmentDirectory) throws IOException {
+        final SegmentWriter writer = writers.remove(segmentDirectory);
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Forces pending writes to disk right away when enough data is waiting, or otherwise ensures that this will happen
+     * shortly.
+     */
+    private void scheduleSync() {
+        if (unsyncedBytes >= SYNC_THRESHOLD) {
+            flush();
+        } else if (syncTask == null && unsyncedBytes > 0) {
+            syncTask = new TimerTask() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+            TaskEngine.getInstance().schedule(syncTask, SYNC_DELAY);
+        }
+    }
+
+    /**
+     * Reads the segment index of a directory. The index is rebuilt from the segment files if it does not describe
+     * every one of them.
+     */
+    private static List<Segment> readIndex(File segmentDirectory) {
+        final List<File> files = listSegmentFiles(segmentDirectory);
+        if (files.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Map<Integer, Long> startTimes = new HashMap<>();
+        final File indexFile = new File(segmentDirectory, INDEX_FILE);
+        if (indexFile.exists()) {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                while (true) {
+                    final int sequence = in.readInt();
+                    final long startTime = in.readLong();
+                    startTimes.put(sequence, startTime);
+                }
+            } catch (EOFException e) {
+                // End of index.
+            } catch (IOException e) {
+                Log.warning("Unable to read transcript index " + indexFile + ". It will be rebuilt.", e);
+                startTimes.clear();
+            }
+        }
+
+        final List<Segment> segments = new ArrayList<>(files.size());
+        boolean rebuilt = false;
+        for (final File file : files) {
+            final int sequence = getSequence(file);
+            Long startTime = startTimes.get(sequence);
+            if (startTime == null) {
+                final List<HistoryMessage> messages = readSegment(file);
+                startTime = messages.isEmpty() || messages.get(0).getDate() == null ? file.lastModified() : messages.get(0).getDate().getTime();
+                rebuilt = true;
+            }
+            segments.add(new Segment(file, sequence, startTime));
+        }
+
+        if (rebuilt) {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, false)))) {
+                for (final Segment segment : segments) {
+                    out.writeInt(segment.getSequence());
+                    out.writeLong(segment.getStartTime());
+                }
+            } catch (IOException e) {
+                Log.warning("Unable to rebuild transcript index " + indexFile, e);
+            }
+        }
+        return segments;
+    }
+
+    private static List<File> listSegmentFiles(File segmentDirectory) {
+        final File[] files = segmentDirectory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX) && getSequence(new File(dir, name)) > 0);
+        if (files == null || files.length == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files, (a, b) -> Integer.compare(getSequence(a), getSequence(b)));
+        return Arrays.asList(files);
+    }
+
+    private static File getSegmentFile(File segmentDirectory, int sequence) {
+        return new File(segmentDirectory, String.format("%08d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private static int getSequence(File segmentFile) {
+        final String name = segmentFile.getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    private static void deleteDirectory(File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!file.delete()) {
+                    Log.warning("Unable to delete " + file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            Log.warning("Unable to delete " + dir);
+        }
+    }
+
+    /**
+     * Reads all intact records of a segment.
+     *
+     * @param segmentFile the segment to read.
+     * @return the messages in the segment, in the order in which they were written.
+     */
+    static List<HistoryMessage> readSegment(File segmentFile) {
+        final List<HistoryMessage> messages = new ArrayList<>();
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            if (in.readInt() != MAGIC) {
+                Log.warning("Ignoring transcript segment with an unexpected header: " + segmentFile);
+                return messages;
+            }
+
+            HistoryMessage message;
+            while ((message = readRecord(in)) != null) {
+                messages.add(message);
+            }
+        } catch (EOFException e) {
+            // Empty segment.
+        } catch (IOException e) {
+            Log.error("Unable to read transcript segment " + segmentFile, e);
+        }
+        return messages;
+    }
+
+    /**
+     * Reads the next record from a segment.
+     *
+     * @return the message, or null when the end of the intact data has been reached.
+     */
+    static HistoryMessage readRecord(DataInputStream in) throws IOException {
+        final byte[] payload = readPayload(in);
+        return payload == null ? null : decode(payload);
+    }
+
+    /**
+     * Reads the payload of the next record from a segment, verifying its checksum. A record occupies the length of
+     * its payload plus eight bytes.
+     *
+     * @return the payload, or null when the end of the intact data has been reached.
+     */
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        final byte[] payload;
+        final int checksum;
+        try {
+            final int length = in.readInt();
+            if (length <= 0 || length > MAX_SEGMENT_SIZE * 4) {
+                return null;
+            }
+            checksum = in.readInt();
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return payload;
+    }
+
+    /**
+     * Serializes a message into a complete record: payload length, payload checksum and payload.
+     */
+    static byte[] encode(HistoryMessage message) throws IOException {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+        final DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(message.getDate() == null ? Long.MIN_VALUE : message.getDate().getTime());
+        writeString(out, message.getTo() == null ? null : message.getTo().toString());
+        writeString(out, message.getFrom() == null ? null : message.getFrom().toString());
+        writeString(out, message.getBody());
+        out.flush();
+
+        final byte[] bytes = payload.toByteArray();
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+
+        final ByteBuffer record = ByteBuffer.allocate(8 + bytes.length);
+        record.putInt(bytes.length);
+        record.putInt((int) crc.getValue());
+        record.put(bytes);
+        return record.array();
+    }
+
+    static HistoryMessage decode(byte[] payload) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final HistoryMessage message = new HistoryMessage();
+        final long date = in.readLong();
+        message.setDate(date == Long.MIN_VALUE ? null : new Date(date));
+        message.setTo(toJid(readString(in)));
+        message.setFrom(toJid(readString(in)));
+        message.setBody(readString(in));
+        return message;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Jid toJid(String value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return JidCreate.from(value);
+        } catch (XmppStringprepException e) {
+            throw new IOException("Unable to parse JID: " + value, e);
+        }
+    }
+
+    /**
+     * Describes one segment file of a transcript.
+     */
+    static class Segment {
+        private final File file;
+        private final int sequence;
+        private final long startTime;
+
+        Segment(File file, int sequence, long startTime) {
+            this.file = file;
+            this.sequence = sequence;
+            this.startTime = startTime;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        int getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the timestamp (in milliseconds since the epoch) of the first message in this segment.
+         */
+        long getStartTime() {
+            return startTime;
+        }
+    }
+
+    /**
+     * Iterates over the records of a list of segments, keeping only a single record in memory.
+     *
+     * A position is encoded as the segment sequence number in the upper 24 bits and the byte offset of the record in
+     * that segment in the lower 40 bits.
+     */
+    private static class SegmentCursor implements TranscriptCursor {
+        private static final int OFFSET_BITS = 40;
+        private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+        private final List<Segment> segments;
+        private int segmentIndex = -1;
+        private DataInputStream in;
+        private long offset;
+        private HistoryMessage pending;
+        private long pendingPosition;
+
+        SegmentCursor(List<Segment> segments) {
+            this.segments = segments;
+            if (!segments.isEmpty()) {
+                open(0, HEADER_SIZE);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (pending == null && in != null) {
+                try {
+                    final long position = offset;
+                    final byte[] payload = readPayload(in);
+                    if (payload != null) {
+                        offset += 8 + payload.length;
+                        pending = decode(payload);
+                        pendingPosition = toPosition(segmentIndex, position);
+                        break;
+                    }
+                } catch (IOException e) {
+                    Log.error("Unable to read transcript segment " + segments.get(segmentIndex).getFile(), e);
+                }
+
+                // End of this segment: continue with the next, if any.
+                if (segmentIndex + 1 < segments.size()) {
+                    open(segmentIndex + 1, HEADER_SIZE);
+                } else {
+                    closeStream();
+                }
+            }
+            return pending != null;
+        }
+
+        @Override
+        public HistoryMessage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final HistoryMessage result = pending;
+            pending = null;
+            return result;
+        }
+
+        @Override
+        public long getPosition() {
+            if (!hasNext()) {
+                return segments.isEmpty() ? 0 : toPosition(segments.size() - 1, offset);
+            }
+            return pendingPosition;
+        }
+
+        @Override
+        public void seek(long position) {
+            final int sequence = (int) (position >>> OFFSET_BITS);
+            if (segments.isEmpty()) {
+                return;
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                if (segments.get(i).getSequence() == sequence) {
+                    open(i, Math.max(HEADER_SIZE, position & OFFSET_MASK));
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Position does not refer to a segment of this transcript: " + position);
+        }
+
+        @Override
+        public void seek(Date date) {
+            if (segments.isEmpty()) {
+                return;
+            }
+
+            // Use the index to find the last segment that starts before the requested date, then scan forward.
+            final long time = date.getTime();
+            int index = 0;
+            for (int i = 1; i < segments.size() && segments.get(i).getStartTime() <= time; i++) {
+                index = i;
+            }
+            open(index, HEADER_SIZE);
+            while (hasNext() && pending.getDate() != null && pending.getDate().getTime() < time) {
+                pending = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            closeStream();
+            pending = null;
+        }
+
+        private long toPosition(int index, long recordOffset) {
+            return ((long) segments.get(index).getSequence() << OFFSET_BITS) | recordOffset;
+        }
+
+        /**
+         * Positions the cursor on a record offset in a segment. When the segment cannot be read, the cursor moves on
+         * to the start of the next readable segment.
+         */
+        private void open(int index, long recordOffset) {
+            closeStream();
+            pending = null;
+            for (int i = index; i < segments.size(); i++) {
+                segmentIndex = i;
+                offset = i == index ? recordOffset : HEADER_SIZE;
+                final File file = segments.get(i).getFile();
+                try {
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    if (in.readInt() == MAGIC) {
+                        long remaining = offset - HEADER_SIZE;
+                        while (remaining > 0) {
+                            final long skipped = in.skip(remaining);
+                            if (skipped <= 0) {
+                                break;
+                            }
+                            remaining -= skipped;
+                        }
+                        return;
+                    }
+                    Log.warning("Ignoring transcript segment with an unexpected header: " + file);
+                } catch (IOException e) {
+                    Log.error("Unable to open transcript segment " + file, e);
+                }
+                closeStream();
+            }
+        }
+
+        private void closeStream() {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.debug("Unable to close transcript segment: " + e.getMessage());
+                }
+                in = null;
+            }
+        }
+    }
+
+    /**
+     * Appends records to the end of a segment. Any trailing data that does not form an intact record is removed when
+     * the writer is opened.
+     */
+    private static class SegmentWriter {
+        private final File file;
+        private final int sequence;
+        private final FileChannel channel;
+        private long size;
+        private boolean dirty = false;
+        private long lastUsed = System.currentTimeMillis();
+
+        SegmentWriter(File file, int sequence) throws IOException {
+            this.file = file;
+            this.sequence = sequence;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+            try {
+                open();
+            } catch (IOException | RuntimeException e) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+        }
+
+        private void open() throws IOException {
+            if (channel.size() < HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.flip();
+                channel.truncate(0);
+                channel.write(header, 0);
+                size = HEADER_SIZE;
+                dirty = true;
+            } else {
+                size = findEndOfRecords();
+                if (size < channel.size()) {
+                    Log.warning("Truncating " + (channel.size() - size) + " bytes of incomplete data from transcript segment " + file);
+                    channel.truncate(size);
+                }
+            }
+        }
+
+        private long findEndOfRecords() throws IOException {
+            long position = HEADER_SIZE;
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC) {
+                    throw new CorruptSegmentException("Unexpected header in transcript segment " + file);
+                }
+                while (true) {
+                    in.mark(8);
+                    final int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    in.reset();
+                    try {
+                        if (readRecord(in) == null) {
+                            break;
+                        }
+                    } catch (IOException e) {
+                        // A record that cannot be decoded ends the intact data, like one with a wrong checksum.
+                        break;
+                    }
+                    position += 8 + length;
+                }
+            }
+            return position;
+        }
+
+        long write(byte[] data) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+            dirty = true;
+            lastUsed = System.currentTimeMillis();
+            return data.length;
+        }
+
+        void sync() throws IOException {
+            if (dirty) {
+                channel.force(false);
+                dirty = false;
+            }
+        }
+
+        void close() throws IOException {
+            sync();
+            channel.close();
+        }
+    }
+
+    /**
+     * Thrown when a segment does not start with the expected header, so that none of its records can be read.
+     */
+    private static class CorruptSegmentException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptSegmentException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.jiveproperties.packet.JivePropertiesExtension;
+import org.jivesoftware.spark.util.log.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Supplier;
+
+/**
+ * The list of messages of a chat room, of which only the most recent ones are kept in memory.
+ *
+ * When more than the configured capacity of messages is added, the oldest messages are evicted to a spill file, using
+ * the record format of {@link SegmentedTranscriptStore}. Evicted messages remain part of this list: when they are
+ * requested, they are read back from the spill file one page of {@link #PAGE_SIZE} messages at a time. The index of a
+ * message never changes. When an evicted message cannot be read back, an {@link UncheckedIOException} is thrown.
+ *
+ * The spill file is created in a directory that is provided when messages are evicted. When no directory is provided
+ * (for example, because the history of chats is not to be saved), nothing is written to disk and all messages are
+ * kept in memory.
+ *
+ * Only the information that a chat room records in its transcript is retained for evicted messages: the sender,
+ * addressee, body and the 'date' property.
+ *
+ * This list supports adding elements and clearing, but no other modifications. It is thread-safe.
+ */
+public class TranscriptBuffer extends AbstractList<Message> implements RandomAccess {
+    /**
+     * The amount of evicted messages that is read back from the spill file at once.
+     */
+    static final int PAGE_SIZE = 100;
+
+    private static final String SPILL_SUFFIX = ".spill";
+
+    private final int capacity;
+    private final Supplier<File> spillDirectory;
+    private final List<Message> recent = new ArrayList<>();
+    private int evicted = 0;
+    private File spillFile = null;
+    private RandomAccessFile spill = null;
+    private boolean released = false;
+    private long[] pageOffsets = new long[16];
+    private int cachedPageIndex = -1;
+    private List<Message> cachedPage = null;
+
+    /**
+     * Creates a buffer that keeps at most the provided amount of messages in memory.
+     *
+     * @param capacity       the maximum amount of messages kept in memory (must be positive).
+     * @param spillDirectory provides the directory in which to create the spill file, or null when messages are not
+     *                       to be written to disk. It is consulted every time that messages are to be evicted.
+     */
+    public TranscriptBuffer(int capacity, Supplier<File> spillDirectory) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Argument 'capacity' must be positive, but was: " + capacity);
+        }
+        this.capacity = capacity;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Deletes the spill files that were left behind in a directory, for example because Spark was not shut down
+     * normally.
+     *
+     * @param directory the directory that holds spill files.
+     */
+    public static void deleteSpillFiles(File directory) {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SPILL_SUFFIX));
+        if (files != null) {
+            for (final File file : files) {
+                if (!file.delete()) {
+                    Log.warning("Unable to delete transcript spill file " + file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean add(Message message) {
+        recent.add(message);
+        modCount++;
+        if (recent.size() > capacity && !released) {
+            // Evict in batches, to avoid shifting the in-memory messages for every message that is added.
+            evict(Math.max(1, capacity / 10));
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized Message get(int index) {
+        if (index < 0 || index >= evicted + recent.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= evicted) {
+            return recent.get(index - evicted);
+        }
+
+        final int pageIndex = index / PAGE_SIZE;
+        if (pageIndex != cachedPageIndex) {
+            cachedPage = readPage(pageIndex);
+            cachedPageIndex = pageIndex;
+        }
+        return cachedPage.get(index % PAGE_SIZE);
+    }
+
+    @Override
+    public synchronized int size() {
+        return evicted + recent.size();
+    }
+
+    /**
+     * Returns the amount of messages that have been evicted from memory.
+     *
+     * @return the amount of evicted messages.
+     */
+    public synchronized int getEvictedCount() {
+        return evicted;
+    }
+
+    @Override
+    public synchronized void clear() {
+        recent.clear();
+        evicted = 0;
+        modCount++;
+        release();
+        released = false;
+    }
+
+    /**
+     * Releases the spill file, if any. Messages that were evicted can no longer be accessed afterwards (accessing them
+     * throws an {@link UncheckedIOException}), but messages that are still in memory remain available. Messages that
+     * are added afterwards are kept in memory.
+     */
+    public synchronized void release() {
+        released = true;
+        cachedPage = null;
+        cachedPageIndex = -1;
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                Log.warning("Unable to close transcript spill file " + spillFile, e);
+            }
+            spill = null;
+        }
+        if (spillFile != null) {
+            if (!spillFile.delete()) {
+                Log.warning("Unable to delete transcript spill file " + spillFile);
+            }
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Moves the oldest messages that are in memory to the spill file. When there is no spill directory, or when the
+     * spill file cannot be written, the messages are retained in memory.
+     */
+    private void evict(int count) {
+        final List<Message> victims = recent.subList(0, count);
+        long start = 0;
+        try {
+            if (spill == null) {
+                final File directory = spillDirectory.get();
+                if (directory == null) {
+                    // Messages are not to be written to disk.
+                    return;
+                }
+                // Unlike File#createTempFile, this creates a file that can be read by its owner only (on POSIX systems).
+                Files.createDirectories(directory.toPath());
+                spillFile = Files.createTempFile(directory.toPath(), "transcript", SPILL_SUFFIX).toFile();
+                spillFile.deleteOnExit();
+                spill = new RandomAccessFile(spillFile, "rw");
+            }
+
+            start = spill.length();
+            long offset = start;
+            spill.seek(offset);
+            int index = evicted;
+            for (final Message message : victims) {
+                if (index % PAGE_SIZE == 0) {
+                    final int pageIndex = index / PAGE_SIZE;
+                    if (pageIndex == pageOffsets.length) {
+                        pageOffsets = Arrays.copyOf(pageOffsets, pageOffsets.length * 2);
+                    }
+                    pageOffsets[pageIndex] = offset;
+                }
+                final byte[] record = SegmentedTranscriptStore.encode(ChatTranscripts.toHistoryMessage(message));
+                spill.write(record);
+                offset += record.length;
+                index++;
+            }
+        } catch (IOException e) {
+            Log.error("Unable to evict " + count + " messages to transcript spill file " + spillFile + ". They are kept in memory.", e);
+            try {
+                if (spill != null) {
+                    spill.setLength(start);
+                }
+            } catch (IOException ex) {
+                Log.warning("Unable to discard partially evicted messages from transcript spill file " + spillFile, ex);
+            }
+            return;
+        }
+
+        victims.clear();
+        evicted += count;
+
+        // The last page might have been cached while it was incomplete.
+        cachedPage = null;
+        cachedPageIndex = -1;
+    }
+
+    private List<Message> readPage(int pageIndex) {
+        final int first = pageIndex * PAGE_SIZE;
+        final int count = Math.min(PAGE_SIZE, evicted - first);
+        final List<Message> page = new ArrayList<>(count);
+        if (spill == null) {
+            throw new UncheckedIOException(new IOException("The evicted messages of this transcript have been released."));
+        }
+        try {
+            final long start = pageOffsets[pageIndex];
+            final long end = first + PAGE_SIZE < evicted ? pageOffsets[pageIndex + 1] : spill.length();
+            final byte[] bytes = new byte[(int) (end - start)];
+            spill.seek(start);
+            spill.readFully(bytes);
+
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            for (int i = 0; i < count; i++) {
+                final HistoryMessage message = SegmentedTranscriptStore.readRecord(in);
+                if (message == null) {
+                    throw new IOException("Record " + (first + i) + " is damaged.");
+                }
+                page.add(toMessage(message));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read evicted messages from transcript spill file " + spillFile, e);
+        }
+        return page;
+    }
+
+    private static Message toMessage(HistoryMessage history) {
+        final Message message = new Message();
+        message.setTo(history.getTo());
+        message.setFrom(history.getFrom());
+        message.setBody(history.getBody());
+        if (history.getDate() != null) {
+            final Map<String, Object> properties = new HashMap<>();
+            properties.put("date", history.getDate());
+            message.addExtension(new JivePropertiesExtension(properties));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Iterates over the messages of a transcript in the order in which they were stored, without requiring the entire
+ * transcript to be held in memory.
+ *
+ * A cursor can be repositioned by date, or by a position that was previously obtained through {@link #getPosition()}.
+ * A cursor is not safe for use by multiple threads, and must be closed after use.
+ */
+public interface TranscriptCursor extends Iterator<HistoryMessage>, Closeable {
+    /**
+     * Positions the cursor on the first message that was sent at or after the provided date.
+     *
+     * @param date the date to seek.
+     */
+    void seek(Date date);
+
+    /**
+     * Returns an opaque value that identifies the message that would be returned by the next invocation of
+     * {@link #next()}.
+     *
+     * @return a position that can be passed to {@link #seek(long)}.
+     */
+    long getPosition();
+
+    /**
+     * Positions the cursor on a message, as identified by a value that was obtained from {@link #getPosition()} on a
+     * cursor for the same transcript.
+     *
+     * @param position the position to seek.
+     */
+    void seek(long position);
+
+    /**
+     * Returns the next messages, up to a maximum.
+     *
+     * @param max the maximum amount of messages to return.
+     * @return the messages, possibly empty, never null.
+     */
+    default List<HistoryMessage> next(int max) {
+        final List<HistoryMessage> result = new ArrayList<>(Math.min(max, 64));
+        while (result.size() < max && hasNext()) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jxmpp.jid.Jid;
+
+import java.util.Date;
+
+/**
+ * A message that matched a search of the {@link TranscriptIndex}.
+ *
+ * The message itself can be read from the transcript of {@link #getJid()}, by seeking a {@link TranscriptCursor} to
+ * {@link #getDate()}.
+ */
+public class TranscriptHit {
+    private final Jid jid;
+    private final Date date;
+    private final int[] highlights;
+
+    public TranscriptHit(Jid jid, Date date, int[] highlights) {
+        this.jid = jid;
+        this.date = date;
+        this.highlights = highlights;
+    }
+
+    /**
+     * @return the (bare) JID of the conversation partner in whose transcript the message was found.
+     */
+    public Jid getJid() {
+        return jid;
+    }
+
+    /**
+     * @return the date of the message.
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the character ranges in the body of the message that matched the search. The array contains pairs of
+     * values: the (inclusive) start offset followed by the (exclusive) end offset of every range. Ranges are ordered
+     * and do not overlap.
+     *
+     * @return the highlighted ranges, never null.
+     */
+    public int[] getHighlights() {
+        return highlights;
+    }
+}
@@ -0,0 +1,867 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.spark.util.TaskEngine;
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A full-text index over the transcripts of all conversation partners.
+ *
+ * Message bodies are split in terms (consecutive letters or digits, case insensitive). For every term, the index keeps
+ * a list of postings: the messages in which the term occurs, together with the character offsets of every
+ * occurrence. A search matches all messages that contain every term of the query, where the terms of the query are
+ * treated as prefixes. The offsets of the matching terms are returned with every hit, which allows the caller to
+ * highlight the matches without scanning the message again.
+ *
+ * On disk, the index consists of:
+ * <ul>
+ *     <li><tt>contacts.dat</tt> - the conversation partners that are being indexed;</li>
+ *     <li><tt>documents.dat</tt> - fixed-size records that hold the conversation partner and date of every indexed
+ *     message;</li>
+ *     <li><tt>&lt;sequence&gt;.idx</tt> - immutable segments that hold a sorted term dictionary and the postings of
+ *     every term.</li>
+ * </ul>
+ * New messages are collected in memory, and written as a new segment when enough have been collected, or shortly
+ * after they were added. Once {@link #MERGE_FACTOR} segments of a similar size exist, they are merged into one. This
+ * keeps the amount of segments logarithmic in the size of the index, while every message is rewritten only once for
+ * every order of magnitude that its segment grows.
+ *
+ * Existing transcripts are indexed in the background by {@link #indexExistingTranscripts()}. Until a conversation
+ * partner has been fully indexed, {@link #isIndexed(Jid)} returns false for that partner and searches may miss some
+ * of its messages.
+ */
+public class TranscriptIndex {
+    /**
+     * Marks the start of every segment file ("SPIX").
+     */
+    static final int MAGIC = 0x53504958;
+
+    /**
+     * The amount of messages that are collected in memory before they are written to a new segment.
+     */
+    static final int MAX_PENDING_DOCUMENTS = 10000;
+
+    /**
+     * The maximum amount of milliseconds that added messages are kept in memory only.
+     */
+    static final long FLUSH_DELAY = 30 * 1000;
+
+    /**
+     * The amount of segments of a similar size that are merged into one.
+     */
+    static final int MERGE_FACTOR = 10;
+
+    /**
+     * Segments that are smaller than this amount of bytes are considered to be of a similar size.
+     */
+    static final long MIN_MERGE_SIZE = 64 * 1024;
+
+    /**
+     * Terms longer than this amount of characters are indexed by their prefix only.
+     */
+    static final int MAX_TERM_LENGTH = 64;
+
+    private static final int DOCUMENT_RECORD_SIZE = 12;
+    private static final String CONTACTS_FILE = "contacts.dat";
+    private static final String DOCUMENTS_FILE = "documents.dat";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final byte CONTACT_STARTED = 'S';
+    private static final byte CONTACT_COMPLETED = 'C';
+
+    private final File directory;
+    private final TranscriptStore store;
+
+    private boolean opened = false;
+    private final List<String> contacts = new ArrayList<>();
+    private final Map<String, Integer> contactIds = new HashMap<>();
+    private final Set<Integer> completedContacts = new HashSet<>();
+    private final List<IndexSegment> segments = new ArrayList<>();
+    private int nextSegmentSequence = 1;
+
+    private int flushedDocuments = 0;
+    private int[] pendingContacts = new int[64];
+    private long[] pendingDates = new long[64];
+    private int pendingCount = 0;
+    private final TreeMap<String, List<Posting>> pendingPostings = new TreeMap<>();
+    private TimerTask flushTask = null;
+
+    /**
+     * The conversation partners that are yet to be visited by {@link #indexExistingTranscripts()}, or null if that
+     * has not started.
+     */
+    private Set<String> unvisited = null;
+
+    /**
+     * The conversation partners of which all messages have been collected by {@link #indexExistingTranscripts()}, but
+     * not all of them have been written to disk yet.
+     */
+    private final List<Integer> visitedContacts = new ArrayList<>();
+
+    /**
+     * Creates an index that is stored in the provided directory, and that indexes the transcripts of a store.
+     *
+     * @param directory the directory that holds the index.
+     * @param store     the store that holds the transcripts.
+     */
+    public TranscriptIndex(File directory, TranscriptStore store) {
+        this.directory = directory;
+        this.store = store;
+    }
+
+    /**
+     * Adds messages that have just been appended to the transcript of a conversation partner to the index.
+     *
+     * @param jid      the (bare) JID of the conversation partner.
+     * @param messages the messages.
+     */
+    public synchronized void add(Jid jid, Collection<HistoryMessage> messages) {
+        ensureOpen();
+        Integer contactId = contactIds.get(jid.toString());
+        if (contactId == null) {
+            try {
+                contactId = registerContact(jid.toString());
+
+                // A partner that is not going to be visited by #indexExistingTranscripts() has no older messages.
+                if (unvisited != null && !unvisited.contains(jid.toString())) {
+                    writeContactRecord(CONTACT_COMPLETED, Integer.toString(contactId));
+                    completedContacts.add(contactId);
+                }
+            } catch (IOException e) {
+                Log.error("Unable to register " + jid + " in the transcript index.", e);
+                return;
+            }
+        }
+        for (final HistoryMessage message : messages) {
+            addDocument(contactId, message);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Indexes the transcripts of all conversation partners that have not been indexed before. This can take a long
+     * time, and should not be invoked on the Event Dispatch Thread.
+     */
+    public void indexExistingTranscripts() {
+        final Collection<Jid> jids = store.getTranscriptJids();
+        synchronized (this) {
+            ensureOpen();
+            unvisited = new HashSet<>();
+            for (final Jid jid : jids) {
+                unvisited.add(jid.toString());
+            }
+        }
+
+        for (final Jid jid : jids) {
+            final int contactId;
+            synchronized (this) {
+                unvisited.remove(jid.toString());
+                final Integer existing = contactIds.get(jid.toString());
+                if (existing != null && completedContacts.contains(existing)) {
+                    continue;
+                }
+                try {
+                    // New messages of this partner are indexed by #add(). Messages that were already indexed (by
+                    // #add() or by an earlier, interrupted run) are indexed again: searches ignore such duplicates.
+                    contactId = existing != null ? existing : registerContact(jid.toString());
+                } catch (IOException e) {
+                    Log.error("Unable to register " + jid + " in the transcript index.", e);
+                    return;
+                }
+            }
+
+            Log.debug("Indexing the transcript of " + jid);
+            try (final TranscriptCursor cursor = store.openCursor(jid)) {
+                while (cursor.hasNext()) {
+                    final List<HistoryMessage> batch = cursor.next(1000);
+                    synchronized (this) {
+                        for (final HistoryMessage message : batch) {
+                            addDocument(contactId, message);
+                        }
+                    }
+                }
+            }
+
+            synchronized (this) {
+                // The partner is marked as completed once its messages have been written by a flush. Flushes happen
+                // whenever enough messages have been collected, rather than once for every partner.
+                visitedContacts.add(contactId);
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Checks if all messages of a conversation partner have been indexed.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return true if the transcript of the partner has been indexed completely.
+     */
+    public synchronized boolean isIndexed(Jid jid) {
+        ensureOpen();
+        final Integer contactId = contactIds.get(jid.toString());
+        return contactId != null && completedContacts.contains(contactId);
+    }
+
+    /**
+     * Finds the messages that contain every term of a query.
+     *
+     * @param query the query. Every term in the query is matched as the prefix of a term in a message.
+     * @param jid   the (bare) JID of the conversation partner to limit the search to, or null to search all transcripts.
+     * @param from  the date from which (inclusive) to search, or null.
+     * @param to    the date until which (exclusive) to search, or null.
+     * @param max   the maximum amount of hits to return.
+     * @return the hits, ordered from the most recent to the oldest message.
+     */
+    public synchronized List<TranscriptHit> search(String query, Jid jid, Date from, Date to, int max) {
+        ensureOpen();
+        final Set<String> terms = new TreeSet<>(tokenize(query).keySet());
+        if (terms.isEmpty() || max <= 0) {
+            return Collections.emptyList();
+        }
+
+        Integer contactFilter = null;
+        if (jid != null) {
+            contactFilter = contactIds.get(jid.toString());
+            if (contactFilter == null) {
+                return Collections.emptyList();
+            }
+        }
+
+        // Intersect the documents that match each of the terms, collecting the highlighted ranges.
+        Map<Integer, List<int[]>> matches = null;
+        for (final String term : terms) {
+            final Map<Integer, List<int[]>> termMatches = new HashMap<>();
+            collect(term, termMatches, matches == null ? null : matches.keySet());
+            if (matches == null) {
+                matches = termMatches;
+            } else {
+                final Iterator<Map.Entry<Integer, List<int[]>>> iterator = matches.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    final Map.Entry<Integer, List<int[]>> entry = iterator.next();
+                    final List<int[]> ranges = termMatches.get(entry.getKey());
+                    if (ranges == null) {
+                        iterator.remove();
+                    } else {
+                        entry.getValue().addAll(ranges);
+                    }
+                }
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        final long fromTime = from == null ? Long.MIN_VALUE : from.getTime();
+        final long toTime = to == null ? Long.MAX_VALUE : to.getTime();
+        final Map<String, TranscriptHit> hits = new LinkedHashMap<>();
+        try (final RandomAccessFile documents = flushedDocuments > 0 ? new RandomAccessFile(new File(directory, DOCUMENTS_FILE), "r") : null) {
+            for (final Map.Entry<Integer, List<int[]>> entry : matches.entrySet()) {
+                final int document = entry.getKey();
+                final int contactId;
+                final long date;
+                if (document < flushedDocuments) {
+                    documents.seek((long) document * DOCUMENT_RECORD_SIZE);
+                    contactId = documents.readInt();
+                    date = documents.readLong();
+                } else {
+                    contactId = pendingContacts[document - flushedDocuments];
+                    date = pendingDates[document - flushedDocuments];
+                }
+
+                if ((contactFilter != null && contactId != contactFilter) || date < fromTime || date >= toTime || contactId >= contacts.size()) {
+                    continue;
+                }
+
+                final int[] highlights = toHighlights(entry.getValue());
+                final String key = contactId + "/" + date + "/" + Arrays.toString(highlights);
+                if (!hits.containsKey(key)) {
+                    hits.put(key, new TranscriptHit(JidCreate.from(contacts.get(contactId)), new Date(date), highlights));
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Unable to search the transcript index.", e);
+            return Collections.emptyList();
+        }
+
+        final List<TranscriptHit> result = new ArrayList<>(hits.values());
+        result.sort((a, b) -> b.getDate().compareTo(a.getDate()));
+        return result.size() > max ? new ArrayList<>(result.subList(0, max)) : result;
+    }
+
+    /**
+     * Writes all messages that are held in memory to disk.
+     */
+    public synchronized void flush() {
+        flushTask = null;
+        if (!opened) {
+            return;
+        }
+        if (pendingCount == 0) {
+            completeVisitedContacts();
+            return;
+        }
+
+        final File documentsFile = new File(directory, DOCUMENTS_FILE);
+        final long documentsLength = (long) flushedDocuments * DOCUMENT_RECORD_SIZE;
+        final File file = getSegmentFile(nextSegmentSequence);
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try {
+            // Write the documents before the segment, so that a segment never refers to unknown documents. They are
+            // written after the last flushed document, which overwrites anything left behind by a failed flush.
+            try (final RandomAccessFile out = new RandomAccessFile(documentsFile, "rw")) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(pendingCount * DOCUMENT_RECORD_SIZE);
+                final DataOutputStream records = new DataOutputStream(bytes);
+                for (int i = 0; i < pendingCount; i++) {
+                    records.writeInt(pendingContacts[i]);
+                    records.writeLong(pendingDates[i]);
+                }
+                out.setLength(documentsLength);
+                out.seek(documentsLength);
+                out.write(bytes.toByteArray());
+            }
+
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                long position = 4;
+                final List<String> terms = new ArrayList<>(pendingPostings.size());
+                final long[] offsets = new long[pendingPostings.size()];
+                final int[] counts = new int[pendingPostings.size()];
+                final int[] lengths = new int[pendingPostings.size()];
+                int i = 0;
+                for (final Map.Entry<String, List<Posting>> entry : pendingPostings.entrySet()) {
+                    terms.add(entry.getKey());
+                    offsets[i] = position;
+                    counts[i] = entry.getValue().size();
+                    for (final Posting posting : entry.getValue()) {
+                        out.writeInt(posting.document);
+                        out.writeInt(posting.ranges.length / 2);
+                        for (final int value : posting.ranges) {
+                            out.writeInt(value);
+                        }
+                        position += 8 + 4L * posting.ranges.length;
+                    }
+                    lengths[i] = (int) (position - offsets[i]);
+                    i++;
+                }
+                writeDictionary(out, position, terms, offsets, counts, lengths);
+            }
+            rename(temp, file);
+        } catch (IOException e) {
+            Log.error("Unable to write the transcript index.", e);
+            if (temp.exists() && !temp.delete()) {
+                Log.warning("Unable to delete incomplete transcript index segment " + temp);
+            }
+            try (final RandomAccessFile out = new RandomAccessFile(documentsFile, "rw")) {
+                out.setLength(documentsLength);
+            } catch (IOException ex) {
+                Log.warning("Unable to discard the documents of a failed flush from transcript index file " + documentsFile, ex);
+            }
+            return;
+        }
+
+        nextSegmentSequence++;
+        flushedDocuments += pendingCount;
+        pendingCount = 0;
+        pendingPostings.clear();
+        completeVisitedContacts();
+
+        try {
+            segments.add(new IndexSegment(file));
+            mergeSimilarSegments();
+        } catch (IOException e) {
+            Log.error("Unable to merge the segments of the transcript index.", e);
+        }
+    }
+
+    /**
+     * Writes all messages that are held in memory to disk, and releases resources.
+     */
+    public synchronized void close() {
+        flush();
+    }
+
+    /**
+     * Splits a text in terms.
+     *
+     * @param text the text to split.
+     * @return every (lower case) term in the text, with the start and end offset of each of its occurrences.
+     */
+    static Map<String, List<int[]>> tokenize(String text) {
+        final Map<String, List<int[]>> result = new LinkedHashMap<>();
+        if (text == null) {
+            return result;
+        }
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            final boolean partOfTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (partOfTerm && start < 0) {
+                start = i;
+            } else if (!partOfTerm && start >= 0) {
+                String term = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (term.length() > MAX_TERM_LENGTH) {
+                    term = term.substring(0, MAX_TERM_LENGTH);
+                }
+                result.computeIfAbsent(term, k -> new ArrayList<>(2)).add(new int[] { start, i });
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Matches a query against a text by the same rule as {@link #search(String, Jid, Date, Date, int)}: every term in
+     * the query has to be the prefix of a term in the text.
+     *
+     * @param query the query.
+     * @param text  the text, for example the body of a message.
+     * @return the ranges of the text that matched the query (as returned by {@link TranscriptHit#getHighlights()}), or
+     * null if the text does not match.
+     */
+    static int[] match(String query, String text) {
+        final Set<String> prefixes = tokenize(query).keySet();
+        if (prefixes.isEmpty()) {
+            return null;
+        }
+
+        final Map<String, List<int[]>> terms = tokenize(text);
+        final List<int[]> ranges = new ArrayList<>();
+        for (final String prefix : prefixes) {
+            boolean found = false;
+            for (final Map.Entry<String, List<int[]>> term : terms.entrySet()) {
+                if (term.getKey().startsWith(prefix)) {
+                    found = true;
+                    for (final int[] range : term.getValue()) {
+                        ranges.add(new int[] { range[0], Math.min(range[1], range[0] + prefix.length()) });
+                    }
+                }
+            }
+            if (!found) {
+                return null;
+            }
+        }
+        return toHighlights(ranges);
+    }
+
+    private void addDocument(int contactId, HistoryMessage message) {
+        if (pendingCount == pendingContacts.length) {
+            pendingContacts = Arrays.copyOf(pendingContacts, pendingCount * 2);
+            pendingDates = Arrays.copyOf(pendingDates, pendingCount * 2);
+        }
+        final int document = flushedDocuments + pendingCount;
+        pendingContacts[pendingCount] = contactId;
+        pendingDates[pendingCount] = message.getDate() == null ? 0 : message.getDate().getTime();
+        pendingCount++;
+
+        for (final Map.Entry<String, List<int[]>> entry : tokenize(message.getBody()).entrySet()) {
+            final List<int[]> occurrences = entry.getValue();
+            final int[] ranges = new int[occurrences.size() * 2];
+            for (int i = 0; i < occurrences.size(); i++) {
+                ranges[i * 2] = occurrences.get(i)[0];
+                ranges[i * 2 + 1] = occurrences.get(i)[1];
+            }
+            pendingPostings.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(new Posting(document, ranges));
+        }
+
+        if (pendingCount >= MAX_PENDING_DOCUMENTS) {
+            flush();
+        }
+    }
+
+    /**
+     * Collects the documents (and the ranges in those documents) that contain a term that starts with the prefix.
+     *
+     * @param candidates if not null, only these documents are collected.
+     */
+    private void collect(String prefix, Map<Integer, List<int[]>> result, Set<Integer> candidates) {
+        for (final IndexSegment segment : segments) {
+            try {
+                segment.collect(prefix, result, candidates);
+            } catch (IOException e) {
+                Log.error("Unable to read transcript index segment " + segment.file, e);
+            }
+        }
+
+        for (final Map.Entry<String, List<Posting>> entry : pendingPostings.tailMap(prefix).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            for (final Posting posting : entry.getValue()) {
+                addRanges(result, candidates, prefix, posting.document, posting.ranges);
+            }
+        }
+    }
+
+    private static void addRanges(Map<Integer, List<int[]>> result, Set<Integer> candidates, String prefix, int document, int[] ranges) {
+        if (candidates != null && !candidates.contains(document)) {
+            return;
+        }
+        final List<int[]> target = result.computeIfAbsent(document, k -> new ArrayList<>(2));
+        for (int i = 0; i < ranges.length; i += 2) {
+            // Only highlight the part of the term that matched the prefix.
+            target.add(new int[] { ranges[i], Math.min(ranges[i + 1], ranges[i] + prefix.length()) });
+        }
+    }
+
+    /**
+     * Sorts and merges ranges into a flat array of start and end offsets.
+     */
+    private static int[] toHighlights(List<int[]> ranges) {
+        ranges.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        final int[] result = new int[ranges.size() * 2];
+        int size = 0;
+        for (final int[] range : ranges) {
+            if (size > 0 && range[0] <= result[size - 1]) {
+                result[size - 1] = Math.max(result[size - 1], range[1]);
+            } else {
+                result[size++] = range[0];
+                result[size++] = range[1];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private void scheduleFlush() {
+        if (flushTask == null && pendingCount > 0) {
+            flushTask = new TimerTask() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+            TaskEngine.getInstance().schedule(flushTask, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Merges segments of a similar size into one, for as long as {@link #MERGE_FACTOR} of them exist.
+     */
+    private void mergeSimilarSegments() throws IOException {
+        boolean merged;
+        do {
+            merged = false;
+            final Map<Integer, List<IndexSegment>> levels = new TreeMap<>();
+            for (final IndexSegment segment : segments) {
+                levels.computeIfAbsent(getLevel(segment), k -> new ArrayList<>()).add(segment);
+            }
+            for (final List<IndexSegment> level : levels.values()) {
+                if (level.size() >= MERGE_FACTOR) {
+                    merge(level.subList(0, MERGE_FACTOR));
+                    merged = true;
+                    break;
+                }
+            }
+        } while (merged);
+    }
+
+    /**
+     * Returns the order of magnitude (in powers of {@link #MERGE_FACTOR}) of the size of a segment.
+     */
+    private static int getLevel(IndexSegment segment) {
+        int level = 0;
+        for (long size = segment.size / MIN_MERGE_SIZE; size >= MERGE_FACTOR; size /= MERGE_FACTOR) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Merges segments into one.
+     */
+    private void merge(List<IndexSegment> merged) throws IOException {
+        final TreeSet<String> allTerms = new TreeSet<>();
+        for (final IndexSegment segment : merged) {
+            allTerms.addAll(Arrays.asList(segment.terms));
+        }
+
+        final File file = getSegmentFile(nextSegmentSequence++);
+        final File temp = new File(file.getPath() + TEMP_SUFFIX);
+        final List<RandomAccessFile> sources = new ArrayList<>();
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (final IndexSegment segment : merged) {
+                sources.add(new RandomAccessFile(segment.file, "r"));
+            }
+
+            out.writeInt(MAGIC);
+            long position = 4;
+            final List<String> terms = new ArrayList<>(allTerms);
+            final long[] offsets = new long[terms.size()];
+            final int[] counts = new int[terms.size()];
+            final int[] lengths = new int[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                offsets[i] = position;
+                for (int s = 0; s < merged.size(); s++) {
+                    final IndexSegment segment = merged.get(s);
+                    final int index = Arrays.binarySearch(segment.terms, terms.get(i));
+                    if (index >= 0) {
+                        final byte[] postings = new byte[segment.lengths[index]];
+                        sources.get(s).seek(segment.offsets[index]);
+                        sources.get(s).readFully(postings);
+                        out.write(postings);
+                        counts[i] += segment.counts[index];
+                        position += postings.length;
+                    }
+                }
+                lengths[i] = (int) (position - offsets[i]);
+            }
+            writeDictionary(out, position, terms, offsets, counts, lengths);
+        } finally {
+            for (final RandomAccessFile source : sources) {
+                source.close();
+            }
+        }
+
+        rename(temp, file);
+        final List<IndexSegment> replaced = new ArrayList<>(merged);
+        segments.removeAll(replaced);
+        segments.add(new IndexSegment(file));
+        for (final IndexSegment segment : replaced) {
+            if (!segment.file.delete()) {
+                Log.warning("Unable to delete merged transcript index segment " + segment.file);
+            }
+        }
+    }
+
+    /**
+     * Marks the conversation partners that were visited by {@link #indexExistingTranscripts()} as completed, once all
+     * of their messages have been written to disk.
+     */
+    private void completeVisitedContacts() {
+        for (final Integer contactId : visitedContacts) {
+            try {
+                writeContactRecord(CONTACT_COMPLETED, Integer.toString(contactId));
+                completedContacts.add(contactId);
+            } catch (IOException e) {
+                Log.error("Unable to complete the index of the transcript of " + contacts.get(contactId), e);
+            }
+        }
+        visitedContacts.clear();
+    }
+
+    private static void writeDictionary(DataOutputStream out, long position, List<String> terms, long[] offsets, int[] counts, int[] lengths) throws IOException {
+        out.writeInt(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            out.writeUTF(terms.get(i));
+            out.writeLong(offsets[i]);
+            out.writeInt(counts[i]);
+            out.writeInt(lengths[i]);
+        }
+        out.writeLong(position);
+    }
+
+    private void ensureOpen() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.error("Unable to create transcript index directory " + directory);
+        }
+
+        // Conversation partners.
+        final File contactsFile = new File(directory, CONTACTS_FILE);
+        if (contactsFile.exists()) {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(contactsFile)))) {
+                while (true) {
+                    final byte type = in.readByte();
+                    final String value = in.readUTF();
+                    if (type == CONTACT_STARTED) {
+                        contactIds.put(value, contacts.size());
+                        contacts.add(value);
+                    } else if (type == CONTACT_COMPLETED) {
+                        completedContacts.add(Integer.parseInt(value));
+                    }
+                }
+            } catch (EOFException e) {
+                // End of file.
+            } catch (IOException | NumberFormatException e) {
+                Log.error("Unable to read transcript index file " + contactsFile, e);
+            }
+        }
+
+        // Documents: ignore any incomplete trailing record.
+        final File documentsFile = new File(directory, DOCUMENTS_FILE);
+        flushedDocuments = (int) (documentsFile.length() / DOCUMENT_RECORD_SIZE);
+        if (documentsFile.length() % DOCUMENT_RECORD_SIZE != 0) {
+            try (final RandomAccessFile file = new RandomAccessFile(documentsFile, "rw")) {
+                file.setLength((long) flushedDocuments * DOCUMENT_RECORD_SIZE);
+            } catch (IOException e) {
+                Log.error("Unable to repair transcript index file " + documentsFile, e);
+            }
+        }
+
+        // Segments.
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File file : files) {
+                if (file.getName().endsWith(TEMP_SUFFIX)) {
+                    if (!file.delete()) {
+                        Log.warning("Unable to delete incomplete transcript index segment " + file);
+                    }
+                } else if (file.getName().endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(new IndexSegment(file));
+                        final String name = file.getName();
+                        nextSegmentSequence = Math.max(nextSegmentSequence, Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())) + 1);
+                    } catch (IOException | NumberFormatException e) {
+                        Log.error("Ignoring unreadable transcript index segment " + file, e);
+                    }
+                }
+            }
+        }
+    }
+
+    private int registerContact(String jid) throws IOException {
+        writeContactRecord(CONTACT_STARTED, jid);
+        final int contactId = contacts.size();
+        contacts.add(jid);
+        contactIds.put(jid, contactId);
+        return contactId;
+    }
+
+    private void writeContactRecord(byte type, String value) throws IOException {
+        try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(directory, CONTACTS_FILE), true))) {
+            out.writeByte(type);
+            out.writeUTF(value);
+        }
+    }
+
+    private File getSegmentFile(int sequence) {
+        return new File(directory, String.format("%08d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private static void rename(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            throw new IOException("Unable to rename " + source + " to " + target);
+        }
+    }
+
+    /**
+     * The occurrences of a term in one message.
+     */
+    private static class Posting {
+        private final int document;
+        private final int[] ranges;
+
+        Posting(int document, int[] ranges) {
+            this.document = document;
+            this.ranges = ranges;
+        }
+    }
+
+    /**
+     * An immutable segment of the index, of which the term dictionary is held in memory.
+     */
+    private static class IndexSegment {
+        private final File file;
+        private final long size;
+        private final String[] terms;
+        private final long[] offsets;
+        private final int[] counts;
+        private final int[] lengths;
+
+        IndexSegment(File file) throws IOException {
+            this.file = file;
+            this.size = file.length();
+            try (final RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Unexpected header in transcript index segment " + file);
+                }
+                in.seek(in.length() - 8);
+                final long dictionaryOffset = in.readLong();
+                final byte[] data = new byte[(int) (in.length() - 8 - dictionaryOffset)];
+                in.seek(dictionaryOffset);
+                in.readFully(data);
+
+                final DataInputStream dictionary = new DataInputStream(new ByteArrayInputStream(data));
+                final int size = dictionary.readInt();
+                terms = new String[size];
+                offsets = new long[size];
+                counts = new int[size];
+                lengths = new int[size];
+                for (int i = 0; i < size; i++) {
+                    terms[i] = dictionary.readUTF();
+                    offsets[i] = dictionary.readLong();
+                    counts[i] = dictionary.readInt();
+                    lengths[i] = dictionary.readInt();
+                }
+            }
+        }
+
+        void collect(String prefix, Map<Integer, List<int[]>> result, Set<Integer> candidates) throws IOException {
+            int index = Arrays.binarySearch(terms, prefix);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            if (index >= terms.length || !terms[index].startsWith(prefix)) {
+                return;
+            }
+
+            try (final RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                for (; index < terms.length && terms[index].startsWith(prefix); index++) {
+                    final byte[] data = new byte[lengths[index]];
+                    in.seek(offsets[index]);
+                    in.readFully(data);
+                    final DataInputStream postings = new DataInputStream(new ByteArrayInputStream(data));
+                    for (int p = 0; p < counts[index]; p++) {
+                        final int document = postings.readInt();
+                        final int[] ranges = new int[postings.readInt() * 2];
+                        for (int r = 0; r < ranges.length; r++) {
+                            ranges[r] = postings.readInt();
+                        }
+                        addRanges(result, candidates, prefix, document, ranges);
+                    }
+                }
+            }
+        }
+    }
+}
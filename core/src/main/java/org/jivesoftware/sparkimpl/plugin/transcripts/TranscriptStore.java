@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jxmpp.jid.Jid;
+
+import java.util.Collection;
+
+/**
+ * A storage engine for chat transcripts. {@link ChatTranscripts} delegates all persistence to an implementation of
+ * this interface, which allows the on-disk format to be replaced without touching the code that produces or
+ * displays transcripts.
+ *
+ * Implementations must be safe for use by multiple threads.
+ */
+public interface TranscriptStore {
+    /**
+     * Appends messages to the transcript of a conversation partner.
+     *
+     * @param jid      the (bare) JID of the conversation partner.
+     * @param messages the messages to append, in chronological order.
+     */
+    void append(Jid jid, Collection<HistoryMessage> messages);
+
+    /**
+     * Returns the complete transcript of a conversation partner.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return the transcript, possibly empty, never null.
+     */
+    ChatTranscript getTranscript(Jid jid);
+
+    /**
+     * Returns the most recent messages of the transcript of a conversation partner.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @param max the maximum amount of messages to return.
+     * @return the transcript, possibly empty, never null.
+     */
+    ChatTranscript getRecentTranscript(Jid jid, int max);
+
+    /**
+     * Opens a cursor over the transcript of a conversation partner, positioned on its first message. The cursor must
+     * be closed after use.
+     *
+     * The default implementation loads the entire transcript in memory. Implementations are encouraged to override
+     * this with an implementation that reads messages as they are requested.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return a cursor, never null.
+     */
+    default TranscriptCursor openCursor(Jid jid) {
+        return new ListTranscriptCursor(getTranscript(jid).getMessages());
+    }
+
+    /**
+     * Checks if any messages have been stored for a conversation partner.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return true if a transcript exists, otherwise false.
+     */
+    boolean hasTranscript(Jid jid);
+
+    /**
+     * Returns the conversation partners for which a transcript has been stored.
+     *
+     * @return the (bare) JIDs of the conversation partners, possibly empty, never null.
+     */
+    Collection<Jid> getTranscriptJids();
+
+    /**
+     * Forces all pending writes to durable storage.
+     */
+    void flush();
+
+    /**
+     * Flushes pending writes and releases all resources held by this store.
+     */
+    void close();
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.spark.util.TaskEngine;
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.Jid;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects messages of ongoing conversations, and hands them to a writer in batches.
+ *
+ * Messages are written either when {@link #MAX_PENDING_MESSAGES} messages are waiting, or {@link #FLUSH_DELAY}
+ * milliseconds after the first message was queued, whichever comes first. Writing happens on a thread of the
+ * {@link TaskEngine}. All messages that were queued for one conversation partner are written in a single call, in the
+ * order in which they were queued.
+ */
+public class TranscriptWriteQueue {
+    /**
+     * The maximum amount of milliseconds that a message remains queued.
+     */
+    static final long FLUSH_DELAY = 3000;
+
+    /**
+     * The amount of queued messages that causes them to be written right away.
+     */
+    static final int MAX_PENDING_MESSAGES = 50;
+
+    private final BiConsumer<EntityBareJid, ChatTranscript> writer;
+    private final Object writeLock = new Object();
+    private Map<EntityBareJid, ChatTranscript> pending = new LinkedHashMap<>();
+    private Map<EntityBareJid, ChatTranscript> writing = Collections.emptyMap();
+    private int pendingCount = 0;
+    private TimerTask flushTask = null;
+    private boolean flushSubmitted = false;
+
+    /**
+     * Creates a queue that hands its messages to the provided writer.
+     *
+     * @param writer receives the queued messages, per conversation partner.
+     */
+    public TranscriptWriteQueue(BiConsumer<EntityBareJid, ChatTranscript> writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Queues messages for the transcript of a conversation partner.
+     *
+     * @param jid      the bare JID of the conversation partner.
+     * @param messages the messages to add to the transcript.
+     */
+    public synchronized void enqueue(EntityBareJid jid, Collection<HistoryMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+
+        final ChatTranscript transcript = pending.computeIfAbsent(jid, k -> new ChatTranscript());
+        for (final HistoryMessage message : messages) {
+            transcript.addHistoryMessage(message);
+        }
+        pendingCount += messages.size();
+
+        if (pendingCount >= MAX_PENDING_MESSAGES) {
+            if (!flushSubmitted) {
+                flushSubmitted = true;
+                TaskEngine.getInstance().submit(this::flush);
+            }
+        } else if (flushTask == null) {
+            flushTask = new TimerTask() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+            TaskEngine.getInstance().schedule(flushTask, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Returns the amount of messages that are queued, but have not yet been handed to the writer.
+     *
+     * @return the amount of queued messages.
+     */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Checks if messages for a conversation partner are queued or being written. Unlike {@link #flush()}, this does
+     * not wait for anything to be written, so it can be used on the event dispatch thread.
+     *
+     * @param jid the JID of the conversation partner.
+     * @return true if messages for the conversation partner have not been written yet.
+     */
+    public synchronized boolean hasPending(Jid jid) {
+        final EntityBareJid bareJid = jid.asEntityBareJidIfPossible();
+        return bareJid != null && (pending.containsKey(bareJid) || writing.containsKey(bareJid));
+    }
+
+    /**
+     * Hands all queued messages to the writer, on the thread of the caller. Returns after all messages that were
+     * queued before this method was invoked have been written.
+     */
+    public void flush() {
+        // Holding the write lock while draining guarantees that batches for the same conversation partner are
+        // written in the order in which they were queued, even when flushes run concurrently.
+        synchronized (writeLock) {
+            final Map<EntityBareJid, ChatTranscript> batch;
+            synchronized (this) {
+                batch = pending;
+                writing = batch;
+                pending = new LinkedHashMap<>();
+                pendingCount = 0;
+                // The engine wraps scheduled tasks, so cancelling them has no effect. A stale task simply finds an
+                // empty queue.
+                flushTask = null;
+                flushSubmitted = false;
+            }
+
+            for (final Map.Entry<EntityBareJid, ChatTranscript> entry : batch.entrySet()) {
+                try {
+                    writer.accept(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    Log.error("Unable to write " + entry.getValue().size() + " messages to the transcript of " + entry.getKey(), e);
+                }
+            }
+            synchronized (this) {
+                writing = Collections.emptyMap();
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2004-2011 Jive Software. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.smack.xml.SmackXmlParser;
+import org.jivesoftware.smack.xml.XmlPullParser;
+import org.jivesoftware.spark.util.StringUtils;
+import org.jivesoftware.spark.util.log.Log;
+import org.jivesoftware.sparkimpl.settings.local.SettingsManager;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The original transcript storage engine, that keeps the full history of a conversation partner in
+ * <tt>transcripts/&lt;jid&gt;.xml</tt> and the most recent messages in <tt>transcripts/&lt;jid&gt;_current.xml</tt>.
+ *
+ * Every append re-parses and rewrites the 'current' file, which makes this store slow for large transcripts. It is
+ * retained to be able to read (and migrate) transcripts that were written by older versions of Spark.
+ *
+ * @author Derek DeMoro
+ */
+public class XmlTranscriptStore implements TranscriptStore {
+
+    /**
+     * Default Date Formatter *
+     */
+    private static final DateFormat FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.S z");
+
+    private final File directory;
+
+    /**
+     * Creates a store that reads and writes XML files in the provided directory.
+     *
+     * @param directory the directory that holds the transcript files.
+     */
+    public XmlTranscriptStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void append(Jid jid, Collection<HistoryMessage> messages) {
+        // Write Full Transcript, appending the messages.
+        writeToFile(getTranscriptFile(jid), messages, true);
+
+        // Write to current history File
+        final ChatTranscript tempTranscript = readTranscriptFile(getCurrentHistoryFile(jid));
+        for (HistoryMessage message : messages) {
+            tempTranscript.addHistoryMessage(message);
+        }
+        int max = SettingsManager.getLocalPreferences().getMaxCurrentHistorySize();
+        writeToFile(getCurrentHistoryFile(jid), tempTranscript.getNumberOfEntries(max), false);
+    }
+
+    @Override
+    public ChatTranscript getTranscript(Jid jid) {
+        return readTranscriptFile(getTranscriptFile(jid));
+    }
+
+    @Override
+    public ChatTranscript getRecentTranscript(Jid jid, int max) {
+        final ChatTranscript current = readTranscriptFile(getCurrentHistoryFile(jid));
+        if (current.size() <= max) {
+            return current;
+        }
+        final ChatTranscript result = new ChatTranscript();
+        for (HistoryMessage message : current.getNumberOfEntries(max)) {
+            result.addHistoryMessage(message);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasTranscript(Jid jid) {
+        return getTranscriptFile(jid).exists();
+    }
+
+    @Override
+    public Collection<Jid> getTranscriptJids() {
+        final List<Jid> result = new ArrayList<>();
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(".xml") && !name.endsWith("_current.xml"));
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                try {
+                    result.add(JidCreate.from(name.substring(0, name.length() - ".xml".length())));
+                } catch (XmppStringprepException e) {
+                    Log.warning("Ignoring transcript file that does not represent a JID: " + file);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void flush() {
+        // Every write is completed before append returns.
+    }
+
+    @Override
+    public void close() {
+        // No resources are held between calls.
+    }
+
+    /**
+     * Returns the file that holds the full transcript of a conversation partner.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return the transcript file.
+     */
+    public File getTranscriptFile(Jid jid) {
+        //replace with Jid.asUrlEncodedString() when available
+        return new File(directory, jid.asUnescapedString() + ".xml");
+    }
+
+    /**
+     * Returns the file that holds the most recent messages (default = 20 messages) of a conversation partner.
+     *
+     * @param jid the (bare) JID of the conversation partner.
+     * @return the current transcript file.
+     */
+    public File getCurrentHistoryFile(Jid jid) {
+        //replace with Jid.asUrlEncodedString() when available
+        return new File(directory, jid.asUnescapedString() + "_current.xml");
+    }
+
+    private static void writeToFile(File transcriptFile, Collection<HistoryMessage> messages, boolean append) {
+        final StringBuilder builder = new StringBuilder();
+
+        final String one = " ";
+        final String two = "  ";
+        final String three = "   ";
+
+        // Handle new transcript file.
+        if (!transcriptFile.exists() || !append) {
+            builder.append("<transcript>\n");
+            builder.append(one+"<messages>\n");
+        }
+
+        for (HistoryMessage m : messages) {
+            builder.append(two+"<message>\n");
+            builder.append(three+"<to>").append(m.getTo()).append("</to>\n");
+            builder.append(three+"<from>").append(m.getFrom()).append("</from>\n");
+            builder.append(three+"<body>").append(StringUtils.escapeForXML(m.getBody())).append("</body>\n");
+
+            String dateString;
+            synchronized (FORMATTER) {
+                dateString = FORMATTER.format(m.getDate());
+            }
+            builder.append(three+"<date>").append(dateString).append("</date>\n");
+            builder.append(two+"</message>\n");
+        }
+
+        if (!transcriptFile.exists() || !append) {
+            builder.append(one+"</messages>\n");
+            builder.append("</transcript>");
+        }
+
+
+        if (!transcriptFile.exists() || !append) {
+            // Write out new File
+            try {
+                transcriptFile.getParentFile().mkdirs();
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(transcriptFile), StandardCharsets.UTF_8));
+                out.write(builder.toString());
+                out.close();
+            }
+            catch (IOException e) {
+                Log.error(e);
+            }
+            return;
+        }
+
+        // Append to File
+        try {
+            final RandomAccessFile raf = new RandomAccessFile(transcriptFile, "rw");
+
+            // We want to append near the end of the document as the last
+            // child in the transcript.
+            final String endTag = " </messages>\n</transcript>";
+
+          String line =  raf.readLine();
+          if(line.contains("</messages></transcript>"))
+          {
+              // replace the old one with the new one
+              line = line.replace("</messages></transcript>",endTag);
+              raf.write(line.getBytes(StandardCharsets.UTF_8));
+          }
+
+            builder.append(endTag);
+
+            raf.seek(transcriptFile.length() - endTag.length());
+
+            // Append to the end
+            raf.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+            raf.close();
+        }
+        catch (IOException e) {
+            Log.error(e);
+        }
+    }
+
+    /**
+     * Reads in the transcript file using the Xml Pull Parser.
+     *
+     * @param transcriptFile the transcript file to read.
+     * @return the ChatTranscript.
+     */
+    public static ChatTranscript readTranscriptFile(File transcriptFile) {
+        final ChatTranscript transcript = new ChatTranscript();
+        if (!transcriptFile.exists()) {
+            return transcript;
+        }
+
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(transcriptFile), StandardCharsets.UTF_8));
+            final XmlPullParser parser = SmackXmlParser.newXmlParser(in);
+            boolean done = false;
+            while (!done) {
+                XmlPullParser.Event eventType = parser.next();
+                if (eventType == XmlPullParser.Event.START_ELEMENT && "message".equals(parser.getName())) {
+                    transcript.addHistoryMessage(getHistoryMessage(parser));
+                }
+                else if (eventType == XmlPullParser.Event.END_ELEMENT && "transcript".equals(parser.getName())) {
+                    done = true;
+                }
+                else if (eventType == XmlPullParser.Event.END_DOCUMENT) {
+                    done = true;
+                }
+            }
+            in.close();
+        }
+        catch (Exception e) {
+            Log.error("Unable to read transcript file " + transcriptFile, e);
+        }
+
+        return transcript;
+    }
+
+    private static HistoryMessage getHistoryMessage(XmlPullParser parser) throws Exception {
+        HistoryMessage message = new HistoryMessage();
+
+        // Check for nickname
+        boolean done = false;
+        while (!done) {
+            XmlPullParser.Event eventType = parser.next();
+            if (eventType == XmlPullParser.Event.START_ELEMENT && "to".equals(parser.getName())) {
+                String jidString = parser.nextText();
+                Jid jid = JidCreate.from(jidString);
+                message.setTo(jid);
+            }
+            else if (eventType == XmlPullParser.Event.START_ELEMENT && "from".equals(parser.getName())) {
+                String jidString = parser.nextText();
+                Jid jid = JidCreate.from(jidString);
+                message.setFrom(jid);
+            }
+            else if (eventType == XmlPullParser.Event.START_ELEMENT && "body".equals(parser.getName())) {
+                message.setBody(StringUtils.unescapeFromXML(parser.nextText()));
+            }
+            else if (eventType == XmlPullParser.Event.START_ELEMENT && "date".equals(parser.getName())) {
+                Date d;
+                try {
+                    synchronized (FORMATTER) {
+                        d = FORMATTER.parse(parser.nextText());
+                    }
+                }
+                catch (ParseException e) {
+                    d = new Date();
+                }
+                message.setDate(d);
+            }
+            else if (eventType == XmlPullParser.Event.END_ELEMENT && "message".equals(parser.getName())) {
+                done = true;
+            }
+        }
+
+        return message;
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.profile;
+
+import org.jivesoftware.spark.util.log.Log;
+import org.jxmpp.jid.BareJid;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Schedules the lookups of vCards, a bounded number of them at the same time.
+ *
+ * Lookups wait in lanes, which are served in order of priority. Within a lane, lookups are served in the order in which
+ * they were asked for. A contact is looked up once, no matter how often it is asked for while it waits. When a contact
+ * that waits is asked for in a lane of higher priority, it moves to that lane. A contact that is asked for while it is
+ * being looked up, for instance because it announced another photo, is looked up again once that lookup is done, so
+ * that its vCard is never looked up twice at the same time, yet no change is missed.
+ *
+ * When all workers are busy, one additional worker serves the {@link Lane#IMMEDIATE} lane, so that such lookups do not
+ * wait for the lookups of the other lanes.
+ *
+ * This class is thread-safe.
+ */
+public class VCardFetchScheduler
+{
+    /**
+     * The lanes in which lookups wait, in order of priority.
+     */
+    public enum Lane
+    {
+        /**
+         * Lookups that the user waits for, like the details of the contact that the mouse hovers over.
+         */
+        IMMEDIATE,
+
+        /**
+         * Lookups of contacts that are shown, like those of open chats and of the visible part of the contact list.
+         */
+        VISIBLE,
+
+        /**
+         * All other lookups, like those of the rest of the contact list.
+         */
+        BACKGROUND
+    }
+
+    private final int concurrency;
+    private final Executor executor;
+    private final Consumer<BareJid> fetcher;
+
+    // Per lane, the contacts that wait, in the order in which they were asked for, with the time at which they were.
+    private final Map<Lane, LinkedHashMap<BareJid, Long>> waiting = new EnumMap<>( Lane.class );
+    private final Map<BareJid, Lane> lanes = new HashMap<>();
+    private final Map<Lane, Counters> counters = new EnumMap<>( Lane.class );
+
+    // The contacts that are being looked up, with the request to look them up again, or null if they were not asked for
+    // again since their lookup started.
+    private final Map<BareJid, Request> fetching = new HashMap<>();
+
+    private int workers;
+    private boolean immediateWorker;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param concurrency the maximum number of lookups at the same time, not counting the additional worker that
+     *                    serves the {@link Lane#IMMEDIATE} lane.
+     * @param executor    runs the workers.
+     * @param fetcher     looks up the vCard of a contact, blocking until it is done.
+     */
+    public VCardFetchScheduler( int concurrency, Executor executor, Consumer<BareJid> fetcher )
+    {
+        if ( concurrency < 1 )
+        {
+            throw new IllegalArgumentException( "The concurrency must be at least one, but is " + concurrency );
+        }
+        this.concurrency = concurrency;
+        this.executor = executor;
+        this.fetcher = fetcher;
+        for ( final Lane lane : Lane.values() )
+        {
+            waiting.put( lane, new LinkedHashMap<>() );
+            counters.put( lane, new Counters() );
+        }
+    }
+
+    /**
+     * Asks for the vCard of a contact to be looked up.
+     *
+     * @param jid  the contact.
+     * @param lane the lane in which the lookup waits.
+     */
+    public void schedule( BareJid jid, Lane lane )
+    {
+        enqueue( jid, lane, true );
+    }
+
+    /**
+     * Moves the lookup of a contact that waits to a lane of higher priority. Nothing is done if the contact does not
+     * wait to be looked up.
+     *
+     * @param jid  the contact.
+     * @param lane the lane to move the lookup to.
+     * @return true if the lookup was moved.
+     */
+    public boolean promote( BareJid jid, Lane lane )
+    {
+        return enqueue( jid, lane, false );
+    }
+
+    /**
+     * Returns whether the vCard of a contact waits to be looked up, which includes a contact that waits to be looked
+     * up again once its lookup that is running is done.
+     *
+     * @param jid the contact.
+     * @return true if the contact waits.
+     */
+    public synchronized boolean isWaiting( BareJid jid )
+    {
+        return lanes.containsKey( jid ) || fetching.get( jid ) != null;
+    }
+
+    /**
+     * Returns the metrics of a lane.
+     *
+     * @param lane the lane.
+     * @return the metrics of the lane, at this moment.
+     */
+    public synchronized LaneMetrics getMetrics( Lane lane )
+    {
+        final Counters c = counters.get( lane );
+        return new LaneMetrics( lane, c.requested, c.deduplicated, c.promoted, c.completed, c.failed, waiting.get( lane ).size(), c.started == 0 ? 0 : c.waitNanos / c.started );
+    }
+
+    private boolean enqueue( BareJid jid, Lane lane, boolean add )
+    {
+        final Worker worker;
+        synchronized ( this )
+        {
+            final Counters c = counters.get( lane );
+            if ( add )
+            {
+                c.requested++;
+            }
+
+            final Lane current = lanes.get( jid );
+            final Long since;
+            if ( current == null && fetching.containsKey( jid ) )
+            {
+                // The lookup that is running may return the vCard as it was before this request: look it up again.
+                return requestAgain( jid, lane, add );
+            }
+            else if ( current != null && current.compareTo( lane ) <= 0 )
+            {
+                if ( add )
+                {
+                    c.deduplicated++;
+                }
+                return false;
+            }
+            else if ( current != null )
+            {
+                since = waiting.get( current ).remove( jid );
+                c.promoted++;
+            }
+            else if ( add )
+            {
+                since = System.nanoTime();
+            }
+            else
+            {
+                return false;
+            }
+
+            waiting.get( lane ).put( jid, since );
+            lanes.put( jid, lane );
+            worker = startWorker( lane );
+        }
+
+        if ( worker != null )
+        {
+            execute( worker );
+        }
+        return true;
+    }
+
+    private boolean requestAgain( BareJid jid, Lane lane, boolean add )
+    {
+        final Counters c = counters.get( lane );
+        final Request again = fetching.get( jid );
+        if ( again == null )
+        {
+            if ( !add )
+            {
+                return false;
+            }
+            fetching.put( jid, new Request( lane, System.nanoTime() ) );
+            return true;
+        }
+        if ( again.lane.compareTo( lane ) <= 0 )
+        {
+            if ( add )
+            {
+                c.deduplicated++;
+            }
+            return false;
+        }
+        again.lane = lane;
+        c.promoted++;
+        return true;
+    }
+
+    private Worker startWorker( Lane lane )
+    {
+        if ( workers < concurrency )
+        {
+            workers++;
+            return new Worker( false );
+        }
+        if ( lane == Lane.IMMEDIATE && !immediateWorker )
+        {
+            immediateWorker = true;
+            return new Worker( true );
+        }
+        return null;
+    }
+
+    private void releaseWorker( boolean immediateOnly )
+    {
+        if ( immediateOnly )
+        {
+            immediateWorker = false;
+        }
+        else
+        {
+            workers--;
+        }
+    }
+
+    private void execute( Worker worker )
+    {
+        try
+        {
+            executor.execute( worker );
+        }
+        catch ( RuntimeException e )
+        {
+            // The lookups keep waiting, for the next worker that is started.
+            synchronized ( this )
+            {
+                releaseWorker( worker.immediateOnly );
+            }
+            Log.warning( "Unable to start looking up vCards.", e );
+        }
+    }
+
+    private void work( boolean immediateOnly )
+    {
+        boolean released = false;
+        try
+        {
+            while ( true )
+            {
+                final BareJid jid;
+                final Lane lane;
+                synchronized ( this )
+                {
+                    lane = nextLane( immediateOnly );
+                    if ( lane == null )
+                    {
+                        releaseWorker( immediateOnly );
+                        released = true;
+                        return;
+                    }
+
+                    final Iterator<Map.Entry<BareJid, Long>> iterator = waiting.get( lane ).entrySet().iterator();
+                    final Map.Entry<BareJid, Long> next = iterator.next();
+                    iterator.remove();
+                    jid = next.getKey();
+                    lanes.remove( jid );
+                    fetching.put( jid, null );
+
+                    final Counters c = counters.get( lane );
+                    c.started++;
+                    c.waitNanos += System.nanoTime() - next.getValue();
+                }
+
+                boolean failed = true;
+                try
+                {
+                    fetcher.accept( jid );
+                    failed = false;
+                }
+                catch ( RuntimeException e )
+                {
+                    Log.error( "Unable to look up the vCard of " + jid, e );
+                }
+                finally
+                {
+                    final Worker worker;
+                    synchronized ( this )
+                    {
+                        final Request again = fetching.remove( jid );
+                        if ( failed )
+                        {
+                            counters.get( lane ).failed++;
+                        }
+                        else
+                        {
+                            counters.get( lane ).completed++;
+                        }
+
+                        worker = again == null ? null : requeue( jid, again, immediateOnly );
+                    }
+                    if ( worker != null )
+                    {
+                        execute( worker );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            if ( !released )
+            {
+                // The worker stops because of an error: the lookups that wait are handed to a new worker.
+                final Worker replacement;
+                synchronized ( this )
+                {
+                    releaseWorker( immediateOnly );
+                    final Lane lane = nextLane( immediateOnly );
+                    replacement = lane == null ? null : startWorker( lane );
+                }
+                if ( replacement != null )
+                {
+                    execute( replacement );
+                }
+            }
+        }
+    }
+
+    // Makes a contact that was asked for during its lookup wait again. Returns the worker to start when the worker that
+    // looked it up does not serve its lane.
+    private Worker requeue( BareJid jid, Request again, boolean immediateOnly )
+    {
+        waiting.get( again.lane ).put( jid, again.since );
+        lanes.put( jid, again.lane );
+        return immediateOnly && again.lane != Lane.IMMEDIATE ? startWorker( again.lane ) : null;
+    }
+
+    private Lane nextLane( boolean immediateOnly )
+    {
+        for ( final Lane lane : Lane.values() )
+        {
+            if ( !waiting.get( lane ).isEmpty() )
+            {
+                return lane;
+            }
+            if ( immediateOnly )
+            {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private final class Worker implements Runnable
+    {
+        private final boolean immediateOnly;
+
+        private Worker( boolean immediateOnly )
+        {
+            this.immediateOnly = immediateOnly;
+        }
+
+        @Override
+        public void run()
+        {
+            work( immediateOnly );
+        }
+    }
+
+    private static class Request
+    {
+        private Lane lane;
+        private final long since;
+
+        private Request( Lane lane, long since )
+        {
+            this.lane = lane;
+            this.since = since;
+        }
+    }
+
+    private static class Counters
+    {
+        private long requested;
+        private long deduplicated;
+        private long promoted;
+        private long started;
+        private long completed;
+        private long failed;
+        private long waitNanos;
+    }
+
+    /**
+     * The metrics of a lane.
+     */
+    public static final class LaneMetrics
+    {
+        private final Lane lane;
+        private final long requested;
+        private final long deduplicated;
+        private final long promoted;
+        private final long completed;
+        private final long failed;
+        private final int waiting;
+        private final long averageWaitNanos;
+
+        private LaneMetrics( Lane lane, long requested, long deduplicated, long promoted, long completed, long failed, int waiting, long averageWaitNanos )
+        {
+            this.lane = lane;
+            this.requested = requested;
+            this.deduplicated = deduplicated;
+            this.promoted = promoted;
+            this.completed = completed;
+            this.failed = failed;
+            this.waiting = waiting;
+            this.averageWaitNanos = averageWaitNanos;
+        }
+
+        public Lane getLane()
+        {
+            return lane;
+        }
+
+        /**
+         * @return the number of times a lookup was asked for in this lane.
+         */
+        public long getRequested()
+        {
+            return requested;
+        }
+
+        /**
+         * @return the number of times a lookup was asked for in this lane, while it already waited or was being done.
+         */
+        public long getDeduplicated()
+        {
+            return deduplicated;
+        }
+
+        /**
+         * @return the number of lookups that were moved to this lane from a lane of lower priority.
+         */
+        public long getPromoted()
+        {
+            return promoted;
+        }
+
+        /**
+         * @return the number of lookups of this lane that were done.
+         */
+        public long getCompleted()
+        {
+            return completed;
+        }
+
+        /**
+         * @return the number of lookups of this lane that failed with an exception.
+         */
+        public long getFailed()
+        {
+            return failed;
+        }
+
+        /**
+         * @return the number of lookups that wait in this lane.
+         */
+        public int getWaiting()
+        {
+            return waiting;
+        }
+
+        /**
+         * @return the average time that lookups waited in this lane before they started, in milliseconds.
+         */
+        public long getAverageWaitMillis()
+        {
+            return TimeUnit.NANOSECONDS.toMillis( averageWaitNanos );
+        }
+
+        @Override
+        public String toString()
+        {
+            return lane + ": requested " + requested + ", deduplicated " + deduplicated + ", promoted " + promoted
+                + ", completed " + completed + ", failed " + failed + ", waiting " + waiting
+                + ", average wait " + getAverageWaitMillis() + " ms";
+        }
+    }
+}
@@ -34,7 +34,9 @@ import org.jivesoftware.smack.xml.XmlPullParser;
 import org.jivesoftware.smackx.vcardtemp.packet.VCard;
 import org.jivesoftware.smackx.vcardtemp.provider.VCardProvider;
 import org.jivesoftware.spark.SparkManager;
+import org.jivesoftware.spark.ui.ContactGroup;
 import org.jivesoftware.spark.ui.ContactItem;
+import org.jivesoftware.spark.ui.ContactList;
 import org.jivesoftware.spark.util.*;
 import org.jivesoftware.spark.util.SwingWorker;
 import org.jivesoftware.spark.util.log.Log;
@@ -56,11 +58,8 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * VCardManager handles all VCard loading/caching within Spark.
@@ -69,11 +68,22 @@ import java.util.concurrent.LinkedBlockingQueue;
  */
 public class VCardManager {
 
+    // The number of vCards that are looked up at the same time.
+    private static final int FETCH_CONCURRENCY = 4;
+
+    // The number of vCards that are kept in memory. Others are read from the store when they are needed again.
+    private static final int MAX_CACHED_VCARDS = 500;
+
     private VCard personalVCard;
     private transient byte[] personalVCardAvatar; // lazy loaded cache of avatar binary data.
     private transient String personalVCardHash; // lazy loaded cache of avatar hash.
 
-    private final Map<BareJid, VCard> vcards = Collections.synchronizedMap( new HashMap<>());
+    private final Map<BareJid, VCard> vcards = Collections.synchronizedMap( new LinkedHashMap<BareJid, VCard>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BareJid, VCard> eldest) {
+            return size() > MAX_CACHED_VCARDS;
+        }
+    });
 
     private final Set<BareJid> delayedContacts = Collections.synchronizedSet( new HashSet<>());
     
@@ -85,7 +95,9 @@ public class VCardManager {
 
     private final File vcardStorageDirectory;
 
-    private final LinkedBlockingQueue<BareJid> queue = new LinkedBlockingQueue<>();
+    private final VCardStore store;
+
+    private final VCardFetchScheduler fetchScheduler = new VCardFetchScheduler(FETCH_CONCURRENCY, task -> TaskEngine.getInstance().submit(task), this::reloadVCard);
     
     private final File contactsDir;
 
@@ -112,6 +124,7 @@ public class VCardManager {
         // Set VCard Storage
         vcardStorageDirectory = new File(SparkManager.getUserDirectory(), "vcards");
         vcardStorageDirectory.mkdirs();
+        store = new VCardStore(new File(vcardStorageDirectory, "vcards.dat"));
 
         // Set the current user directory.
         contactsDir = new File(SparkManager.getUserDirectory(), "contacts");
@@ -164,24 +177,9 @@ public class VCardManager {
     }
 
     /**
-     * Listens for new VCards to lookup in a queue.
+     * Listens for vCards that arrive after their lookup timed out.
      */
     private void startQueueListener() {
-    	final Runnable queueListener = () -> {
-            while (true) {
-                try {
-                   BareJid jid = queue.take();
-                   reloadVCard(jid);
-                }
-                catch (InterruptedException e) {
-                    e.printStackTrace();
-                    break;
-                }
-            }
-        };
-
-        TaskEngine.getInstance().submit(queueListener);
-
         StanzaFilter filter = new AndFilter(stanza -> {
             Jid from = stanza.getFrom();
             return from != null;
@@ -205,15 +203,43 @@ public class VCardManager {
     }
 
     /**
-     * Adds a jid to lookup vCard.
+     * Adds a jid to lookup vCard, in the background.
      *
      * @param jid the jid to lookup.
      */
     public void addToQueue(BareJid jid) {
-        if (!queue.contains(jid)) {
-            queue.add(jid);
-        }
+        addToQueue(jid, VCardFetchScheduler.Lane.BACKGROUND);
+    }
 
+    /**
+     * Adds a jid to lookup vCard. Lookups are done a few at a time, in order of the priority of their lane.
+     *
+     * @param jid  the jid to lookup.
+     * @param lane the lane that the lookup waits in.
+     */
+    public void addToQueue(BareJid jid, VCardFetchScheduler.Lane lane) {
+        fetchScheduler.schedule(jid, lane);
+    }
+
+    /**
+     * Moves the lookup of a jid that waits in the queue to a lane of higher priority. Nothing is done if the jid does
+     * not wait to be looked up.
+     *
+     * @param jid  the jid to lookup.
+     * @param lane the lane to move the lookup to.
+     */
+    public void prioritize(BareJid jid, VCardFetchScheduler.Lane lane) {
+        fetchScheduler.promote(jid, lane);
+    }
+
+    /**
+     * Returns the metrics of a lane of the vCard lookups.
+     *
+     * @param lane the lane.
+     * @return the metrics of the lane.
+     */
+    public VCardFetchScheduler.LaneMetrics getQueueMetrics(VCardFetchScheduler.Lane lane) {
+        return fetchScheduler.getMetrics(lane);
     }
 
     /**
@@ -429,15 +455,30 @@ public class VCardManager {
 	 * @return the users VCard or an empty VCard.
 	 */
     public VCard getVCardFromMemory(BareJid jid) {
+        return getVCardFromMemory(jid, VCardFetchScheduler.Lane.BACKGROUND);
+    }
+
+	/**
+	 * Loads the vCard from memory, like getVCardFromMemory(BareJid jid). If
+	 * no vCard is found in memory, it is loaded in the given lane.
+	 * 
+	 * @param jid
+	 *            the users jid.
+	 * @param lane
+	 *            the lane in which the vCard is loaded.
+	 * @return the users VCard or an empty VCard.
+	 */
+    public VCard getVCardFromMemory(BareJid jid, VCardFetchScheduler.Lane lane) {
         // Check in memory first.
-        if (vcards.containsKey(jid)) {
-            return vcards.get(jid);
+        final VCard cached = vcards.get(jid);
+        if (cached != null) {
+            return cached;
         }
 
         // if not in memory
         VCard vcard = loadFromFileSystem(jid);
         if (vcard == null) {
-            addToQueue(jid);
+            addToQueue(jid, lane);
 
             // Create temp vcard.
             vcard = new VCard();
@@ -503,9 +544,19 @@ public class VCardManager {
             vcard.setJabberId(jid.toString());
             if (vcard.getNickName() != null && vcard.getNickName().length() > 0)
             {
-            	// update nickname.
-            	ContactItem item = SparkManager.getWorkspace().getContactList().getContactItemByJID(jid.toString());
-            	item.setNickname(vcard.getNickName());
+            	// update nickname, and move the contact to its new position in its group.
+            	final ContactList contactList = SparkManager.getWorkspace().getContactList();
+            	final ContactItem item = contactList.getContactItemByJID(jid.toString());
+            	if (item != null) {
+            		final String nickname = vcard.getNickName();
+            		SwingUtilities.invokeLater(() -> {
+            			item.setNickname(nickname);
+            			final ContactGroup group = contactList.getContactGroup(item.getGroupName());
+            			if (group != null) {
+            				group.contactItemRenamed(item);
+            			}
+            		});
+            	}
             	// TODO: this doesn't work if someone removes his nickname. If we remove it in that case, it will cause problems with people using another way to manage their nicknames.
             }
             addVCard(jid, vcard);
@@ -540,7 +591,8 @@ public class VCardManager {
         if (vcard == null)
         	return; 
         vcard.setJabberId(jid.toString());
-        if (vcards.containsKey(jid) && vcards.get(jid).getError() == null && vcard.getError()!= null)
+        final VCard current = vcards.get(jid);
+        if (current != null && current.getError() == null && vcard.getError()!= null)
         {
         	return;
         	
@@ -611,22 +663,45 @@ public class VCardManager {
      * @return the vCard which contains the phone number.
      */
     public VCard searchPhoneNumber(String phoneNumber) {
-        for (VCard vcard : vcards.values()) {
-            String homePhone = getNumbersFromPhone(vcard.getPhoneHome("VOICE"));
-            String workPhone = getNumbersFromPhone(vcard.getPhoneWork("VOICE"));
-            String cellPhone = getNumbersFromPhone(vcard.getPhoneWork("CELL"));
-
-            String query = getNumbersFromPhone(phoneNumber);
-            if ((homePhone != null && homePhone.endsWith(query)) ||
-                (workPhone != null && workPhone.endsWith(query)) ||
-                (cellPhone != null && cellPhone.endsWith(query))) {
+        final List<VCard> cached;
+        synchronized (vcards) {
+            cached = new ArrayList<>(vcards.values());
+        }
+        for (VCard vcard : cached) {
+            if (hasPhoneNumber(vcard, phoneNumber)) {
                 return vcard;
             }
         }
 
+        // Not all vCards are kept in memory. The store keeps the phone numbers of all of them, so only a match is read.
+        for (String jid : store.getJids()) {
+            final Map<String, String> phoneNumbers = store.getPhoneNumbers(jid);
+            if (phoneNumbers != null && hasPhoneNumber(phoneNumbers.get("TEL/HOME/VOICE"), phoneNumbers.get("TEL/WORK/VOICE"), phoneNumbers.get("TEL/WORK/CELL"), phoneNumber)) {
+                final VCardStore.StoredVCard stored = store.get(jid);
+                if (stored != null) {
+                    return stored.toVCard();
+                }
+            }
+        }
+
         return null;
     }
 
+    private static boolean hasPhoneNumber(VCard vcard, String phoneNumber) {
+        return hasPhoneNumber(vcard.getPhoneHome("VOICE"), vcard.getPhoneWork("VOICE"), vcard.getPhoneWork("CELL"), phoneNumber);
+    }
+
+    private static boolean hasPhoneNumber(String home, String work, String cell, String phoneNumber) {
+        String homePhone = getNumbersFromPhone(home);
+        String workPhone = getNumbersFromPhone(work);
+        String cellPhone = getNumbersFromPhone(cell);
+
+        String query = getNumbersFromPhone(phoneNumber);
+        return (homePhone != null && homePhone.endsWith(query)) ||
+            (workPhone != null && workPhone.endsWith(query)) ||
+            (cellPhone != null && cellPhone.endsWith(query));
+    }
+
     /**
      * Parses out the numbers only from a phone number.
      *
@@ -706,15 +781,6 @@ public class VCardManager {
         if (jid == null || vcard == null) {
         	return;
         }
-        
-        
-        String fileName = Base64.getEncoder().encodeToString(jid.toString().getBytes());
-        // remove tab
-        fileName   = fileName.replaceAll("\t", "");
-        // remove new line (Unix)
-        fileName          = fileName.replaceAll("\n", "");
-        // remove new line (Windows)
-        fileName          = fileName.replaceAll("\r", "");
 
         byte[] bytes = vcard.getAvatar();
         if (bytes != null && bytes.length > 0) {
@@ -748,22 +814,7 @@ public class VCardManager {
             }
         }
 
-        // Set timestamp
-        vcard.setField("timestamp", Long.toString(System.currentTimeMillis()));
-
-        final String xml = vcard.toXML().toString();
-
-        File vcardFile = new File(vcardStorageDirectory, fileName);
-
-        // write xml to file
-        try {
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(vcardFile), StandardCharsets.UTF_8));
-            out.write(xml);
-            out.close();
-        }
-        catch (IOException e) {
-            Log.error(e);
-        }
+        store.put(VCardStore.StoredVCard.of(jid.toString(), vcard));
     }
 
     private synchronized void writeAvatarSync(BufferedImage image, File avatarFile) throws IOException {
@@ -780,7 +831,25 @@ public class VCardManager {
     	if (jid == null) {
     		return null;
     	}
-    	
+
+        final VCardStore.StoredVCard stored = store.get(jid.toString());
+        VCard vcard = stored != null ? stored.toVCard() : loadLegacyVCard(jid);
+        if (vcard == null) {
+            return null;
+        }
+
+        // vCards do not expire: they are reloaded when a contact announces another photo (see isPhotoHashCurrent).
+        addVCard(jid, vcard);
+        return vcard;
+    }
+
+    /**
+     * Loads a vCard that was stored as XML by earlier versions, moving it to the store.
+     *
+     * @param jid the jid of the user.
+     * @return the VCard if found, otherwise null.
+     */
+    private VCard loadLegacyVCard(BareJid jid) {
         // Unescape JID
         String fileName = Base64.getEncoder().encodeToString(jid.toString().getBytes());
 
@@ -817,20 +886,36 @@ public class VCardManager {
             return null;
         }
 
-        addVCard(jid, vcard);
+        // Keep the XML until the vCard is in the store, so that it is not lost.
+        if (store.put(VCardStore.StoredVCard.of(jid.toString(), vcard))) {
+            vcardFile.delete();
+        }
+        return vcard;
+    }
 
-        // Check to see if the file is older 60 minutes. If so, reload.
-        final String timestamp = vcard.getField( "timestamp" );
-        if ( timestamp != null )
-        {
-            final Duration duration = Duration.between( Instant.ofEpochMilli( Long.parseLong( timestamp ) ), Instant.now() );
-            if ( duration.toMinutes() >= 60 )
-            {
-                addToQueue( jid );
+    /**
+     * Checks whether the cached vCard of a user has the photo that the user announces in its presence (XEP-0153).
+     * Unless it has, the vCard is to be reloaded.
+     *
+     * @param jid       the jid of the user.
+     * @param photoHash the hash of the photo that the user announces, or the empty string if the user has no photo.
+     * @return true if the cached vCard is current.
+     */
+    public boolean isPhotoHashCurrent(BareJid jid, String photoHash) {
+        String cachedHash = store.getPhotoHash(jid.toString());
+        if (cachedHash == null) {
+            final VCard cached = vcards.get(jid);
+            if (cached == null || cached.getError() != null) {
+                return false;
             }
+            cachedHash = cached.getAvatarHash() != null ? cached.getAvatarHash() : "";
+        }
+        if (!cachedHash.equalsIgnoreCase(photoHash)) {
+            return false;
         }
 
-        return vcard;
+        // The avatar of the vCard is shown from its own file.
+        return photoHash.isEmpty() || new File(contactsDir, photoHash).exists();
     }
 
 
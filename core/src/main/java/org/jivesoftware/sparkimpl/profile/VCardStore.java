@@ -0,0 +1,635 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.sparkimpl.profile;
+
+import org.jivesoftware.smackx.vcardtemp.packet.VCard;
+import org.jivesoftware.spark.util.log.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores the vCards of contacts in one file, as their parsed fields rather than as XML.
+ *
+ * The file starts with a header, which is followed by records. Every record holds the vCard of one contact: its JID,
+ * the hash of its photo, its fields and its photo. A vCard that is stored again is appended as a new record. The
+ * records are indexed in memory, by JID, when the file is opened, so a vCard is read with one seek. Once most of the
+ * file is taken by records that were replaced, it is compacted.
+ *
+ * The hash of the photo of every vCard is kept in memory, so that it can be compared to the hash that a contact
+ * announces in its presence (XEP-0153) without reading the vCard. So are its phone numbers, so that vCards can be
+ * searched by phone number without reading them. Both are read without waiting for the store, which may be busy
+ * compacting its file: the hash is compared on the event dispatch thread for every presence.
+ *
+ * Errors are logged: the store is a cache, so a vCard that cannot be read is looked up again.
+ */
+class VCardStore
+{
+    private static final int MAGIC = 0x53564344;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+
+    // Compact once at least this many bytes are taken by records that were replaced, and more than by current ones.
+    private static final long MIN_COMPACTION_BYTES = 256 * 1024;
+
+    // The fields of vcard-temp (XEP-0054) that hold text only.
+    private static final String[] SIMPLE_FIELDS = { "FN", "BDAY", "TITLE", "ROLE", "URL", "DESC", "NOTE", "MAILER", "TZ", "PRODID", "REV", "SORT-STRING", "UID" };
+    private static final String[] ADDRESS_FIELDS = { "POBOX", "EXTADR", "STREET", "LOCALITY", "REGION", "PCODE", "CTRY" };
+    private static final String[] PHONE_TYPES = { "VOICE", "FAX", "PAGER", "MSG", "CELL", "VIDEO", "BBS", "MODEM", "ISDN", "PCS" };
+
+    private final File file;
+    // Written while holding the lock of the store, but read without it.
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private RandomAccessFile data;
+    private long garbageBytes;
+    private long liveBytes;
+
+    /**
+     * Opens a store, creating its file if it does not exist.
+     *
+     * @param file the file of the store.
+     */
+    VCardStore( File file )
+    {
+        this.file = file;
+        try
+        {
+            open();
+        }
+        catch ( IOException e )
+        {
+            Log.error( "Unable to open the vCard store " + file + ". vCards will not be stored.", e );
+            close();
+        }
+    }
+
+    /**
+     * Returns a stored vCard.
+     *
+     * @param jid the JID of the contact.
+     * @return the vCard, or null if none is stored.
+     */
+    synchronized StoredVCard get( String jid )
+    {
+        final Location location = index.get( jid );
+        if ( location == null || data == null )
+        {
+            return null;
+        }
+        try
+        {
+            return read( location );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to read the stored vCard of " + jid, e );
+            return null;
+        }
+    }
+
+    /**
+     * Returns the hash of the photo of a stored vCard.
+     *
+     * @param jid the JID of the contact.
+     * @return the hash, the empty string if the vCard has no photo, or null if no vCard is stored.
+     */
+    String getPhotoHash( String jid )
+    {
+        final Location location = index.get( jid );
+        return location != null ? location.photoHash : null;
+    }
+
+    /**
+     * Returns the phone numbers of a stored vCard, without reading it.
+     *
+     * @param jid the JID of the contact.
+     * @return the phone numbers, by field (such as TEL/WORK/VOICE), or null if no vCard is stored.
+     */
+    Map<String, String> getPhoneNumbers( String jid )
+    {
+        final Location location = index.get( jid );
+        return location != null ? location.phoneNumbers : null;
+    }
+
+    /**
+     * Stores a vCard, replacing the one that was stored for the contact.
+     *
+     * @param vcard the vCard.
+     * @return true if the vCard was stored, false if it could not be written.
+     */
+    synchronized boolean put( StoredVCard vcard )
+    {
+        if ( data == null )
+        {
+            return false;
+        }
+        long offset = -1;
+        try
+        {
+            final byte[] record = vcard.toBytes();
+            offset = data.length();
+            data.seek( offset );
+            data.writeInt( record.length );
+            data.write( record );
+            replace( index, vcard.jid, new Location( offset, record.length, vcard ) );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to store the vCard of " + vcard.jid, e );
+            truncate( offset );
+            return false;
+        }
+
+        if ( garbageBytes >= MIN_COMPACTION_BYTES && garbageBytes > liveBytes )
+        {
+            try
+            {
+                compact();
+            }
+            catch ( IOException e )
+            {
+                // The vCard is stored: it is in the file that was to be compacted.
+                Log.warning( "Unable to compact the vCard store " + file, e );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the JIDs of all contacts of which a vCard is stored.
+     *
+     * @return the JIDs.
+     */
+    Set<String> getJids()
+    {
+        return new HashSet<>( index.keySet() );
+    }
+
+    /**
+     * Returns the number of bytes of the file that are taken by records that were replaced.
+     *
+     * @return the number of bytes.
+     */
+    synchronized long getGarbageBytes()
+    {
+        return garbageBytes;
+    }
+
+    /**
+     * Closes the file of the store. A closed store stores nothing.
+     */
+    synchronized void close()
+    {
+        if ( data != null )
+        {
+            try
+            {
+                data.close();
+            }
+            catch ( IOException e )
+            {
+                Log.warning( "Unable to close the vCard store " + file, e );
+            }
+            data = null;
+        }
+    }
+
+    private void open() throws IOException
+    {
+        // The records are indexed anew, and the index is only updated once they are, so that readers of the index
+        // never find a stored vCard missing while the file is reopened.
+        final Map<String, Location> loaded = new HashMap<>();
+        garbageBytes = 0;
+        liveBytes = 0;
+        data = new RandomAccessFile( file, "rw" );
+        load( loaded );
+        index.keySet().retainAll( loaded.keySet() );
+        index.putAll( loaded );
+    }
+
+    private void load( Map<String, Location> loaded ) throws IOException
+    {
+        if ( data.length() < HEADER_LENGTH || data.readInt() != MAGIC || data.readInt() != VERSION )
+        {
+            // A new file, or one of another format: start over.
+            data.setLength( 0 );
+            data.writeInt( MAGIC );
+            data.writeInt( VERSION );
+            return;
+        }
+
+        long offset = HEADER_LENGTH;
+        final long length = data.length();
+        while ( offset + 4 <= length )
+        {
+            data.seek( offset );
+            final int recordLength = data.readInt();
+            if ( recordLength < 0 || offset + 4 + recordLength > length )
+            {
+                break;
+            }
+            final Location location = new Location( offset, recordLength, null );
+            final StoredVCard vcard;
+            try
+            {
+                vcard = read( location );
+            }
+            catch ( IOException e )
+            {
+                break;
+            }
+            replace( loaded, vcard.jid, new Location( offset, recordLength, vcard ) );
+            offset += 4 + recordLength;
+        }
+
+        if ( offset < length )
+        {
+            // The last record was not written completely.
+            Log.warning( "Dropping " + ( length - offset ) + " bytes of an incomplete record of the vCard store " + file );
+            data.setLength( offset );
+        }
+    }
+
+    private void replace( Map<String, Location> locations, String jid, Location location )
+    {
+        final Location previous = locations.put( jid, location );
+        if ( previous != null )
+        {
+            garbageBytes += previous.size();
+            liveBytes -= previous.size();
+        }
+        liveBytes += location.size();
+    }
+
+    // Drops a record that was not written completely, so that records that are appended later can be read.
+    private void truncate( long offset )
+    {
+        if ( offset < 0 )
+        {
+            return;
+        }
+        try
+        {
+            data.setLength( offset );
+        }
+        catch ( IOException e )
+        {
+            Log.warning( "Unable to drop an incomplete record of the vCard store " + file + ". vCards will not be stored.", e );
+            close();
+        }
+    }
+
+    private StoredVCard read( Location location ) throws IOException
+    {
+        final byte[] record = new byte[ location.length ];
+        data.seek( location.offset + 4 );
+        data.readFully( record );
+        return StoredVCard.fromBytes( record );
+    }
+
+    private void compact() throws IOException
+    {
+        final File compacted = new File( file.getPath() + ".tmp" );
+        try ( RandomAccessFile out = new RandomAccessFile( compacted, "rw" ) )
+        {
+            out.setLength( 0 );
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            for ( final Location location : index.values() )
+            {
+                final byte[] record = new byte[ location.length ];
+                data.seek( location.offset + 4 );
+                data.readFully( record );
+                out.writeInt( record.length );
+                out.write( record );
+            }
+        }
+        data.close();
+        data = null;
+        try
+        {
+            Files.move( compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch ( IOException e )
+        {
+            Files.deleteIfExists( compacted.toPath() );
+            throw e;
+        }
+        finally
+        {
+            // Reopen the compacted file, or the original one if it could not be replaced.
+            reopen();
+        }
+    }
+
+    private void reopen() throws IOException
+    {
+        try
+        {
+            open();
+        }
+        catch ( IOException e )
+        {
+            Log.error( "Unable to reopen the vCard store " + file + ". vCards will not be stored.", e );
+            close();
+            index.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Where a record is in the file.
+     */
+    private static final class Location
+    {
+        private final long offset;
+        private final int length;
+        private final String photoHash;
+        private final Map<String, String> phoneNumbers;
+
+        private Location( long offset, int length, StoredVCard vcard )
+        {
+            this.offset = offset;
+            this.length = length;
+            this.photoHash = vcard != null ? vcard.photoHash : null;
+            this.phoneNumbers = vcard != null ? vcard.getPhoneNumbers() : null;
+        }
+
+        private long size()
+        {
+            return 4L + length;
+        }
+    }
+
+    /**
+     * The fields of a vCard, as they are stored.
+     */
+    static final class StoredVCard
+    {
+        private final String jid;
+        private final String photoHash;
+        private final Map<String, String> fields;
+        private final byte[] photo;
+        private final String photoType;
+
+        StoredVCard( String jid, Map<String, String> fields, byte[] photo, String photoType, String photoHash )
+        {
+            this.jid = jid;
+            this.fields = fields;
+            this.photo = photo;
+            this.photoType = photoType;
+            this.photoHash = photoHash == null ? "" : photoHash;
+        }
+
+        String getJid()
+        {
+            return jid;
+        }
+
+        String getPhotoHash()
+        {
+            return photoHash;
+        }
+
+        Map<String, String> getFields()
+        {
+            return fields;
+        }
+
+        /**
+         * Returns the phone numbers of this vCard.
+         *
+         * @return the phone numbers, by field (such as TEL/WORK/VOICE).
+         */
+        Map<String, String> getPhoneNumbers()
+        {
+            Map<String, String> phoneNumbers = null;
+            for ( final Map.Entry<String, String> field : fields.entrySet() )
+            {
+                if ( field.getKey().startsWith( "TEL/" ) )
+                {
+                    if ( phoneNumbers == null )
+                    {
+                        phoneNumbers = new HashMap<>();
+                    }
+                    phoneNumbers.put( field.getKey(), field.getValue() );
+                }
+            }
+            return phoneNumbers == null ? Collections.emptyMap() : Collections.unmodifiableMap( phoneNumbers );
+        }
+
+        /**
+         * Takes the fields of a vCard.
+         *
+         * @param jid   the JID of the contact.
+         * @param vcard the vCard.
+         * @return the fields to store.
+         */
+        static StoredVCard of( String jid, VCard vcard )
+        {
+            final Map<String, String> fields = new LinkedHashMap<>();
+            putField( fields, "N/GIVEN", vcard.getFirstName() );
+            putField( fields, "N/MIDDLE", vcard.getMiddleName() );
+            putField( fields, "N/FAMILY", vcard.getLastName() );
+            putField( fields, "N/PREFIX", vcard.getPrefix() );
+            putField( fields, "N/SUFFIX", vcard.getSuffix() );
+            putField( fields, "NICKNAME", vcard.getNickName() );
+            putField( fields, "JABBERID", vcard.getJabberId() );
+            putField( fields, "EMAIL/HOME", vcard.getEmailHome() );
+            putField( fields, "EMAIL/WORK", vcard.getEmailWork() );
+            putField( fields, "ORG/ORGNAME", vcard.getOrganization() );
+            putField( fields, "ORG/ORGUNIT", vcard.getOrganizationUnit() );
+            for ( final String field : SIMPLE_FIELDS )
+            {
+                putField( fields, field, vcard.getField( field ) );
+            }
+            for ( final String field : ADDRESS_FIELDS )
+            {
+                putField( fields, "ADR/HOME/" + field, vcard.getAddressFieldHome( field ) );
+                putField( fields, "ADR/WORK/" + field, vcard.getAddressFieldWork( field ) );
+            }
+            for ( final String type : PHONE_TYPES )
+            {
+                putField( fields, "TEL/HOME/" + type, vcard.getPhoneHome( type ) );
+                putField( fields, "TEL/WORK/" + type, vcard.getPhoneWork( type ) );
+            }
+
+            final byte[] photo = vcard.getAvatar();
+            final boolean hasPhoto = photo != null && photo.length > 0;
+            return new StoredVCard( jid, fields, hasPhoto ? photo : null, hasPhoto ? vcard.getAvatarMimeType() : null, hasPhoto ? vcard.getAvatarHash() : "" );
+        }
+
+        /**
+         * Creates a vCard of the stored fields.
+         *
+         * @return the vCard.
+         */
+        VCard toVCard()
+        {
+            final VCard vcard = new VCard();
+            for ( final Map.Entry<String, String> entry : fields.entrySet() )
+            {
+                final String key = entry.getKey();
+                final String value = entry.getValue();
+                switch ( key )
+                {
+                    case "N/GIVEN": vcard.setFirstName( value ); break;
+                    case "N/MIDDLE": vcard.setMiddleName( value ); break;
+                    case "N/FAMILY": vcard.setLastName( value ); break;
+                    case "N/PREFIX": vcard.setPrefix( value ); break;
+                    case "N/SUFFIX": vcard.setSuffix( value ); break;
+                    case "NICKNAME": vcard.setNickName( value ); break;
+                    case "JABBERID": vcard.setJabberId( value ); break;
+                    case "EMAIL/HOME": vcard.setEmailHome( value ); break;
+                    case "EMAIL/WORK": vcard.setEmailWork( value ); break;
+                    case "ORG/ORGNAME": vcard.setOrganization( value ); break;
+                    case "ORG/ORGUNIT": vcard.setOrganizationUnit( value ); break;
+                    default:
+                        if ( key.startsWith( "ADR/HOME/" ) )
+                        {
+                            vcard.setAddressFieldHome( key.substring( 9 ), value );
+                        }
+                        else if ( key.startsWith( "ADR/WORK/" ) )
+                        {
+                            vcard.setAddressFieldWork( key.substring( 9 ), value );
+                        }
+                        else if ( key.startsWith( "TEL/HOME/" ) )
+                        {
+                            vcard.setPhoneHome( key.substring( 9 ), value );
+                        }
+                        else if ( key.startsWith( "TEL/WORK/" ) )
+                        {
+                            vcard.setPhoneWork( key.substring( 9 ), value );
+                        }
+                        else
+                        {
+                            vcard.setField( key, value );
+                        }
+                }
+            }
+            if ( photo != null )
+            {
+                vcard.setAvatar( photo, photoType );
+            }
+            return vcard;
+        }
+
+        private static void putField( Map<String, String> fields, String key, String value )
+        {
+            if ( value != null )
+            {
+                fields.put( key, value );
+            }
+        }
+
+        private byte[] toBytes() throws IOException
+        {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream( bytes );
+            writeString( out, jid );
+            writeString( out, photoHash );
+            out.writeInt( fields.size() );
+            for ( final Map.Entry<String, String> field : fields.entrySet() )
+            {
+                writeString( out, field.getKey() );
+                writeString( out, field.getValue() );
+            }
+            if ( photo == null )
+            {
+                out.writeInt( -1 );
+            }
+            else
+            {
+                out.writeInt( photo.length );
+                out.write( photo );
+                writeString( out, photoType );
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static StoredVCard fromBytes( byte[] record ) throws IOException
+        {
+            final DataInputStream in = new DataInputStream( new ByteArrayInputStream( record ) );
+            final String jid = readString( in );
+            final String photoHash = readString( in );
+            final int fieldCount = in.readInt();
+            final Map<String, String> fields = new LinkedHashMap<>();
+            for ( int i = 0; i < fieldCount; i++ )
+            {
+                fields.put( readString( in ), readString( in ) );
+            }
+            final int photoLength = in.readInt();
+            byte[] photo = null;
+            String photoType = null;
+            if ( photoLength > in.available() )
+            {
+                throw new IOException( "The record is truncated." );
+            }
+            if ( photoLength >= 0 )
+            {
+                photo = new byte[ photoLength ];
+                in.readFully( photo );
+                photoType = readString( in );
+            }
+            return new StoredVCard( jid, fields, photo, photoType, photoHash );
+        }
+
+        // Unlike writeUTF, this has no limit on the length of the string. Null is stored as a negative length.
+        private static void writeString( DataOutputStream out, String value ) throws IOException
+        {
+            if ( value == null )
+            {
+                out.writeInt( -1 );
+                return;
+            }
+            final byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+            out.writeInt( bytes.length );
+            out.write( bytes );
+        }
+
+        private static String readString( DataInputStream in ) throws IOException
+        {
+            final int length = in.readInt();
+            if ( length < 0 )
+            {
+                return null;
+            }
+            if ( length > in.available() )
+            {
+                throw new IOException( "The record is truncated." );
+            }
+            final byte[] bytes = new byte[ length ];
+            in.readFully( bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+    }
+}
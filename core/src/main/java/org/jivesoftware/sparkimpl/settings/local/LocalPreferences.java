@@ -1119,6 +1119,20 @@ public class LocalPreferences {
 	public boolean areVCardsVisible() {
 		return getBoolean("showVCards", true);
 	}
+
+	/**
+	 * Sets whether contacts in the contact list are lightweight items, which are drawn by a shared cell renderer and
+	 * have no child components of their own. Takes effect for contacts that are created afterwards.
+	 *
+	 * @param enabled true to use lightweight contacts.
+	 */
+	public void setLightweightContactListEnabled(boolean enabled) {
+		setBoolean("lightweightContactList", enabled);
+	}
+
+	public boolean isLightweightContactListEnabled() {
+		return getBoolean("lightweightContactList", false);
+	}
 	
 	public void setAudioSystem(String device) {
 		 props.setProperty("audioSystem", device);
@@ -1501,4 +1515,31 @@ public class LocalPreferences {
     public int getMaxCurrentHistorySize() {
         return getInt( "currentHistoryMaxSize", 20 );
     }
+
+    /**
+     * Sets the maximum amount of messages of a chat room that are kept in memory. Older messages are moved to disk.
+     *
+     * @param value the maximum amount of messages.
+     */
+    public void setMaxTranscriptBufferSize( int value ) {
+        setInt( "transcriptBufferMaxSize", value );
+    }
+
+    public int getMaxTranscriptBufferSize() {
+        return getInt( "transcriptBufferMaxSize", 1000 );
+    }
+
+    /**
+     * Sets the maximum amount of entries that a transcript window displays. The oldest entries are removed from the
+     * window when more are added.
+     *
+     * @param value the maximum amount of entries.
+     */
+    public void setMaxTranscriptWindowEntries( int value ) {
+        setInt( "transcriptWindowMaxEntries", value );
+    }
+
+    public int getMaxTranscriptWindowEntries() {
+        return getInt( "transcriptWindowMaxEntries", 5000 );
+    }
 }
@@ -0,0 +1,113 @@
+package org.jivesoftware.resource;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IconRegistryTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResourceIsDecodedOnce() throws Exception
+    {
+        // Setup fixture.
+        final URL url = createImage( "ball.png", 16 );
+        final IconRegistry registry = new IconRegistry( 1 );
+
+        // Execute system under test.
+        final ImageIcon first = registry.getIcon( url );
+        final ImageIcon second = registry.getIcon( url );
+        final ImageIcon third = registry.getIcon( new URL( url.toExternalForm() ) );
+
+        // Verify results.
+        assertSame( first, second );
+        assertSame( first, third );
+        assertEquals( 1, registry.getMissCount() );
+        assertEquals( 2, registry.getHitCount() );
+        assertEquals( 1, registry.size() );
+    }
+
+    @Test
+    public void testOverrideReplacesIconUntilRemoved() throws Exception
+    {
+        // Setup fixture.
+        final URL url = createImage( "ball.png", 16 );
+        final IconRegistry registry = new IconRegistry( 1 );
+        final ImageIcon original = registry.getIcon( url );
+        final ImageIcon themed = new ImageIcon( new BufferedImage( 16, 16, BufferedImage.TYPE_INT_ARGB ) );
+
+        // Execute system under test.
+        registry.putOverride( url, themed );
+        final ImageIcon overridden = registry.getIcon( url );
+        registry.removeOverride( url );
+        final ImageIcon restored = registry.getIcon( url );
+
+        // Verify results.
+        assertSame( themed, overridden );
+        assertSame( original, restored );
+    }
+
+    @Test
+    public void testHiDpiVariantIsDrawnAtOriginalSize() throws Exception
+    {
+        // Setup fixture.
+        final URL url = createImage( "ball.png", 16 );
+        createImage( "ball@2x.png", 32 );
+        final IconRegistry registry = new IconRegistry( 2 );
+
+        // Execute system under test.
+        final ImageIcon icon = registry.getIcon( url );
+
+        // Verify results.
+        assertEquals( 16, icon.getIconWidth() );
+        assertEquals( 16, icon.getIconHeight() );
+        assertEquals( 32, icon.getImage().getWidth( null ) );
+    }
+
+    @Test
+    public void testHiDpiVariantIsIgnoredOnRegularDisplays() throws Exception
+    {
+        // Setup fixture.
+        final URL url = createImage( "ball.png", 16 );
+        createImage( "ball@2x.png", 32 );
+        final IconRegistry registry = new IconRegistry( 1 );
+
+        // Execute system under test.
+        final ImageIcon icon = registry.getIcon( url );
+
+        // Verify results.
+        assertEquals( 16, icon.getImage().getWidth( null ) );
+    }
+
+    @Test
+    public void testResourceWithoutVariantHasNoHiDpiVariant() throws Exception
+    {
+        // Setup fixture.
+        final URL url = createImage( "ball.png", 16 );
+
+        // Execute system under test.
+        final URL variant = IconRegistry.getHiDpiVariant( url );
+
+        // Verify results.
+        assertNull( variant );
+    }
+
+    private URL createImage( String name, int size ) throws Exception
+    {
+        final File file = new File( folder.getRoot(), name );
+        ImageIO.write( new BufferedImage( size, size, BufferedImage.TYPE_INT_ARGB ), "png", file );
+        return file.toURI().toURL();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.impl.JidCreate;
+
+import javax.swing.ListModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ContactGroupTest
+{
+    @ClassRule
+    public static final TemporaryFolder userHome = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        SessionlessContactItem.useUserHome( userHome.getRoot() );
+    }
+
+    @Test
+    public void testRenamedContactIsMovedToItsNewPosition() throws Exception
+    {
+        // Setup fixture.
+        final ContactGroup group = new ContactGroup( "Friends" );
+        final ContactItem alice = createContactItem( "alice" );
+        group.addContactItem( alice );
+        group.addContactItem( createContactItem( "bob" ) );
+        group.addContactItem( createContactItem( "carol" ) );
+
+        // Execute system under test.
+        alice.setAlias( "zoe" );
+        group.contactItemRenamed( alice );
+        group.addContactItem( createContactItem( "dave" ) );
+
+        // Verify results.
+        assertEquals( Arrays.asList( "bob", "carol", "dave", "zoe" ), getDisplayedNames( group ) );
+        assertSame( alice, group.getContactItemByJID( alice.getJid() ) );
+        group.removeContactItem( alice );
+        assertNull( group.getContactItemByJID( alice.getJid() ) );
+        assertEquals( Arrays.asList( "bob", "carol", "dave" ), getDisplayedNames( group ) );
+    }
+
+    @Test
+    public void testContactThatKeepsItsPositionIsNotMoved() throws Exception
+    {
+        // Setup fixture.
+        final ContactGroup group = new ContactGroup( "Friends" );
+        final ContactItem bob = createContactItem( "bob" );
+        group.addContactItem( createContactItem( "alice" ) );
+        group.addContactItem( bob );
+        group.addContactItem( createContactItem( "carol" ) );
+
+        // Execute system under test.
+        bob.setAlias( "Bobby" );
+        group.contactItemRenamed( bob );
+
+        // Verify results.
+        assertEquals( Arrays.asList( "alice", "Bobby", "carol" ), getDisplayedNames( group ) );
+    }
+
+    private static ContactItem createContactItem( String name ) throws Exception
+    {
+        return new SessionlessContactItem( null, name, JidCreate.bareFrom( name + "@example.org" ) );
+    }
+
+    private static List<String> getDisplayedNames( ContactGroup group )
+    {
+        final ListModel<? extends ContactItem> model = group.getList().getModel();
+        final List<String> names = new ArrayList<>();
+        for ( int i = 0; i < model.getSize(); i++ )
+        {
+            names.add( model.getElementAt( i ).getDisplayName() );
+        }
+        return names;
+    }
+}
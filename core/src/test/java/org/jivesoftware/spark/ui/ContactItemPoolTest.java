@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.resource.Res;
+import org.jivesoftware.smack.packet.Presence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContactItemPoolTest
+{
+    private static final int CONTACT_COUNT = 50;
+
+    private static final int CYCLES = 20;
+
+    @ClassRule
+    public static final TemporaryFolder userHome = new TemporaryFolder();
+
+    private int created;
+
+    private final ContactItemPool<ContactItem> pool = new ContactItemPool<>( jid -> {
+        created++;
+        return new SessionlessContactItem( null, null, jid );
+    } );
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        SessionlessContactItem.useUserHome( userHome.getRoot() );
+    }
+
+    @Test
+    public void testContactKeepsItsItemAcrossPresenceChanges() throws Exception
+    {
+        // Setup fixture.
+        final BareJid jid = JidCreate.bareFrom( "contact@example.org" );
+        final ContactItem first = pool.acquire( jid );
+        final Presence available = new Presence( Presence.Type.available );
+        final Presence unavailable = new Presence( Presence.Type.unavailable );
+
+        // Execute system under test.
+        for ( int i = 0; i < CYCLES; i++ )
+        {
+            pool.acquire( jid ).setPresence( i % 2 == 0 ? unavailable : available );
+        }
+
+        // Verify results.
+        assertSame( first, pool.acquire( jid ) );
+        assertEquals( 1, created );
+        assertSame( available, first.getPresence() );
+    }
+
+    @Test
+    public void testEvictedContactGetsANewItem() throws Exception
+    {
+        // Setup fixture.
+        final BareJid jid = JidCreate.bareFrom( "contact@example.org" );
+        final ContactItem first = pool.acquire( jid );
+
+        // Execute system under test.
+        final ContactItem evicted = pool.evict( jid );
+        final ContactItem second = pool.acquire( jid );
+
+        // Verify results.
+        assertSame( first, evicted );
+        assertNotSame( first, second );
+        assertEquals( 2, created );
+        assertEquals( 1, pool.size() );
+    }
+
+    @Test
+    public void testPresenceChangesReuseTheItems() throws Exception
+    {
+        // Setup fixture: every contact is online in a group, and the offline group takes its items from the pool.
+        final ContactGroup group = new ContactGroup( "Friends" );
+        final ContactGroup offlineGroup = new ContactGroup( Res.getString( "group.offline" ) );
+        final List<ContactItem> items = new ArrayList<>();
+        for ( int i = 0; i < CONTACT_COUNT; i++ )
+        {
+            final ContactItem item = new SessionlessContactItem( null, null, JidCreate.bareFrom( "contact" + i + "@example.org" ) );
+            item.setPresence( new Presence( Presence.Type.available ) );
+            group.addContactItem( item );
+            items.add( item );
+        }
+        final Presence available = new Presence( Presence.Type.available );
+        final Presence unavailable = new Presence( Presence.Type.unavailable );
+
+        // Execute system under test: the contacts go offline and come online again, moved by the contact list.
+        for ( int i = 0; i < CYCLES; i++ )
+        {
+            for ( final ContactItem item : items )
+            {
+                ContactList.moveItemOffline( group, item, unavailable, offlineGroup, pool );
+            }
+            for ( final ContactItem item : items )
+            {
+                // The contact list takes the contact out of the offline group before it moves the items of its groups.
+                offlineGroup.removeContactItem( offlineGroup.getContactItemByJID( item.getJid() ) );
+                ContactList.moveItemOnline( group, item.getJid(), available, () -> {
+                    throw new AssertionError( "The offline item of the group was not reused." );
+                } );
+            }
+        }
+
+        // Verify results: no item was created after the first round, and every contact has its original item.
+        assertEquals( CONTACT_COUNT, created );
+        assertEquals( CONTACT_COUNT, pool.size() );
+        for ( final ContactItem item : items )
+        {
+            assertSame( item, group.getContactItemByJID( item.getJid() ) );
+            assertSame( available, item.getPresence() );
+            assertNull( group.getOfflineContactItemByJID( item.getJid() ) );
+            assertNull( offlineGroup.getContactItemByJID( item.getJid() ) );
+            assertSame( unavailable, pool.acquire( item.getJid() ).getPresence() );
+        }
+        assertTrue( group.getContactItems().containsAll( items ) );
+        assertEquals( CONTACT_COUNT, group.getList().getModel().getSize() );
+    }
+}
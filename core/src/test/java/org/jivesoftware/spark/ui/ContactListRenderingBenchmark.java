@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.resource.SparkRes;
+import org.jivesoftware.spark.component.renderer.JContactItemRenderer;
+import org.jxmpp.jid.impl.JidCreate;
+
+import javax.swing.JList;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap that 5,000 contacts take, and the time it takes to paint them, for contacts with child components
+ * and for lightweight contacts that are drawn by the shared cell renderer only.
+ *
+ * This is not a unit test: it is run by hand, with the test classpath, for instance:
+ * <pre>
+ * mvn -pl core test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.jivesoftware.spark.ui.ContactListRenderingBenchmark
+ * </pre>
+ * It needs no session: the settings that contacts read are stored in a temporary directory.
+ */
+public class ContactListRenderingBenchmark
+{
+    private static final int CONTACT_COUNT = 5000;
+
+    private static final int PAINT_ROUNDS = 20;
+
+    private static final int WIDTH = 300;
+
+    private static final int VIEWPORT_HEIGHT = 800;
+
+    public static void main( String[] args ) throws Exception
+    {
+        SessionlessContactItem.useUserHome( Files.createTempDirectory( "spark-benchmark" ).toFile() );
+
+        // Warm up, so that classes are loaded and the first mode is not at a disadvantage.
+        run( false, false );
+        run( true, false );
+
+        run( false, true );
+        run( true, true );
+    }
+
+    private static void run( boolean lightweight, boolean report ) throws Exception
+    {
+        final long before = usedHeap();
+        final ContactItemListModel model = createContacts( lightweight );
+        final long heap = usedHeap() - before;
+
+        final JList<ContactItem> list = new JList<>( model );
+        list.setCellRenderer( new JContactItemRenderer() );
+        final Dimension size = list.getPreferredSize();
+        list.setSize( WIDTH, size.height );
+
+        final BufferedImage image = new BufferedImage( WIDTH, VIEWPORT_HEIGHT, BufferedImage.TYPE_INT_ARGB );
+        final long start = System.nanoTime();
+        for ( int round = 0; round < PAINT_ROUNDS; round++ )
+        {
+            paint( list, image, size.height );
+        }
+        final long paintNanos = ( System.nanoTime() - start ) / PAINT_ROUNDS;
+
+        if ( report )
+        {
+            System.out.printf( "%-12s heap: %,8d KB (%,d bytes per contact), paint of all contacts: %,d ms%n",
+                lightweight ? "lightweight" : "components",
+                heap / 1024,
+                heap / CONTACT_COUNT,
+                TimeUnit.NANOSECONDS.toMillis( paintNanos ) );
+        }
+
+        // Keep the contacts reachable until they are measured.
+        if ( model.getSize() != CONTACT_COUNT )
+        {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static ContactItemListModel createContacts( boolean lightweight ) throws Exception
+    {
+        final Font font = new Font( "Dialog", Font.PLAIN, 12 );
+        final ContactItemListModel model = new ContactItemListModel();
+        for ( int i = 0; i < CONTACT_COUNT; i++ )
+        {
+            final ContactItem item = new ContactItem( "Contact " + i, null, JidCreate.bareFrom( "contact" + i + "@example.org" ), !lightweight );
+            item.setIcon( SparkRes.getImageIcon( i % 3 == 0 ? SparkRes.IM_AWAY : SparkRes.GREEN_BALL ) );
+            item.setStatusText( i % 2 == 0 ? "Working on item " + i : null );
+            item.setNicknameFont( font );
+            model.addElement( item );
+        }
+        return model;
+    }
+
+    /**
+     * Paints the whole list, one viewport at a time, like scrolling through it does.
+     */
+    private static void paint( JList<ContactItem> list, BufferedImage image, int height )
+    {
+        for ( int y = 0; y < height; y += VIEWPORT_HEIGHT )
+        {
+            final Graphics2D graphics = image.createGraphics();
+            try
+            {
+                graphics.translate( 0, -y );
+                graphics.setClip( 0, y, WIDTH, VIEWPORT_HEIGHT );
+                list.paint( graphics );
+            }
+            finally
+            {
+                graphics.dispose();
+            }
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException
+    {
+        final Runtime runtime = Runtime.getRuntime();
+        for ( int i = 0; i < 3; i++ )
+        {
+            System.gc();
+            Thread.sleep( 100 );
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
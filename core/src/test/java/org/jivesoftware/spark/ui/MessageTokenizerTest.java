@@ -0,0 +1,103 @@
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.sparkimpl.plugin.emoticons.EmoticonTrie;
+import org.junit.Test;
+
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MessageTokenizerTest
+{
+    private final TranscriptStyles.Palette palette = new TranscriptStyles.Palette( 12, Color.BLACK, Color.WHITE );
+    private final Icon smiley = new ImageIcon( new BufferedImage( 1, 1, BufferedImage.TYPE_INT_ARGB ) );
+
+    private MessageTokenizer createTokenizer()
+    {
+        final EmoticonTrie trie = new EmoticonTrie( Arrays.asList( ":)", ":-)" ) );
+        return new MessageTokenizer( palette, Color.BLUE, Color.RED, trie, key -> smiley );
+    }
+
+    @Test
+    public void testPlainTextIsMerged() throws Exception
+    {
+        // Setup fixture.
+        final MessageTokenizer tokenizer = createTokenizer();
+
+        // Execute system under test.
+        final List<MessageTokenizer.Fragment> result = tokenizer.tokenize( "Hello \"dear\" world" );
+
+        // Verify results.
+        assertEquals( 1, result.size() );
+        assertEquals( "Hello \"dear\" world\n", result.get( 0 ).text );
+        assertSame( palette.getPlain(), result.get( 0 ).style );
+    }
+
+    @Test
+    public void testDirectivesLinksAndEmoticons() throws Exception
+    {
+        // Setup fixture.
+        final MessageTokenizer tokenizer = createTokenizer();
+
+        // Execute system under test.
+        final List<MessageTokenizer.Fragment> result = tokenizer.tokenize( "see *this* at https://example.org :) done" );
+
+        // Verify results.
+        assertEquals( 7, result.size() );
+        assertEquals( "see ", result.get( 0 ).text );
+        assertEquals( "this", result.get( 1 ).text );
+        assertSame( palette.getStyle( '*' ), result.get( 1 ).style );
+        assertEquals( " at ", result.get( 2 ).text );
+        assertEquals( "https://example.org", result.get( 3 ).text );
+        assertEquals( "https://example.org", result.get( 3 ).style.getAttribute( "link" ) );
+        assertEquals( " ", result.get( 4 ).text );
+        assertTrue( result.get( 5 ).isIcon() );
+        assertEquals( ":)", result.get( 5 ).text );
+        assertEquals( " done\n", result.get( 6 ).text );
+    }
+
+    @Test
+    public void testEmoticonMustMatchWholeWord() throws Exception
+    {
+        // Setup fixture.
+        final MessageTokenizer tokenizer = createTokenizer();
+
+        // Execute system under test.
+        final List<MessageTokenizer.Fragment> result = tokenizer.tokenize( ":-) :-)) :-" );
+
+        // Verify results.
+        assertEquals( 2, result.size() );
+        assertTrue( result.get( 0 ).isIcon() );
+        assertEquals( " :-)) :-\n", result.get( 1 ).text );
+    }
+
+    @Test
+    public void testCodeBlock() throws Exception
+    {
+        // Setup fixture.
+        final MessageTokenizer tokenizer = createTokenizer();
+        final AttributeSet keyword = palette.getStyle( 'K' );
+        final AttributeSet code = palette.getStyle( '`' );
+
+        // Execute system under test.
+        final List<MessageTokenizer.Fragment> result = tokenizer.tokenize( "```\n*x* :)\n```\nafter" );
+
+        // Verify results.
+        assertEquals( 4, result.size() );
+        assertEquals( "```", result.get( 0 ).text );
+        assertSame( keyword, result.get( 0 ).style );
+        assertEquals( "\n*x* :)\n", result.get( 1 ).text );
+        assertSame( code, result.get( 1 ).style );
+        assertEquals( "```", result.get( 2 ).text );
+        assertSame( keyword, result.get( 2 ).style );
+        assertEquals( "\n\nafter\n", result.get( 3 ).text );
+        assertSame( palette.getPlain(), result.get( 3 ).style );
+    }
+}
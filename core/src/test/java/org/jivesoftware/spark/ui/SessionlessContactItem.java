@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2026 Ignite Realtime Foundation. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.spark.ui;
+
+import org.jivesoftware.Spark;
+import org.jivesoftware.smack.packet.Presence;
+import org.jxmpp.jid.BareJid;
+
+import java.io.File;
+
+/**
+ * A lightweight contact item that can be used without a session. It does not look up the icon of its presence, which
+ * takes the chat manager and the roster of the connection.
+ *
+ * Contact items and groups read the settings of the user, so tests that create them first call
+ * {@link #useUserHome(File)}.
+ */
+class SessionlessContactItem extends ContactItem
+{
+    private static final long serialVersionUID = 1L;
+
+    SessionlessContactItem( String alias, String nickname, BareJid jid )
+    {
+        super( alias, nickname, jid, false );
+    }
+
+    @Override
+    public void updatePresenceIcon( Presence presence )
+    {
+        setAvailable( presence.isAvailable() );
+    }
+
+    /**
+     * Makes Spark store the settings of the user in a directory, instead of the directory that Spark determines when
+     * it starts.
+     *
+     * @param directory the directory.
+     */
+    static void useUserHome( File directory )
+    {
+        Spark.setSparkUserHome( directory.getAbsolutePath() );
+    }
+}
@@ -0,0 +1,92 @@
+package org.jivesoftware.spark.ui.conferences;
+
+import org.junit.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParticipantListModelTest
+{
+    @Test
+    public void testParticipantsAreOrderedByRankAndName()
+    {
+        // Setup fixture.
+        final ParticipantListModel model = new ParticipantListModel();
+
+        // Execute system under test.
+        model.put( "dave", null, null, 4 );
+        model.put( "Bob", null, null, 4 );
+        model.put( "carol", null, null, 0 );
+        model.put( "alice", null, null, 4 );
+
+        // Verify results.
+        assertEquals( 4, model.getSize() );
+        assertEquals( "carol", model.getElementAt( 0 ).getText() );
+        assertEquals( "alice", model.getElementAt( 1 ).getText() );
+        assertEquals( "Bob", model.getElementAt( 2 ).getText() );
+        assertEquals( "dave", model.getElementAt( 3 ).getText() );
+        assertEquals( 2, model.indexOf( "Bob" ) );
+        assertEquals( -1, model.indexOf( "bob" ) );
+        assertTrue( model.contains( "dave" ) );
+        assertNull( model.getJid( "dave" ) );
+        assertEquals( 0, model.getRank( "carol" ) );
+        assertEquals( Integer.MAX_VALUE, model.getRank( "erin" ) );
+    }
+
+    @Test
+    public void testChangesFireIntervalEvents()
+    {
+        // Setup fixture.
+        final ParticipantListModel model = new ParticipantListModel();
+        model.put( "alice", null, null, 4 );
+        model.put( "bob", null, null, 4 );
+        model.put( "carol", null, null, 4 );
+        final List<String> events = new ArrayList<>();
+        model.addListDataListener( new ListDataListener()
+        {
+            @Override
+            public void intervalAdded( ListDataEvent e )
+            {
+                events.add( "added " + e.getIndex0() + "-" + e.getIndex1() );
+            }
+
+            @Override
+            public void intervalRemoved( ListDataEvent e )
+            {
+                events.add( "removed " + e.getIndex0() + "-" + e.getIndex1() );
+            }
+
+            @Override
+            public void contentsChanged( ListDataEvent e )
+            {
+                events.add( "changed " + e.getIndex0() + "-" + e.getIndex1() );
+            }
+        } );
+
+        // Execute system under test.
+        model.setIcon( "bob", null );
+        model.put( "carol", null, null, 1 );
+        final boolean removed = model.remove( "alice" );
+        final boolean removedAgain = model.remove( "alice" );
+        model.clear();
+
+        // Verify results.
+        assertTrue( removed );
+        assertFalse( removedAgain );
+        assertEquals( 5, events.size() );
+        assertEquals( "changed 1-1", events.get( 0 ) );
+        assertEquals( "removed 2-2", events.get( 1 ) );
+        assertEquals( "added 0-0", events.get( 2 ) );
+        assertEquals( "removed 1-1", events.get( 3 ) );
+        assertEquals( "removed 0-1", events.get( 4 ) );
+        assertEquals( 0, model.getSize() );
+        assertFalse( model.contains( "bob" ) );
+    }
+}
@@ -0,0 +1,185 @@
+package org.jivesoftware.spark.ui.conferences;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoomDirectoryTest
+{
+    private static final int ROOM_COUNT = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRoomsAreDiscoveredWithBoundedConcurrency() throws Exception
+    {
+        // Setup fixture.
+        final SyntheticService service = new SyntheticService( ROOM_COUNT );
+        final RoomDirectory directory = new RoomDirectory( service, executor, null );
+        final Map<EntityBareJid, RoomDirectory.Room> discovered = new ConcurrentHashMap<>();
+
+        // Execute system under test.
+        final boolean result = directory.discover( service.domain, false, room -> discovered.put( room.getJid(), room ) );
+
+        // Verify results.
+        assertTrue( result );
+        assertEquals( ROOM_COUNT, discovered.size() );
+        assertEquals( ROOM_COUNT, service.requests.get() );
+        assertTrue( service.maxConcurrentRequests.get() <= RoomDirectory.MAX_CONCURRENT_REQUESTS );
+        assertTrue( service.maxConcurrentRequests.get() > 1 );
+        final RoomDirectory.Room room = discovered.get( JidCreate.entityBareFrom( "room7@conference.example.org" ) );
+        assertEquals( "Room 7", room.getName() );
+        assertEquals( 7, room.getOccupants() );
+        assertFalse( room.isLocked() );
+        assertTrue( discovered.get( JidCreate.entityBareFrom( "room9@conference.example.org" ) ).isLocked() );
+    }
+
+    @Test
+    public void testCachedRoomsAreReusedInLaterSessions() throws Exception
+    {
+        // Setup fixture.
+        final File cacheDirectory = folder.newFolder();
+        final SyntheticService service = new SyntheticService( ROOM_COUNT );
+        new RoomDirectory( service, executor, cacheDirectory ).discover( service.domain, false, room -> {} );
+        service.requests.set( 0 );
+        final Map<EntityBareJid, RoomDirectory.Room> discovered = new ConcurrentHashMap<>();
+
+        // Execute system under test.
+        final RoomDirectory nextSession = new RoomDirectory( service, executor, cacheDirectory );
+        final boolean result = nextSession.discover( service.domain, false, room -> discovered.put( room.getJid(), room ) );
+        final int requestsFromCache = service.requests.getAndSet( 0 );
+        nextSession.discover( service.domain, true, room -> {} );
+        final int requestsOnRefresh = service.requests.get();
+
+        // Verify results.
+        assertTrue( result );
+        assertEquals( 0, requestsFromCache );
+        assertEquals( ROOM_COUNT, requestsOnRefresh );
+        assertEquals( ROOM_COUNT, discovered.size() );
+        final RoomDirectory.Room room = discovered.get( JidCreate.entityBareFrom( "room9@conference.example.org" ) );
+        assertEquals( "Room 9", room.getName() );
+        assertEquals( 9, room.getOccupants() );
+        assertTrue( room.isLocked() );
+    }
+
+    @Test
+    public void testUnavailableServiceIsReported() throws Exception
+    {
+        // Setup fixture.
+        final SyntheticService service = new SyntheticService( -1 );
+        final RoomDirectory directory = new RoomDirectory( service, executor, null );
+
+        // Execute system under test.
+        final boolean result = directory.discover( service.domain, false, room -> {} );
+
+        // Verify results.
+        assertFalse( result );
+    }
+
+    @Test
+    public void testUnavailableRoomInformationIsNotRequestedAgainNorCached() throws Exception
+    {
+        // Setup fixture.
+        final SyntheticService service = new SyntheticService( ROOM_COUNT );
+        service.roomInfoAvailable = false;
+        final RoomDirectory directory = new RoomDirectory( service, executor, folder.newFolder() );
+        final Map<EntityBareJid, RoomDirectory.Room> discovered = new ConcurrentHashMap<>();
+
+        // Execute system under test.
+        final boolean result = directory.discover( service.domain, false, room -> discovered.put( room.getJid(), room ) );
+        final int requestsWithoutInformation = service.requests.getAndSet( 0 );
+        service.roomInfoAvailable = true;
+        directory.discover( service.domain, false, room -> discovered.put( room.getJid(), room ) );
+        final int requestsWithInformation = service.requests.get();
+
+        // Verify results: the first discovery stops asking, and caches nothing.
+        assertTrue( result );
+        assertTrue( requestsWithoutInformation <= RoomDirectory.MAX_CONCURRENT_REQUESTS );
+        assertEquals( ROOM_COUNT, requestsWithInformation );
+        assertEquals( ROOM_COUNT, discovered.size() );
+        assertEquals( 7, discovered.get( JidCreate.entityBareFrom( "room7@conference.example.org" ) ).getOccupants() );
+    }
+
+    /**
+     * Stands in for a multi-user chat service that hosts synthetic rooms. Every third room is locked, and each room
+     * has as many occupants as its number. Requests for room information take a little time, to let them overlap.
+     */
+    private static class SyntheticService implements RoomDirectory.Source
+    {
+        private final DomainBareJid domain;
+        private final int roomCount;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+        private volatile boolean roomInfoAvailable = true;
+
+        private SyntheticService( int roomCount ) throws XmppStringprepException
+        {
+            this.domain = JidCreate.domainBareFrom( "conference.example.org" );
+            this.roomCount = roomCount;
+        }
+
+        @Override
+        public Map<EntityBareJid, String> getRooms( DomainBareJid service )
+        {
+            if ( roomCount < 0 )
+            {
+                return null;
+            }
+            final Map<EntityBareJid, String> result = new LinkedHashMap<>();
+            for ( int i = 0; i < roomCount; i++ )
+            {
+                result.put( JidCreate.entityBareFromOrThrowUnchecked( "room" + i + "@" + service ), "Room " + i );
+            }
+            return result;
+        }
+
+        @Override
+        public RoomDirectory.Room getRoomInfo( EntityBareJid jid, String name ) throws InterruptedException
+        {
+            requests.incrementAndGet();
+            final int concurrent = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet( concurrent, Math::max );
+            try
+            {
+                Thread.sleep( 1 );
+                if ( !roomInfoAvailable )
+                {
+                    return null;
+                }
+                final int number = Integer.parseInt( jid.toString().substring( 4, jid.toString().indexOf( '@' ) ) );
+                return new RoomDirectory.Room( jid, name, number, number % 3 == 0, System.currentTimeMillis() );
+            }
+            finally
+            {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.jivesoftware.spark.ui.rooms;
+
+import org.junit.Test;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.jid.parts.Resourcepart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OccupantRegistryTest
+{
+    private static final int STORM_SIZE = 5000;
+
+    /**
+     * Replays a join storm in a large room: every occupant joins, and sends a couple of presence updates after that
+     * (which are registered as joins of occupants that are in the room already). Finally, half of the occupants leave.
+     */
+    @Test
+    public void testJoinStorm() throws Exception
+    {
+        // Setup fixture.
+        final List<EntityFullJid> jids = new ArrayList<>( STORM_SIZE );
+        for ( int i = 0; i < STORM_SIZE; i++ )
+        {
+            jids.add( JidCreate.entityFullFrom( "storm@conference.example.org/occupant" + i ) );
+        }
+        final OccupantRegistry registry = new OccupantRegistry();
+        final int[] events = new int[ 2 ];
+        registry.addListener( new OccupantRegistry.Listener()
+        {
+            @Override
+            public void occupantJoined( EntityFullJid occupant )
+            {
+                events[ 0 ]++;
+            }
+
+            @Override
+            public void occupantLeft( EntityFullJid occupant )
+            {
+                events[ 1 ]++;
+            }
+        } );
+
+        // Execute system under test.
+        for ( int round = 0; round < 3; round++ )
+        {
+            for ( final EntityFullJid jid : jids )
+            {
+                registry.addOccupant( jid );
+            }
+        }
+        for ( int i = 0; i < STORM_SIZE; i += 2 )
+        {
+            registry.removeOccupant( jids.get( i ) );
+        }
+
+        // Verify results.
+        assertEquals( STORM_SIZE, events[ 0 ] );
+        assertEquals( STORM_SIZE / 2, events[ 1 ] );
+        assertEquals( STORM_SIZE / 2, registry.getOccupantCount() );
+        assertEquals( STORM_SIZE / 2, registry.getOccupants().size() );
+        assertFalse( registry.isOccupant( jids.get( 0 ) ) );
+        assertTrue( registry.isOccupant( jids.get( 1 ) ) );
+        assertNull( registry.getOccupant( Resourcepart.from( "occupant0" ) ) );
+        assertEquals( jids.get( 1 ), registry.getOccupant( Resourcepart.from( "occupant1" ) ) );
+    }
+
+    @Test
+    public void testBlocking() throws Exception
+    {
+        // Setup fixture.
+        final EntityFullJid jid = JidCreate.entityFullFrom( "room@conference.example.org/troll" );
+        final OccupantRegistry registry = new OccupantRegistry();
+        final List<Boolean> changes = new ArrayList<>();
+        registry.addListener( new OccupantRegistry.Listener()
+        {
+            @Override
+            public void blockingChanged( EntityFullJid occupant, boolean blocked )
+            {
+                changes.add( blocked );
+            }
+        } );
+
+        // Execute system under test.
+        final boolean blocked = registry.setBlocked( jid, true );
+        final boolean blockedAgain = registry.setBlocked( jid, true );
+        final boolean isBlockedByJid = registry.isBlocked( jid );
+        final boolean isBlockedByText = registry.isBlocked( "room@conference.example.org/troll" );
+        final boolean unblocked = registry.setBlocked( jid, false );
+
+        // Verify results.
+        assertTrue( blocked );
+        assertFalse( blockedAgain );
+        assertTrue( isBlockedByJid );
+        assertTrue( isBlockedByText );
+        assertTrue( unblocked );
+        assertFalse( registry.isBlocked( jid ) );
+        assertEquals( 2, changes.size() );
+        assertTrue( changes.get( 0 ) );
+        assertFalse( changes.get( 1 ) );
+    }
+}
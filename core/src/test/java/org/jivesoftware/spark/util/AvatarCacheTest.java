@@ -0,0 +1,134 @@
+package org.jivesoftware.spark.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AvatarCacheTest
+{
+    private static final int[] PRESET_SIZES = { 32, 48, 96 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAvatarIsScaledToAllPresetSizesWhenDecoded() throws Exception
+    {
+        // Setup fixture.
+        final File file = createAvatar( "hash1", 400, 200 );
+        final AvatarCache cache = new AvatarCache( Long.MAX_VALUE, PRESET_SIZES, Runnable::run, Runnable::run );
+
+        // Execute system under test.
+        final ImageIcon requested = cache.get( "hash1", file, 20 );
+        assertTrue( file.delete() );
+
+        // Verify results: the preset sizes are available without the file.
+        assertEquals( 20, requested.getIconWidth() );
+        assertEquals( 10, requested.getIconHeight() );
+        for ( final int size : PRESET_SIZES )
+        {
+            final ImageIcon icon = cache.getIfPresent( "hash1", size );
+            assertNotNull( icon );
+            assertEquals( size, icon.getIconWidth() );
+            assertEquals( size / 2, icon.getIconHeight() );
+        }
+        assertSame( requested, cache.get( "hash1", file, 20 ) );
+        assertEquals( 4, cache.size() );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedAvatarsAreEvictedByPixelBytes() throws Exception
+    {
+        // Setup fixture: room for two avatars of 48 by 48 pixels.
+        final AvatarCache cache = new AvatarCache( 2 * 4 * 48 * 48, new int[ 0 ], Runnable::run, Runnable::run );
+        cache.get( "first", createAvatar( "first", 100, 100 ), 48 );
+        cache.get( "second", createAvatar( "second", 100, 100 ), 48 );
+        cache.getIfPresent( "first", 48 );
+
+        // Execute system under test.
+        cache.get( "third", createAvatar( "third", 100, 100 ), 48 );
+
+        // Verify results.
+        assertNotNull( cache.getIfPresent( "first", 48 ) );
+        assertNull( cache.getIfPresent( "second", 48 ) );
+        assertNotNull( cache.getIfPresent( "third", 48 ) );
+        assertEquals( 2 * 4 * 48 * 48, cache.getByteSize() );
+    }
+
+    @Test
+    public void testAvatarIsDecodedOnceForConcurrentRequests() throws Exception
+    {
+        // Setup fixture: decoding is postponed until the decoder runs.
+        final File file = createAvatar( "hash1", 100, 100 );
+        final List<Runnable> decoder = new ArrayList<>();
+        final List<ImageIcon> delivered = new ArrayList<>();
+        final AvatarCache cache = new AvatarCache( Long.MAX_VALUE, PRESET_SIZES, decoder::add, Runnable::run );
+
+        // Execute system under test.
+        cache.load( "hash1", file, 48, delivered::add );
+        cache.load( "hash1", file, 96, delivered::add );
+        final int pendingDecodes = decoder.size();
+        decoder.get( 0 ).run();
+
+        // Verify results.
+        assertEquals( 1, pendingDecodes );
+        assertEquals( 2, delivered.size() );
+        assertEquals( 48, delivered.get( 0 ).getIconWidth() );
+        assertEquals( 96, delivered.get( 1 ).getIconWidth() );
+    }
+
+    @Test
+    public void testScalingKeepsAspectRatio() throws Exception
+    {
+        // Setup fixture.
+        final BufferedImage image = new BufferedImage( 300, 1200, BufferedImage.TYPE_INT_ARGB );
+
+        // Execute system under test.
+        final BufferedImage result = AvatarCache.scale( image, 64 );
+
+        // Verify results.
+        assertEquals( 16, result.getWidth() );
+        assertEquals( 64, result.getHeight() );
+    }
+
+    @Test
+    public void testSmallImageIsNotScaledUp() throws Exception
+    {
+        // Setup fixture.
+        final BufferedImage image = new BufferedImage( 32, 24, BufferedImage.TYPE_INT_ARGB );
+
+        // Execute system under test.
+        final BufferedImage result = AvatarCache.scale( image, 48 );
+
+        // Verify results.
+        assertSame( image, result );
+    }
+
+    private File createAvatar( String hash, int width, int height ) throws Exception
+    {
+        final BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor( Color.ORANGE );
+        graphics.fillRect( 0, 0, width, height );
+        graphics.dispose();
+
+        final File file = new File( folder.getRoot(), hash );
+        ImageIO.write( image, "png", file );
+        return file;
+    }
+}
@@ -0,0 +1,166 @@
+package org.jivesoftware.spark.util;
+
+import org.jivesoftware.smackx.muc.packet.MUCInitialPresence;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.DomainBareJid;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DiscoveryCacheTest
+{
+    private static final int SERVICE_COUNT = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testServicesAreFoundWithBoundedConcurrency() throws Exception
+    {
+        // Setup fixture.
+        final SyntheticServer server = new SyntheticServer( SERVICE_COUNT );
+        final DiscoveryCache cache = new DiscoveryCache( server, executor, null );
+
+        // Execute system under test.
+        final List<DomainBareJid> result = cache.findServices( server.domain, MUCInitialPresence.NAMESPACE, false );
+
+        // Verify results.
+        assertEquals( SERVICE_COUNT / 2, result.size() );
+        assertEquals( JidCreate.domainBareFrom( "service0.example.org" ), result.get( 0 ) );
+        assertEquals( JidCreate.domainBareFrom( "service2.example.org" ), result.get( 1 ) );
+        assertEquals( SERVICE_COUNT, server.infoRequests.get() );
+        assertTrue( server.maxConcurrentRequests.get() <= DiscoveryCache.MAX_CONCURRENT_REQUESTS );
+        assertTrue( server.maxConcurrentRequests.get() > 1 );
+    }
+
+    @Test
+    public void testCachedServicesAreReusedInLaterSessions() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.newFolder(), "disco.properties" );
+        final SyntheticServer server = new SyntheticServer( SERVICE_COUNT );
+        final List<DomainBareJid> expected = new DiscoveryCache( server, executor, file ).findServices( server.domain, MUCInitialPresence.NAMESPACE, false );
+        server.infoRequests.set( 0 );
+        server.itemsRequests.set( 0 );
+
+        // Execute system under test.
+        final DiscoveryCache nextSession = new DiscoveryCache( server, executor, file );
+        final List<DomainBareJid> cached = nextSession.getCachedServices( server.domain, MUCInitialPresence.NAMESPACE );
+        final List<DomainBareJid> found = nextSession.findServices( server.domain, MUCInitialPresence.NAMESPACE, false );
+
+        // Verify results.
+        assertEquals( expected, cached );
+        assertEquals( expected, found );
+        assertEquals( 0, server.infoRequests.get() );
+        assertEquals( 0, server.itemsRequests.get() );
+        final DiscoveryCache.Info info = nextSession.discoverInfo( JidCreate.domainBareFrom( "service0.example.org" ), null, false );
+        assertTrue( info.hasIdentity( "conference" ) );
+        assertEquals( "Service 0", info.getIdentities().get( 0 ).getName() );
+    }
+
+    @Test
+    public void testChangedVerificationStringInvalidatesInformation() throws Exception
+    {
+        // Setup fixture.
+        final SyntheticServer server = new SyntheticServer( SERVICE_COUNT );
+        final DiscoveryCache cache = new DiscoveryCache( server, executor, null );
+        final Jid jid = JidCreate.domainBareFrom( "service0.example.org" );
+        final DiscoveryCache.Info first = cache.discoverInfo( jid, null, false );
+
+        // Execute system under test.
+        final DiscoveryCache.Info unchanged = cache.discoverInfo( jid, null, false );
+        server.verificationStrings.put( jid, "changed" );
+        final DiscoveryCache.Info changed = cache.discoverInfo( jid, null, false );
+
+        // Verify results.
+        assertSame( first, unchanged );
+        assertNotSame( first, changed );
+        assertEquals( "changed", changed.getVer() );
+        assertEquals( 2, server.infoRequests.get() );
+    }
+
+    /**
+     * Stands in for a server that hosts synthetic services. Every other service is a multi-user chat service. Requests
+     * for service information take a little time, to let them overlap.
+     */
+    private static class SyntheticServer implements DiscoveryCache.Source
+    {
+        private final DomainBareJid domain;
+        private final int serviceCount;
+        private final Map<Jid, String> verificationStrings = new ConcurrentHashMap<>();
+        private final AtomicInteger itemsRequests = new AtomicInteger();
+        private final AtomicInteger infoRequests = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+        private SyntheticServer( int serviceCount ) throws XmppStringprepException
+        {
+            this.domain = JidCreate.domainBareFrom( "example.org" );
+            this.serviceCount = serviceCount;
+        }
+
+        @Override
+        public DiscoveryCache.Items discoverItems( Jid jid, String node )
+        {
+            itemsRequests.incrementAndGet();
+            final List<DiscoveryCache.Item> result = new ArrayList<>();
+            for ( int i = 0; i < serviceCount; i++ )
+            {
+                result.add( new DiscoveryCache.Item( JidCreate.domainBareFromOrThrowUnchecked( "service" + i + "." + jid ), null, null ) );
+            }
+            return new DiscoveryCache.Items( result, System.currentTimeMillis() );
+        }
+
+        @Override
+        public DiscoveryCache.Info discoverInfo( Jid jid, String node ) throws InterruptedException
+        {
+            infoRequests.incrementAndGet();
+            final int concurrent = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet( concurrent, Math::max );
+            try
+            {
+                Thread.sleep( 1 );
+                final int number = Integer.parseInt( jid.toString().substring( 7, jid.toString().indexOf( '.' ) ) );
+                final boolean muc = number % 2 == 0;
+                final List<DiscoveryCache.Identity> identities = Collections.singletonList( new DiscoveryCache.Identity( muc ? "conference" : "pubsub", "text", "Service " + number ) );
+                return new DiscoveryCache.Info( identities, Collections.singleton( muc ? MUCInitialPresence.NAMESPACE : "http://jabber.org/protocol/pubsub" ), getVerificationString( jid ), System.currentTimeMillis() );
+            }
+            finally
+            {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getVerificationString( Jid jid )
+        {
+            return verificationStrings.getOrDefault( jid, "initial" );
+        }
+    }
+}
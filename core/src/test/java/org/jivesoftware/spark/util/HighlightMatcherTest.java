@@ -0,0 +1,52 @@
+package org.jivesoftware.spark.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HighlightMatcherTest
+{
+    @Test
+    public void testFindsAnyKeyword()
+    {
+        // Setup fixture.
+        final HighlightMatcher matcher = new HighlightMatcher( Arrays.asList( "he", "she", "his", "hers" ), false );
+
+        // Execute system under test & Verify results.
+        assertTrue( matcher.find( "ushers" ) );
+        assertTrue( matcher.find( "this" ) );
+        assertTrue( matcher.find( "ahishers" ) );
+        assertFalse( matcher.find( "hi s" ) );
+        assertFalse( matcher.find( "HERS" ) );
+        assertFalse( matcher.find( "" ) );
+        assertFalse( matcher.find( null ) );
+    }
+
+    @Test
+    public void testKeywordsAreMatchedLiterallyIgnoringCase()
+    {
+        // Setup fixture.
+        final HighlightMatcher matcher = new HighlightMatcher( Arrays.asList( "j.doe", "", null ), true );
+
+        // Execute system under test & Verify results.
+        assertTrue( matcher.find( "Hello J.Doe!" ) );
+        assertFalse( matcher.find( "Hello jxdoe!" ) );
+        assertFalse( matcher.find( "Hello" ) );
+    }
+
+    @Test
+    public void testIsCompiledFrom()
+    {
+        // Setup fixture.
+        final HighlightMatcher matcher = new HighlightMatcher( Arrays.asList( "alice", "bob" ), true );
+
+        // Execute system under test & Verify results.
+        assertTrue( matcher.isCompiledFrom( Arrays.asList( "alice", new StringBuilder( "bob" ) ), true ) );
+        assertFalse( matcher.isCompiledFrom( Arrays.asList( "alice", "bob" ), false ) );
+        assertFalse( matcher.isCompiledFrom( Collections.singletonList( "alice" ), true ) );
+    }
+}
@@ -0,0 +1,58 @@
+package org.jivesoftware.spark.util;
+
+import org.junit.Test;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SwingBatchQueueTest
+{
+    @Test
+    public void testItemsAreHandledInOrderInBoundedBatches() throws Exception
+    {
+        // Setup fixture.
+        final int count = SwingBatchQueue.MAX_BATCH_SIZE * 2 + 50;
+        final List<Integer> handled = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        final boolean[] onEventDispatchThread = { true };
+        final SwingBatchQueue<Integer> queue = new SwingBatchQueue<>( item -> {
+            onEventDispatchThread[ 0 ] &= EventQueue.isDispatchThread();
+            handled.add( item );
+        }, () -> batchSizes.add( handled.size() - batchSizes.stream().mapToInt( Integer::intValue ).sum() ) );
+
+        // Execute system under test.
+        EventQueue.invokeAndWait( () -> {
+            // Queue all items before the first batch can be handled.
+            for ( int i = 0; i < count; i++ )
+            {
+                queue.add( i );
+            }
+        } );
+        final int depthAfterQueueing = count - handled.size();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( queue.getDepth() > 0 && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        EventQueue.invokeAndWait( () -> {} );
+
+        // Verify results.
+        assertEquals( count, depthAfterQueueing );
+        assertEquals( 0, queue.getDepth() );
+        assertEquals( count, handled.size() );
+        for ( int i = 0; i < count; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), handled.get( i ) );
+        }
+        assertTrue( onEventDispatchThread[ 0 ] );
+        assertTrue( batchSizes.size() >= 3 );
+        for ( final int batchSize : batchSizes )
+        {
+            assertTrue( batchSize <= SwingBatchQueue.MAX_BATCH_SIZE );
+        }
+    }
+}
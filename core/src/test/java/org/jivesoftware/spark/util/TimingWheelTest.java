@@ -0,0 +1,102 @@
+package org.jivesoftware.spark.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest
+{
+    private final AtomicLong clock = new AtomicLong( 1000 );
+
+    private final List<String> executed = new ArrayList<>();
+
+    private final TimingWheel wheel = new TimingWheel( 100, 8, Runnable::run, clock::get );
+
+    @Test
+    public void testTasksRunInOrderOfTheirDeadline()
+    {
+        // Setup fixture.
+        wheel.schedule( "b", 500, () -> executed.add( "b" ) );
+        wheel.schedule( "a", 200, () -> executed.add( "a" ) );
+
+        // Execute system under test.
+        clock.addAndGet( 199 );
+        wheel.advance();
+        final List<String> early = new ArrayList<>( executed );
+        clock.addAndGet( 1 );
+        wheel.advance();
+        final List<String> first = new ArrayList<>( executed );
+        clock.addAndGet( 300 );
+        wheel.advance();
+
+        // Verify results.
+        assertTrue( early.isEmpty() );
+        assertEquals( Arrays.asList( "a" ), first );
+        assertEquals( Arrays.asList( "a", "b" ), executed );
+        assertEquals( 0, wheel.size() );
+    }
+
+    @Test
+    public void testSchedulingReplacesThePendingTaskOfTheKey()
+    {
+        // Setup fixture.
+        for ( int i = 0; i < 10; i++ )
+        {
+            final String state = "state" + i;
+            wheel.schedule( "contact", 300, () -> executed.add( state ) );
+            clock.addAndGet( 50 );
+            wheel.advance();
+        }
+
+        // Execute system under test.
+        clock.addAndGet( 300 );
+        wheel.advance();
+
+        // Verify results.
+        assertEquals( Arrays.asList( "state9" ), executed );
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun()
+    {
+        // Setup fixture.
+        wheel.schedule( "contact", 300, () -> executed.add( "contact" ) );
+
+        // Execute system under test.
+        final boolean cancelled = wheel.cancel( "contact" );
+        clock.addAndGet( 1000 );
+        wheel.advance();
+
+        // Verify results.
+        assertTrue( cancelled );
+        assertFalse( wheel.isScheduled( "contact" ) );
+        assertFalse( wheel.cancel( "contact" ) );
+        assertTrue( executed.isEmpty() );
+    }
+
+    @Test
+    public void testTasksBeyondOneRotationWaitForTheirDeadline()
+    {
+        // Setup fixture: the wheel spans 800 milliseconds.
+        wheel.schedule( "short", 100, () -> executed.add( "short" ) );
+        wheel.schedule( "long", 2500, () -> executed.add( "long" ) );
+
+        // Execute system under test.
+        clock.addAndGet( 900 );
+        wheel.advance();
+        final List<String> first = new ArrayList<>( executed );
+        clock.addAndGet( 10000 );
+        wheel.advance();
+
+        // Verify results.
+        assertEquals( Arrays.asList( "short" ), first );
+        assertEquals( Arrays.asList( "short", "long" ), executed );
+    }
+}
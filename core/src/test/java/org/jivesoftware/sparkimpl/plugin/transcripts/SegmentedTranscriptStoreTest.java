@@ -0,0 +1,185 @@
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedTranscriptStoreTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private SegmentedTranscriptStore store;
+    private Jid jid;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        store = new SegmentedTranscriptStore( folder.getRoot() );
+        jid = JidCreate.from( "john@example.org" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        store.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        // Setup fixture.
+        final List<HistoryMessage> messages = createMessages( 0, 10, "Hello" );
+
+        // Execute system under test.
+        store.append( jid, messages );
+        final ChatTranscript result = store.getTranscript( jid );
+
+        // Verify results.
+        assertTrue( store.hasTranscript( jid ) );
+        assertEquals( 10, result.size() );
+        for ( int i = 0; i < messages.size(); i++ )
+        {
+            assertEquals( messages.get( i ).getBody(), result.getMessage( i ).getBody() );
+            assertEquals( messages.get( i ).getDate(), result.getMessage( i ).getDate() );
+            assertEquals( messages.get( i ).getFrom(), result.getMessage( i ).getFrom() );
+            assertEquals( messages.get( i ).getTo(), result.getMessage( i ).getTo() );
+        }
+    }
+
+    @Test
+    public void testNoTranscript()
+    {
+        // Execute system under test.
+        final ChatTranscript result = store.getTranscript( jid );
+
+        // Verify results.
+        assertFalse( store.hasTranscript( jid ) );
+        assertEquals( 0, result.size() );
+    }
+
+    @Test
+    public void testRecentTranscriptSpansSegments() throws Exception
+    {
+        // Setup fixture: bodies large enough to require multiple segments.
+        final String body = String.join( "", Collections.nCopies( 512 * 1024, "x" ) );
+        store.append( jid, createMessages( 0, 20, body ) );
+
+        // Execute system under test.
+        final ChatTranscript result = store.getRecentTranscript( jid, 12 );
+
+        // Verify results.
+        assertTrue( store.getSegments( jid ).size() > 1 );
+        assertEquals( 12, result.size() );
+        assertEquals( new Date( 8000 ), result.getMessage( 0 ).getDate() );
+        assertEquals( new Date( 19000 ), result.getMessage( 11 ).getDate() );
+        assertEquals( 20, store.getTranscript( jid ).size() );
+    }
+
+    @Test
+    public void testIncompleteRecordIsIgnoredAndTruncated() throws Exception
+    {
+        // Setup fixture: simulate a crash halfway through writing a record.
+        store.append( jid, createMessages( 0, 3, "Before" ) );
+        store.close();
+        final File segment = store.getSegments( jid ).get( 0 ).getFile();
+        try ( final FileOutputStream out = new FileOutputStream( segment, true ) )
+        {
+            out.write( new byte[] { 0, 0, 1, 0, 42, 42 } );
+        }
+
+        // Execute system under test.
+        store = new SegmentedTranscriptStore( folder.getRoot() );
+        final int beforeAppend = store.getTranscript( jid ).size();
+        store.append( jid, createMessages( 3, 2, "After" ) );
+        final ChatTranscript result = store.getTranscript( jid );
+
+        // Verify results.
+        assertEquals( 3, beforeAppend );
+        assertEquals( 5, result.size() );
+        assertEquals( "After", result.getMessage( 4 ).getBody() );
+    }
+
+    @Test
+    public void testAppendAfterCorruptHeaderContinuesInNewSegment() throws Exception
+    {
+        // Setup fixture: the header of the only segment is overwritten.
+        store.append( jid, createMessages( 0, 3, "Before" ) );
+        store.close();
+        final File segment = store.getSegments( jid ).get( 0 ).getFile();
+        try ( final RandomAccessFile raf = new RandomAccessFile( segment, "rw" ) )
+        {
+            raf.writeInt( 0 );
+        }
+
+        // Execute system under test.
+        store = new SegmentedTranscriptStore( folder.getRoot() );
+        store.append( jid, createMessages( 3, 2, "After" ) );
+        store.append( jid, createMessages( 5, 1, "Later" ) );
+        final ChatTranscript result = store.getTranscript( jid );
+
+        // Verify results.
+        assertEquals( 2, store.getSegments( jid ).size() );
+        assertEquals( 3, result.size() );
+        assertEquals( "After", result.getMessage( 0 ).getBody() );
+        assertEquals( "Later", result.getMessage( 2 ).getBody() );
+    }
+
+    @Test
+    public void testCursorSeekByDateAndPosition() throws Exception
+    {
+        // Setup fixture: bodies large enough to require multiple segments.
+        final String body = String.join( "", Collections.nCopies( 512 * 1024, "x" ) );
+        store.append( jid, createMessages( 0, 20, body ) );
+
+        try ( final TranscriptCursor cursor = store.openCursor( jid ) )
+        {
+            // Execute system under test.
+            cursor.seek( new Date( 13500 ) );
+            final long position = cursor.getPosition();
+            final List<HistoryMessage> window = cursor.next( 3 );
+            cursor.seek( new Date( 0 ) );
+            final HistoryMessage first = cursor.next();
+            cursor.seek( position );
+            final HistoryMessage again = cursor.next();
+
+            // Verify results.
+            assertEquals( 3, window.size() );
+            assertEquals( new Date( 14000 ), window.get( 0 ).getDate() );
+            assertEquals( new Date( 16000 ), window.get( 2 ).getDate() );
+            assertEquals( new Date( 0 ), first.getDate() );
+            assertEquals( new Date( 14000 ), again.getDate() );
+        }
+    }
+
+    private static List<HistoryMessage> createMessages( int offset, int count, String body ) throws Exception
+    {
+        final List<HistoryMessage> result = new ArrayList<>();
+        for ( int i = offset; i < offset + count; i++ )
+        {
+            final HistoryMessage message = new HistoryMessage();
+            message.setFrom( JidCreate.from( "john@example.org/desktop" ) );
+            message.setTo( JidCreate.from( "jane@example.org" ) );
+            message.setBody( body );
+            message.setDate( new Date( i * 1000L ) );
+            result.add( message );
+        }
+        return result;
+    }
+}
@@ -0,0 +1,192 @@
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.jiveproperties.packet.JivePropertiesExtension;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TranscriptBufferTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File spillDirectory;
+    private TranscriptBuffer buffer;
+
+    @Before
+    public void setUp()
+    {
+        spillDirectory = new File( folder.getRoot(), "spill" );
+        buffer = new TranscriptBuffer( 50, () -> spillDirectory );
+    }
+
+    @After
+    public void tearDown()
+    {
+        buffer.release();
+    }
+
+    @Test
+    public void testOldestMessagesAreEvicted() throws Exception
+    {
+        // Execute system under test.
+        for ( int i = 0; i < 250; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+
+        // Verify results.
+        assertEquals( 250, buffer.size() );
+        assertTrue( buffer.getEvictedCount() >= 200 );
+        assertTrue( buffer.getEvictedCount() < 250 );
+    }
+
+    @Test
+    public void testEvictedMessagesArePagedBackIn() throws Exception
+    {
+        // Setup fixture.
+        for ( int i = 0; i < 250; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+
+        // Execute system under test.
+        final Message first = buffer.get( 0 );
+        final Message middle = buffer.get( 150 );
+        final Iterator<Message> iterator = buffer.iterator();
+
+        // Verify results.
+        assertEquals( "message 0", first.getBody() );
+        assertEquals( JidCreate.from( "john@example.org/desktop" ), first.getFrom() );
+        assertEquals( new Date( 0 ), ( (JivePropertiesExtension) first.getExtension( JivePropertiesExtension.NAMESPACE ) ).getProperty( "date" ) );
+        assertEquals( "message 150", middle.getBody() );
+        for ( int i = 0; i < 250; i++ )
+        {
+            assertEquals( "message " + i, iterator.next().getBody() );
+        }
+        assertFalse( iterator.hasNext() );
+    }
+
+    @Test
+    public void testRecentMessagesAreKeptInMemory() throws Exception
+    {
+        // Setup fixture.
+        for ( int i = 0; i < 249; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+        final Message last = createMessage( 249 );
+
+        // Execute system under test.
+        buffer.add( last );
+
+        // Verify results.
+        assertSame( last, buffer.get( buffer.size() - 1 ) );
+    }
+
+    @Test
+    public void testSpillFileCanOnlyBeReadByItsOwner() throws Exception
+    {
+        // Execute system under test.
+        for ( int i = 0; i < 250; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+
+        // Verify results.
+        final File[] files = spillDirectory.listFiles();
+        assertEquals( 1, files.length );
+        if ( FileSystems.getDefault().supportedFileAttributeViews().contains( "posix" ) )
+        {
+            assertEquals( EnumSet.of( PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE ), Files.getPosixFilePermissions( files[ 0 ].toPath() ) );
+        }
+    }
+
+    @Test
+    public void testNothingIsWrittenWithoutSpillDirectory() throws Exception
+    {
+        // Setup fixture.
+        buffer = new TranscriptBuffer( 50, () -> null );
+
+        // Execute system under test.
+        for ( int i = 0; i < 250; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+
+        // Verify results.
+        assertEquals( 0, buffer.getEvictedCount() );
+        assertEquals( 250, buffer.size() );
+        assertEquals( "message 0", buffer.get( 0 ).getBody() );
+        assertFalse( spillDirectory.exists() );
+    }
+
+    @Test
+    public void testReleasedMessagesCannotBeRead() throws Exception
+    {
+        // Setup fixture.
+        for ( int i = 0; i < 250; i++ )
+        {
+            buffer.add( createMessage( i ) );
+        }
+
+        // Execute system under test.
+        buffer.release();
+
+        // Verify results.
+        try
+        {
+            buffer.get( 0 );
+            fail( "Released messages should not be readable." );
+        }
+        catch ( UncheckedIOException e )
+        {
+            // Expected.
+        }
+        assertEquals( "message 249", buffer.get( 249 ).getBody() );
+    }
+
+    @Test
+    public void testLeftoverSpillFilesAreDeleted() throws Exception
+    {
+        // Setup fixture.
+        assertTrue( spillDirectory.mkdirs() );
+        assertTrue( new File( spillDirectory, "transcript123.spill" ).createNewFile() );
+
+        // Execute system under test.
+        TranscriptBuffer.deleteSpillFiles( spillDirectory );
+
+        // Verify results.
+        assertEquals( 0, spillDirectory.listFiles().length );
+    }
+
+    private static Message createMessage( long i ) throws Exception
+    {
+        final Message message = new Message();
+        message.setFrom( JidCreate.from( "john@example.org/desktop" ) );
+        message.setTo( JidCreate.from( "jane@example.org" ) );
+        message.setBody( "message " + i );
+        message.addExtension( new JivePropertiesExtension( Collections.singletonMap( "date", new Date( i * 1000 ) ) ) );
+        return message;
+    }
+}
@@ -0,0 +1,198 @@
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TranscriptIndexTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private SegmentedTranscriptStore store;
+    private TranscriptIndex index;
+    private Jid john;
+    private Jid jane;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        store = new SegmentedTranscriptStore( folder.getRoot() );
+        index = new TranscriptIndex( new File( folder.getRoot(), "index" ), store );
+        john = JidCreate.from( "john@example.org" );
+        jane = JidCreate.from( "jane@example.org" );
+    }
+
+    @After
+    public void tearDown()
+    {
+        index.close();
+        store.close();
+    }
+
+    @Test
+    public void testExistingTranscriptsAreIndexed() throws Exception
+    {
+        // Setup fixture.
+        store.append( john, Collections.singletonList( createMessage( 1000, "Shall we meet for lunch?" ) ) );
+        store.append( jane, Collections.singletonList( createMessage( 2000, "Lunch is served" ) ) );
+
+        // Execute system under test.
+        index.indexExistingTranscripts();
+        final List<TranscriptHit> result = index.search( "lunch", null, null, null, 10 );
+
+        // Verify results.
+        assertTrue( index.isIndexed( john ) );
+        assertTrue( index.isIndexed( jane ) );
+        assertEquals( 2, result.size() );
+        assertEquals( jane, result.get( 0 ).getJid() );
+        assertArrayEquals( new int[] { 0, 5 }, result.get( 0 ).getHighlights() );
+        assertEquals( john, result.get( 1 ).getJid() );
+        assertArrayEquals( new int[] { 18, 23 }, result.get( 1 ).getHighlights() );
+    }
+
+    @Test
+    public void testAllTermsMustMatchAsPrefix() throws Exception
+    {
+        // Setup fixture.
+        index.indexExistingTranscripts();
+        index.add( john, Collections.singletonList( createMessage( 1000, "The meeting starts at ten" ) ) );
+        index.add( john, Collections.singletonList( createMessage( 2000, "The meeting was cancelled" ) ) );
+
+        // Execute system under test.
+        final List<TranscriptHit> result = index.search( "MEET start", john, null, null, 10 );
+
+        // Verify results.
+        assertEquals( 1, result.size() );
+        assertEquals( new Date( 1000 ), result.get( 0 ).getDate() );
+        assertArrayEquals( new int[] { 4, 8, 12, 17 }, result.get( 0 ).getHighlights() );
+    }
+
+    @Test
+    public void testFiltersByContactAndDate() throws Exception
+    {
+        // Setup fixture.
+        index.indexExistingTranscripts();
+        index.add( john, Collections.singletonList( createMessage( 1000, "hello" ) ) );
+        index.add( john, Collections.singletonList( createMessage( 5000, "hello again" ) ) );
+        index.add( jane, Collections.singletonList( createMessage( 3000, "hello" ) ) );
+
+        // Execute system under test.
+        final List<TranscriptHit> byContact = index.search( "hello", jane, null, null, 10 );
+        final List<TranscriptHit> byDate = index.search( "hello", null, new Date( 2000 ), new Date( 5000 ), 10 );
+
+        // Verify results.
+        assertEquals( 1, byContact.size() );
+        assertEquals( jane, byContact.get( 0 ).getJid() );
+        assertEquals( 1, byDate.size() );
+        assertEquals( new Date( 3000 ), byDate.get( 0 ).getDate() );
+    }
+
+    @Test
+    public void testSurvivesReopenAndMerge() throws Exception
+    {
+        // Setup fixture: create more segments of a similar size than are allowed, to force a merge.
+        index.indexExistingTranscripts();
+        for ( int i = 0; i <= TranscriptIndex.MERGE_FACTOR; i++ )
+        {
+            index.add( john, Collections.singletonList( createMessage( i * 1000L, "message number " + i ) ) );
+            index.flush();
+        }
+        index.close();
+
+        // Execute system under test.
+        index = new TranscriptIndex( new File( folder.getRoot(), "index" ), store );
+        final List<TranscriptHit> all = index.search( "message", john, null, null, 100 );
+        final List<TranscriptHit> one = index.search( "7", john, null, null, 100 );
+
+        // Verify results.
+        assertEquals( TranscriptIndex.MERGE_FACTOR + 1, all.size() );
+        assertEquals( 1, one.size() );
+        assertEquals( new Date( 7000 ), one.get( 0 ).getDate() );
+        assertFalse( index.search( "nothing", john, null, null, 100 ).size() > 0 );
+    }
+
+    @Test
+    public void testSegmentsAreMergedByLevel() throws Exception
+    {
+        // Setup fixture.
+        index.indexExistingTranscripts();
+
+        // Execute system under test.
+        for ( int i = 0; i < 250; i++ )
+        {
+            index.add( john, Collections.singletonList( createMessage( i * 1000L, "message number " + i ) ) );
+            index.flush();
+        }
+
+        // Verify results: small segments are merged with each other, but not over and over again into one.
+        final File[] segments = new File( folder.getRoot(), "index" ).listFiles( ( dir, name ) -> name.endsWith( ".idx" ) );
+        assertTrue( segments.length < 2 * TranscriptIndex.MERGE_FACTOR );
+        assertTrue( segments.length > 1 );
+        assertEquals( 250, index.search( "message", john, null, null, 1000 ).size() );
+    }
+
+    @Test
+    public void testFailedFlushIsRolledBack() throws Exception
+    {
+        // Setup fixture: make writing the first segment fail.
+        index.indexExistingTranscripts();
+        final File blocker = new File( folder.getRoot(), "index/00000001.idx.tmp" );
+        assertTrue( blocker.mkdirs() );
+        assertTrue( new File( blocker, "file" ).createNewFile() );
+        index.add( john, Collections.singletonList( createMessage( 1000, "hello" ) ) );
+
+        // Execute system under test.
+        index.flush();
+        assertTrue( new File( blocker, "file" ).delete() );
+        assertTrue( blocker.delete() );
+        index.flush();
+        index.close();
+
+        // Verify results.
+        assertEquals( 12, new File( folder.getRoot(), "index/documents.dat" ).length() );
+        index = new TranscriptIndex( new File( folder.getRoot(), "index" ), store );
+        final List<TranscriptHit> result = index.search( "hello", john, null, null, 10 );
+        assertEquals( 1, result.size() );
+        assertEquals( new Date( 1000 ), result.get( 0 ).getDate() );
+    }
+
+    @Test
+    public void testMatchUsesTheRuleOfTheIndex() throws Exception
+    {
+        // Execute system under test.
+        final int[] match = TranscriptIndex.match( "MEET start", "The meeting starts at ten" );
+        final int[] partial = TranscriptIndex.match( "meet start", "The meeting was cancelled" );
+        final int[] infix = TranscriptIndex.match( "eeting", "The meeting starts at ten" );
+
+        // Verify results.
+        assertArrayEquals( new int[] { 4, 8, 12, 17 }, match );
+        assertNull( partial );
+        assertNull( infix );
+    }
+
+    private static HistoryMessage createMessage( long date, String body ) throws Exception
+    {
+        final HistoryMessage message = new HistoryMessage();
+        message.setFrom( JidCreate.from( "john@example.org/desktop" ) );
+        message.setTo( JidCreate.from( "jane@example.org" ) );
+        message.setBody( body );
+        message.setDate( new Date( date ) );
+        return message;
+    }
+}
@@ -0,0 +1,105 @@
+package org.jivesoftware.sparkimpl.plugin.transcripts;
+
+import org.junit.Test;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TranscriptWriteQueueTest
+{
+    @Test
+    public void testQueuedMessagesAreWrittenPerContactInOrder() throws Exception
+    {
+        // Setup fixture.
+        final EntityBareJid john = JidCreate.entityBareFrom( "john@example.org" );
+        final EntityBareJid jane = JidCreate.entityBareFrom( "jane@example.org" );
+        final List<String> written = new ArrayList<>();
+        final TranscriptWriteQueue queue = new TranscriptWriteQueue( ( jid, transcript ) -> {
+            for ( final HistoryMessage message : transcript.getMessages() )
+            {
+                written.add( jid + ":" + message.getBody() );
+            }
+        } );
+
+        // Execute system under test.
+        queue.enqueue( john, Collections.singletonList( createMessage( "one" ) ) );
+        queue.enqueue( jane, Collections.singletonList( createMessage( "two" ) ) );
+        queue.enqueue( john, Collections.singletonList( createMessage( "three" ) ) );
+        final int pendingBeforeFlush = queue.getPendingCount();
+        queue.flush();
+
+        // Verify results.
+        assertEquals( 3, pendingBeforeFlush );
+        assertEquals( 0, queue.getPendingCount() );
+        assertEquals( 3, written.size() );
+        assertEquals( "john@example.org:one", written.get( 0 ) );
+        assertEquals( "john@example.org:three", written.get( 1 ) );
+        assertEquals( "jane@example.org:two", written.get( 2 ) );
+    }
+
+    @Test
+    public void testMessagesArePendingUntilTheyAreWritten() throws Exception
+    {
+        // Setup fixture.
+        final EntityBareJid john = JidCreate.entityBareFrom( "john@example.org" );
+        final EntityBareJid jane = JidCreate.entityBareFrom( "jane@example.org" );
+        final List<Boolean> pendingWhileWriting = new ArrayList<>();
+        final TranscriptWriteQueue[] queue = new TranscriptWriteQueue[ 1 ];
+        queue[ 0 ] = new TranscriptWriteQueue( ( jid, transcript ) -> pendingWhileWriting.add( queue[ 0 ].hasPending( jid ) ) );
+
+        // Execute system under test.
+        queue[ 0 ].enqueue( john, Collections.singletonList( createMessage( "one" ) ) );
+        final boolean johnQueued = queue[ 0 ].hasPending( john );
+        final boolean janeQueued = queue[ 0 ].hasPending( jane );
+        queue[ 0 ].flush();
+
+        // Verify results.
+        assertTrue( johnQueued );
+        assertFalse( janeQueued );
+        assertEquals( Collections.singletonList( true ), pendingWhileWriting );
+        assertFalse( queue[ 0 ].hasPending( john ) );
+    }
+
+    @Test
+    public void testFullQueueIsWrittenWithoutWaitingForTheDelay() throws Exception
+    {
+        // Setup fixture.
+        final EntityBareJid john = JidCreate.entityBareFrom( "john@example.org" );
+        final List<HistoryMessage> written = Collections.synchronizedList( new ArrayList<>() );
+        final TranscriptWriteQueue queue = new TranscriptWriteQueue( ( jid, transcript ) -> written.addAll( transcript.getMessages() ) );
+        final List<HistoryMessage> messages = new ArrayList<>();
+        for ( int i = 0; i < TranscriptWriteQueue.MAX_PENDING_MESSAGES; i++ )
+        {
+            messages.add( createMessage( "message " + i ) );
+        }
+
+        // Execute system under test.
+        queue.enqueue( john, messages );
+        final long deadline = System.currentTimeMillis() + TranscriptWriteQueue.FLUSH_DELAY / 2;
+        while ( written.size() < messages.size() && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+
+        // Verify results.
+        assertEquals( messages.size(), written.size() );
+    }
+
+    private static HistoryMessage createMessage( String body ) throws Exception
+    {
+        final HistoryMessage message = new HistoryMessage();
+        message.setFrom( JidCreate.from( "john@example.org/desktop" ) );
+        message.setTo( JidCreate.from( "jane@example.org" ) );
+        message.setBody( body );
+        message.setDate( new Date() );
+        return message;
+    }
+}
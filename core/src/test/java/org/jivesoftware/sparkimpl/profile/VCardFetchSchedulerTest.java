@@ -0,0 +1,366 @@
+package org.jivesoftware.sparkimpl.profile;
+
+import org.junit.After;
+import org.junit.Test;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VCardFetchSchedulerTest
+{
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLookupsAreDoneInParallelUpToTheConcurrency() throws Exception
+    {
+        // Setup fixture.
+        final StandInServer server = new StandInServer( 20 );
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 4, executor, server::lookUp );
+        final List<BareJid> roster = createRoster( 40 );
+
+        // Execute system under test.
+        for ( final BareJid jid : roster )
+        {
+            scheduler.schedule( jid, VCardFetchScheduler.Lane.BACKGROUND );
+        }
+        server.awaitLookups( roster.size() );
+
+        // Verify results.
+        assertEquals( 4, server.getMaximumConcurrency() );
+        assertEquals( roster.size(), server.getLookedUp().size() );
+        assertTrue( server.getLookedUp().containsAll( roster ) );
+    }
+
+    @Test
+    public void testContactThatWaitsIsLookedUpOnce() throws Exception
+    {
+        // Setup fixture: the only worker is kept busy.
+        final StandInServer server = new StandInServer( 0 );
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, executor, server::lookUp );
+        final BareJid busy = JidCreate.bareFrom( "busy@example.org" );
+        final BareJid contact = JidCreate.bareFrom( "contact@example.org" );
+        server.hold( busy );
+        scheduler.schedule( busy, VCardFetchScheduler.Lane.BACKGROUND );
+        server.awaitHeld();
+
+        // Execute system under test.
+        for ( int i = 0; i < 100; i++ )
+        {
+            scheduler.schedule( contact, VCardFetchScheduler.Lane.BACKGROUND );
+        }
+        server.release();
+        server.awaitLookups( 2 );
+
+        // Verify results.
+        assertEquals( Arrays.asList( busy, contact ), server.getLookedUp() );
+        final VCardFetchScheduler.LaneMetrics metrics = scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND );
+        assertEquals( 101, metrics.getRequested() );
+        assertEquals( 99, metrics.getDeduplicated() );
+    }
+
+    @Test
+    public void testLanesAreServedInOrderOfPriority() throws Exception
+    {
+        // Setup fixture: workers are run by hand, one after the other.
+        final StandInServer server = new StandInServer( 0 );
+        final List<Runnable> workers = new ArrayList<>();
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, workers::add, server::lookUp );
+        final List<BareJid> roster = createRoster( 4 );
+
+        // Execute system under test.
+        scheduler.schedule( roster.get( 0 ), VCardFetchScheduler.Lane.BACKGROUND );
+        scheduler.schedule( roster.get( 1 ), VCardFetchScheduler.Lane.BACKGROUND );
+        scheduler.schedule( roster.get( 2 ), VCardFetchScheduler.Lane.VISIBLE );
+        scheduler.schedule( roster.get( 3 ), VCardFetchScheduler.Lane.IMMEDIATE );
+        for ( int i = 0; i < workers.size(); i++ )
+        {
+            workers.get( i ).run();
+        }
+
+        // Verify results.
+        assertEquals( Arrays.asList( roster.get( 3 ), roster.get( 2 ), roster.get( 0 ), roster.get( 1 ) ), server.getLookedUp() );
+    }
+
+    @Test
+    public void testWaitingLookupIsPromoted() throws Exception
+    {
+        // Setup fixture.
+        final StandInServer server = new StandInServer( 0 );
+        final List<Runnable> workers = new ArrayList<>();
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, workers::add, server::lookUp );
+        final List<BareJid> roster = createRoster( 3 );
+        for ( final BareJid jid : roster )
+        {
+            scheduler.schedule( jid, VCardFetchScheduler.Lane.BACKGROUND );
+        }
+
+        // Execute system under test.
+        final boolean promoted = scheduler.promote( roster.get( 2 ), VCardFetchScheduler.Lane.VISIBLE );
+        final boolean unknownPromoted = scheduler.promote( JidCreate.bareFrom( "unknown@example.org" ), VCardFetchScheduler.Lane.VISIBLE );
+        workers.get( 0 ).run();
+
+        // Verify results.
+        assertTrue( promoted );
+        assertFalse( unknownPromoted );
+        assertEquals( roster.get( 2 ), server.getLookedUp().get( 0 ) );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.VISIBLE ).getPromoted() );
+        assertEquals( 2, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getCompleted() );
+    }
+
+    @Test
+    public void testImmediateLookupDoesNotWaitForBusyWorkers() throws Exception
+    {
+        // Setup fixture: the only worker is kept busy.
+        final StandInServer server = new StandInServer( 0 );
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, executor, server::lookUp );
+        final BareJid busy = JidCreate.bareFrom( "busy@example.org" );
+        final BareJid hovered = JidCreate.bareFrom( "hovered@example.org" );
+        server.hold( busy );
+        scheduler.schedule( busy, VCardFetchScheduler.Lane.BACKGROUND );
+        server.awaitHeld();
+
+        // Execute system under test.
+        scheduler.schedule( hovered, VCardFetchScheduler.Lane.IMMEDIATE );
+        server.awaitLookups( 1 );
+
+        // Verify results.
+        assertEquals( Collections.singletonList( hovered ), server.getLookedUp() );
+        server.release();
+    }
+
+    @Test
+    public void testFailedLookupDoesNotStopTheWorker() throws Exception
+    {
+        // Setup fixture.
+        final List<BareJid> lookedUp = new ArrayList<>();
+        final List<Runnable> workers = new ArrayList<>();
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, workers::add, jid -> {
+            lookedUp.add( jid );
+            if ( lookedUp.size() == 1 )
+            {
+                throw new IllegalStateException( "The server went away." );
+            }
+        } );
+        final List<BareJid> roster = createRoster( 2 );
+        scheduler.schedule( roster.get( 0 ), VCardFetchScheduler.Lane.BACKGROUND );
+        scheduler.schedule( roster.get( 1 ), VCardFetchScheduler.Lane.BACKGROUND );
+
+        // Execute system under test.
+        workers.get( 0 ).run();
+
+        // Verify results.
+        assertEquals( roster, lookedUp );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getFailed() );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getCompleted() );
+    }
+
+    @Test
+    public void testContactAskedForDuringItsLookupIsLookedUpAgainAfterwards() throws Exception
+    {
+        // Setup fixture: the lookup of the contact is kept busy.
+        final StandInServer server = new StandInServer( 0 );
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 2, executor, server::lookUp );
+        final BareJid busy = JidCreate.bareFrom( "busy@example.org" );
+        server.hold( busy );
+        scheduler.schedule( busy, VCardFetchScheduler.Lane.BACKGROUND );
+        server.awaitHeld();
+
+        // Execute system under test: the contact is asked for twice while it is being looked up.
+        scheduler.schedule( busy, VCardFetchScheduler.Lane.VISIBLE );
+        scheduler.schedule( busy, VCardFetchScheduler.Lane.BACKGROUND );
+        final boolean waiting = scheduler.isWaiting( busy );
+        final int lookedUpWhileBusy = server.getLookedUp().size();
+        server.release();
+        server.awaitLookups( 2 );
+
+        // Verify results: it is looked up once more, and never twice at the same time.
+        assertTrue( waiting );
+        assertEquals( 0, lookedUpWhileBusy );
+        assertEquals( Arrays.asList( busy, busy ), server.getLookedUp() );
+        assertEquals( 1, server.getMaximumConcurrency() );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getDeduplicated() );
+        assertFalse( scheduler.isWaiting( busy ) );
+    }
+
+    @Test
+    public void testWorkerThatStopsWithAnErrorIsReplaced() throws Exception
+    {
+        // Setup fixture.
+        final List<BareJid> lookedUp = new ArrayList<>();
+        final List<Runnable> workers = new ArrayList<>();
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, workers::add, jid -> {
+            lookedUp.add( jid );
+            if ( lookedUp.size() == 1 )
+            {
+                throw new StackOverflowError();
+            }
+        } );
+        final List<BareJid> roster = createRoster( 2 );
+        scheduler.schedule( roster.get( 0 ), VCardFetchScheduler.Lane.BACKGROUND );
+        scheduler.schedule( roster.get( 1 ), VCardFetchScheduler.Lane.BACKGROUND );
+
+        // Execute system under test.
+        try
+        {
+            workers.get( 0 ).run();
+            fail( "The error was expected to be thrown." );
+        }
+        catch ( StackOverflowError e )
+        {
+            // Expected.
+        }
+        final int workerCount = workers.size();
+        workers.get( 1 ).run();
+
+        // Verify results.
+        assertEquals( 2, workerCount );
+        assertEquals( roster, lookedUp );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getFailed() );
+        assertEquals( 1, scheduler.getMetrics( VCardFetchScheduler.Lane.BACKGROUND ).getCompleted() );
+    }
+
+    @Test
+    public void testRejectedWorkerDoesNotTakeASlot() throws Exception
+    {
+        // Setup fixture: the executor rejects the first worker.
+        final List<BareJid> lookedUp = new ArrayList<>();
+        final List<Runnable> workers = new ArrayList<>();
+        final AtomicBoolean rejected = new AtomicBoolean();
+        final VCardFetchScheduler scheduler = new VCardFetchScheduler( 1, worker -> {
+            if ( rejected.compareAndSet( false, true ) )
+            {
+                throw new RejectedExecutionException();
+            }
+            workers.add( worker );
+        }, lookedUp::add );
+        final List<BareJid> roster = createRoster( 2 );
+
+        // Execute system under test.
+        scheduler.schedule( roster.get( 0 ), VCardFetchScheduler.Lane.BACKGROUND );
+        scheduler.schedule( roster.get( 1 ), VCardFetchScheduler.Lane.BACKGROUND );
+        workers.get( 0 ).run();
+
+        // Verify results.
+        assertEquals( 1, workers.size() );
+        assertEquals( roster, lookedUp );
+    }
+
+    private static List<BareJid> createRoster( int size ) throws Exception
+    {
+        final List<BareJid> roster = new ArrayList<>();
+        for ( int i = 0; i < size; i++ )
+        {
+            roster.add( JidCreate.bareFrom( "contact" + i + "@example.org" ) );
+        }
+        return roster;
+    }
+
+    /**
+     * Stands in for the server that answers vCard lookups: every lookup takes some time, and the lookup of one contact
+     * can be held until it is released.
+     */
+    private static class StandInServer
+    {
+        private final long latencyMillis;
+        private final List<BareJid> lookedUp = Collections.synchronizedList( new ArrayList<>() );
+        private final Map<BareJid, CountDownLatch> held = new ConcurrentHashMap<>();
+        private final CountDownLatch holding = new CountDownLatch( 1 );
+        private final CountDownLatch released = new CountDownLatch( 1 );
+        private final AtomicInteger concurrency = new AtomicInteger();
+        private final AtomicInteger maximumConcurrency = new AtomicInteger();
+
+        private StandInServer( long latencyMillis )
+        {
+            this.latencyMillis = latencyMillis;
+        }
+
+        void hold( BareJid jid )
+        {
+            held.put( jid, released );
+        }
+
+        void awaitHeld() throws InterruptedException
+        {
+            assertTrue( holding.await( 5, TimeUnit.SECONDS ) );
+        }
+
+        void release()
+        {
+            released.countDown();
+        }
+
+        void lookUp( BareJid jid )
+        {
+            maximumConcurrency.accumulateAndGet( concurrency.incrementAndGet(), Math::max );
+            try
+            {
+                final CountDownLatch latch = held.get( jid );
+                if ( latch != null )
+                {
+                    holding.countDown();
+                    latch.await( 5, TimeUnit.SECONDS );
+                }
+                else if ( latencyMillis > 0 )
+                {
+                    Thread.sleep( latencyMillis );
+                }
+                lookedUp.add( jid );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            finally
+            {
+                concurrency.decrementAndGet();
+            }
+        }
+
+        void awaitLookups( int count ) throws InterruptedException
+        {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ( lookedUp.size() < count && System.currentTimeMillis() < deadline )
+            {
+                Thread.sleep( 5 );
+            }
+            assertEquals( count, lookedUp.size() );
+        }
+
+        List<BareJid> getLookedUp()
+        {
+            synchronized ( lookedUp )
+            {
+                return new ArrayList<>( lookedUp );
+            }
+        }
+
+        int getMaximumConcurrency()
+        {
+            return maximumConcurrency.get();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.jivesoftware.sparkimpl.profile;
+
+import org.jivesoftware.smackx.vcardtemp.packet.VCard;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VCardStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testVCardIsReadAfterReopening() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        final VCardStore store = new VCardStore( file );
+        store.put( createVCard( "alice@example.org", "Alice", "abc123" ) );
+        store.put( createVCard( "bob@example.org", "Bob", "" ) );
+        store.close();
+
+        // Execute system under test.
+        final VCardStore reopened = new VCardStore( file );
+
+        // Verify results.
+        assertEquals( "Alice", reopened.get( "alice@example.org" ).getFields().get( "N/GIVEN" ) );
+        assertEquals( "abc123", reopened.getPhotoHash( "alice@example.org" ) );
+        assertEquals( "", reopened.getPhotoHash( "bob@example.org" ) );
+        assertNull( reopened.getPhotoHash( "carol@example.org" ) );
+        assertNull( reopened.get( "carol@example.org" ) );
+        reopened.close();
+    }
+
+    @Test
+    public void testStoredVCardReplacesEarlierOne() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        final VCardStore store = new VCardStore( file );
+        store.put( createVCard( "alice@example.org", "Alice", "abc123" ) );
+
+        // Execute system under test.
+        store.put( createVCard( "alice@example.org", "Alicia", "def456" ) );
+        store.close();
+        final VCardStore reopened = new VCardStore( file );
+
+        // Verify results.
+        assertEquals( "Alicia", reopened.get( "alice@example.org" ).getFields().get( "N/GIVEN" ) );
+        assertEquals( "def456", reopened.getPhotoHash( "alice@example.org" ) );
+        assertEquals( Collections.singleton( "alice@example.org" ), reopened.getJids() );
+        reopened.close();
+    }
+
+    @Test
+    public void testIncompleteRecordIsDropped() throws Exception
+    {
+        // Setup fixture: the last record was cut off halfway.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        final VCardStore store = new VCardStore( file );
+        store.put( createVCard( "alice@example.org", "Alice", "abc123" ) );
+        store.close();
+        final long complete = file.length();
+        final VCardStore appended = new VCardStore( file );
+        appended.put( createVCard( "bob@example.org", "Bob", "" ) );
+        appended.close();
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.setLength( complete + ( file.length() - complete ) / 2 );
+        }
+
+        // Execute system under test.
+        final VCardStore reopened = new VCardStore( file );
+
+        // Verify results.
+        assertEquals( "Alice", reopened.get( "alice@example.org" ).getFields().get( "N/GIVEN" ) );
+        assertNull( reopened.get( "bob@example.org" ) );
+        assertEquals( complete, file.length() );
+        reopened.close();
+    }
+
+    @Test
+    public void testReplacedRecordsAreCompacted() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        final VCardStore store = new VCardStore( file );
+
+        // Execute system under test: every vCard is large, so that compaction is due soon.
+        for ( int i = 0; i < 100; i++ )
+        {
+            store.put( createVCard( "alice@example.org", "Alice " + i, "hash" + i, new byte[ 10 * 1024 ] ) );
+        }
+        store.close();
+
+        // Verify results.
+        assertTrue( "File has " + file.length() + " bytes", file.length() < 300 * 1024 );
+        final VCardStore reopened = new VCardStore( file );
+        assertEquals( "Alice 99", reopened.get( "alice@example.org" ).getFields().get( "N/GIVEN" ) );
+        assertTrue( reopened.getGarbageBytes() < 300 * 1024 );
+        reopened.close();
+    }
+
+    @Test
+    public void testFileOfAnotherFormatIsReplaced() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.writeUTF( "<vCard xmlns='vcard-temp'/>" );
+        }
+
+        // Execute system under test.
+        final VCardStore store = new VCardStore( file );
+        store.put( createVCard( "alice@example.org", "Alice", "" ) );
+
+        // Verify results.
+        assertEquals( "Alice", store.get( "alice@example.org" ).getFields().get( "N/GIVEN" ) );
+        store.close();
+    }
+
+    @Test
+    public void testClosedStoreReportsThatNothingWasStored() throws Exception
+    {
+        // Setup fixture.
+        final VCardStore store = new VCardStore( new File( folder.getRoot(), "vcards.dat" ) );
+        final boolean stored = store.put( createVCard( "alice@example.org", "Alice", "" ) );
+        store.close();
+
+        // Execute system under test.
+        final boolean result = store.put( createVCard( "bob@example.org", "Bob", "" ) );
+
+        // Verify results.
+        assertTrue( stored );
+        assertFalse( result );
+        assertNull( store.getPhotoHash( "bob@example.org" ) );
+    }
+
+    @Test
+    public void testPhoneNumbersAreKnownWithoutReadingTheVCard() throws Exception
+    {
+        // Setup fixture.
+        final File file = new File( folder.getRoot(), "vcards.dat" );
+        final VCardStore store = new VCardStore( file );
+        final VCardStore.StoredVCard vcard = createVCard( "alice@example.org", "Alice", "abc123", new byte[ 1024 ] );
+        vcard.getFields().put( "TEL/WORK/VOICE", "+1 555 1212" );
+        store.put( vcard );
+        store.put( createVCard( "bob@example.org", "Bob", "" ) );
+        store.close();
+
+        // Execute system under test.
+        final VCardStore reopened = new VCardStore( file );
+
+        // Verify results.
+        assertEquals( Collections.singletonMap( "TEL/WORK/VOICE", "+1 555 1212" ), reopened.getPhoneNumbers( "alice@example.org" ) );
+        assertTrue( reopened.getPhoneNumbers( "bob@example.org" ).isEmpty() );
+        assertNull( reopened.getPhoneNumbers( "carol@example.org" ) );
+        reopened.close();
+    }
+
+    @Test
+    public void testPhotoHashIsReadWhileTheStoreIsBusy() throws Exception
+    {
+        // Setup fixture: another thread holds the store, like a compaction does.
+        final VCardStore store = new VCardStore( new File( folder.getRoot(), "vcards.dat" ) );
+        store.put( createVCard( "alice@example.org", "Alice", "abc123" ) );
+        final CountDownLatch holding = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final Thread busy = new Thread( () -> {
+            synchronized ( store )
+            {
+                holding.countDown();
+                try
+                {
+                    done.await( 5, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } );
+        busy.start();
+        assertTrue( holding.await( 5, TimeUnit.SECONDS ) );
+
+        // Execute system under test.
+        final String hash = store.getPhotoHash( "alice@example.org" );
+        final Map<String, String> phoneNumbers = store.getPhoneNumbers( "alice@example.org" );
+        final Set<String> jids = store.getJids();
+        done.countDown();
+        busy.join();
+
+        // Verify results.
+        assertEquals( "abc123", hash );
+        assertTrue( phoneNumbers.isEmpty() );
+        assertEquals( Collections.singleton( "alice@example.org" ), jids );
+        store.close();
+    }
+
+    @Test
+    public void testVCardKeepsItsFields() throws Exception
+    {
+        // Setup fixture.
+        final VCard vcard = new VCard();
+        vcard.setFirstName( "Alice" );
+        vcard.setLastName( "Liddell" );
+        vcard.setNickName( "al" );
+        vcard.setEmailWork( "alice@example.org" );
+        vcard.setOrganization( "Wonderland" );
+        vcard.setField( "TITLE", "Explorer" );
+        vcard.setPhoneWork( "VOICE", "+1 555 1212" );
+        vcard.setAddressFieldHome( "LOCALITY", "Oxford" );
+        vcard.setAvatar( new byte[] { 1, 2, 3 }, "image/png" );
+
+        // Execute system under test.
+        final VCard result = VCardStore.StoredVCard.of( "alice@example.org", vcard ).toVCard();
+
+        // Verify results.
+        assertEquals( "Alice", result.getFirstName() );
+        assertEquals( "Liddell", result.getLastName() );
+        assertEquals( "al", result.getNickName() );
+        assertEquals( "alice@example.org", result.getEmailWork() );
+        assertEquals( "Wonderland", result.getOrganization() );
+        assertEquals( "Explorer", result.getField( "TITLE" ) );
+        assertEquals( "+1 555 1212", result.getPhoneWork( "VOICE" ) );
+        assertEquals( "Oxford", result.getAddressFieldHome( "LOCALITY" ) );
+        assertArrayEquals( new byte[] { 1, 2, 3 }, result.getAvatar() );
+        assertEquals( vcard.getAvatarHash(), result.getAvatarHash() );
+    }
+
+    private static VCardStore.StoredVCard createVCard( String jid, String firstName, String photoHash )
+    {
+        return createVCard( jid, firstName, photoHash, null );
+    }
+
+    private static VCardStore.StoredVCard createVCard( String jid, String firstName, String photoHash, byte[] photo )
+    {
+        final Map<String, String> fields = new LinkedHashMap<>();
+        fields.put( "N/GIVEN", firstName );
+        fields.put( "JABBERID", jid );
+        return new VCardStore.StoredVCard( jid, fields, photo, photo != null ? "image/png" : null, photoHash );
+    }
+}
@@ -16,6 +16,7 @@
 package org.jivesoftware.fastpath.resources;
 
 import org.jivesoftware.fastpath.FastpathPlugin;
+import org.jivesoftware.resource.IconRegistry;
 
 import javax.swing.ImageIcon;
 import javax.swing.JEditorPane;
@@ -265,7 +266,7 @@ public class FastpathRes {
         try {
             final String iconURI = getString(imageName);
             final URL imageURL = cl.getResource(iconURI);
-            return new ImageIcon(imageURL);
+            return IconRegistry.getInstance().getIcon(imageURL);
         }
         catch (Exception ex) {
             System.out.println(imageName + " not found.");
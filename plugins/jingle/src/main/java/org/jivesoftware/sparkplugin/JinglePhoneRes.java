@@ -20,6 +20,8 @@ import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
 import java.net.URL;
 
+import org.jivesoftware.resource.IconRegistry;
+
 /**
  * Use for Phone Res Internationalization.
  *
@@ -46,7 +48,7 @@ public class JinglePhoneRes {
         try {
             final String iconURI = JinglePhoneRes.getString(imageName);
             final URL imageURL = JinglePhoneRes.cl.getResource(iconURI);
-            return new ImageIcon(imageURL);
+            return IconRegistry.getInstance().getIcon(imageURL);
         }
         catch (Exception ex) {
             System.out.println(imageName + " not found.");
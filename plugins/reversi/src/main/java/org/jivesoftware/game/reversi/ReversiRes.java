@@ -1,5 +1,6 @@
 package org.jivesoftware.game.reversi;
 
+import org.jivesoftware.resource.IconRegistry;
 import org.jivesoftware.resource.UTF8Control;
 
 import java.net.URL;
@@ -40,7 +41,7 @@ public class ReversiRes {
 	        try {
 	            final String iconURI = ReversiRes.getString(imageName);
 	            final URL imageURL = ReversiRes.cl.getResource(iconURI);
-	            return new ImageIcon(imageURL);
+	            return IconRegistry.getInstance().getIcon(imageURL);
 	        }
 	        catch (Exception ex) {
 	            System.out.println(imageName + " not found.");
@@ -16,6 +16,7 @@
 package org.jivesoftware.spark.roar;
 
 import java.util.HashMap;
+import java.util.List;
 
 import javax.swing.JFrame;
 
@@ -28,6 +29,7 @@ import org.jivesoftware.spark.ui.ChatRoomNotFoundException;
 import org.jivesoftware.spark.ui.GlobalMessageListener;
 import org.jivesoftware.spark.ui.rooms.ChatRoomImpl;
 import org.jivesoftware.spark.ui.rooms.GroupChatRoom;
+import org.jivesoftware.spark.util.HighlightMatcher;
 import org.jivesoftware.spark.util.log.Log;
 import org.jxmpp.jid.EntityBareJid;
 
@@ -43,6 +45,11 @@ public class RoarMessageListener implements GlobalMessageListener {
 
     private final HashMap<EntityBareJid, Long> _rooms = new HashMap<>();
 
+    /**
+     * Finds the keywords in message bodies. Replaced when the keywords change, by whichever thread delivers a message.
+     */
+    private volatile HighlightMatcher _keywordMatcher;
+
     public RoarMessageListener() {
         _properties = RoarProperties.getInstance();
     }
@@ -92,12 +99,13 @@ public class RoarMessageListener implements GlobalMessageListener {
     }
 
     private boolean doesMessageMatchKeywords(Message message) {
-        for (String keyword : _properties.getKeywords()) {
-            if (message.getBody().contains(keyword)) {
-                return true;
-            }
+        final List<String> keywords = _properties.getKeywords();
+        HighlightMatcher matcher = _keywordMatcher;
+        if (matcher == null || !matcher.isCompiledFrom(keywords, false)) {
+            matcher = new HighlightMatcher(keywords, false);
+            _keywordMatcher = matcher;
         }
-        return false;
+        return matcher.find(message.getBody());
     }
     
     private boolean isSingleRoomDisabled()
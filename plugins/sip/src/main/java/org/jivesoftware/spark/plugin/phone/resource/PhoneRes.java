@@ -17,6 +17,7 @@ package org.jivesoftware.spark.plugin.phone.resource;
 
 import javax.swing.ImageIcon;
 
+import org.jivesoftware.resource.IconRegistry;
 import org.jivesoftware.spark.util.log.Log;
 
 import java.awt.Image;
@@ -56,7 +57,7 @@ public class PhoneRes {
         try {
             final String iconURI = getString(imageName);
             final URL imageURL = cl.getResource(iconURI);
-            return new ImageIcon(imageURL);
+            return IconRegistry.getInstance().getIcon(imageURL);
         }
         catch (Exception ex) {
             System.out.println(imageName + " not found.");